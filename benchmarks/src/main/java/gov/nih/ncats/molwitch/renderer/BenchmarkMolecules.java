@@ -0,0 +1,47 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import gov.nih.ncats.molwitch.Chemical;
+
+/**
+ * Loads the structures used by the benchmarks from the
+ * test resources, which are copied onto the benchmark classpath.
+ */
+final class BenchmarkMolecules {
+
+	private BenchmarkMolecules() {
+		//can not instantiate
+	}
+
+	/**
+	 * Parse the mol file with the given name (without the .mol extension).
+	 */
+	static Chemical load(String name) throws IOException {
+		try (InputStream in = BenchmarkMolecules.class.getResourceAsStream("/" + name + ".mol")) {
+			if (in == null) {
+				throw new IOException("no benchmark structure named " + name);
+			}
+			return Chemical.parseMol(in);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nih.ncats.molwitch.Chemical;
+
+/**
+ * End to end {@link ChemicalRenderer#createImage(Chemical, int, int, boolean)}
+ * at thumbnail, typical and print sizes, with and without the drop shadow,
+ * rendering straight to PNG with and without reusing the image,
+ * and replaying a {@link DisplayList} recorded at the largest size.
+ * Only {@link RenderQuality#STANDARD} is run by default, compare the tiers with
+ * {@code -p quality=DRAFT,STANDARD,PRINT}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class CreateImageBenchmark {
+
+	@Param({"usp_steroid", "aminoAcidAsSUP", "polymer", "hasSUPs", "wedgeCollide"})
+	public String molecule;
+
+	@Param({"64", "300", "1000"})
+	public int size;
+
+	@Param({"false", "true"})
+	public boolean shadow;
+
+	@Param({"STANDARD"})
+	public RenderQuality quality;
+
+	private ChemicalRenderer renderer;
+	private Chemical chemical;
+	private DisplayList displayList;
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	@Setup
+	public void setup() throws IOException {
+		chemical = BenchmarkMolecules.load(molecule);
+		renderer = new ChemicalRenderer(RendererOptions.createDefault().setQuality(quality)).setShadowVisible(shadow);
+		displayList = renderer.createDisplayList(chemical, 1000, 1000, true);
+	}
+
+	@Benchmark
+	public BufferedImage createImage() {
+		return renderer.createImage(chemical, size, size, true);
+	}
+
+	@Benchmark
+	public int createImageThenPng() throws IOException {
+		out.reset();
+		ImageIO.write(renderer.createImage(chemical, size, size, true), "png", out);
+		return out.size();
+	}
+
+	@Benchmark
+	public int writePng() throws IOException {
+		out.reset();
+		renderer.writeImage(chemical, size, size, true, "png", out);
+		return out.size();
+	}
+
+	@Benchmark
+	public BufferedImage replayDisplayList() {
+		return displayList.createImage(size, size);
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nih.ncats.molwitch.Chemical;
+
+/**
+ * The individual phases of a render so a change can be
+ * traced to the part of the renderer it affects:
+ * the bounding box, the size independent layout, painting
+ * a layout, the background, the shadow pass and stereo label perception.
+ * Painting benchmarks draw into the same image every time
+ * so they don't include the cost of allocating the image.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class RenderPhaseBenchmark {
+
+	@Param({"usp_steroid", "aminoAcidAsSUP", "polymer"})
+	public String molecule;
+
+	@Param({"300"})
+	public int size;
+
+	private Chemical chemical;
+	private NchemicalRenderer renderer;
+	private NchemicalRenderer stereoRenderer;
+	private RenderLayout layout;
+
+	private BufferedImage image;
+	private Graphics2D g2;
+
+	@Setup
+	public void setup() throws IOException {
+		chemical = BenchmarkMolecules.load(molecule);
+		renderer = new NchemicalRenderer(RendererOptions.createDefault());
+		stereoRenderer = new NchemicalRenderer(RendererOptions.createDefault().turnOnStereo());
+		layout = renderer.computeLayout(chemical);
+	}
+
+	@Setup(Level.Iteration)
+	public void createCanvas() {
+		image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		g2 = image.createGraphics();
+	}
+
+	@TearDown(Level.Iteration)
+	public void disposeCanvas() {
+		g2.dispose();
+	}
+
+	@Benchmark
+	public Rectangle2D boundingBox() {
+		return BoundingBox.computeBoundingBoxFor(chemical);
+	}
+
+	@Benchmark
+	public RenderLayout computeLayout() {
+		return renderer.computeLayout(chemical);
+	}
+
+	@Benchmark
+	public RenderLayout computeLayoutWithStereoLabels() {
+		return stereoRenderer.computeLayout(chemical);
+	}
+
+	@Benchmark
+	public BufferedImage paintLayout() {
+		renderer.renderLayout(g2, layout, 0, 0, size, size);
+		return image;
+	}
+
+	@Benchmark
+	public BufferedImage paintBackground() {
+		renderer.renderBackground(g2, 0, 0, size, size, true);
+		return image;
+	}
+
+	@Benchmark
+	public BufferedImage paintShadow() {
+		renderer.renderChemicalShadow(g2, layout, 0, 0, size, size);
+		return image;
+	}
+}
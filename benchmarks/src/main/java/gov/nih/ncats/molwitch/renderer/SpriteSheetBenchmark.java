@@ -0,0 +1,92 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nih.ncats.molwitch.Chemical;
+
+/**
+ * A page of search results as one PNG sprite sheet compared to one PNG per structure.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class SpriteSheetBenchmark {
+
+	private static final String[] MOLECULES = {"usp_steroid", "aminoAcidAsSUP", "polymer", "hasSUPs", "wedgeCollide"};
+
+	@Param({"50", "100"})
+	public int count;
+
+	@Param({"150"})
+	public int size;
+
+	private ChemicalRenderer renderer;
+	private SpriteSheetRenderer sprites;
+	private final List<Chemical> chemicals = new ArrayList<>();
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	@Setup
+	public void setup() throws IOException {
+		renderer = new ChemicalRenderer();
+		sprites = new SpriteSheetRenderer(renderer).setCellSize(size, size).setColumns(10);
+		chemicals.clear();
+		for (int i = 0; i < count; i++) {
+			chemicals.add(BenchmarkMolecules.load(MOLECULES[i % MOLECULES.length]));
+		}
+	}
+
+	@Benchmark
+	public int spriteSheetPng() throws IOException {
+		out.reset();
+		sprites.writeImage(chemicals, "png", out);
+		return out.size();
+	}
+
+	@Benchmark
+	public int separatePngs() throws IOException {
+		int total = 0;
+		for (Chemical c : chemicals) {
+			out.reset();
+			renderer.writeImage(c, size, size, true, "png", out);
+			total += out.size();
+		}
+		return total;
+	}
+}
@@ -22,15 +22,16 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonValue;
 
 import java.awt.*;
-import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
 
 public final class ARGBColor {
 
-    private static Map<Integer, Color> COLOR_CACHE = new ConcurrentHashMap<>();
-
     private final int argb;
+    /**
+     * The AWT Color made the first time it is asked for;
+     * racing threads may each make one but they are all equal.
+     */
+    private transient volatile Color color;
     public ARGBColor(int r, int g, int b){
         this(r,g,b,255);
     }
@@ -56,7 +57,12 @@ public final class ARGBColor {
     }
 
     public Color asColor(){
-        return COLOR_CACHE.computeIfAbsent(argb, v-> new Color(v,true));
+        Color c = color;
+        if(c ==null){
+            c = new Color(argb,true);
+            color = c;
+        }
+        return c;
     }
 
     @Override
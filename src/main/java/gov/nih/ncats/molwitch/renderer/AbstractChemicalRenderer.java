@@ -21,24 +21,21 @@ package gov.nih.ncats.molwitch.renderer;
 import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Composite;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.Shape;
-import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.RoundRectangle2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.BufferedImageOp;
-import java.awt.image.ColorConvertOp;
-import java.awt.image.ConvolveOp;
-import java.awt.image.Kernel;
 import java.io.File;
 import java.io.IOException;
-import java.util.LinkedHashSet;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import gov.nih.ncats.molwitch.Chemical;
 
@@ -55,23 +52,49 @@ import gov.nih.ncats.molwitch.Chemical;
 	
 	
 	
-	 static final ConcurrentMap<Integer, BufferedImageOp> OperCache = 
-		        new ConcurrentHashMap<Integer, BufferedImageOp>();
-	 static final ColorSpace cs = ColorSpace.getInstance(ColorSpace.CS_GRAY);
-	 static final ColorConvertOp GREYOP = new ColorConvertOp(cs, null);  
 	 
-	 boolean shadowViz=true;	 
-	 float shadowRad=0.01f;
-	 float shadowTrans=0.25f;
-	 int shadowOff=5;
-	 boolean borderViz=false;
-     ARGBColor backgroundColor = new ARGBColor(0,0,0,0);
-     ARGBColor borderColor=new ARGBColor(Color.black);
-	 Set<String> _displayProperties = new LinkedHashSet<String>();
+	 volatile boolean shadowViz=true;	 
+	 volatile float shadowRad=0.01f;
+	 volatile float shadowTrans=0.25f;
+	 volatile int shadowOff=5;
+	 volatile boolean borderViz=false;
+     volatile ARGBColor backgroundColor = new ARGBColor(0,0,0,0);
+     volatile ARGBColor borderColor=new ARGBColor(Color.black);
+	 //copy on write so a render can iterate while another thread changes them
+	 volatile Set<String> _displayProperties = new CopyOnWriteArraySet<String>();
 
 		
 	  
-	public abstract void renderChem (Graphics2D g2, Chemical c, int x, int y,int width, int height);
+	/**
+	 * Compute everything needed to draw the given Chemical
+	 * that does not depend on the size of the image.
+	 * @param c the Chemical to lay out.
+	 * @return a new {@link RenderLayout}; will never be null.
+	 */
+	public RenderLayout computeLayout(Chemical c){
+		return computeLayout(c, settings());
+	}
+
+	abstract RenderLayout computeLayout(Chemical c, RenderSettings settings);
+
+	/**
+	 * Draw a previously computed layout into the given area.
+	 */
+	public void renderLayout(Graphics2D g2, RenderLayout layout, int x, int y, int width, int height){
+		renderLayout(g2, layout, x, y, width, height, settings());
+	}
+
+	abstract void renderLayout(Graphics2D g2, RenderLayout layout, int x, int y, int width, int height, RenderSettings settings);
+
+	/**
+	 * Copy the current settings for one render.
+	 */
+	abstract RenderSettings settings();
+
+	public void renderChem (Graphics2D g2, Chemical c, int x, int y,int width, int height){
+		RenderSettings settings = settings();
+		renderLayout(g2, computeLayout(c, settings), x, y, width, height, settings);
+	}
 	
 	
 	public ARGBColor getBackgroundColor() {		return backgroundColor;	}
@@ -97,7 +120,7 @@ import gov.nih.ncats.molwitch.Chemical;
 			_displayProperties.remove(PROPERTY_NAME);
 	}
 	public void setDisplayProperties(Set<String> properties) {
-		_displayProperties=properties;
+		_displayProperties= properties==null? new CopyOnWriteArraySet<String>() : new CopyOnWriteArraySet<String>(properties);
 		
 	}
 	public void addDisplayProperty(String prop){
@@ -113,34 +136,51 @@ import gov.nih.ncats.molwitch.Chemical;
 	renderChem (g2, c, 0, 0, width, height, round);
 	}
 	public void renderChem (Graphics2D g2, Chemical c, int x, int y,int width, int height, boolean round){
-		renderBackground(g2,x,y,width,height,round);
-		if(getShadowVisible())
-			renderChemicalShadow(g2,c,x,y,width,height);
-		renderChem(g2,c,x,y,width,height);
+		RenderSettings settings = settings();
+		renderLayout(g2, computeLayout(c, settings), x, y, width, height, round, settings);
+	}
+	public void renderLayout (Graphics2D g2, RenderLayout layout, int x, int y,int width, int height, boolean round){
+		renderLayout(g2, layout, x, y, width, height, round, settings());
+	}
+	void renderLayout (Graphics2D g2, RenderLayout layout, int x, int y,int width, int height, boolean round, RenderSettings settings){
+		Chemical c = layout.getChemical();
+		renderBackground(g2,x,y,width,height,round, settings);
+		boolean shadow = settings.shadowVisible && settings.quality.drawsShadows();
+		if(shadow && isPixelAligned(g2)) {
+			renderLayoutWithShadow(g2, layout, x, y, width, height, settings);
+		}else if(shadow && g2 instanceof VectorGraphics2D) {
+			//vector output puts the shadow around the drawing instead of copying a blurred image
+			VectorGraphics2D vector = (VectorGraphics2D) g2;
+			int group = vector.beginGroup();
+			renderLayout(g2, layout, x, y, width, height, settings);
+			vector.endGroupWithShadow(group, new Rectangle(x, y, width, height), settings.shadowOffset, settings.shadowRadius, settings.shadowTranslucency);
+		}else {
+			if (shadow)
+				renderChemicalShadow(g2, layout, x, y, width, height, settings);
+			renderLayout(g2, layout, x, y, width, height, settings);
+		}
 		int i=0;
-		if(_displayProperties!=null){
-			for(String s : _displayProperties){
-				String prop = "";
-				if(s.equals(this.PROPERTY_NAME)){
-					prop = c.getName();
-				}else if(s.equals(this.PROPERTY_SMILES)){
-					try{
-						prop = c.toSmiles();
-					}catch(Exception e){
-						e.printStackTrace();
-					}
-				}else{
-					prop = c.getProperty(s);
+		for(String s : settings.displayProperties){
+			String prop = "";
+			if(s.equals(this.PROPERTY_NAME)){
+				prop = c.getName();
+			}else if(s.equals(this.PROPERTY_SMILES)){
+				try{
+					prop = c.toSmiles();
+				}catch(Exception e){
+					e.printStackTrace();
 				}
-				if(prop !=null){
-					prop=prop.trim();
-					if(i==0)
-						drawText(g2,x,y,width,height,prop,this.POSITION_TOP);
-					if(i==1)
-						drawText(g2,x,y,width,height,prop,this.POSITION_BOTTOM);
-				}
-				i++;
+			}else{
+				prop = c.getProperty(s);
+			}
+			if(prop !=null){
+				prop=prop.trim();
+				if(i==0)
+					drawText(g2,x,y,width,height,prop,this.POSITION_TOP);
+				if(i==1)
+					drawText(g2,x,y,width,height,prop,this.POSITION_BOTTOM);
 			}
+			i++;
 		}
 	}
 
@@ -171,45 +211,125 @@ import gov.nih.ncats.molwitch.Chemical;
 
 	}
 	public void renderChemicalShadow(Graphics2D g2, Chemical c, int x, int y, int width, int height){
-        BufferedImage tmpCanvas = new BufferedImage 
-	    (width, height, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = tmpCanvas.createGraphics();
-        g.setBackground(new Color(0,0,0,0));
-        g.setColor(Color.black);
-        renderChem (g, c,x,y, width, height);
-        int radius = (int)(getShadowRadius()*width + .5f);
-        BufferedImage blur = createBlur (tmpCanvas, radius, getShadowTranslucency());
-        g2.drawImage(blur, GREYOP, getShadowOffset(), getShadowOffset());
+		RenderSettings settings = settings();
+		renderChemicalShadow(g2, computeLayout(c, settings), x, y, width, height, settings);
+	}
+	public void renderChemicalShadow(Graphics2D g2, RenderLayout layout, int x, int y, int width, int height){
+		renderChemicalShadow(g2, layout, x, y, width, height, settings());
 	}
-	public void renderBackground(Graphics2D g,int x, int y,int wid,int hit,boolean round){            
-       if(round){
-    	   Shape shape = new RoundRectangle2D.Double
-    	            (x, y, (double)wid, (double)hit, wid/4., hit/4.);
-    	        //g.setComposite(AlphaComposite.Clear);
-    	        //g.setPaint(new Color(0,0,0,0));
-    	        //g.fillRect(x, y, wid, hit);
-    	        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-    			g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-    			g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
-    	        
-            //g.setComposite(AlphaComposite.Src);
-            //g.fill(shape);
-            g.setPaint(getBackgroundColor().asColor());
-            //g.setComposite(AlphaComposite.SrcAtop);
-            g.fill(shape);
-	        if (this.getBorderVisible()) {
-	            g.setPaint(this.getBorderColor().asColor());
-	            g.setStroke(new BasicStroke ((float)wid/100,BasicStroke.CAP_ROUND,BasicStroke.JOIN_ROUND));
-	            double arc = ((float)wid)/4. - (float)wid/50;
-	            shape = new RoundRectangle2D.Double
-	                ((float)wid/100, (float)wid/100, (double)wid-(float)wid/50, (double)hit-(float)wid/50, arc, arc);
-	            g.draw(shape);
-	        }
-        }else {
-        		g.setPaint(getBackgroundColor().asColor());
-        		g.fillRect(x, y, wid, hit);
-        }
+	void renderChemicalShadow(Graphics2D g2, RenderLayout layout, int x, int y, int width, int height, RenderSettings settings){
+		BufferedImage tmpCanvas = ImagePool.acquire(width, height);
+		try {
+			Graphics2D g = tmpCanvas.createGraphics();
+			g.setBackground(new Color(0,0,0,0));
+			g.setColor(Color.black);
+			renderLayout (g, layout,0,0, width, height, settings);
+			g.dispose();
+			drawShadowOf(g2, tmpCanvas, x, y, settings);
+		}finally{
+			ImagePool.release(tmpCanvas);
+		}
+	}
+	/**
+	 * Paint the layout only once into a transparent canvas,
+	 * then draw the shadow made from that canvas followed by the canvas itself.
+	 * This is only the same as painting directly when the target
+	 * is pixel aligned with the canvas, see {@link #isPixelAligned(Graphics2D)}.
+	 */
+	private void renderLayoutWithShadow(Graphics2D g2, RenderLayout layout, int x, int y, int width, int height, RenderSettings settings){
+		BufferedImage canvas = ImagePool.acquire(width, height);
+		try {
+			Graphics2D g = canvas.createGraphics();
+			g.setRenderingHints(g2.getRenderingHints());
+			renderLayout(g, layout, 0, 0, width, height, settings);
+			g.dispose();
+			drawShadowOf(g2, canvas, x, y, settings);
+			g2.drawImage(canvas, x, y, null);
+		}finally{
+			ImagePool.release(canvas);
+		}
+	}
+
+	private static void drawShadowOf(Graphics2D g2, BufferedImage canvas, int x, int y, RenderSettings settings){
+		int radius = (int)(settings.shadowRadius*canvas.getWidth() + .5f);
+		BufferedImage shadow = ShadowBlur.createShadow(canvas, radius, settings.shadowTranslucency);
+		try {
+			g2.drawImage(shadow, x + settings.shadowOffset, y + settings.shadowOffset, null);
+		}finally{
+			ImagePool.release(shadow);
+		}
+	}
+	/**
+	 * Can an image painted off screen be copied onto the given graphics
+	 * without changing how it looks: the graphics has to draw into an image,
+	 * be at most translated by whole pixels (so no scaling, and no
+	 * loss of resolution for vector or print output) and use plain source-over.
+	 */
+	static boolean isPixelAligned(Graphics2D g2){
+		GraphicsConfiguration config = g2.getDeviceConfiguration();
+		if(config ==null || config.getDevice().getType() != GraphicsDevice.TYPE_IMAGE_BUFFER){
+			return false;
+		}
+		AffineTransform transform = g2.getTransform();
+		if((transform.getType() & ~AffineTransform.TYPE_TRANSLATION) !=0
+				|| transform.getTranslateX() != Math.rint(transform.getTranslateX())
+				|| transform.getTranslateY() != Math.rint(transform.getTranslateY())){
+			return false;
+		}
+		Composite composite = g2.getComposite();
+		return composite instanceof AlphaComposite
+				&& ((AlphaComposite) composite).getRule() == AlphaComposite.SRC_OVER
+				&& ((AlphaComposite) composite).getAlpha() == 1F;
+	}
+	/**
+	 * Fill the background and draw the border, if visible.
+	 * Rounded backgrounds on images are copied from a cached tile, see {@link BackgroundTiles},
+	 * and nothing is drawn at all if the background is transparent and there is no border.
+	 */
+	public void renderBackground(Graphics2D g,int x, int y,int wid,int hit,boolean round){
+		renderBackground(g, x, y, wid, hit, round, settings());
+	}
+	void renderBackground(Graphics2D g,int x, int y,int wid,int hit,boolean round, RenderSettings settings){
+		RenderQuality quality = settings.quality;
+		if(round){
+			quality.applyHints(g);
+		}
+		Color background = settings.backgroundColor.asColor();
+		Color border = round && settings.borderVisible ? settings.borderColor.asColor() : null;
+		Composite composite = g.getComposite();
+		boolean srcOver = composite instanceof AlphaComposite && ((AlphaComposite) composite).getRule() == AlphaComposite.SRC_OVER;
+		if(srcOver && background.getAlpha() ==0 && border ==null){
+			//drawing a transparent color over something doesn't change it
+			return;
+		}
+		//other composites would treat the transparent corners of the tile differently
+		if(round && srcOver && quality.isAntialiased() && isPixelAligned(g)){
+			BufferedImage tile = BackgroundTiles.get(wid, hit, background, border, quality);
+			if(tile !=null){
+				g.drawImage(tile, x, y, null);
+				return;
+			}
+		}
+		paintBackground(g, x, y, wid, hit, round, background, border);
+	}
+	/**
+	 * Draw the background shape and the border.
+	 * @param border the border color, or null for no border.
+	 */
+	static void paintBackground(Graphics2D g,int x, int y,int wid,int hit,boolean round, Color background, Color border){
+		g.setPaint(background);
+		if(!round){
+			g.fillRect(x, y, wid, hit);
+			return;
+		}
+		g.fill(new RoundRectangle2D.Double(x, y, (double)wid, (double)hit, wid/4., hit/4.));
+		if (border !=null) {
+			g.setPaint(border);
+			g.setStroke(new BasicStroke ((float)wid/100,BasicStroke.CAP_ROUND,BasicStroke.JOIN_ROUND));
+			double arc = ((float)wid)/4. - (float)wid/50;
+			g.draw(new RoundRectangle2D.Double
+					(x+(float)wid/100, y+(float)wid/100, (double)wid-(float)wid/50, (double)hit-(float)wid/50, arc, arc));
+		}
 	}
 	public BufferedImage createImage (Chemical c, int size) {
     	return createImage (c, size, true);
@@ -227,51 +347,4 @@ import gov.nih.ncats.molwitch.Chemical;
          return img;
     }
 	
-	static private BufferedImage createBlur(BufferedImage src, int rad, float opac){
-		
-		
-    BufferedImage img = new BufferedImage
-        (src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_ARGB);
-    Graphics2D gf =  img.createGraphics();
-
-    BufferedImageOp blur = OperCache.get(rad);
-    if (blur == null) {
-        int fsize=(rad*2+1)*(rad*2+1);
-        int fwid=(rad*2+1);
-        float[] blurKernel= new float[fsize];
-        float dist=1/(float)fsize;
-        for(int i=0;i<fsize;i++){
-            blurKernel[i]=dist;
-        }
-
-        blur = new ConvolveOp
-            (new Kernel(fwid, fwid, blurKernel), 
-             ConvolveOp.EDGE_NO_OP, gf.getRenderingHints());
-
-        OperCache.putIfAbsent(rad, blur);
-    }
-			
-  
-    //theoretically, three box blurs are approximately
-    //one gaussian.
-    BufferedImage dst =blur.filter(
-    			blur.filter(
-    			blur.filter(src, null),
-    			null), 
-    			null);
-    
-    /* This makes the image greyscale.
-     * Very slow right now
-     * 
-     */
-
-    gf.setComposite(AlphaComposite.getInstance
-                    (AlphaComposite.SRC_OVER, opac));
-
-    gf.drawImage(dst, 0, 0, null);
-    gf.dispose();
-
-    return img;
-}
-	
 }
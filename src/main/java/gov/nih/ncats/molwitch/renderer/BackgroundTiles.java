@@ -0,0 +1,155 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Pre-rendered rounded backgrounds and borders.
+ * <p>
+ * Filling an anti-aliased round rectangle and stroking its border costs
+ * more than copying an image of it, and a service renders the same size
+ * with the same colors over and over.  Tiles are kept per size, colors and {@link RenderQuality}
+ * and shared by all threads so they must never be drawn on.  Tiles
+ * larger than {@link #MAX_TILE_PIXELS} aren't cached and the cache
+ * only holds {@link #MAX_PIXELS} pixels.
+ * </p>
+ */
+final class BackgroundTiles {
+
+	/**
+	 * Maximum number of pixels in one tile, 1024 x 1024.
+	 */
+	static final int MAX_TILE_PIXELS = 1 << 20;
+	/**
+	 * Maximum number of pixels of all the tiles, 16 MB of ARGB.
+	 */
+	static final int MAX_PIXELS = 1 << 22;
+
+	private static final Map<Key, BufferedImage> CACHE = new LinkedHashMap<>(16, .75F, true);
+	private static long pixels;
+
+	private BackgroundTiles() {
+		//can not instantiate
+	}
+
+	/**
+	 * Get the round background tile of the given size and colors.
+	 * @param border the border color, or null for no border.
+	 * @param quality the tier whose rendering hints the tile is drawn with.
+	 * @return the tile, which must not be changed; or null if it is too big to cache.
+	 */
+	static BufferedImage get(int width, int height, Color background, Color border, RenderQuality quality) {
+		long size = (long) width * height;
+		if (size > MAX_TILE_PIXELS) {
+			return null;
+		}
+		Key key = new Key(width, height, background, border, quality);
+		synchronized (CACHE) {
+			BufferedImage tile = CACHE.get(key);
+			if (tile != null) {
+				return tile;
+			}
+		}
+		BufferedImage tile = createTile(width, height, background, border, quality);
+		synchronized (CACHE) {
+			BufferedImage existing = CACHE.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			CACHE.put(key, tile);
+			pixels += size;
+			Iterator<BufferedImage> eldest = CACHE.values().iterator();
+			while (pixels > MAX_PIXELS) {
+				BufferedImage removed = eldest.next();
+				pixels -= (long) removed.getWidth() * removed.getHeight();
+				eldest.remove();
+			}
+		}
+		return tile;
+	}
+
+	private static BufferedImage createTile(int width, int height, Color background, Color border, RenderQuality quality) {
+		BufferedImage tile = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = tile.createGraphics();
+		try {
+			quality.applyHints(g);
+			AbstractChemicalRenderer.paintBackground(g, 0, 0, width, height, true, background, border);
+		} finally {
+			g.dispose();
+		}
+		return tile;
+	}
+
+	static void clear() {
+		synchronized (CACHE) {
+			CACHE.clear();
+			pixels = 0;
+		}
+	}
+
+	static int size() {
+		synchronized (CACHE) {
+			return CACHE.size();
+		}
+	}
+
+	private static final class Key {
+		private final int width;
+		private final int height;
+		private final int background;
+		/**
+		 * The ARGB of the border, or 0 for no border since a transparent border draws nothing.
+		 */
+		private final int border;
+		private final RenderQuality quality;
+
+		Key(int width, int height, Color background, Color border, RenderQuality quality) {
+			this.width = width;
+			this.height = height;
+			this.background = background.getRGB();
+			this.border = border == null ? 0 : border.getRGB();
+			this.quality = quality;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return width == key.width && height == key.height
+					&& background == key.background && border == key.border && quality == key.quality;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(width, height, background, border, quality);
+		}
+	}
+}
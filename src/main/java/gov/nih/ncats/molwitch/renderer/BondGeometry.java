@@ -0,0 +1,328 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.BasicStroke;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Path2D;
+
+/**
+ * The geometry used to paint bonds, done on primitive arrays
+ * instead of the {@link Graphics2DParent} wrapper objects.
+ *
+ * <p>
+ * A segment is a {@code double[4]} of {@code x1, y1, x2, y2}
+ * and a wedge trapezoid is a {@code double[8]} of its 4 corners
+ * {@code x0, y0 ... x3, y3}.  Atom circles are {@code float[3]}
+ * of {@code x, y, radius}.  Methods that clip or split
+ * segments write into arrays passed in by the caller so
+ * nothing is allocated per bond.
+ * </p>
+ */
+final class BondGeometry {
+
+	private static final float ZERO_DISTANCE_TOLERANCE = 0.0001f;
+
+	private BondGeometry() {
+		//can not instantiate
+	}
+
+	/**
+	 * Shorten the given segment so it doesn't go inside either atom's circle.
+	 * @param seg the segment to clip in place.
+	 * @param pt1 the circle of the first atom.
+	 * @param pt2 the circle of the second atom.
+	 * @return {@code false} if the segment is entirely hidden by the atoms
+	 * and shouldn't be drawn.
+	 */
+	static boolean clipToAtoms(double[] seg, float[] pt1, float[] pt2) {
+		clipToCircle(seg, pt1[0], pt1[1], pt1[2]);
+		clipToCircle(seg, pt2[0], pt2[1], pt2[2]);
+		if (pointInCircle(seg[0], seg[1], pt1)) {
+			return false;
+		}
+		return !pointInCircle(seg[2], seg[3], pt2);
+	}
+
+	/**
+	 * Move whichever end points of the segment are inside the circle
+	 * to where the segment crosses the circle.
+	 */
+	static void clipToCircle(double[] seg, double Cx, double Cy, double R) {
+		double Ax = seg[0];
+		double Ay = seg[1];
+		double Bx = seg[2];
+		double By = seg[3];
+		boolean achange = false;
+		boolean bchange = false;
+		double nax = Ax;
+		double nay = Ay;
+		double nbx = Bx;
+		double nby = By;
+
+		double LAB = Math.sqrt((Bx - Ax) * (Bx - Ax) + (By - Ay) * (By - Ay));
+
+		// compute the direction vector D from A to B
+		double Dx = (Bx - Ax) / LAB;
+		double Dy = (By - Ay) / LAB;
+
+		// compute the value t of the closest point to the circle center (Cx, Cy)
+		double t = Dx * (Cx - Ax) + Dy * (Cy - Ay);
+
+		// compute the coordinates of the point E on line and closest to C
+		double Ex = t * Dx + Ax;
+		double Ey = t * Dy + Ay;
+
+		// compute the euclidean distance from E to C
+		double LEC = Math.sqrt((Ex - Cx) * (Ex - Cx) + (Ey - Cy) * (Ey - Cy));
+
+		// test if the line intersects the circle
+		if (LEC < R) {
+			// compute distance from t to circle intersection point
+			double dt = Math.sqrt(R * R - LEC * LEC);
+			double is1x = Ex + dt * Dx;
+			double is1y = Ey + dt * Dy;
+
+			if (between(is1x, Ax, Bx) && between(is1y, Ay, By)) {
+				if (isCloserToA(Ax, Ay, Bx, By, Cx, Cy)) {
+					achange = true;
+					nax = is1x;
+					nay = is1y;
+				} else {
+					bchange = true;
+					nbx = is1x;
+					nby = is1y;
+				}
+			}
+			double is2x = Ex - dt * Dx;
+			double is2y = Ey - dt * Dy;
+			if (between(is2x, Ax, Bx) && between(is2y, Ay, By)) {
+				if (achange) {
+					nbx = is2x;
+					nby = is2y;
+				} else if (bchange) {
+					nax = is2x;
+					nay = is2y;
+				} else if (isCloserToA(Ax, Ay, Bx, By, Cx, Cy)) {
+					nax = is2x;
+					nay = is2y;
+				} else {
+					nbx = is2x;
+					nby = is2y;
+				}
+			}
+		}
+		seg[0] = nax;
+		seg[1] = nay;
+		seg[2] = nbx;
+		seg[3] = nby;
+	}
+
+	private static boolean isCloserToA(double Ax, double Ay, double Bx, double By, double Cx, double Cy) {
+		double dax = Cx - Ax;
+		double day = Cy - Ay;
+		double dbx = Cx - Bx;
+		double dby = Cy - By;
+		return dax * dax + day * day < dbx * dbx + dby * dby;
+	}
+
+	static boolean between(double x, double a, double b) {
+		return (x >= a && x <= b) || (x <= a && x >= b);
+	}
+
+	static boolean pointInCircle(double px, double py, float cir1[]) {
+		double dx = cir1[0] - px;
+		double dy = cir1[1] - py;
+		return dx * dx + dy * dy < cir1[2];
+	}
+
+	static double sqrDistance(double x1, double y1, double x2, double y2) {
+		return (x1 - x2) * (x1 - x2) + (y1 - y2) * (y1 - y2);
+	}
+
+	/**
+	 * Compute the two far corners of a wedge that starts at the first
+	 * point of the segment and spreads out by the given angle on each side.
+	 * @param seg the segment.
+	 * @param ang the half angle of the wedge in radians.
+	 * @param out where to write the corners as {@code x, y, x, y}.
+	 * @param offset where in out to start writing.
+	 */
+	static void wedgeTips(double[] seg, float ang, double[] out, int offset) {
+		double dx = seg[2] - seg[0];
+		double dy = seg[3] - seg[1];
+		double newmag = Math.sqrt(dx * dx + dy * dy);
+		double mag = newmag / Math.cos(ang);
+		double theta = Math.atan2(dy, dx);
+		out[offset] = seg[0] + mag * Math.cos(theta + ang);
+		out[offset + 1] = seg[1] + mag * Math.sin(theta + ang);
+		out[offset + 2] = seg[0] + mag * Math.cos(theta - ang);
+		out[offset + 3] = seg[1] + mag * Math.sin(theta - ang);
+	}
+
+	/**
+	 * Compute the trapezoid of a wedge bond.
+	 * @param seg the bond segment which will be clipped to the atoms in place.
+	 * @param pt1 the circle of the narrow end's atom.
+	 * @param pt2 the circle of the wide end's atom.
+	 * @param ang the half angle of the wedge in radians.
+	 * @param startWidth half the width of the narrow end.
+	 * @return a new {@code double[8]} of the corners or {@code null} if the
+	 * bond is hidden by its atoms.
+	 */
+	static double[] wedgeTrapezoid(double[] seg, float[] pt1, float[] pt2, float ang, float startWidth) {
+		if (!clipToAtoms(seg, pt1, pt2)) {
+			return null;
+		}
+		double[] trap = new double[8];
+		wedgeTips(seg, ang, trap, 4);
+
+		double dx = seg[2] - seg[0];
+		double dy = seg[3] - seg[1];
+		double n = 1 / Math.sqrt(dx * dx + dy * dy);
+
+		double sdx = startWidth * (dy * n);
+		double sdy = -startWidth * (dx * n);
+
+		trap[0] = seg[0] + sdx;
+		trap[1] = seg[1] + sdy;
+		trap[2] = seg[0] - sdx;
+		trap[3] = seg[1] - sdy;
+		return trap;
+	}
+
+	/**
+	 * Intersection of the (infinite) lines through
+	 * {@code (x1,y1)-(x2,y2)} and {@code (x3,y3)-(x4,y4)}.
+	 * @param out where to write the intersection point.
+	 * @return {@code false} if the lines are (nearly) parallel
+	 * in which case out is not changed.
+	 */
+	static boolean intersection(double x1, double y1, double x2, double y2,
+								double x3, double y3, double x4, double y4, double[] out) {
+		double c = (x1 - x2) * (y3 - y4) - (y1 - y2) * (x3 - x4);
+
+		if (Math.abs(c) < ZERO_DISTANCE_TOLERANCE) {
+			return false;
+		}
+
+		double x = (x1 * y2 - y1 * x2) * (x3 - x4) - (x1 - x2) * (x3 * y4 - y3 * x4);
+		double y = (x1 * y2 - y1 * x2) * (y3 - y4) - (y1 - y2) * (x3 * y4 - y3 * x4);
+
+		out[0] = x / c;
+		out[1] = y / c;
+		return true;
+	}
+
+	/**
+	 * Split a segment where it crosses the first previously painted segment
+	 * leaving a gap so the two bonds don't look connected.
+	 * @param seg the segment to split.
+	 * @param painted the segments painted so far.
+	 * @param width the size of the gap on each side of the crossing.
+	 * @param first where to write the part before the gap.
+	 * @param second where to write the part after the gap.
+	 * @return {@code true} if the segment crosses anything and was split.
+	 */
+	static boolean splitAtCrossing(double[] seg, SegmentIndex painted, double width, double[] first, double[] second) {
+		int o = painted.firstCrossing(seg[0], seg[1], seg[2], seg[3]);
+		if (o < 0) {
+			return false;
+		}
+		double s2dx = seg[2] - seg[0];
+		double s2dy = seg[3] - seg[1];
+		double s2x = seg[0];
+		double s2y = seg[1];
+		double pcwidth = width / Math.sqrt(s2dx * s2dx + s2dy * s2dy);
+
+		double s1dx = painted.getX2(o) - painted.getX1(o);
+		double s1dy = painted.getY2(o) - painted.getY1(o);
+		double s1x = painted.getX1(o);
+		double s1y = painted.getY1(o);
+		// solve s2 + s2d*t2 = s1 + s1d*t1 for t2
+		double t2 = (s1dx * s2y - s1dx * s1y - s1dy * s2x + s1dy * s1x) / (s1dy * s2dx - s1dx * s2dy);
+
+		t2 = t2 - pcwidth;
+		set(first, s2x, s2y, s2x + s2dx * t2, s2y + s2dy * t2);
+		t2 = t2 + 2 * pcwidth;
+		set(second, s2x + s2dx * t2, s2y + s2dy * t2, s2x + s2dx, s2y + s2dy);
+		return true;
+	}
+
+	static double[] set(double[] seg, double x1, double y1, double x2, double y2) {
+		seg[0] = x1;
+		seg[1] = y1;
+		seg[2] = x2;
+		seg[3] = y2;
+		return seg;
+	}
+
+	/**
+	 * Reusable AWT shapes to hand to the Graphics for drawing.
+	 * Graphics2D doesn't keep the shapes it's given so the same instances
+	 * are reset and reused for every bond.
+	 * <p>
+	 * Lines are handed over as a path, not a {@link java.awt.geom.Line2D}, so they
+	 * go down the same general stroking pipeline as the old wrapper
+	 * shapes did and anti-aliasing stays exactly the same.
+	 * </p>
+	 */
+	static final class Shapes {
+		private final Path2D.Double line = new Path2D.Double(Path2D.WIND_NON_ZERO, 2);
+		private final GeneralPath path = new GeneralPath();
+		/**
+		 * Scratch space for {@link BondGeometry#wedgeTips(double[], float, double[], int)}.
+		 */
+		final double[] tips = new double[4];
+
+		private BasicStroke buttSource;
+		private BasicStroke butt;
+
+		Path2D.Double line(double x1, double y1, double x2, double y2) {
+			line.reset();
+			line.moveTo(x1, y1);
+			line.lineTo(x2, y2);
+			return line;
+		}
+
+		Path2D.Double line(double[] seg) {
+			return line(seg[0], seg[1], seg[2], seg[3]);
+		}
+
+		/**
+		 * Get an empty path to build a new shape in.
+		 */
+		GeneralPath path() {
+			path.reset();
+			return path;
+		}
+
+		/**
+		 * Get a stroke with the same width as the given stroke but with
+		 * butt caps and mitered joins.
+		 */
+		BasicStroke butt(BasicStroke s) {
+			if (s != buttSource) {
+				buttSource = s;
+				butt = new BasicStroke(s.getLineWidth(), BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER);
+			}
+			return butt;
+		}
+	}
+}
@@ -21,16 +21,58 @@ package gov.nih.ncats.molwitch.renderer;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
 
 import com.fasterxml.jackson.annotation.*;
 import gov.nih.ncats.molwitch.Chemical;
 
+/**
+ * Draws {@link Chemical}s as images.
+ *
+ * <p>
+ * A ChemicalRenderer is thread safe and re-entrant: one instance can be shared
+ * by many threads rendering at the same time.  Each call copies the
+ * {@link RendererOptions}, including the captions and quality, and the shadow, border,
+ * background, display properties and sequence property of this renderer once when it starts
+ * and keeps all its working state local to that call, so changing the options or any of the setters
+ * while other threads are rendering only affects calls that start afterwards.
+ * Calls that render many images, like {@link #createImages(Chemical, int...)}, use the same
+ * settings for all of them, but each Chemical of {@link #renderAll(Collection, int, int, boolean)}
+ * is rendered with the settings current when its own render starts.
+ * The only state shared between renders are caches which are all bounded:
+ * glyphs are cached per thread, fonts and strokes in a small LRU and layouts only
+ * in a {@link LayoutCache} if one is {@link #setLayoutCache(LayoutCache) set}.
+ * </p>
+ */
 public class ChemicalRenderer {
+	/**
+	 * The format name for {@link #createSvg(RenderLayout, int, int, boolean) SVG}
+	 * output when encoding images.
+	 */
+	public static final String SVG_FORMAT = "svg";
+
     @JsonIgnore
 	private final NchemicalRenderer renderer;
+    @JsonIgnore
+	private volatile LayoutCache layoutCache;
+	private volatile ImageType imageType = ImageType.ARGB;
 	
 	public ChemicalRenderer() {
 		this(RendererOptions.createDefault());
@@ -50,8 +92,59 @@ public class ChemicalRenderer {
 		copy.setShadowVisible(renderer.getShadowVisible());
 		copy.setBackgroundColor(renderer.getBackgroundColor().asColor());
 		copy.setBorderColor(renderer.getBorderColor().asColor());
+		copy.setLayoutCache(layoutCache);
+		copy.setImageType(imageType);
 		return copy;
 	}
+	/**
+	 * Set the pixel format of the images made by {@link #createImage(RenderLayout, int, int, boolean)}
+	 * and encoded by {@link #writeImage(RenderLayout, int, int, boolean, String, OutputStream)}.
+	 * Opaque formats are smaller, are faster to draw into since nothing has to be
+	 * blended with a destination alpha and can be encoded by writers that don't
+	 * support transparency like JPEG.
+	 *
+	 * @param imageType the format; can not be null.  The default is {@link ImageType#ARGB}.
+	 * @return this
+	 */
+	@JsonSetter("image-type")
+	public ChemicalRenderer setImageType(ImageType imageType) {
+		this.imageType = Objects.requireNonNull(imageType);
+		return this;
+	}
+	@JsonGetter("image-type")
+	public ImageType getImageType() {
+		return imageType;
+	}
+	/**
+	 * @param partlyCovered is some of the image not covered by the background, like the corners of a rounded one.
+	 */
+	ImageType resolveImageType(boolean partlyCovered, RenderSettings settings) {
+		return imageType.resolve(settings.backgroundColor, settings.options, partlyCovered);
+	}
+
+	/**
+	 * Copy the current settings for one render.
+	 */
+	RenderSettings settings() {
+		return renderer.settings();
+	}
+	/**
+	 * Use the given cache to look up layouts before computing them.
+	 * The cache is keyed by structure and options so it
+	 * can be shared between renderers with different options.
+	 *
+	 * @param cache the cache to use, or {@code null} to not cache layouts (the default).
+	 * @return this
+	 */
+	@JsonIgnore
+	public ChemicalRenderer setLayoutCache(LayoutCache cache) {
+		this.layoutCache = cache;
+		return this;
+	}
+	@JsonIgnore
+	public LayoutCache getLayoutCache() {
+		return layoutCache;
+	}
     @JsonIgnore
     public ARGBColor getBackgroundColor(){
 	    return renderer.getBackgroundColor();
@@ -118,11 +211,47 @@ public class ChemicalRenderer {
 	public void render(Graphics2D g2d, String inputMol, int x, int y, int width, int height, boolean round) throws IOException{
 		render(g2d, Chemical.parseMol(inputMol), x,y, width, height, round);
 	}
+	/**
+	 * Compute the size independent layout of the given Chemical
+	 * using the current options.  The returned layout can be rendered
+	 * many times at different sizes without having to redo
+	 * all the chemistry perception and label placement.
+	 * If a {@link LayoutCache} is set, the layout is looked up there first.
+	 *
+	 * @param c the Chemical to lay out; can not be null.
+	 * @return a {@link RenderLayout}.
+	 */
+	public RenderLayout computeLayout(Chemical c) {
+		return computeLayout(c, settings());
+	}
+
+	RenderLayout computeLayout(Chemical c, RenderSettings settings) {
+		Objects.requireNonNull(c);
+		LayoutCache cache = layoutCache;
+		if(cache ==null){
+			return renderer.computeLayout(c, settings);
+		}
+		return cache.get(c, settings.options, settings.sequenceProperty, chem -> renderer.computeLayout(chem, settings));
+	}
 	public void render(Graphics2D g2d, Chemical c, int x, int y, int width, int height, boolean round) {
-		renderer.renderChem (g2d, c, x,y, width, height, round);
-		getOptions().captionBottom(c)
+		RenderSettings settings = settings();
+		render(g2d, computeLayout(c, settings), x, y, width, height, round, settings);
+	}
+	/**
+	 * Render a previously computed layout into the given area.
+	 *
+	 * @see #computeLayout(Chemical)
+	 */
+	public void render(Graphics2D g2d, RenderLayout layout, int x, int y, int width, int height, boolean round) {
+		render(g2d, layout, x, y, width, height, round, settings());
+	}
+
+	void render(Graphics2D g2d, RenderLayout layout, int x, int y, int width, int height, boolean round, RenderSettings settings) {
+		renderer.renderLayout (g2d, layout, x,y, width, height, round, settings);
+		Chemical c = layout.getChemical();
+		settings.options.captionBottom(c)
 				.ifPresent(caption ->renderer.drawText(g2d,x,y,width,height,caption,1)); // 1 is bottom, 0 is top);;
-		getOptions().captionTop(c)
+		settings.options.captionTop(c)
 		.ifPresent(caption ->renderer.drawText(g2d,x,y,width,height,caption,0)); // 1 is bottom, 0 is top);;
 
 	}
@@ -142,15 +271,367 @@ public class ChemicalRenderer {
 	    return createImage(Chemical.parse(inputMol), width, height, round);
 	}
 	public BufferedImage createImage (Chemical c, int width, int height, boolean round) {
-        BufferedImage img = new BufferedImage (width, height, BufferedImage.TYPE_INT_ARGB);
+		RenderSettings settings = settings();
+        return createImage(computeLayout(c, settings), width, height, round, settings);
+    } 
+	public BufferedImage createImage (RenderLayout layout, int width, int height, boolean round) {
+		return createImage(layout, width, height, round, settings());
+	}
+	private BufferedImage createImage (RenderLayout layout, int width, int height, boolean round, RenderSettings settings) {
+        BufferedImage img = ImagePool.newImage(width, height, resolveImageType(round, settings));
             
         Graphics2D g2 = img.createGraphics();
-        render (g2, c,0,0, width, height, round);
+        render (g2, layout,0,0, width, height, round, settings);
         g2.dispose();
     
 
          return img;
-    } 
+    }
+	/**
+	 * Render the given Chemical as square images with rounded corners at each of the given sizes.
+	 * The layout, including coordinate generation and stereo perception,
+	 * is only computed once and shared by every size.
+	 *
+	 * @param sizes the width and height of each image.
+	 * @return a new list of the images in the same order as the sizes.
+	 * @see #createImages(RenderLayout, int...)
+	 */
+	public List<BufferedImage> createImages(Chemical c, int... sizes) {
+		RenderSettings settings = settings();
+		return createImages(computeLayout(c, settings), sizes, settings);
+	}
+	/**
+	 * Render the given layout as square images with rounded corners at each of the given sizes.
+	 *
+	 * @param sizes the width and height of each image.
+	 * @return a new list of the images in the same order as the sizes.
+	 */
+	public List<BufferedImage> createImages(RenderLayout layout, int... sizes) {
+		return createImages(layout, sizes, settings());
+	}
 
+	private List<BufferedImage> createImages(RenderLayout layout, int[] sizes, RenderSettings settings) {
+		List<BufferedImage> images = new ArrayList<>(sizes.length);
+		for(int size : sizes){
+			images.add(createImage(layout, size, size, true, settings));
+		}
+		return images;
+	}
+	/**
+	 * Render the given Chemical as square images with rounded corners at each of the given sizes
+	 * and encode each one, sharing the layout between all the sizes.
+	 * The images are reused between calls on the same thread, see
+	 * {@link #writeImage(RenderLayout, int, int, boolean, String, OutputStream)}.
+	 *
+	 * @param formatName the informal name of the format to encode to like "png" or "svg"; can not be null.
+	 * @param sizes the width and height of each image.
+	 * @return a new list of the encoded bytes in the same order as the sizes.
+	 * @throws IOException if there is no writer for the format or there is a problem encoding.
+	 */
+	public List<byte[]> encodeImages(Chemical c, String formatName, int... sizes) throws IOException{
+		RenderSettings settings = settings();
+		RenderLayout layout = computeLayout(c, settings);
+		List<byte[]> encoded = new ArrayList<>(sizes.length);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for(int size : sizes){
+			out.reset();
+			writeImage(layout, size, size, true, formatName, out, settings);
+			encoded.add(out.toByteArray());
+		}
+		return encoded;
+	}
+	/**
+	 * Render the given Chemical and encode the image to the given stream.
+	 *
+	 * @see #writeImage(RenderLayout, int, int, boolean, String, OutputStream)
+	 */
+	public void writeImage(Chemical c, int width, int height, boolean round, String formatName, OutputStream out) throws IOException{
+		RenderSettings settings = settings();
+		writeImage(computeLayout(c, settings), width, height, round, formatName, out, settings);
+	}
+	/**
+	 * Render the given layout and encode the image to the given stream using {@link ImageIO}.
+	 * Unlike {@link #createImage(RenderLayout, int, int, boolean)} the image rendered into
+	 * is never handed to the caller so it is reused by the next
+	 * call on the same thread with the same size instead of making a new one each time.
+	 * The canvas, blur arrays and image of the shadow, if visible, are reused the same way.
+	 * Each thread keeps a few images of at most 2048 x 2048 pixels and 32 MB in total
+	 * plus the blur arrays of images up to 1024 x 1024 pixels;
+	 * {@link #clearImagePool()} frees them.
+	 * The format "svg" writes the UTF-8 bytes of {@link #createSvg(RenderLayout, int, int, boolean)} instead.
+	 * The stream is not closed.
+	 *
+	 * @param formatName the informal name of the format to encode to like "png" or "svg"; can not be null.
+	 * @param out the stream to write the encoded image to; can not be null.
+	 * @throws IOException if there is no writer for the format or there is a problem writing to the stream.
+	 */
+	public void writeImage(RenderLayout layout, int width, int height, boolean round, String formatName, OutputStream out) throws IOException{
+		writeImage(layout, width, height, round, formatName, out, settings());
+	}
+
+	private void writeImage(RenderLayout layout, int width, int height, boolean round, String formatName, OutputStream out, RenderSettings settings) throws IOException{
+		Objects.requireNonNull(formatName);
+		Objects.requireNonNull(out);
+		if(SVG_FORMAT.equalsIgnoreCase(formatName)){
+			out.write(createSvg(layout, width, height, round, settings).getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		BufferedImage img = ImagePool.acquire(width, height, resolveImageType(round, settings));
+		try {
+			Graphics2D g2 = img.createGraphics();
+			try {
+				render(g2, layout, 0, 0, width, height, round, settings);
+			}finally{
+				g2.dispose();
+			}
+			if(!ImageIO.write(img, formatName, out)){
+				throw new IOException("no image writer for format " + formatName);
+			}
+		}finally{
+			ImagePool.release(img);
+		}
+	}
+	/**
+	 * Drop the images and shadow blur arrays every thread keeps to reuse in
+	 * {@link #writeImage(RenderLayout, int, int, boolean, String, OutputStream)},
+	 * for example after a batch of large images or before a pool of worker threads goes idle.
+	 */
+	public static void clearImagePool(){
+		ImagePool.clearAll();
+		ShadowBlur.clearAll();
+	}
+	/**
+	 * Render the given Chemical as an SVG document.
+	 *
+	 * @see #createSvg(RenderLayout, int, int, boolean)
+	 */
+	public String createSvg(Chemical c, int width, int height, boolean round) {
+		RenderSettings settings = settings();
+		return createSvg(computeLayout(c, settings), width, height, round, settings);
+	}
+	/**
+	 * Render the given layout as an SVG document of the given size
+	 * without drawing any pixels.  Bonds, wedges, brackets and the background
+	 * are written as paths, labels as references to glyph outlines which are only
+	 * written once per glyph, and the shadow, if visible, as a blur filter.
+	 * The image type is ignored.
+	 *
+	 * @return the SVG document.
+	 */
+	public String createSvg(RenderLayout layout, int width, int height, boolean round) {
+		return createSvg(layout, width, height, round, settings());
+	}
+
+	private String createSvg(RenderLayout layout, int width, int height, boolean round, RenderSettings settings) {
+		SvgGraphics2D g2 = new SvgGraphics2D(width, height);
+		try {
+			render(g2, layout, 0, 0, width, height, round, settings);
+		}finally{
+			g2.dispose();
+		}
+		return g2.getSvg();
+	}
+	/**
+	 * Render the given Chemical into a {@link DisplayList}.
+	 * @see #createDisplayList(RenderLayout, int, int, boolean)
+	 */
+	public DisplayList createDisplayList(Chemical c, int width, int height, boolean round) {
+		RenderSettings settings = settings();
+		return createDisplayList(computeLayout(c, settings), width, height, round, settings);
+	}
+	/**
+	 * Render the given layout at the given size, recording the drawing instead
+	 * of drawing any pixels, so it can be replayed onto images of other sizes
+	 * without computing the layout or drawing the labels again.
+	 * Images made by the returned DisplayList are this renderer's image type.
+	 *
+	 * @param width the width to record at; line widths and fonts are picked for this size.
+	 * @param height the height to record at.
+	 * @return a new DisplayList; will never be null.
+	 */
+	public DisplayList createDisplayList(RenderLayout layout, int width, int height, boolean round) {
+		return createDisplayList(layout, width, height, round, settings());
+	}
+
+	private DisplayList createDisplayList(RenderLayout layout, int width, int height, boolean round, RenderSettings settings) {
+		DisplayListGraphics2D g2 = new DisplayListGraphics2D();
+		try {
+			render(g2, layout, 0, 0, width, height, round, settings);
+		}finally{
+			g2.dispose();
+		}
+		return g2.toDisplayList(width, height, resolveImageType(round, settings));
+	}
+	/**
+	 * Render the given Chemical into an area of a caller owned array of pixels
+	 * without making a new image.  The pixels are non-premultiplied ARGB, the same as
+	 * {@link BufferedImage#TYPE_INT_ARGB}, and the structure is drawn over
+	 * whatever is already in the area like rendering onto a {@link Graphics2D}.
+	 *
+	 * @param c the Chemical to render; can not be null.
+	 * @param pixels the pixels to draw into; can not be null.
+	 * @param offset the index of the top left pixel of the area.
+	 * @param scanlineStride the number of array elements from one row of the area to the next.
+	 * @param width the width of the area.
+	 * @param height the height of the area.
+	 * @param round should the border have rounded corners.
+	 * @throws IllegalArgumentException if the area does not fit in the array.
+	 */
+	public void render(Chemical c, int[] pixels, int offset, int scanlineStride, int width, int height, boolean round) {
+		renderInto(PixelBuffers.wrapArgb(pixels, offset, scanlineStride, width, height), c, round);
+	}
+	/**
+	 * Render the given Chemical into an area of a caller owned buffer of
+	 * non-premultiplied pixels stored as 4 bytes in R, G, B, A order.
+	 * The structure is drawn over whatever is already in the area.
+	 * Offsets are absolute so the position and limit of the buffer are ignored and not changed.
+	 * Buffers backed by an array are drawn into directly without copying any pixels.
+	 * Other buffers, like direct buffers, can not be drawn into directly so the area is
+	 * copied out into a new array of {@code width * height * 4} bytes, drawn into
+	 * and copied back in again.
+	 *
+	 * @param c the Chemical to render; can not be null.
+	 * @param buffer the buffer to draw into; can not be null.
+	 * @param offset the index of the first byte of the top left pixel of the area.
+	 * @param scanlineStride the number of bytes from one row of the area to the next.
+	 * @param width the width of the area.
+	 * @param height the height of the area.
+	 * @param round should the border have rounded corners.
+	 * @throws IllegalArgumentException if the area does not fit in the buffer.
+	 * @throws java.nio.ReadOnlyBufferException if the buffer is read only.
+	 */
+	public void render(Chemical c, ByteBuffer buffer, int offset, int scanlineStride, int width, int height, boolean round) {
+		if(buffer.isReadOnly()){
+			throw new ReadOnlyBufferException();
+		}
+		PixelBuffers.checkRgba(buffer, offset, scanlineStride, width, height);
+		if(buffer.hasArray()){
+			renderInto(PixelBuffers.wrapRgba(buffer.array(), buffer.arrayOffset() + offset, scanlineStride, width, height), c, round);
+		}else{
+			byte[] bytes = PixelBuffers.copyRgba(buffer, offset, scanlineStride, width, height);
+			renderInto(PixelBuffers.wrapRgba(bytes, 0, width * 4, width, height), c, round);
+			PixelBuffers.putRgba(bytes, buffer, offset, scanlineStride, width, height);
+		}
+	}
+	/**
+	 * Render the given Chemical into an area of a raster of non-premultiplied
+	 * ARGB pixels like the raster of a {@link BufferedImage#TYPE_INT_ARGB} image.
+	 *
+	 * @see #render(Chemical, WritableRaster, ColorModel, int, int, int, int, boolean)
+	 */
+	public void render(Chemical c, WritableRaster raster, int x, int y, int width, int height, boolean round) {
+		render(c, raster, ColorModel.getRGBdefault(), x, y, width, height, round);
+	}
+	/**
+	 * Render the given Chemical into an area of a caller owned raster without making a new image.
+	 * The structure is drawn over whatever is already in the area and nothing
+	 * outside the area is changed.
+	 *
+	 * @param c the Chemical to render; can not be null.
+	 * @param raster the raster to draw into; can not be null.
+	 * @param colorModel the color model of the raster's pixels; can not be null.
+	 * @param x the left of the area in the raster's coordinates.
+	 * @param y the top of the area in the raster's coordinates.
+	 * @param width the width of the area.
+	 * @param height the height of the area.
+	 * @param round should the border have rounded corners.
+	 * @throws IllegalArgumentException if the area is not inside the raster or the raster
+	 * is not compatible with the color model.
+	 */
+	public void render(Chemical c, WritableRaster raster, ColorModel colorModel, int x, int y, int width, int height, boolean round) {
+		renderInto(PixelBuffers.wrap(raster, colorModel, x, y, width, height), c, round);
+	}
+
+	private void renderInto(BufferedImage img, Chemical c, boolean round){
+		RenderSettings settings = settings();
+		RenderLayout layout = computeLayout(c, settings);
+		Graphics2D g2 = img.createGraphics();
+		try {
+			render(g2, layout, 0, 0, img.getWidth(), img.getHeight(), round, settings);
+		}finally{
+			g2.dispose();
+		}
+	}
+	/**
+	 * Render the given Chemical and encode it to a new byte array.
+	 * @see #writeImage(Chemical, int, int, boolean, String, OutputStream)
+	 */
+	byte[] encodeImage(Chemical c, int width, int height, boolean round, String formatName) throws IOException{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeImage(c, width, height, round, formatName, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Render all the given Chemicals in parallel using the common {@link ForkJoinPool}.
+	 *
+	 * @see #renderAll(Collection, int, int, boolean, ForkJoinPool)
+	 */
+	public List<RenderResult<BufferedImage>> renderAll(Collection<? extends Chemical> chemicals, int width, int height, boolean round) {
+		return renderAll(chemicals, width, height, round, ForkJoinPool.commonPool());
+	}
+	/**
+	 * Render all the given Chemicals in parallel using the given pool.
+	 * The returned list is in the same order as the input, and
+	 * an error rendering one Chemical is stored in its {@link RenderResult}
+	 * instead of stopping the rest of the batch.
+	 * Each Chemical is rendered with the settings current when its own render starts.
+	 *
+	 * @param chemicals the Chemicals to render; can not be null.
+	 * @param width the width of each image.
+	 * @param height the height of each image.
+	 * @param round should the border have rounded corners.
+	 * @param pool the pool to do the rendering in; can not be null.
+	 * @return a List of one result per input Chemical in input order.
+	 */
+	public List<RenderResult<BufferedImage>> renderAll(Collection<? extends Chemical> chemicals, int width, int height, boolean round, ForkJoinPool pool) {
+		return batch(chemicals, pool, c -> createImage(c, width, height, round));
+	}
+	/**
+	 * Render all the given Chemicals in parallel using the common {@link ForkJoinPool}
+	 * and encode each image.
+	 *
+	 * @see #renderAllEncoded(Collection, int, int, boolean, String, ForkJoinPool)
+	 */
+	public List<RenderResult<byte[]>> renderAllEncoded(Collection<? extends Chemical> chemicals, int width, int height, boolean round, String formatName) {
+		return renderAllEncoded(chemicals, width, height, round, formatName, ForkJoinPool.commonPool());
+	}
+	/**
+	 * Render all the given Chemicals in parallel using the given pool and
+	 * encode each image using {@link ImageIO}.  Each image is encoded
+	 * by the same worker that rendered it and the worker reuses its image,
+	 * and the canvas, blur arrays and image of the shadow, for the next Chemical
+	 * of the same size, so only the encoded bytes are kept from each one.
+	 *
+	 * @param formatName the informal name of the format to encode to like "png"; can not be null.
+	 * @return a List of one result per input Chemical in input order.
+	 * @see #renderAll(Collection, int, int, boolean, ForkJoinPool)
+	 */
+	public List<RenderResult<byte[]>> renderAllEncoded(Collection<? extends Chemical> chemicals, int width, int height, boolean round, String formatName, ForkJoinPool pool) {
+		Objects.requireNonNull(formatName);
+		return batch(chemicals, pool, c -> encodeImage(c, width, height, round, formatName));
+	}
+
+	private interface RenderFunction<T>{
+		T apply(Chemical c) throws IOException;
+	}
+
+	private static <T> List<RenderResult<T>> batch(Collection<? extends Chemical> chemicals, ForkJoinPool pool, RenderFunction<T> function) {
+		List<Chemical> input = new ArrayList<>(chemicals);
+		Objects.requireNonNull(pool);
+		//a parallel stream started from inside a pool's task runs in that pool
+		return pool.submit(() -> IntStream.range(0, input.size())
+				.parallel()
+				.mapToObj(i -> {
+					Chemical c = input.get(i);
+					try {
+						return RenderResult.success(i, c, function.apply(c));
+					} catch (Exception e) {
+						return RenderResult.<T>failure(i, c, e);
+					}
+				})
+				.collect(Collectors.toList()))
+				.join();
+	}
 
 }
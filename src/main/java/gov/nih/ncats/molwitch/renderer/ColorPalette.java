@@ -27,8 +27,8 @@ import java.util.stream.Collectors;
 
 public class ColorPalette {
 
-    private static ARGBColor STEREO_COLOR_UNKNOWN = new ARGBColor(255, 0, 0, 255);
-    private static ARGBColor  STEREO_COLOR_KNOWN = new ARGBColor(0, 178, 0, 255);
+    private static final ARGBColor STEREO_COLOR_UNKNOWN = new ARGBColor(255, 0, 0, 255);
+    private static final ARGBColor  STEREO_COLOR_KNOWN = new ARGBColor(0, 178, 0, 255);
 
     private static final List<ARGBColor> DEFAULT_HIGHLIGHT_COLORS= Arrays.asList(
             new ARGBColor(255,179,179,255),
@@ -44,7 +44,7 @@ public class ColorPalette {
             new ARGBColor(255,179,179,255),
             new ARGBColor(194,255,179,255)
     );
-    private static Map<String, ARGBColor> DEFAULT_ATOM_COLORS = new HashMap<>();
+    private static final Map<String, ARGBColor> DEFAULT_ATOM_COLORS = new HashMap<>();
     static {
         DEFAULT_ATOM_COLORS.put("Cl", new ARGBColor(54, 180, 73, 255));
         DEFAULT_ATOM_COLORS.put("F", new ARGBColor(54, 180, 73, 255));
@@ -68,6 +68,10 @@ public class ColorPalette {
     private ARGBColor stereoColorUnknown;
 
     private List<ARGBColor> highlightColors;
+    /**
+     * Incremented every time this palette is modified.
+     */
+    private volatile int version;
 
     public ColorPalette(){
         atomColors= new HashMap<>(DEFAULT_ATOM_COLORS);
@@ -102,7 +106,7 @@ public class ColorPalette {
         return palette;
     }
     @JsonValue
-    public Map<String, Object> asNonDefaultMap(){
+    public synchronized Map<String, Object> asNonDefaultMap(){
         Map<String, Object> map =  new HashMap<>();
 
         if(!Objects.equals(DEFAULT_ATOM_COLORS, atomColors)){
@@ -131,38 +135,41 @@ public class ColorPalette {
         this.highlightColors = new ArrayList<>(copy.highlightColors);
     }
 
-    public ColorPalette copy(){
+    public synchronized ColorPalette copy(){
         return new ColorPalette(this);
     }
 
-    public void setHighlightColors(List<ARGBColor> colors) {
+    public synchronized void setHighlightColors(List<ARGBColor> colors) {
         Optional<?> nullColor= colors.stream().filter(Objects::isNull).findAny();
         if(nullColor.isPresent()) {
             throw new NullPointerException("color list can not contain nulls");
         }
         highlightColors = new ArrayList<>(colors);
+        version++;
     }
-    public void addHighlightColor(int offset, ARGBColor color) {
+    public synchronized void addHighlightColor(int offset, ARGBColor color) {
         highlightColors.add(offset, Objects.requireNonNull(color));
+        version++;
     }
-    public List<ARGBColor> getHighlightColors() {
+    public synchronized List<ARGBColor> getHighlightColors() {
         return new ArrayList<>(highlightColors);
     }
-    public void addHighlightColor(ARGBColor color) {
+    public synchronized void addHighlightColor(ARGBColor color) {
         highlightColors.add(Objects.requireNonNull(color));
+        version++;
     }
 
-    public int getNumberOfHighlightColors() {
+    public synchronized int getNumberOfHighlightColors() {
         return highlightColors.size();
     }
-    public ARGBColor getAtomColor(String symbol){
+    public synchronized ARGBColor getAtomColor(String symbol){
         ARGBColor color = atomColors.get(symbol);
         if(color !=null){
             return color;
         }
         return atomColors.get("C");
     }
-    public void setAtomColor(String symbol, ARGBColor color){
+    public synchronized void setAtomColor(String symbol, ARGBColor color){
         Objects.requireNonNull(symbol);
 
         ARGBColor colorToSet;
@@ -176,28 +183,42 @@ public class ColorPalette {
             colorToSet = color;
         }
         atomColors.put(symbol,Objects.requireNonNull(colorToSet) );
+        version++;
     }
 
-    public ARGBColor getStereoColorUnknown(){
+    /**
+     * A copy of the colors of every atom symbol that has one.
+     */
+    synchronized Map<String, ARGBColor> getAtomColors(){
+        return Collections.unmodifiableMap(new HashMap<>(atomColors));
+    }
+
+    int getVersion(){
+        return version;
+    }
+
+    public synchronized ARGBColor getStereoColorUnknown(){
         return stereoColorUnknown;
     }
-    public ARGBColor getStereoColorKnown(){
+    public synchronized ARGBColor getStereoColorKnown(){
         return stereoColorKnown;
     }
-    public void setStereoColorKnown(ARGBColor color){
+    public synchronized void setStereoColorKnown(ARGBColor color){
         if(color ==null){
             stereoColorKnown = STEREO_COLOR_KNOWN;
         }else{
             stereoColorKnown = color;
         }
+        version++;
     }
 
-    public void setStereoColorUnKnown(ARGBColor color){
+    public synchronized void setStereoColorUnKnown(ARGBColor color){
         if(color ==null){
             stereoColorUnknown = STEREO_COLOR_UNKNOWN;
         }else{
             stereoColorUnknown = color;
         }
+        version++;
     }
 
     @Override
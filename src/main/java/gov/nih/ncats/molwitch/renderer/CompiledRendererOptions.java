@@ -0,0 +1,232 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.renderer.RendererOptions.DrawOptions;
+import gov.nih.ncats.molwitch.renderer.RendererOptions.DrawProperties;
+
+/**
+ * An immutable snapshot of a {@link RendererOptions} and its {@link ColorPalette}
+ * with every option read out into a final field so rendering doesn't
+ * have to look each one up in the option maps every time.
+ * Atom colors of the elements are looked up by atomic number.
+ *
+ * <p>
+ * Use {@link RendererOptions#compiled()} to get one; it is only rebuilt when
+ * the options or the palette have been modified since it was made.
+ * </p>
+ */
+final class CompiledRendererOptions {
+	/**
+	 * Element symbols by atomic number.
+	 */
+	private static final String[] ELEMENTS = { null,
+			"H", "He", "Li", "Be", "B", "C", "N", "O", "F", "Ne",
+			"Na", "Mg", "Al", "Si", "P", "S", "Cl", "Ar", "K", "Ca",
+			"Sc", "Ti", "V", "Cr", "Mn", "Fe", "Co", "Ni", "Cu", "Zn",
+			"Ga", "Ge", "As", "Se", "Br", "Kr", "Rb", "Sr", "Y", "Zr",
+			"Nb", "Mo", "Tc", "Ru", "Rh", "Pd", "Ag", "Cd", "In", "Sn",
+			"Sb", "Te", "I", "Xe", "Cs", "Ba", "La", "Ce", "Pr", "Nd",
+			"Pm", "Sm", "Eu", "Gd", "Tb", "Dy", "Ho", "Er", "Tm", "Yb",
+			"Lu", "Hf", "Ta", "W", "Re", "Os", "Ir", "Pt", "Au", "Hg",
+			"Tl", "Pb", "Bi", "Po", "At", "Rn", "Fr", "Ra", "Ac", "Th",
+			"Pa", "U", "Np", "Pu", "Am", "Cm", "Bk", "Cf", "Es", "Fm",
+			"Md", "No", "Lr", "Rf", "Db", "Sg", "Bh", "Hs", "Mt", "Ds",
+			"Rg", "Cn", "Nh", "Fl", "Mc", "Lv", "Ts", "Og" };
+
+	private final RendererOptions source;
+	private final int version;
+	private final ColorPalette palette;
+	private final int paletteVersion;
+	private final Object layoutKey;
+
+	final boolean drawBonds;
+	final boolean drawSymbols;
+	final boolean drawCarbon;
+	final boolean drawImplicitHydrogen;
+	final boolean drawTerminalCarbon;
+	final boolean drawStereoBonds;
+	final boolean drawProportionAverageBondLength;
+	final boolean drawCenterAllDoubleBonds;
+	final boolean drawAtomColorOnBonds;
+	final boolean drawConstantDashWidth;
+	final boolean drawStereoDashAsWedge;
+	final boolean drawWedgeAsPoint;
+	final boolean drawStereoWedgeJoin;
+	final boolean drawStereoLastDashOnNonSymbols;
+	final boolean drawCenterNonringDoubleBonds;
+	final boolean drawGreyscale;
+	final boolean drawStereoLabels;
+	final boolean drawStereoGivenByMap;
+	final boolean drawHighlightMapped;
+	final boolean drawHighlightWithHalo;
+	final boolean drawHighlightMonochromatic;
+	final boolean drawHighlightShowAtom;
+	final boolean drawShowMapped;
+	final boolean drawStereoLabelsAsAtoms;
+	final boolean drawStereoLabelsAsRelative;
+	final boolean drawStereoLabelsAsStarred;
+	final boolean drawStereoLabelsParentheses;
+	final boolean drawStereoForceMonochromatic;
+	final boolean drawSuperatomsAsLabels;
+
+	final float atomLabelFontFraction;
+	final float atomLabelBondGapFraction;
+	final float bondExpectedLength;
+	final float bondStrokeWidthFraction;
+	final float bondDoubleGapFraction;
+	final float bondDoubleLengthFraction;
+	final float bondStereoWedgeAngle;
+	final float bondOverlapSpacingFraction;
+	final int bondStereoDashNumber;
+	final float subscriptYDisplacementFraction;
+
+	final RenderQuality quality;
+
+	private final Function<Chemical, String> captionBottom;
+	private final Function<Chemical, String> captionTop;
+
+	final ARGBColor stereoColorKnown;
+	final ARGBColor stereoColorUnknown;
+	final List<ARGBColor> highlightColors;
+
+	private final Map<String, ARGBColor> atomColors;
+	private final ARGBColor defaultAtomColor;
+	private final ARGBColor[] elementColors;
+
+	CompiledRendererOptions(RendererOptions options, int version, Object layoutKey) {
+		this.source = options;
+		this.version = version;
+		this.palette = options.getColorPalette();
+		this.paletteVersion = palette.getVersion();
+		this.layoutKey = layoutKey;
+
+		drawBonds = options.getDrawOption(DrawOptions.DRAW_BONDS);
+		drawSymbols = options.getDrawOption(DrawOptions.DRAW_SYMBOLS);
+		drawCarbon = options.getDrawOption(DrawOptions.DRAW_CARBON);
+		drawImplicitHydrogen = options.getDrawOption(DrawOptions.DRAW_IMPLICIT_HYDROGEN);
+		drawTerminalCarbon = options.getDrawOption(DrawOptions.DRAW_TERMINAL_CARBON);
+		drawStereoBonds = options.getDrawOption(DrawOptions.DRAW_STEREO_BONDS);
+		drawProportionAverageBondLength = options.getDrawOption(DrawOptions.DRAW_PROPORTION_AVERAGE_BOND_LENGTH);
+		drawCenterAllDoubleBonds = options.getDrawOption(DrawOptions.DRAW_CENTER_ALL_DOUBLE_BONDS);
+		drawAtomColorOnBonds = options.getDrawOption(DrawOptions.DRAW_ATOM_COLOR_ON_BONDS);
+		drawConstantDashWidth = options.getDrawOption(DrawOptions.DRAW_CONSTANT_DASH_WIDTH);
+		drawStereoDashAsWedge = options.getDrawOption(DrawOptions.DRAW_STEREO_DASH_AS_WEDGE);
+		drawWedgeAsPoint = options.getDrawOption(DrawOptions.DRAW_WEDGE_AS_POINT);
+		drawStereoWedgeJoin = options.getDrawOption(DrawOptions.DRAW_STEREO_WEDGE_JOIN);
+		drawStereoLastDashOnNonSymbols = options.getDrawOption(DrawOptions.DRAW_STEREO_LAST_DASH_ON_NON_SYMBOLS);
+		drawCenterNonringDoubleBonds = options.getDrawOption(DrawOptions.DRAW_CENTER_NONRING_DOUBLE_BONDS);
+		drawGreyscale = options.getDrawOption(DrawOptions.DRAW_GREYSCALE);
+		drawStereoLabels = options.getDrawOption(DrawOptions.DRAW_STEREO_LABELS);
+		drawStereoGivenByMap = options.getDrawOption(DrawOptions.DRAW_STEREO_GIVEN_BY_MAP);
+		drawHighlightMapped = options.getDrawOption(DrawOptions.DRAW_HIGHLIGHT_MAPPED);
+		drawHighlightWithHalo = options.getDrawOption(DrawOptions.DRAW_HIGHLIGHT_WITH_HALO);
+		drawHighlightMonochromatic = options.getDrawOption(DrawOptions.DRAW_HIGHLIGHT_MONOCHROMATIC);
+		drawHighlightShowAtom = options.getDrawOption(DrawOptions.DRAW_HIGHLIGHT_SHOW_ATOM);
+		drawShowMapped = options.getDrawOption(DrawOptions.DRAW_SHOW_MAPPED);
+		drawStereoLabelsAsAtoms = options.getDrawOption(DrawOptions.DRAW_STEREO_LABELS_AS_ATOMS);
+		drawStereoLabelsAsRelative = options.getDrawOption(DrawOptions.DRAW_STEREO_LABELS_AS_RELATIVE);
+		drawStereoLabelsAsStarred = options.getDrawOption(DrawOptions.DRAW_STEREO_LABELS_AS_STARRED);
+		drawStereoLabelsParentheses = options.getDrawOption(DrawOptions.DRAW_STEREO_LABELS_PARENTHESES);
+		drawStereoForceMonochromatic = options.getDrawOption(DrawOptions.DRAW_STEREO_FORCE_MONOCHROMATIC);
+		drawSuperatomsAsLabels = options.getDrawOption(DrawOptions.DRAW_SUPERATOMS_AS_LABELS);
+
+		atomLabelFontFraction = (float) options.getDrawPropertyValue(DrawProperties.ATOM_LABEL_FONT_FRACTION);
+		atomLabelBondGapFraction = (float) options.getDrawPropertyValue(DrawProperties.ATOM_LABEL_BOND_GAP_FRACTION);
+		bondExpectedLength = (float) options.getDrawPropertyValue(DrawProperties.BOND_EXPECTED_LENGTH);
+		bondStrokeWidthFraction = (float) options.getDrawPropertyValue(DrawProperties.BOND_STROKE_WIDTH_FRACTION);
+		bondDoubleGapFraction = (float) options.getDrawPropertyValue(DrawProperties.BOND_DOUBLE_GAP_FRACTION);
+		bondDoubleLengthFraction = (float) options.getDrawPropertyValue(DrawProperties.BOND_DOUBLE_LENGTH_FRACTION);
+		bondStereoWedgeAngle = (float) options.getDrawPropertyValue(DrawProperties.BOND_STEREO_WEDGE_ANGLE);
+		bondOverlapSpacingFraction = (float) options.getDrawPropertyValue(DrawProperties.BOND_OVERLAP_SPACING_FRACTION);
+		bondStereoDashNumber = (int) options.getDrawPropertyValue(DrawProperties.BOND_STEREO_DASH_NUMBER);
+		subscriptYDisplacementFraction = (float) options.getDrawPropertyValue(DrawProperties.SUBSCRIPT_Y_DISPLACEMENT_FRACTION);
+
+		quality = options.getQuality();
+		captionBottom = options.getCaptionBottomFunction();
+		captionTop = options.getCaptionTopFunction();
+
+		stereoColorKnown = palette.getStereoColorKnown();
+		stereoColorUnknown = palette.getStereoColorUnknown();
+		highlightColors = Collections.unmodifiableList(palette.getHighlightColors());
+		atomColors = palette.getAtomColors();
+		defaultAtomColor = palette.getAtomColor("C");
+		elementColors = new ARGBColor[ELEMENTS.length];
+		for (int i = 1; i < ELEMENTS.length; i++) {
+			elementColors[i] = palette.getAtomColor(ELEMENTS[i]);
+		}
+	}
+
+	/**
+	 * Is this still an up to date snapshot of the given options.
+	 */
+	boolean isCompiledFrom(RendererOptions options) {
+		return options == source && options.getVersion() == version
+				&& options.getColorPalette() == palette && palette.getVersion() == paletteVersion;
+	}
+
+	/**
+	 * @see RendererOptions#layoutKey()
+	 */
+	Object layoutKey() {
+		return layoutKey;
+	}
+
+	/**
+	 * The caption to draw under the given Chemical, if any.
+	 */
+	Optional<String> captionBottom(Chemical c) {
+		return caption(captionBottom, c);
+	}
+
+	/**
+	 * The caption to draw above the given Chemical, if any.
+	 */
+	Optional<String> captionTop(Chemical c) {
+		return caption(captionTop, c);
+	}
+
+	private static Optional<String> caption(Function<Chemical, String> function, Chemical c) {
+		if (function == null) {
+			return Optional.empty();
+		}
+		return Optional.ofNullable(function.apply(c));
+	}
+
+	/**
+	 * Get the color of an atom label, same as {@link ColorPalette#getAtomColor(String)}.
+	 * @param atomicNumber the atomic number of the atom.
+	 * @param label the label drawn for the atom which is usually the element symbol.
+	 * @return the color; will not be null unless the palette has no carbon color.
+	 */
+	ARGBColor getAtomColor(int atomicNumber, String label) {
+		if (atomicNumber > 0 && atomicNumber < ELEMENTS.length && ELEMENTS[atomicNumber].equals(label)) {
+			return elementColors[atomicNumber];
+		}
+		ARGBColor color = atomColors.get(label);
+		return color == null ? defaultAtomColor : color;
+	}
+}
@@ -0,0 +1,357 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.util.List;
+
+/**
+ * Everything drawn by one render of a structure, kept as shapes so it
+ * can be drawn again at other sizes without computing the layout or
+ * shaping the labels again.  Made by
+ * {@link ChemicalRenderer#createDisplayList(RenderLayout, int, int, boolean)}.
+ *
+ * <p>
+ * The shapes are kept in the pixel coordinates of the size that was recorded
+ * and scaled when they are replayed, so the line widths and font sizes are the ones
+ * picked for the recorded size.  Replaying at the recorded size looks the same as
+ * rendering directly; the further the size is from that the more it looks like
+ * a scaled copy, so record at the largest size needed.  Labels are kept as glyphs at fixed positions
+ * so they are drawn again at each size without laying out the text.
+ * Drop shadows are blurred again at each size.
+ * </p>
+ *
+ * <p>
+ * A DisplayList can not be changed after it is made so it can be
+ * replayed by many threads at the same time.
+ * </p>
+ */
+public final class DisplayList {
+
+	private final int width;
+	private final int height;
+	private final ImageType imageType;
+	private final Op[] ops;
+
+	DisplayList(int width, int height, ImageType imageType, List<Op> ops) {
+		this.width = width;
+		this.height = height;
+		this.imageType = imageType;
+		this.ops = ops.toArray(new Op[ops.size()]);
+	}
+
+	/**
+	 * The width in pixels this was recorded at.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * The height in pixels this was recorded at.
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Number of operations recorded, not counting the ones inside a shadow.
+	 */
+	int size() {
+		return ops.length;
+	}
+
+	/**
+	 * Draw this onto the given area of a Graphics.  The drawing is scaled
+	 * by the same amount in both directions to fit the area and centered,
+	 * so an area with a different aspect ratio than the recorded size is
+	 * not completely covered by the background.
+	 *
+	 * @param g2 the Graphics to draw on; its state is not changed.
+	 * @param x the left of the area.
+	 * @param y the top of the area.
+	 * @param width the width of the area.
+	 * @param height the height of the area.
+	 * @throws IllegalArgumentException if the width or height is less than 1.
+	 */
+	public void replay(Graphics2D g2, int x, int y, int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("width and height must be positive");
+		}
+		double scale = Math.min(width / (double) this.width, height / (double) this.height);
+		AffineTransform toTarget = AffineTransform.getTranslateInstance(
+				x + (width - this.width * scale) / 2, y + (height - this.height * scale) / 2);
+		toTarget.scale(scale, scale);
+		replay(ops, g2, toTarget);
+	}
+
+	/**
+	 * Make a new image of the given size with this drawn on it.
+	 * The image is the {@link ImageType} the renderer that recorded this had.
+	 *
+	 * @see #replay(Graphics2D, int, int, int, int)
+	 */
+	public BufferedImage createImage(int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("width and height must be positive");
+		}
+		BufferedImage img = ImagePool.newImage(width, height, imageType);
+		Graphics2D g2 = img.createGraphics();
+		try {
+			replay(g2, 0, 0, width, height);
+		} finally {
+			g2.dispose();
+		}
+		return img;
+	}
+
+	private static void replay(Op[] ops, Graphics2D target, AffineTransform toTarget) {
+		Replay r = new Replay(target, toTarget);
+		try {
+			for (Op op : ops) {
+				op.replay(r);
+			}
+		} finally {
+			r.g.dispose();
+		}
+	}
+
+	/**
+	 * The Graphics being replayed on.
+	 */
+	private static final class Replay {
+		/**
+		 * The Graphics passed in.
+		 */
+		final Graphics2D target;
+		/**
+		 * From the recorded pixel coordinates to the coordinates of {@link #target}.
+		 */
+		final AffineTransform toTarget;
+		/**
+		 * A copy of the target drawing in recorded pixel coordinates.
+		 */
+		final Graphics2D g;
+		/**
+		 * The clip of the target, which recorded clips are intersected with.
+		 */
+		final Shape baseClip;
+
+		Replay(Graphics2D target, AffineTransform toTarget) {
+			this.target = target;
+			this.toTarget = toTarget;
+			this.g = (Graphics2D) target.create();
+			g.transform(toTarget);
+			this.baseClip = g.getClip();
+		}
+	}
+
+	abstract static class Op {
+		abstract void replay(Replay r);
+	}
+
+	/**
+	 * Everything that affects how shapes are drawn except the clip.
+	 */
+	static final class State extends Op {
+		final Paint paint;
+		final Composite composite;
+		final Stroke stroke;
+		final RenderingHints hints;
+
+		State(Paint paint, Composite composite, Stroke stroke, RenderingHints hints) {
+			this.paint = paint;
+			this.composite = composite;
+			this.stroke = stroke;
+			this.hints = hints;
+		}
+
+		@Override
+		void replay(Replay r) {
+			r.g.setRenderingHints(hints);
+			r.g.setPaint(paint);
+			r.g.setComposite(composite);
+			r.g.setStroke(stroke);
+		}
+	}
+
+	static final class Clip extends Op {
+		/**
+		 * The clip in recorded pixel coordinates, or null for no clip.
+		 */
+		final Shape clip;
+
+		Clip(Shape clip) {
+			this.clip = clip;
+		}
+
+		@Override
+		void replay(Replay r) {
+			r.g.setClip(r.baseClip);
+			if (clip != null) {
+				r.g.clip(clip);
+			}
+		}
+	}
+
+	static final class Fill extends Op {
+		final Path2D.Float path;
+
+		Fill(Path2D.Float path) {
+			this.path = path;
+		}
+
+		@Override
+		void replay(Replay r) {
+			r.g.fill(path);
+		}
+	}
+
+	static final class Draw extends Op {
+		final Path2D.Float path;
+
+		Draw(Path2D.Float path) {
+			this.path = path;
+		}
+
+		@Override
+		void replay(Replay r) {
+			r.g.draw(path);
+		}
+	}
+
+	/**
+	 * A run of glyphs at fixed positions; making a GlyphVector
+	 * from glyph codes doesn't have to shape any text again.
+	 */
+	static final class Glyphs extends Op {
+		final Font font;
+		final int[] codes;
+		/**
+		 * The x and y of each glyph in recorded pixel coordinates.
+		 */
+		final float[] positions;
+
+		Glyphs(Font font, int[] codes, float[] positions) {
+			this.font = font;
+			this.codes = codes;
+			this.positions = positions;
+		}
+
+		@Override
+		void replay(Replay r) {
+			GlyphVector gv = font.createGlyphVector(r.g.getFontRenderContext(), codes);
+			Point2D.Float p = new Point2D.Float();
+			for (int i = 0; i < codes.length; i++) {
+				p.setLocation(positions[2 * i], positions[2 * i + 1]);
+				gv.setGlyphPosition(i, p);
+			}
+			r.g.drawGlyphVector(gv, 0, 0);
+		}
+	}
+
+	static final class Image extends Op {
+		final RenderedImage image;
+		final AffineTransform transform;
+
+		Image(RenderedImage image, AffineTransform transform) {
+			this.image = image;
+			this.transform = transform;
+		}
+
+		@Override
+		void replay(Replay r) {
+			r.g.drawRenderedImage(image, transform);
+		}
+	}
+
+	/**
+	 * Operations drawn with a drop shadow underneath.
+	 */
+	static final class Shadow extends Op {
+		final Op[] ops;
+		/**
+		 * The area the structure was rendered in, in recorded pixel coordinates.
+		 */
+		final Rectangle2D area;
+		final int offset;
+		/**
+		 * The blur radius as a fraction of the width of the area.
+		 */
+		final float radius;
+		final float opacity;
+
+		Shadow(List<Op> ops, Rectangle2D area, int offset, float radius, float opacity) {
+			this.ops = ops.toArray(new Op[ops.size()]);
+			this.area = area;
+			this.offset = offset;
+			this.radius = radius;
+			this.opacity = opacity;
+		}
+
+		/**
+		 * Replay into a transparent canvas the size of the scaled area
+		 * and blur that the same way the renderer does.
+		 */
+		@Override
+		void replay(Replay r) {
+			Point2D origin = r.toTarget.transform(new Point2D.Double(area.getX(), area.getY()), null);
+			int x = (int) Math.round(origin.getX());
+			int y = (int) Math.round(origin.getY());
+			int width = Math.max(1, (int) Math.round(area.getWidth() * r.toTarget.getScaleX()));
+			int height = Math.max(1, (int) Math.round(area.getHeight() * r.toTarget.getScaleY()));
+
+			BufferedImage canvas = ImagePool.acquire(width, height);
+			try {
+				Graphics2D g = canvas.createGraphics();
+				g.setRenderingHints(r.target.getRenderingHints());
+				AffineTransform toCanvas = AffineTransform.getTranslateInstance(-x, -y);
+				toCanvas.concatenate(r.toTarget);
+				DisplayList.replay(ops, g, toCanvas);
+				g.dispose();
+
+				BufferedImage shadow = ShadowBlur.createShadow(canvas, (int) (radius * width + .5f), opacity);
+				r.target.drawImage(shadow, x + offset, y + offset, null);
+				ImagePool.release(shadow);
+				if (AbstractChemicalRenderer.isPixelAligned(r.target)) {
+					r.target.drawImage(canvas, x, y, null);
+				} else {
+					for (Op op : ops) {
+						op.replay(r);
+					}
+				}
+			} finally {
+				ImagePool.release(canvas);
+			}
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.RenderedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A Graphics2D that records what is drawn on it into a {@link DisplayList}.
+ * Shapes are copied in device coordinates, since the renderer reuses its
+ * paths, and strokes are scaled to match so they only have to be transformed
+ * once when replayed.  Text is recorded as glyph codes and positions.
+ * Images are kept as they are, not copied.
+ */
+final class DisplayListGraphics2D extends VectorGraphics2D {
+
+	/**
+	 * Everything recorded by this and every Graphics created from it.
+	 */
+	private static final class Recording {
+		final Deque<List<DisplayList.Op>> outer = new ArrayDeque<>();
+		List<DisplayList.Op> ops = new ArrayList<>();
+
+		DisplayList.State lastState;
+		boolean clipRecorded;
+		Shape lastClip;
+
+		/**
+		 * The stroke last passed to {@link #deviceStroke(BasicStroke, double)} and what it became.
+		 */
+		BasicStroke lastStroke;
+		double lastStrokeScale;
+		BasicStroke lastDeviceStroke;
+
+		/**
+		 * Forget the state that was last recorded so the next
+		 * operation records all of it again.
+		 */
+		void resetState() {
+			lastState = null;
+			clipRecorded = false;
+			lastClip = null;
+		}
+
+		BasicStroke deviceStroke(BasicStroke bs, double scale) {
+			if (bs != lastStroke || scale != lastStrokeScale) {
+				lastStroke = bs;
+				lastStrokeScale = scale;
+				lastDeviceStroke = scale == 1 ? bs : scale(bs, (float) scale);
+			}
+			return lastDeviceStroke;
+		}
+
+		private static BasicStroke scale(BasicStroke bs, float scale) {
+			float[] dash = bs.getDashArray();
+			if (dash != null) {
+				for (int i = 0; i < dash.length; i++) {
+					dash[i] *= scale;
+				}
+			}
+			return new BasicStroke(bs.getLineWidth() * scale, bs.getEndCap(), bs.getLineJoin(),
+					bs.getMiterLimit(), dash, bs.getDashPhase() * scale);
+		}
+	}
+
+	private final Recording recording;
+
+	DisplayListGraphics2D() {
+		this.recording = new Recording();
+	}
+
+	private DisplayListGraphics2D(DisplayListGraphics2D parent) {
+		super(parent);
+		this.recording = parent.recording;
+	}
+
+	/**
+	 * Make a DisplayList of everything recorded so far.
+	 * @param width the width of the area that was drawn on.
+	 * @param height the height of the area that was drawn on.
+	 * @param imageType the type of image to replay onto by default, which can not be {@link ImageType#AUTO}.
+	 */
+	DisplayList toDisplayList(int width, int height, ImageType imageType) {
+		if (!recording.outer.isEmpty()) {
+			throw new IllegalStateException("a group was not ended");
+		}
+		return new DisplayList(width, height, imageType, recording.ops);
+	}
+
+	private void record(DisplayList.Op op, Stroke deviceStroke) {
+		Recording r = recording;
+		DisplayList.State last = r.lastState;
+		if (last == null || !paint.equals(last.paint) || !composite.equals(last.composite)
+				|| (deviceStroke != null && !deviceStroke.equals(last.stroke)) || !hints.equals(last.hints)) {
+			Stroke s = deviceStroke != null ? deviceStroke : last == null ? stroke : last.stroke;
+			r.lastState = new DisplayList.State(paint, composite, s, (RenderingHints) hints.clone());
+			r.ops.add(r.lastState);
+		}
+		if (!r.clipRecorded || clip != r.lastClip) {
+			r.clipRecorded = true;
+			r.lastClip = clip;
+			r.ops.add(new DisplayList.Clip(clip == null ? null : new Path2D.Float(clip)));
+		}
+		r.ops.add(op);
+	}
+
+	@Override
+	public void draw(Shape s) {
+		if (!(stroke instanceof BasicStroke) || !isConformal(transform)) {
+			fill(stroke.createStrokedShape(s));
+			return;
+		}
+		BasicStroke deviceStroke = recording.deviceStroke((BasicStroke) stroke,
+				Math.sqrt(Math.abs(transform.getDeterminant())));
+		record(new DisplayList.Draw(new Path2D.Float(s, transform)), deviceStroke);
+	}
+
+	@Override
+	public void fill(Shape s) {
+		record(new DisplayList.Fill(new Path2D.Float(s, transform)), null);
+	}
+
+	/**
+	 * Record the glyph codes and their positions if the glyphs are only moved,
+	 * otherwise the outline of the glyphs.
+	 */
+	@Override
+	public void drawGlyphVector(GlyphVector g, float x, float y) {
+		int n = g.getNumGlyphs();
+		boolean translateOnly = (transform.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0;
+		for (int i = 0; translateOnly && i < n; i++) {
+			translateOnly = g.getGlyphTransform(i) == null;
+		}
+		if (!translateOnly) {
+			fill(g.getOutline(x, y));
+			return;
+		}
+		float dx = x + (float) transform.getTranslateX();
+		float dy = y + (float) transform.getTranslateY();
+		float[] positions = g.getGlyphPositions(0, n, null);
+		for (int i = 0; i < n; i++) {
+			positions[2 * i] += dx;
+			positions[2 * i + 1] += dy;
+		}
+		record(new DisplayList.Glyphs(g.getFont(), g.getGlyphCodes(0, n, null), positions), null);
+	}
+
+	@Override
+	public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+		AffineTransform at = new AffineTransform(transform);
+		if (xform != null) {
+			at.concatenate(xform);
+		}
+		record(new DisplayList.Image(img, at), null);
+	}
+
+	@Override
+	int beginGroup() {
+		Recording r = recording;
+		r.outer.push(r.ops);
+		r.ops = new ArrayList<>();
+		//the group may be replayed onto a new canvas
+		r.resetState();
+		return r.outer.size();
+	}
+
+	@Override
+	void endGroupWithShadow(int group, Rectangle area, int offset, float radius, float opacity) {
+		Recording r = recording;
+		if (group != r.outer.size()) {
+			throw new IllegalStateException("groups must be ended in the reverse order they were begun");
+		}
+		List<DisplayList.Op> inner = r.ops;
+		r.ops = r.outer.pop();
+		r.resetState();
+		if (!inner.isEmpty()) {
+			r.ops.add(new DisplayList.Shadow(inner, transform.createTransformedShape(area).getBounds2D(),
+					offset, radius, opacity));
+		}
+	}
+
+	@Override
+	public Graphics create() {
+		return new DisplayListGraphics2D(this);
+	}
+}
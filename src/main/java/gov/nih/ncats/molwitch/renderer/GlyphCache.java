@@ -0,0 +1,151 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Rectangle2D;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the {@link GlyphVector}s and string bounds of the
+ * labels, charges, isotopes and other attachments drawn on a structure.
+ * The set of label strings is small but they are laid out over and over
+ * so the glyph lookup and layout is only done once per
+ * text, {@link Font} (which includes the size) and {@link FontRenderContext}
+ * (which includes the anti-aliasing and fractional metrics hints).
+ *
+ * <p>
+ * GlyphVectors lazily compute and store internal state
+ * so they can not safely be shared between threads.  Each thread
+ * gets its own small least recently used cache which also means
+ * threads rendering text at the same time never wait on each other here.
+ * </p>
+ */
+final class GlyphCache {
+
+	/**
+	 * Maximum number of entries cached per thread.
+	 */
+	static final int MAX_ENTRIES = 512;
+
+	private static final ThreadLocal<Map<Key, Entry>> CACHE = ThreadLocal.withInitial(() ->
+			new LinkedHashMap<Key, Entry>(64, .75F, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+					return size() > MAX_ENTRIES;
+				}
+			});
+
+	private GlyphCache() {
+		//can not instantiate
+	}
+
+	/**
+	 * Get the GlyphVector for the given text.
+	 * @param font the font to use.
+	 * @param frc the FontRenderContext of the Graphics the text will be drawn on.
+	 * @param text the text.
+	 * @return the GlyphVector; this may be a previously returned instance
+	 * so callers must not modify it.
+	 */
+	static GlyphVector glyphVector(Font font, FontRenderContext frc, String text) {
+		Entry entry = entryFor(font, frc, text);
+		if (entry.glyphVector == null) {
+			entry.glyphVector = font.createGlyphVector(frc, text.toCharArray());
+		}
+		return entry.glyphVector;
+	}
+
+	/**
+	 * Get the logical bounds of the given text which is the same as
+	 * {@link java.awt.FontMetrics#getStringBounds(String, java.awt.Graphics)}.
+	 * @param font the font to use.
+	 * @param frc the FontRenderContext of the Graphics the text will be drawn on.
+	 * @param text the text.
+	 * @return the bounds; this may be a previously returned instance
+	 * so callers must not modify it.
+	 */
+	static Rectangle2D stringBounds(Font font, FontRenderContext frc, String text) {
+		Entry entry = entryFor(font, frc, text);
+		if (entry.stringBounds == null) {
+			entry.stringBounds = font.getStringBounds(text, frc);
+		}
+		return entry.stringBounds;
+	}
+
+	/**
+	 * Remove everything cached by the current thread.
+	 */
+	static void clear() {
+		CACHE.get().clear();
+	}
+
+	/**
+	 * Number of entries cached by the current thread.
+	 */
+	static int size() {
+		return CACHE.get().size();
+	}
+
+	private static Entry entryFor(Font font, FontRenderContext frc, String text) {
+		return CACHE.get().computeIfAbsent(new Key(text, font, frc), k -> new Entry());
+	}
+
+	private static final class Entry {
+		private GlyphVector glyphVector;
+		private Rectangle2D stringBounds;
+	}
+
+	private static final class Key {
+		private final String text;
+		private final Font font;
+		private final FontRenderContext frc;
+		private final int hash;
+
+		Key(String text, Font font, FontRenderContext frc) {
+			this.text = text;
+			this.font = font;
+			this.frc = frc;
+			this.hash = 31 * (31 * text.hashCode() + font.hashCode()) + frc.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return hash == other.hash
+					&& text.equals(other.text)
+					&& font.equals(other.font)
+					&& frc.equals(other.frc);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
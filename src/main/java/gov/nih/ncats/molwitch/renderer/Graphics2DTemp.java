@@ -54,9 +54,19 @@ import java.awt.image.renderable.RenderableImage;
 import java.text.AttributedCharacterIterator;
 import java.util.Map;
 
-class Graphics2DTemp{
-	
+/**
+ * Wraps the Graphics2D being rendered to for the duration of a render.
+ * Instances should be closed when the render is done which lets
+ * {@link #acquire(Graphics2D)} hand the same instance to the next render on the thread.
+ * Closing does not dispose the wrapped Graphics2D, that still belongs to the caller.
+ */
+class Graphics2DTemp implements AutoCloseable{
+
+		private static final ThreadLocal<Graphics2DTemp> POOL = new ThreadLocal<>();
+
 		public Graphics2D _delagate;
+
+		private boolean pooled;
 		public static class AWTGeomGenerator extends GeomGenerator{
 
 			@Override
@@ -1200,6 +1210,39 @@ class Graphics2DTemp{
 		public Graphics2DTemp(Graphics2D g2){
 			_delagate=g2;
 		}
+
+		/**
+		 * Get a Graphics2DTemp wrapping the given Graphics2D, reusing
+		 * the current thread's pooled instance if it isn't already in use.
+		 * @param g2 the Graphics2D to wrap.
+		 * @return a Graphics2DTemp that should be closed when done.
+		 */
+		static Graphics2DTemp acquire(Graphics2D g2){
+			Graphics2DTemp temp = POOL.get();
+			if(temp == null){
+				//the pool is empty the first time and while the pooled instance is in use,
+				//so a nested render on the same thread gets a new one here
+				temp = new Graphics2DTemp(g2);
+				temp.pooled = true;
+			}else{
+				//take it out of the pool until closed so a nested render can't get it too
+				POOL.remove();
+				temp._delagate = g2;
+			}
+			return temp;
+		}
+
+		/**
+		 * Let go of the wrapped Graphics2D and, if this instance came from
+		 * {@link #acquire(Graphics2D)}, return it to the current thread's pool.
+		 */
+		@Override
+		public void close() {
+			_delagate = null;
+			if(pooled){
+				POOL.set(this);
+			}
+		}
 		
 		public void addRenderingHints(Map<?, ?> hints) {
 			_delagate.addRenderingHints(hints);
@@ -1371,6 +1414,9 @@ class Graphics2DTemp{
 		private void fill(Shape s) {
 			_delagate.fill(s);
 		}
+		public void filld(Shape s) {
+			fill(s);
+		}
 
 		public void fill3DRect(int x, int y, int width, int height,
 				boolean raised) {
@@ -1403,10 +1449,6 @@ class Graphics2DTemp{
 			_delagate.fillRoundRect(x, y, width, height, arcWidth, arcHeight);
 		}
 
-		public void finalize() {
-			_delagate.finalize();
-		}
-
 		private Color getBackgroundG2D() {
 			return _delagate.getBackground();
 		}
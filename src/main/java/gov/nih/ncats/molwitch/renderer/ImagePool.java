@@ -0,0 +1,252 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Reuses the {@link BufferedImage}s that are rendered into and then
+ * encoded and thrown away, and the canvas and result of drawing a shadow.
+ * A large ARGB image is big enough that the
+ * garbage collector has to allocate it specially so making a new one
+ * for every render of a batch adds up quickly.
+ *
+ * <p>
+ * Each thread gets its own small least recently used pool of images which may hold
+ * more than one image of the same size and type, since a shadowed render uses
+ * an ARGB canvas as well as the ARGB image it draws into.
+ * An image is taken out of the pool while it is in use so a nested render on the
+ * same thread gets a different image; it must be {@link #release(BufferedImage) released}
+ * once the caller is done with it and must not be used after that.
+ * </p>
+ * <p>
+ * Pooled images stay reachable as long as their thread does, which for a
+ * server is forever, so images over {@link #MAX_IMAGE_PIXELS} pixels are never pooled
+ * and each thread only keeps {@link #MAX_BYTES} bytes of images.
+ * {@link #clearAll()} drops the images of every thread.
+ * </p>
+ */
+final class ImagePool {
+
+	/**
+	 * Maximum number of images kept per thread.
+	 */
+	static final int MAX_ENTRIES = 8;
+	/**
+	 * Images with more pixels than this, 2048 x 2048, are not pooled.
+	 */
+	static final int MAX_IMAGE_PIXELS = 1 << 22;
+	/**
+	 * Maximum number of bytes of image data kept per thread, 32 MB.
+	 */
+	static final long MAX_BYTES = 1L << 25;
+
+	/**
+	 * The pools of all the threads so they can be cleared;
+	 * a pool is dropped from this once its thread is gone.
+	 */
+	private static final Set<Pool> ALL_POOLS = Collections.synchronizedSet(
+			Collections.newSetFromMap(new WeakHashMap<Pool, Boolean>()));
+
+	private static final ThreadLocal<Pool> POOL = ThreadLocal.withInitial(() -> {
+		Pool pool = new Pool();
+		ALL_POOLS.add(pool);
+		return pool;
+	});
+
+	private ImagePool() {
+		//can not instantiate
+	}
+
+	/**
+	 * Get a fully transparent {@link BufferedImage#TYPE_INT_ARGB} image
+	 * of the given size, reusing one from this thread's pool if there is one.
+	 * @param width the width of the image.
+	 * @param height the height of the image.
+	 * @return a cleared image; will never be null.
+	 */
+	static BufferedImage acquire(int width, int height) {
+		return acquire(width, height, ImageType.ARGB);
+	}
+
+	/**
+	 * Get an image of the given size and type, reusing one from this thread's pool if there is one.
+	 * @param width the width of the image.
+	 * @param height the height of the image.
+	 * @param type the type of image, which can not be {@link ImageType#AUTO}.
+	 * @return an image that is fully transparent, or white if the type is opaque; will never be null.
+	 */
+	static BufferedImage acquire(int width, int height, ImageType type) {
+		return acquire(width, height, type.getBufferedImageType());
+	}
+
+	/**
+	 * Get an image of the given size and {@link BufferedImage} type,
+	 * reusing one from this thread's pool if there is one.
+	 * @param bufferedImageType the type of image like {@link BufferedImage#TYPE_INT_ARGB_PRE}.
+	 * @return an image that is fully transparent, or white if the type is opaque; will never be null.
+	 */
+	static BufferedImage acquire(int width, int height, int bufferedImageType) {
+		BufferedImage img = (long) width * height > MAX_IMAGE_PIXELS ? null
+				: POOL.get().remove(width, height, bufferedImageType);
+		if (img == null) {
+			return newImage(width, height, bufferedImageType);
+		}
+		//clear through the Graphics instead of the raster data
+		//so the image can stay accelerated
+		Graphics2D g2 = img.createGraphics();
+		if (isOpaque(img)) {
+			g2.setColor(Color.WHITE);
+		} else {
+			g2.setComposite(AlphaComposite.Clear);
+		}
+		g2.fillRect(0, 0, width, height);
+		g2.dispose();
+		return img;
+	}
+
+	/**
+	 * Make a new image of the given size and type.
+	 * @param type the type of image, which can not be {@link ImageType#AUTO}.
+	 * @return a new image that is fully transparent, or white if the type is opaque.
+	 */
+	static BufferedImage newImage(int width, int height, ImageType type) {
+		return newImage(width, height, type.getBufferedImageType());
+	}
+
+	private static BufferedImage newImage(int width, int height, int bufferedImageType) {
+		BufferedImage img = new BufferedImage(width, height, bufferedImageType);
+		if (isOpaque(img)) {
+			Graphics2D g2 = img.createGraphics();
+			g2.setColor(Color.WHITE);
+			g2.fillRect(0, 0, width, height);
+			g2.dispose();
+		}
+		return img;
+	}
+
+	private static boolean isOpaque(BufferedImage img) {
+		return img.getColorModel().getTransparency() == Transparency.OPAQUE;
+	}
+
+	/**
+	 * Return an image from one of the acquire methods to this thread's pool.
+	 * Images over {@link #MAX_IMAGE_PIXELS} pixels are dropped instead.
+	 * @param img the image; if null this does nothing.
+	 */
+	static void release(BufferedImage img) {
+		if (img != null && (long) img.getWidth() * img.getHeight() <= MAX_IMAGE_PIXELS) {
+			POOL.get().put(img);
+		}
+	}
+
+	/**
+	 * Remove all the images pooled by the current thread.
+	 */
+	static void clear() {
+		POOL.get().clear();
+	}
+
+	/**
+	 * Remove all the images pooled by every thread.
+	 */
+	static void clearAll() {
+		synchronized (ALL_POOLS) {
+			for (Pool pool : ALL_POOLS) {
+				pool.clear();
+			}
+		}
+	}
+
+	/**
+	 * Number of images pooled by the current thread.
+	 */
+	static int size() {
+		return POOL.get().size();
+	}
+
+	/**
+	 * Number of bytes of image data pooled by the current thread.
+	 */
+	static long bytes() {
+		return POOL.get().bytes();
+	}
+
+	/**
+	 * The number of bytes of the pixel data of the given image.
+	 */
+	static long bytesOf(BufferedImage img) {
+		DataBuffer buffer = img.getRaster().getDataBuffer();
+		return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+	}
+
+	/**
+	 * One thread's images, most recently used first.  Only its own thread takes and returns images
+	 * but {@link #clearAll()} may clear it from another thread.
+	 */
+	private static final class Pool {
+		private final Deque<BufferedImage> images = new ArrayDeque<>();
+		private long bytes;
+
+		synchronized BufferedImage remove(int width, int height, int type) {
+			Iterator<BufferedImage> iter = images.iterator();
+			while (iter.hasNext()) {
+				BufferedImage img = iter.next();
+				if (img.getWidth() == width && img.getHeight() == height && img.getType() == type) {
+					iter.remove();
+					bytes -= bytesOf(img);
+					return img;
+				}
+			}
+			return null;
+		}
+
+		synchronized void put(BufferedImage img) {
+			images.addFirst(img);
+			bytes += bytesOf(img);
+			while (images.size() > MAX_ENTRIES || bytes > MAX_BYTES) {
+				bytes -= bytesOf(images.removeLast());
+			}
+		}
+
+		synchronized void clear() {
+			images.clear();
+			bytes = 0;
+		}
+
+		synchronized int size() {
+			return images.size();
+		}
+
+		synchronized long bytes() {
+			return bytes;
+		}
+	}
+}
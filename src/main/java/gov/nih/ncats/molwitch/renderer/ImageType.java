@@ -0,0 +1,123 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+/**
+ * The pixel format of the images made by a {@link ChemicalRenderer}.
+ * Opaque formats have no alpha channel so anything not drawn on,
+ * like the corners outside a rounded background, is white.
+ */
+public enum ImageType {
+	/**
+	 * {@link BufferedImage#TYPE_INT_ARGB}, 4 bytes per pixel with transparency. This is the default.
+	 */
+	ARGB(BufferedImage.TYPE_INT_ARGB),
+	/**
+	 * {@link BufferedImage#TYPE_INT_RGB}, opaque.
+	 */
+	RGB(BufferedImage.TYPE_INT_RGB),
+	/**
+	 * {@link BufferedImage#TYPE_BYTE_GRAY}, opaque with 1 byte per pixel.
+	 */
+	GRAY(BufferedImage.TYPE_BYTE_GRAY),
+	/**
+	 * {@link BufferedImage#TYPE_BYTE_BINARY}, opaque black and white with 1 bit per pixel.
+	 */
+	BINARY(BufferedImage.TYPE_BYTE_BINARY),
+	/**
+	 * Pick the smallest format that doesn't lose anything: {@link #ARGB}
+	 * unless the background is opaque and fills the whole image, which a rounded
+	 * background doesn't, otherwise {@link #GRAY} if every color that can be drawn is a grey
+	 * and {@link #RGB} if not.  Colors can only all be grey if
+	 * {@link RendererOptions.DrawOptions#DRAW_GREYSCALE} is set since that only greys the
+	 * atom colors; the background, stereo label and highlight colors are checked too.
+	 */
+	AUTO(-1);
+
+	private final int bufferedImageType;
+
+	ImageType(int bufferedImageType) {
+		this.bufferedImageType = bufferedImageType;
+	}
+
+	/**
+	 * Get the actual format to use.
+	 * @param backgroundColor the background color of the renderer.
+	 * @param options the compiled options of the renderer.
+	 * @param partlyCovered is some of the image not covered by the background,
+	 * like the corners outside a rounded background.
+	 * @return this unless this is {@link #AUTO}.
+	 */
+	ImageType resolve(ARGBColor backgroundColor, CompiledRendererOptions options, boolean partlyCovered) {
+		if (this != AUTO) {
+			return this;
+		}
+		if (partlyCovered || backgroundColor.asColor().getAlpha() != 255) {
+			return ARGB;
+		}
+		return onlyGrey(backgroundColor, options) ? GRAY : RGB;
+	}
+
+	/**
+	 * Is every color the given options can draw with a grey.
+	 */
+	private static boolean onlyGrey(ARGBColor backgroundColor, CompiledRendererOptions opts) {
+		if (!opts.drawGreyscale || !isGrey(backgroundColor) || !isGrey(opts.getAtomColor(6, "C"))) {
+			return false;
+		}
+		if (opts.drawStereoLabels && !(isGrey(opts.stereoColorKnown) && isGrey(opts.stereoColorUnknown))) {
+			return false;
+		}
+		if (opts.drawHighlightMapped) {
+			for (ARGBColor c : opts.highlightColors) {
+				if (!isGrey(c)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean isGrey(ARGBColor color) {
+		Color c = color.asColor();
+		return c.getRed() == c.getGreen() && c.getGreen() == c.getBlue();
+	}
+
+	/**
+	 * The {@link BufferedImage} type constant of this format;
+	 * can not be called on {@link #AUTO}.
+	 */
+	int getBufferedImageType() {
+		if (this == AUTO) {
+			throw new IllegalStateException("AUTO must be resolved first");
+		}
+		return bufferedImageType;
+	}
+
+	/**
+	 * Does this format have no alpha channel;
+	 * can not be called on {@link #AUTO}.
+	 */
+	boolean isOpaque() {
+		return getBufferedImageType() != BufferedImage.TYPE_INT_ARGB;
+	}
+}
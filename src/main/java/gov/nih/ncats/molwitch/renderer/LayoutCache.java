@@ -0,0 +1,239 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import gov.nih.ncats.molwitch.Chemical;
+
+/**
+ * A bounded, least recently used cache of {@link RenderLayout}s.
+ * Layouts are keyed by a fingerprint of the structure
+ * (atoms, coordinates, bonds, stereo and SGroups) plus a snapshot of the
+ * {@link RendererOptions} used to compute them, so rendering
+ * the same structure again, even from a freshly parsed Chemical
+ * object, skips all the perception and layout work.
+ *
+ * <p>
+ * The cache can be bounded by number of entries and by
+ * total weight where the weight of a layout is its number of atoms
+ * plus its number of bonds plus one.  The least recently used
+ * layouts are evicted first.
+ * </p>
+ *
+ * <p>
+ * A cache is thread safe and can be shared by several {@link ChemicalRenderer}s,
+ * even ones with different options.
+ * </p>
+ * <pre>
+ * LayoutCache cache = new LayoutCache(5_000);
+ * ChemicalRenderer renderer = new ChemicalRenderer().setLayoutCache(cache);
+ * </pre>
+ *
+ * @see ChemicalRenderer#setLayoutCache(LayoutCache)
+ */
+public final class LayoutCache {
+
+	private final int maxEntries;
+	private final long maxWeight;
+
+	private final LinkedHashMap<Key, RenderLayout> map = new LinkedHashMap<>(16, .75F, true);
+
+	private long weight;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Create a new cache that holds at most the given number of layouts.
+	 * @param maxEntries the maximum number of layouts to keep; must be &gt; 0.
+	 * @throws IllegalArgumentException if maxEntries &lt; 1.
+	 */
+	public LayoutCache(int maxEntries) {
+		this(maxEntries, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Create a new cache bounded by both number of layouts and total weight.
+	 * @param maxEntries the maximum number of layouts to keep; must be &gt; 0.
+	 * @param maxWeight the maximum total weight (atoms + bonds + 1 per layout) to keep; must be &gt; 0.
+	 * @throws IllegalArgumentException if either bound is &lt; 1.
+	 */
+	public LayoutCache(int maxEntries, long maxWeight) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("max entries must be > 0");
+		}
+		if (maxWeight < 1) {
+			throw new IllegalArgumentException("max weight must be > 0");
+		}
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * Get the layout for the given Chemical and options, computing it
+	 * with the given function if it isn't already cached.
+	 * The function is called outside of any lock so two threads
+	 * missing on the same structure at the same time may both compute it.
+	 *
+	 * @return the layout; it will report the given Chemical from
+	 * {@link RenderLayout#getChemical()} even if it was computed
+	 * from a different Chemical object with the same structure.
+	 */
+	RenderLayout get(Chemical c, CompiledRendererOptions options, String sequenceProperty,
+					 Function<Chemical, RenderLayout> layoutFunction) {
+		Key key = new Key(StructureFingerprint.of(c, sequenceProperty), options.layoutKey());
+		RenderLayout layout;
+		synchronized (this) {
+			layout = map.get(key);
+			if (layout != null) {
+				hits++;
+				return layout.withChemical(c);
+			}
+			misses++;
+		}
+		layout = layoutFunction.apply(c);
+		synchronized (this) {
+			RenderLayout old = map.put(key, layout);
+			if (old != null) {
+				weight -= weigh(old);
+			}
+			weight += weigh(layout);
+			evictIfNeeded();
+		}
+		return layout;
+	}
+
+	private void evictIfNeeded() {
+		Iterator<Map.Entry<Key, RenderLayout>> iter = map.entrySet().iterator();
+		//always keep the most recently added entry even if it is too heavy on its own
+		while (map.size() > 1 && (map.size() > maxEntries || weight > maxWeight)) {
+			RenderLayout eldest = iter.next().getValue();
+			iter.remove();
+			weight -= weigh(eldest);
+			evictions++;
+		}
+	}
+
+	private static long weigh(RenderLayout layout) {
+		return 1L + layout.getAtomCount() + layout.getBondCount();
+	}
+
+	/**
+	 * Remove all the cached layouts.  The statistics are not reset.
+	 */
+	public synchronized void clear() {
+		map.clear();
+		weight = 0;
+	}
+
+	/**
+	 * The number of layouts currently cached.
+	 * @return the number of cached layouts.
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+
+	/**
+	 * The total weight of the layouts currently cached.
+	 * @return the sum of atoms + bonds + 1 of every cached layout.
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * The number of times a layout was found in the cache.
+	 * @return the hit count.
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * The number of times a layout had to be computed.
+	 * @return the miss count.
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * The number of layouts removed to stay within the bounds.
+	 * @return the eviction count.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "LayoutCache{" +
+				"size=" + map.size() +
+				", weight=" + weight +
+				", hits=" + hits +
+				", misses=" + misses +
+				", evictions=" + evictions +
+				'}';
+	}
+
+	private static final class Key {
+		private final StructureFingerprint fingerprint;
+		private final Object options;
+		private final int hash;
+
+		Key(StructureFingerprint fingerprint, Object options) {
+			this.fingerprint = fingerprint;
+			this.options = options;
+			this.hash = 31 * fingerprint.hashCode() + options.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return hash == other.hash
+					&& fingerprint.equals(other.fingerprint)
+					&& Objects.equals(options, other.options);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -24,25 +24,25 @@ import gov.nih.ncats.molwitch.SGroup.SGroupType;
 import gov.nih.ncats.molwitch.Bond.BondType;
 import gov.nih.ncats.molwitch.isotopes.NISTIsotopeFactory;
 import gov.nih.ncats.molwitch.renderer.Graphics2DParent.*;
-import gov.nih.ncats.molwitch.renderer.RendererOptions.DrawOptions;
-import gov.nih.ncats.molwitch.renderer.RendererOptions.DrawProperties;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.Stroke;
 import java.awt.font.GlyphVector;
+import java.awt.geom.GeneralPath;
 import java.awt.geom.Rectangle2D;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -51,10 +51,10 @@ import java.util.OptionalInt;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.function.Function;
-import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 
 //import java.awt.image.BufferedImage;
@@ -65,10 +65,10 @@ import java.util.stream.Collectors;
  */
 class NchemicalRenderer extends AbstractChemicalRenderer {
 	public static final ARGBColor transparent = new ARGBColor(0, 0, 0, 0);
-	private String protProperty = "AMINO_ACID_SEQUENCE";
-	private static Font defaultFont;
+	private volatile String protProperty = "AMINO_ACID_SEQUENCE";
+	private static final Font defaultFont = loadDefaultFont();
 
-	static {
+	private static Font loadDefaultFont() {
 		try {
 
 			InputStream is = NchemicalRenderer.class.getResourceAsStream("/DejaVuSans.ttf");
@@ -78,15 +78,15 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 //			
 //			InputStream is = NchemicalRenderer.class.getResourceAsStream("/WorkSans-Regular.ttf");
 			
-			defaultFont = Font.createFont(Font.TRUETYPE_FONT, is);
+			return Font.createFont(Font.TRUETYPE_FONT, is);
 		} catch (Exception e) {
 			e.printStackTrace();
-			defaultFont = new Font("Calibri", Font.BOLD, 25);
+			return new Font("Calibri", Font.BOLD, 25);
 		}
 		// defaultFont=new Font("Arial", Font.PLAIN,25);
 	}
 
-	private static Set<String> FORCE_LEFT_HYDROGEN = new HashSet<String>();
+	private static final Set<String> FORCE_LEFT_HYDROGEN = new HashSet<String>();
 
 	static {
 
@@ -99,8 +99,8 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 		FORCE_LEFT_HYDROGEN.add("F");
 
 	}
-	private static Map<Integer, String> subScripts = new HashMap<Integer, String>();
-	private static Set<String> subScriptSet = new HashSet<String>();
+	private static final Map<Integer, String> subScripts = new HashMap<Integer, String>();
+	private static final Set<String> subScriptSet = new HashSet<String>();
 	static {
 		subScripts.put(2, "\u2082");
 		subScripts.put(3, "\u2083");
@@ -116,7 +116,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 	}
 
 
-	private RendererOptions displayParams;
+	private final RendererOptions displayParams;
 
 	public NchemicalRenderer(RendererOptions options) {
 		displayParams = Objects.requireNonNull(options);
@@ -129,6 +129,11 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 	public RendererOptions getOptions() {
 		return displayParams;
 	}
+
+	@Override
+	RenderSettings settings() {
+		return new RenderSettings(this, displayParams.compiled(), protProperty);
+	}
 	/**
 	 * 
 	 * @param pprop
@@ -140,6 +145,10 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 		protProperty = pprop;
 	}
 
+	String getSequenceProperty() {
+		return protProperty;
+	}
+
 	public void renderProt(Graphics2DTemp g2, String seq, int x, int y, int width, int height) {
 		g2.setColor(new ARGBColor(0, 0, 0, 255));
 		Font f = new Font("Monospaced", Font.PLAIN, 12);
@@ -151,8 +160,9 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 
 		Font f2 = f.deriveFont(12 * rat);
 		g2.setFont(f2);
-		float h = (float) g2.getFontMetrics().getStringBounds("#", g2._delagate).getHeight();
-		float wi = (float) g2.getFontMetrics().getStringBounds("#", g2._delagate).getWidth();
+		Rectangle2D hashBounds = stringBounds(g2, f2, "#");
+		float h = (float) hashBounds.getHeight();
+		float wi = (float) hashBounds.getWidth();
 
 		// g2.
 		seq = seq.replaceAll("(.{10})", "$1 ");
@@ -165,7 +175,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 		}
 	}
 
-	public static GeomGenerator ggen = new Graphics2DTemp.AWTGeomGenerator();
+	private static final GeomGenerator ggen = new Graphics2DTemp.AWTGeomGenerator();
 
 	/**
 	 * @author peryeata
@@ -174,164 +184,87 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 	 *         3) Draw bonds, given atom constraints 4) Draw atoms, given bond
 	 *         constraints TODO: Plenty.
 	 * 
+	 *         Gathering and everything else that doesn't depend on the size of
+	 *         the image is done once by {@link #computeLayout(Chemical)}, the
+	 *         drawing is done by {@link #renderLayout(Graphics2D, RenderLayout, int, int, int, int)}.
 	 */
 	@Override
-	public void renderChem(Graphics2D g9, Chemical c, int x, int y, int width, int height) {
+	RenderLayout computeLayout(Chemical c, RenderSettings settings) {
+		RenderLayout layout = new RenderLayout(c);
 		//exit early if no atoms with "no structure" message
 		if(c.getAtomCount() ==0){
-
-			double textWidth = g9.getFontMetrics().stringWidth("NO STRUCTURE");
-			//some simple font resizing based on render size
-			int multiple = (int) Math.floor(width/textWidth);
-
-			if(multiple > 2) {
-				g9.setFont(g9.getFont().deriveFont(Font.BOLD, g9.getFont().getSize() * (multiple / 2)));
-			}
-			g9.setBackground(Color.white);
-			g9.setColor(Color.white);
-			g9.fillRect(x,y,width, height);
-			g9.setColor(Color.BLACK);
-			textWidth = g9.getFontMetrics().stringWidth("NO STRUCTURE");
-			g9.drawString("NO STRUCTURE", (width-x)/2 -(int)(textWidth/2),(height-y)/2);
-			return;
+			layout.empty = true;
+			return layout;
 		}
-		Graphics2DTemp g2 = new Graphics2DTemp(g9);
-		String s = c.getProperty(protProperty);
+		String s = c.getProperty(settings.sequenceProperty);
 		if (s != null) {
 			if (!s.trim().equals("")) {
-				renderProt(g2, s, x, y, width, height);
-				return;
+				layout.sequence = s;
+				return layout;
 			}
 		}
-		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-		g2.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-		g2.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
-		// System.out.println("There are " + c.getSGroupCount() + " sgroups");
+		CompiledRendererOptions opts = settings.options;
 
-		ArrayList<double[]> toAdd = new ArrayList<>();
-
-
-		boolean skeleton = false;
-
-		boolean assumeRelative = displayParams.getDrawOption(DrawOptions.DRAW_STEREO_LABELS_AS_RELATIVE);
+		boolean assumeRelative = opts.drawStereoLabelsAsRelative;
 				
-		boolean assumeStarRelative = displayParams.getDrawOption(DrawOptions.DRAW_STEREO_LABELS_AS_STARRED);
-		
-		boolean drawStereoParentheses = displayParams.getDrawOption(DrawOptions.DRAW_STEREO_LABELS_PARENTHESES);
+		boolean assumeStarRelative = opts.drawStereoLabelsAsStarred;
 		
-
-		boolean drawBonds = displayParams.getDrawOption(DrawOptions.DRAW_BONDS);
-				
-		boolean drawSymbols = displayParams.getDrawOption(DrawOptions.DRAW_SYMBOLS);
-				
-		boolean drawCarbon = displayParams.getDrawOption(DrawOptions.DRAW_CARBON);
-				
-		boolean centerAllDoubleBonds = displayParams.getDrawOption(DrawOptions.DRAW_CENTER_ALL_DOUBLE_BONDS);
+		boolean drawStereoParentheses = opts.drawStereoLabelsParentheses;
 		
-		boolean drawStereo = displayParams.getDrawOption(DrawOptions.DRAW_STEREO_BONDS);
+		boolean drawSymbols = opts.drawSymbols;
 				
-		boolean drawProportion = displayParams.getDrawOption(DrawOptions.DRAW_PROPORTIONAL_ATOM_RADIUS);
-		
-		boolean drawResize = displayParams.getDrawOption(DrawOptions.DRAW_PROPORTION_AVERAGE_BOND_LENGTH);
+		boolean drawCarbon = opts.drawCarbon;
 				
-		boolean halfColoredBonds = displayParams.getDrawOption(DrawOptions.DRAW_ATOM_COLOR_ON_BONDS);
-		
-		boolean wedgeAsPoint = displayParams.getDrawOption(DrawOptions.DRAW_WEDGE_AS_POINT);
-		
-		boolean wedgeJoin = displayParams.getDrawOption(DrawOptions.DRAW_STEREO_WEDGE_JOIN);
-		
-		
+		boolean drawStereo = opts.drawStereoBonds;
 				
-		boolean PROP_DASH_SPACING = displayParams.getDrawOption(DrawOptions.DRAW_CONSTANT_DASH_WIDTH);
+		boolean drawResize = opts.drawProportionAverageBondLength;
 				
-		boolean DrawDashWedge = displayParams.getDrawOption(DrawOptions.DRAW_STEREO_DASH_AS_WEDGE);
-		
-		boolean drawLastDashLineOnNonSymbols = displayParams.getDrawOption(DrawOptions.DRAW_STEREO_LAST_DASH_ON_NON_SYMBOLS);
+		boolean wedgeJoin = opts.drawStereoWedgeJoin;
 		
-				
-		boolean centerNonRingDoubleBonds = displayParams.getDrawOption(DrawOptions.DRAW_CENTER_NONRING_DOUBLE_BONDS);
+		boolean centerNonRingDoubleBonds = opts.drawCenterNonringDoubleBonds;
 		
-		boolean drawTerminalHydrogens = displayParams.getDrawOption(DrawOptions.DRAW_IMPLICIT_HYDROGEN);
+		boolean drawTerminalHydrogens = opts.drawImplicitHydrogen;
 		
-		boolean drawTerminalCarbons = displayParams.getDrawOption(DrawOptions.DRAW_TERMINAL_CARBON);
+		boolean drawTerminalCarbons = opts.drawTerminalCarbon;
 	
 
-		boolean drawColorScheme = !displayParams.getDrawOption(DrawOptions.DRAW_GREYSCALE);
+		boolean drawColorScheme = !opts.drawGreyscale;
 				
-		boolean drawStereoLabels = displayParams.getDrawOption(DrawOptions.DRAW_STEREO_LABELS);
+		boolean drawStereoLabels = opts.drawStereoLabels;
 			
-		boolean stereoFromMap = displayParams.getDrawOption(DrawOptions.DRAW_STEREO_GIVEN_BY_MAP);
+		boolean stereoFromMap = opts.drawStereoGivenByMap;
 				
-		boolean highlightMapAtoms = displayParams.getDrawOption(DrawOptions.DRAW_HIGHLIGHT_MAPPED);
+		boolean highlightMapAtoms = opts.drawHighlightMapped;
 				
-		boolean highlightHalo = displayParams.getDrawOption(DrawOptions.DRAW_HIGHLIGHT_WITH_HALO);
+		boolean highlightHalo = opts.drawHighlightWithHalo;
 				
-		boolean highlightMonochromatic = displayParams.getDrawOption(DrawOptions.DRAW_HIGHLIGHT_MONOCHROMATIC);
+		boolean highlightMonochromatic = opts.drawHighlightMonochromatic;
 
-		boolean highlightShowAtom = displayParams.getDrawOption(DrawOptions.DRAW_HIGHLIGHT_SHOW_ATOM);
+		boolean highlightShowAtom = opts.drawHighlightShowAtom;
 		
-		boolean stereoReplace = displayParams.getDrawOption(DrawOptions.DRAW_STEREO_LABELS_AS_ATOMS);
+		boolean stereoReplace = opts.drawStereoLabelsAsAtoms;
 		
-		boolean forceStereomono = displayParams.getDrawOption(DrawOptions.DRAW_STEREO_FORCE_MONOCHROMATIC);
+		boolean forceStereomono = opts.drawStereoForceMonochromatic;
 				
-		boolean drawSuperatomLabels = displayParams.getDrawOption(DrawOptions.DRAW_SUPERATOMS_AS_LABELS);
+		boolean drawSuperatomLabels = opts.drawSuperatomsAsLabels;
 
 		boolean drawAlleneCarbon = true;
 		boolean stereoColoring = true;
 
-		// boolean drawCarbon= true;
-		boolean showMappedNumbers = displayParams.getDrawOption(DrawOptions.DRAW_SHOW_MAPPED);
+		boolean showMappedNumbers = opts.drawShowMapped;
 			
 
 		boolean drawRadius = false;
 		if (!drawSymbols) {
 			drawRadius = true;
 		}
-		// drawTerminalHydrogens
-
-
-		final float DEF_BOND_AVG = (float) this.displayParams.getDrawPropertyValue(DrawProperties.BOND_EXPECTED_LENGTH);
-		final float DEF_STROKE_PERCENT = (float) this.displayParams.getDrawPropertyValue(DrawProperties.BOND_STROKE_WIDTH_FRACTION);
-//		this.displayParams.DEF_STROKE_PERCENT;
-		final float DEF_FONT_PERCENT = (float) this.displayParams.getDrawPropertyValue(DrawProperties.ATOM_LABEL_FONT_FRACTION);
-//		this.displayParams.DEF_FONT_PERCENT;
-		final float DEF_DBL_BOND_GAP = (float) this.displayParams.getDrawPropertyValue(DrawProperties.BOND_DOUBLE_GAP_FRACTION);
-//		this.displayParams.DEF_DBL_BOND_GAP;
-		final float DEF_DBL_BOND_DISTANCE = (float) this.displayParams.getDrawPropertyValue(DrawProperties.BOND_DOUBLE_LENGTH_FRACTION);
-		
-//				this.displayParams.DEF_DBL_BOND_DISTANCE;
-		final float DEF_FONT_GAP_PERCENT = (float) this.displayParams.getDrawPropertyValue(DrawProperties.ATOM_LABEL_BOND_GAP_FRACTION);
-//		this.displayParams.DEF_FONT_GAP_PERCENT;
-		final float DEF_WEDGE_ANG = (float) this.displayParams.getDrawPropertyValue(DrawProperties.BOND_STEREO_WEDGE_ANGLE);
-//		this.displayParams.DEF_WEDGE_ANG;
-		final float DEF_SPLIT_RATIO = (float) this.displayParams.getDrawPropertyValue(DrawProperties.BOND_OVERLAP_SPACING_FRACTION);
-//		this.displayParams.DEF_SPLIT_RATIO;
-		final int DEF_NUM_DASH =  (int) this.displayParams.getDrawPropertyValue(DrawProperties.BOND_STEREO_DASH_NUMBER);
-//		this.displayParams.DEF_NUM_DASH;
-		
-		final float Y_DISP_FRAC = (float)  this.displayParams.getDrawPropertyValue(DrawProperties.SUBSCRIPT_Y_DISPLACEMENT_FRACTION);
-		final ColorPalette colorPalette = this.displayParams.getColorPalette();
 
-		final List<ARGBColor> highlightColors = this.displayParams.getColorPalette().getHighlightColors();
+		final float DEF_BOND_AVG = opts.bondExpectedLength;
+		final float DEF_WEDGE_ANG = opts.bondStereoWedgeAngle;
+		final List<ARGBColor> highlightColors = opts.highlightColors;
 
-		ARGBColor drawColor = colorPalette.getAtomColor("C");
-
-		final float HALO_RADIUS_MULTIPLY = .20f;
-		final float HALO_RADIUS_FUDGE = .5f;
-
-		double maxX = Double.NEGATIVE_INFINITY;
-		double maxY = Double.NEGATIVE_INFINITY;
-		double minX = Double.POSITIVE_INFINITY;
-		double minY = Double.POSITIVE_INFINITY;
-		float hMarge = Math.max(3, width * 0.25f);
-		float wMarge = Math.max(3, height * 0.25f);
-		if (this.getBorderVisible()) {
-			hMarge += 3;
-			wMarge += 3;
-		}
-
-		g2.setColor(drawColor);
+		ARGBColor drawColor = opts.getAtomColor(6, "C");
+		layout.drawColor = drawColor;
 
 		float BONDAVG = 0f;
 		int bcount = 0;
@@ -344,44 +277,41 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
         }
 
 
-		Predicate<Bond> drawBond;
-		Predicate<Atom> drawAtom;
+		RenderMolecule mol = RenderMolecule.of(c);
+
+		boolean[] hiddenBonds = new boolean[mol.getBondCount()];
+		boolean[] hiddenAtoms = new boolean[mol.getAtomCount()];
 		if(drawSuperatomLabels){
-			Set<Atom> atomsInSgroups = new HashSet<>();
-			Set<Bond> nonCrossingBonds = new HashSet<>();
 			for(SGroup g : c.getSGroups()){
 				if(g.getType() == SGroupType.SUPERATOM_OR_ABBREVIATION){
-					Set<Bond> crossingBonds = g.getBonds().collect(Collectors.toSet());
-					nonCrossingBonds.addAll( g.getAtoms()
-							.flatMap(a->a.getBonds().stream())
-							.filter(b-> !crossingBonds.contains(b))
-							.collect(Collectors.toSet()));
-
-					atomsInSgroups.addAll(g.getAtoms().collect(Collectors.toSet()));
-
+					Set<Integer> crossingBonds = g.getBonds().map(c::indexOf).collect(Collectors.toSet());
+					g.getAtoms().mapToInt(c::indexOf).forEach(a->{
+						hiddenAtoms[a] = true;
+						for(int n = mol.neighborStart(a); n < mol.neighborEnd(a); n++){
+							int b = mol.getNeighborBond(n);
+							if(!crossingBonds.contains(b)){
+								hiddenBonds[b] = true;
+							}
+						}
+					});
 				}
 
 			}
-			drawBond = b-> !nonCrossingBonds.contains(b);
-			drawAtom = a-> !atomsInSgroups.contains(a);
-		}else{
-			drawBond = b->true;
-			drawAtom = a->true;
 		}
 
-		for (Bond cb : c.getBonds()) {
-			if(!drawBond.test(cb)){
+		for (int cb = 0; cb < mol.getBondCount(); cb++) {
+			if(hiddenBonds[cb]){
 				continue;
 			}
 			bcount++;
-			Atom[] ca = new Atom[] { cb.getAtom1(), cb.getAtom2() };
+			int[] ca = new int[] { mol.getAtom1(cb), mol.getAtom2(cb) };
 			
-			double length = Math.sqrt(ca[0].getAtomCoordinates().distanceSquaredTo(ca[1].getAtomCoordinates()));
+			double length = mol.getBondLength(cb);
 			BONDAVG += length;
 			float nx = 0;
 			float ny = 0;
-			int bondType = cb.getBondType().getOrder();
-			Bond.Stereo sType = cb.getStereo();
+			int bondType = mol.getBondType(cb).getOrder();
+			Bond.Stereo sType = mol.getStereo(cb);
 			if (sType != null && drawStereo) {
 				switch (sType) {
 				case DOWN:
@@ -394,17 +324,17 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 				}
 			}
 			if (bondType == Bond.BondType.DOUBLE.getOrder() || bondType == Bond.BondType.AROMATIC.getOrder()) {
-				if (ca[0].getBondCount() == 1 || ca[1].getBondCount() == 1)
+				if (mol.getBondCount(ca[0]) == 1 || mol.getBondCount(ca[1]) == 1)
 					bondType = -1;
 				else {
 					int bondCount = 0;
 					boolean ringBond = false;
 					for (int i = 0; i < 2; i++) {
-						for (Bond cab : ca[i].getBonds()) {
+						for (int n = mol.neighborStart(ca[i]); n < mol.neighborEnd(ca[i]); n++) {
 
-							Atom can = cab.getOtherAtom(ca[i]);
+							int can = mol.getNeighborAtom(n);
 							int weight = 1;
-							if (cab.isInRing()) {
+							if (mol.isInRing(mol.getNeighborBond(n))) {
 								weight *= 4;
 								ringBond = true;
 							}
@@ -416,10 +346,10 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 							// This is approximated by finding a weighted
 							// average of the neighbor atoms coordinates
 							// where ring-bonds are weighed more heavily.
-							for (Bond b : can.getBonds()) {
-
-								if (b.isInRing()) {
-									switch (b.getBondType()) {
+							for (int nn = mol.neighborStart(can); nn < mol.neighborEnd(can); nn++) {
+								int b = mol.getNeighborBond(nn);
+								if (mol.isInRing(b)) {
+									switch (mol.getBondType(b)) {
 									case DOUBLE:
 									case AROMATIC:
 										weight *= 1.75;
@@ -429,25 +359,29 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 									}
 								}
 							}
-							AtomCoordinates coords = can.getAtomCoordinates();
-							nx += coords.getX() * weight;
-							ny += coords.getY() * weight;
+							nx += mol.getX(can) * weight;
+							ny += mol.getY(can) * weight;
 							bondCount += weight;
 						}
 					}
 					nx /= (float) bondCount;
 					ny /= (float) bondCount;
-					ringBond = ringBond && cb.isInRing();
+					ringBond = ringBond && mol.isInRing(cb);
 					if (!ringBond && centerNonRingDoubleBonds) {
 						bondType = -1;
 					}
 				}
 			}
-			AtomCoordinates c1 =cb.getAtom1().getAtomCoordinates();
-			AtomCoordinates c2 =cb.getAtom2().getAtomCoordinates();
-			toAdd.add(new double[] { c1.getX(), c1.getY(), c2.getX(), c2.getY(), bondType, nx, ny, bcount - 1 });
-			// g2.drawLine((int)c1[0]*dist,(int)c1[1]*dist, (int)c2[0]*dist,
-			// (int)c2[1]*dist);
+			RenderLayout.BondLayout bondLayout = new RenderLayout.BondLayout();
+			bondLayout.x1 = mol.getX(ca[0]);
+			bondLayout.y1 = mol.getY(ca[0]);
+			bondLayout.x2 = mol.getX(ca[1]);
+			bondLayout.y2 = mol.getY(ca[1]);
+			bondLayout.bondType = bondType;
+			bondLayout.nx = nx;
+			bondLayout.ny = ny;
+			bondLayout.bondIndex = bcount - 1;
+			layout.bonds.add(bondLayout);
 		}
 		if (BONDAVG == 0 || !drawResize) {
 			BONDAVG = DEF_BOND_AVG;
@@ -463,85 +397,25 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 		}
 		Rectangle2D boundingBox = BoundingBox.computeBoundingBoxFor(c, maxP);
 
-		minX = boundingBox.getMinX();
-		maxX = boundingBox.getMaxX();
-		minY = boundingBox.getMinY();
-		maxY = boundingBox.getMaxY();
-
-		float defWidth = 3;
-		float defHeight = 3;
-		double centerX = (maxX + minX) / 2f;
-		double centerY = (maxY + minY) / 2f;
-		float ncenterX = width / 2f+x;
-		float ncenterY = height / 2f+y;
-		double cwidth = (maxX - minX);
-		double cheight = (maxY - minY);
-
-		if (cwidth <= 0.1) {
-			cwidth = defWidth;
-		}
-		if (cheight <= 0.1) {
-			cheight = defHeight;
-		}
-		// System.out.println("Size:" + cwidth + "," + cheight);
-
-		double adjW = Math.max((width - wMarge) / cwidth, 1);
-		double adjH = Math.max((height - hMarge) / cheight, 1);
-		double resize = Math.min(adjW, adjH);
-		int newMarge = Math.max(
-				g2.getFontMetrics(defaultFont.deriveFont((float) (DEF_FONT_PERCENT * resize * BONDAVG))).getHeight(),
-				0);
-
-		adjW = (width - wMarge - newMarge) / cwidth;
-		adjH = (height - hMarge - newMarge) / cheight;
-		resize = Math.abs(Math.min(adjW, adjH));
-
-		AffineTransformParent centerTransform = ggen.makeAffineTransform();
-
-		centerTransform.translate(ncenterX, ncenterY);
-		// centerTransform.rotate(Math.PI/9);
-		centerTransform.scale(resize, -resize);
-		centerTransform.translate(-centerX, -centerY);
-
-		float bondWidth = (float) (DEF_STROKE_PERCENT * resize * BONDAVG);
-		float braketFrac = 0.7f;
-		float braketWidth = (float) (DEF_STROKE_PERCENT * resize * BONDAVG * braketFrac);
-		BasicStroke solid = new BasicStroke(bondWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-		BasicStroke solidHalo = new BasicStroke((float) (bondWidth + HALO_RADIUS_MULTIPLY * resize * BONDAVG),
-				BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-		BasicStroke solidThin = new BasicStroke(braketWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-		float dash[] = { 2 * bondWidth };
-		BasicStroke dashed = new BasicStroke(bondWidth / 2, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, bondWidth,
-				dash, 0.0f);
-		BasicStroke solidREC = new BasicStroke(bondWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER);
-		float fsize = (float) (DEF_FONT_PERCENT * resize * BONDAVG);
-		Font setfont = defaultFont.deriveFont(fsize);
-		Font brafont = defaultFont.deriveFont(fsize * braketFrac);
-		g2.setFont(setfont);
-		g2.setStroke(solid);
+		layout.bondAverage = BONDAVG;
+		layout.maxWedgeWidth = maxW;
+		layout.minX = boundingBox.getMinX();
+		layout.maxX = boundingBox.getMaxX();
+		layout.minY = boundingBox.getMinY();
+		layout.maxY = boundingBox.getMaxY();
 
-		/*
-		 * 
-		 * if(fsize<8){ drawSymbols=false; }else{ }
-		 */
-
-		FontMetrics fm = g2.getFontMetrics();
-
-		ArrayList<DisplayLabel> toAddLabelsD = new ArrayList<DisplayLabel>();
-
-		Map<Atom, AtomDrawProps> atompDProps = new HashMap<>();
 		Map<Integer, Chirality> stereoMap = null;
 		if (drawStereoLabels) {
 			
 			if(stereoFromMap) {
 				stereoMap = new HashMap<>();
-				for(Atom ca : c.getAtoms()) {
+				for(int ca = 0; ca < mol.getAtomCount(); ca++) {
 					//dkatzel 11/ 2018
 					//this is to make it the same as the old ncgc renderer
 					//which any atom map value not set to 1 or 2 is considered either (3)
 					//even 0 !!!
-					int value = ca.getAtomToAtomMap().orElse(3);
-					stereoMap.put(ca.getAtomIndexInParent(), Chirality.valueByParity(value));
+					int value = mol.getAtomToAtomMap(ca, 3);
+					stereoMap.put(ca, Chirality.valueByParity(value));
 				}
 			}else {
 				final List<Stereocenter> allStereocenters = c.getAllStereocenters();
@@ -559,11 +433,18 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			 }
 		}
 		int atomIndex = -1;
-		Chemical.OpticalActivity opticalActivity = c.computeOpticalActivity().orElse(null);
-		Chemical.StereochemistryType stereochemistryType = c.computeStereochemistryType().orElse(null);
+		Chemical.OpticalActivity opticalActivity = null;
+		Chemical.StereochemistryType stereochemistryType = null;
+		if (drawStereoLabels) {
+			//only stereo labels need these so don't perceive them otherwise
+			opticalActivity = c.computeOpticalActivity().orElse(null);
+			stereochemistryType = c.computeStereochemistryType().orElse(null);
+		}
 
-		for (Atom ca : c.getAtoms()) {
-			if(!drawAtom.test(ca)){
+		int[] atomLayoutIndex = new int[mol.getAtomCount()];
+		Arrays.fill(atomLayoutIndex, -1);
+		for (int ca = 0; ca < mol.getAtomCount(); ca++) {
+			if(hiddenAtoms[ca]){
 				continue;
 			}
 
@@ -572,7 +453,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			boolean forceDraw = false;
 			boolean highlighted = false;
 			boolean fakeAtom = false;
-			boolean isCarbon = "C".equals(ca.getSymbol());
+			boolean isCarbon = "C".equals(mol.getSymbol(ca));
 			boolean isStereo = false;
 			boolean forceHalo = false;
 
@@ -583,12 +464,14 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			List<Integer> attachmentLOC = new ArrayList<Integer>();
 			List<Float> attachmentSIZE = new ArrayList<Float>();
 			List<ARGBColor> attachmentCOL = new ArrayList<>();
+			RenderLayout.AtomLayout atomLayout = new RenderLayout.AtomLayout();
 
 
-			sm = ca.getAlias().orElse(ca.getSymbol());
-			if (sm==null || !sm.equals(ca.getSymbol())) {
+			String alias = mol.getAlias(ca);
+			sm = alias == null ? mol.getSymbol(ca) : alias;
+			if (sm==null || !sm.equals(mol.getSymbol(ca))) {
 				fakeAtom = true;
-				if(sm==null && ca.isQueryAtom()){
+				if(sm==null && mol.isQueryAtom(ca)){
 					sm="*";
 				}
 			  }
@@ -596,7 +479,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			// have to make a normal if statement
 			// because can't set effectively final variable sm
 			// in a lambda
-			OptionalInt rGroupIndex = ca.getRGroupIndex();
+			OptionalInt rGroupIndex = mol.getRGroupIndex(ca);
 
 			if (rGroupIndex.isPresent()) {
 				sm = this.getRGroupText(rGroupIndex.getAsInt());
@@ -620,7 +503,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 //				System.out.println("hightlight map atoms = " + highlightMapAtoms);
 //				System.out.println("highlightMonochromatic = " + highlightMonochromatic);
 //				
-				int map = ca.getAtomToAtomMap().orElse(0);
+				int map = mol.getAtomToAtomMap(ca, 0);
 				if(map >0) {
 //					System.out.println("map > 0 = " + map);
 					
@@ -638,7 +521,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 				 
 			} else {
 				if (drawColorScheme) {
-					col = colorPalette.getAtomColor(sm);
+					col = opts.getAtomColor(mol.getAtomicNumber(ca), sm);
 				}
 			}
 			if (drawStereoLabels) {
@@ -653,7 +536,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 					switch (chirality) {
 						case R:
 							attach2 = "(R)";
-							ncol = colorPalette.getStereoColorKnown();
+							ncol = opts.stereoColorKnown;
 							if (assumeStarRelative) {
 								attach2 = "(R*)";
 							}
@@ -665,15 +548,15 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 							// //then it's definitely either R or S
 							if (Chemical.StereochemistryType.RACEMIC.equals(stereochemistryType) || Chemical.OpticalActivity.PLUS_MINUS.equals(opticalActivity)) {
 								attach2 = "(RS)";
-								ncol = colorPalette.getStereoColorKnown();
+								ncol = opts.stereoColorKnown;
 							} else {
 								attach2 = "(*)";
-								ncol = colorPalette.getStereoColorUnknown();
+								ncol = opts.stereoColorUnknown;
 							}
 							break;
 						case S:
 							attach2 = "(S)";
-							ncol = colorPalette.getStereoColorKnown();
+							ncol = opts.stereoColorKnown;
 							if (assumeStarRelative) {
 								attach2 = "(S*)";
 							}
@@ -681,7 +564,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 								break;
 							}
 							attach2 = "(*)";
-							ncol = colorPalette.getStereoColorUnknown();
+							ncol = opts.stereoColorUnknown;
 							// case ChemicalAtom.STEREO_SR:
 							// attach2 = "(SR)";
 							// ncol = STEREO_COLOR_KNOWN;
@@ -705,8 +588,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 							sm = sm + attach2;
 						}
 						forceDraw = true;
-						g2.setFont(defaultFont.deriveFont(fsize * 0.7f));
-						fm = g2.getFontMetrics();
+						atomLayout.font = RenderLayout.FONT_SMALL;
 					} else {
 						// should restrict full atom highlight for
 						// small images
@@ -728,8 +610,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 						} else {
 							attachmentCOL.add(col);
 						}
-						g2.setFont(defaultFont.deriveFont(Font.BOLD, fsize * 1.0f));
-						fm = g2.getFontMetrics();
+						atomLayout.font = RenderLayout.FONT_BOLD;
 					}
 				}
 			}
@@ -738,8 +619,8 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 				if (drawCarbon) {
 					drawHydrogens = true;
 				} else if (isCarbon) {
-					if ((forceDraw && !isStereo) || ca.getBondCount() < 2 || ca.getCharge() != 0 || ca.getRadical() != 0
-							|| ca.isIsotope()) {
+					if ((forceDraw && !isStereo) || mol.getBondCount(ca) < 2 || mol.getCharge(ca) != 0 || mol.getRadical(ca) != 0
+							|| mol.isIsotope(ca)) {
 						drawHydrogens = true;
 					} else {
 						drawHydrogens = false;
@@ -751,10 +632,10 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			}else{
 				//don't draw terminal carbons
 				if(isCarbon){
-					if(ca.getBondCount() < 2){
+					if(mol.getBondCount(ca) < 2){
 						
 						//terminal C
-						drawCarbon = forceDraw || ca.getCharge() != 0 || ca.getRadical() != 0 || ca.isIsotope();
+						drawCarbon = forceDraw || mol.getCharge(ca) != 0 || mol.getRadical(ca) != 0 || mol.isIsotope(ca);
 					}else{
 						drawCarbon=false;
 					}
@@ -764,8 +645,6 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			}
 			String attatch = "";
 			
-			float[] p = new float[2];
-			centerTransform.transform(ca.getAtomCoordinates().xy(), 0, p, 0, 1);
 			// tyler says it's not worth drawing to proportion
 			// since we don't draw atom balls to scale
 			// not worth implementing.
@@ -777,30 +656,17 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			 * g2.setFont(defaultFont.deriveFont(fsize * atomRad)); fm =
 			 * g2.getFontMetrics(); }
 			 */
-			float w ;//= fm.stringWidth(sm) / 2;
-			Rectangle2D _ERASE_ME = fm.getStringBounds(sm, g2._delagate);
-			Rectangle2DParent rect = ggen.makeRectangle(_ERASE_ME.getX(), _ERASE_ME.getY(), _ERASE_ME.getWidth(),
-					_ERASE_ME.getHeight());
-			w = (float) rect.getWidth() / 2;
-			float h = (float) rect.getHeight() / 3;
-			g2.setBackground(transparent);
-			float radius = Math.max(w, h * 6 / 5) + 2 * w / 10;
 			boolean drawHalo = (highlightHalo && highlighted) || forceHalo;
 
 			if (drawHalo) {
-				g2.setColor(col);
-				float prad = radius;
-				radius *= HALO_RADIUS_FUDGE;
-				radius += HALO_RADIUS_MULTIPLY * resize * BONDAVG;
-				g2.fillP(ggen.makeEllipse(p[0] - radius, p[1] - radius, radius * 2, radius * 2));
-				radius = prad;
+				atomLayout.haloColor = col;
 				hcol = col;
 				col = drawColor;
 			}
 
-			if (ca.isIsotope()) {
+			if (mol.isIsotope(ca)) {
 				String attatch2 = "";
-				attatch2 = getSuperScriptString(ca.getMassNumber());
+				attatch2 = getSuperScriptString(mol.getMassNumber(ca));
 				if (!attatch2.equals("")) {
 					attachments.add(attatch2);
 					attachmentLOC.add(4);
@@ -809,10 +675,10 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 					forceDraw = true;
 				}
 			}
-			if (ca.getImplicitHCount() > 0) {
+			if (mol.getImplicitHCount(ca) > 0) {
 				if (drawHydrogens) {
 					attatch += "H";
-					int hcount = ca.getImplicitHCount();
+					int hcount = mol.getImplicitHCount(ca);
 					String ss = subScripts.get(hcount);
 					if (ss != null) {
 						attatch += ss;
@@ -820,15 +686,15 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 				}
 			}
 
-			if (ca.getCharge() != 0) {
+			if (mol.getCharge(ca) != 0) {
 				String attatch2 = "";
-				int mag = Math.abs(ca.getCharge());
+				int mag = Math.abs(mol.getCharge(ca));
 
 				if (mag > 1) {
 					attatch2 = getSuperScriptString(mag);
 				}
 
-				if (ca.getCharge() > 0) {
+				if (mol.getCharge(ca) > 0) {
 					attatch2 += "\u207A";
 				} else {
 					attatch2 += "\u207B";
@@ -844,12 +710,12 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 
 			if (!attatch.equals("")) {
 				attachments.add(attatch);
-				if (ca.getBondCount() == 0) {
-					if (FORCE_LEFT_HYDROGEN.contains(ca.getSymbol()))
+				if (mol.getBondCount(ca) == 0) {
+					if (FORCE_LEFT_HYDROGEN.contains(mol.getSymbol(ca)))
 						attachmentLOC.add(4);
 					else
 						attachmentLOC.add(1);
-				} else if (ca.getBondCount() == 1) {
+				} else if (mol.getBondCount(ca) == 1) {
 					attachmentLOC.add(1 | 4);
 				} else {
 					attachmentLOC.add(1 | 2 | 4 | 8);
@@ -858,7 +724,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 				attachmentSIZE.add(1f);
 				forceDraw = true;
 			}
-			int radicalValue = ca.getRadical();
+			int radicalValue = mol.getRadical(ca);
 			if (radicalValue != 0) {
 				String attatch2 = "";
 				switch (radicalValue) {
@@ -890,7 +756,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			}
 			
 			if (showMappedNumbers) {
-				int amap = ca.getAtomToAtomMap().orElse(0);
+				int amap = mol.getAtomToAtomMap(ca, 0);
 
 				if (amap != 0) {
 					String attatch2 = "";
@@ -907,52 +773,26 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			boolean drawThisAtom = forceDraw
 					|| ((!isCarbon || drawCarbon) && (!isCarbon || drawTerminalCarbons || drawCarbon));
 			boolean drawAttachments = attachments.size() > 0;
-			if (ca.getBondCount() == 2) {
+			if (mol.getBondCount(ca) == 2) {
 				if (isCarbon) {
 
-					boolean onlyDoubleBonds = !ca.getBonds().stream()
-							.filter(cab -> cab.getBondType() != Bond.BondType.DOUBLE).findAny().isPresent();
+					boolean onlyDoubleBonds = true;
+					for (int n = mol.neighborStart(ca); n < mol.neighborEnd(ca); n++) {
+						if (mol.getBondType(mol.getNeighborBond(n)) != Bond.BondType.DOUBLE) {
+							onlyDoubleBonds = false;
+						}
+					}
 					if (onlyDoubleBonds) {
 						drawThisAtom = drawAlleneCarbon;
 					}
-					// boolean leave = false;
-					// for (int i = 0; i < ca.getBondCount(); i++) {
-					//
-					// switch (ca.getBond(i).getType()) {
-					// case ChemicalBond.BOND_TYPE_DOUBLE:
-					// break;
-					// default:
-					// leave = true;
-					// }
-					// if (leave)
-					// break;
-					// }
-					// if (!leave) {
-					// drawThisAtom = drawAlleneCarbon;
-					// }
 				}
 			}
 
-			if (drawRadius) {
-				if (!drawSymbols) {
-					if (drawThisAtom) {
-						g2.setColor(col);
-						g2.fillP(ggen.makeEllipse(p[0] - radius, p[1] - radius, radius * 2, radius * 2));
-					} else {
-						radius = 0;
-					}
-				}
-			}
 			if (drawSymbols) {
-				if (!drawThisAtom) {
-					radius = 0;
-				}
 				if (drawAttachments) {
 					int used = 0;
 					for (int j = 0; j < attachments.size(); j++) {
 						String att = attachments.get(j);
-						float size = attachmentSIZE.get(j);
-						ARGBColor acol = attachmentCOL.get(j);
 						int supported = attachmentLOC.get(j);
 						int cardPos = supported;
 
@@ -960,61 +800,350 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 
 						if (supported != -1) {
 							int avail = supported & (~used);
-							cardPos = getAttachCardPos(ca, att, avail);
+							cardPos = getAttachCardPos(mol, ca, att, avail);
 							used = used | (1 << cardPos);
 						} else {
-							nv = getNormVecAway(ca);
+							nv = getNormVecAway(mol, ca);
 
 						}
+						RenderLayout.AttachmentLayout attachmentLayout = new RenderLayout.AttachmentLayout();
+						attachmentLayout.text = att;
+						attachmentLayout.size = attachmentSIZE.get(j);
+						attachmentLayout.color = attachmentCOL.get(j);
+						attachmentLayout.cardPos = cardPos;
+						attachmentLayout.nv = nv;
+						atomLayout.attachments.add(attachmentLayout);
+					}
+				}
+			}
+			atomLayout.x = mol.getX(ca);
+			atomLayout.y = mol.getY(ca);
+			atomLayout.symbol = sm;
+			atomLayout.drawThisAtom = drawThisAtom;
+			atomLayout.highlighted = highlighted;
+			atomLayout.color = col;
+			atomLayout.hcolor = hcol;
+			if (highlighted && drawRadius) {
+				atomLayout.labelColor = drawColor;
+			} else {
+				atomLayout.labelColor = col;
+			}
+			atomLayoutIndex[ca] = layout.atoms.size();
+			layout.atoms.add(atomLayout);
+		}
+
+		for (RenderLayout.BondLayout bondLayout : layout.bonds) {
+			int cb = bondLayout.bondIndex;
+			bondLayout.bondLength = mol.getBondLength(cb);
+			int atom1 = mol.getAtom1(cb);
+			int atom2 = mol.getAtom2(cb);
+			bondLayout.atom1 = atom1 < 0 ? -1 : atomLayoutIndex[atom1];
+			bondLayout.atom2 = atom2 < 0 ? -1 : atomLayoutIndex[atom2];
+			// is this the same as double either?
+			bondLayout.doubleEither = mol.getBondType(cb) == BondType.DOUBLE && mol.getDoubleBondStereo(cb)== Bond.DoubleBondStereo.E_OR_Z;
+			if (wedgeJoin) {
+				bondLayout.singleNoStereo = mol.getBondType(cb).equals(BondType.SINGLE) && mol.getStereo(cb).equals(Bond.Stereo.NONE);
+				bondLayout.atom2BondCount = mol.getBondCount(atom2);
+				bondLayout.joinCandidates = IntStream.range(mol.neighborStart(atom2), mol.neighborEnd(atom2))
+			             .map(mol::getNeighborBond)
+			             .filter(b->b != cb)
+			             .filter(b->mol.getBondType(b).equals(BondType.SINGLE))
+			             .filter(b->mol.getStereo(b).equals(Bond.Stereo.UP) || mol.getStereo(b).equals(Bond.Stereo.NONE))
+			             .toArray();
+			}
+		}
 
-						Font ofont = g2.getFont();
-						Font fnt2 = ofont.deriveFont(fsize * size);
-						g2.setFont(fnt2);
-						FontMetrics fm2 = g2.getFontMetrics();
-						g2.setFont(ofont);
-
-						Collection<Entry<String, float[]>> smap = getAttachPos(att, w, h, p, fm2, g2, cardPos, nv, Y_DISP_FRAC);
-						if (smap != null) {
-							for (Entry<String, float[]> ent : smap) {
-								DisplayLabel dl = new DisplayLabel(ent.getKey(), fnt2, ent.getValue()[0],
-										ent.getValue()[1], acol);
-								toAddLabelsD.add(dl);
-								dl.atomGroup = ca;
-
-								// toAddLabels.add(ent.getKey());
-								// toAddLabelsPos.add(ent.getValue());
-								// toAddLabelsColor.add(acol);
-								// toAddLabelsFont.add(fnt2);
+		if(drawSuperatomLabels){
+			for(SGroup sgroup : c.getSGroups()){
+				if(sgroup.getType() == SGroupType.SUPERATOM_OR_ABBREVIATION){
+					sgroup.getSubscript().ifPresent( text->{
+
+						Optional<Atom> atomToUseCoordsOf = sgroup.getBonds().map(b->{
+							Atom a = b.getAtom1();
+							if(!hiddenAtoms[c.indexOf(a)]){
+								return b.getAtom2();
+							}else{
+								return a;
 							}
+						}).findFirst();
+						if(atomToUseCoordsOf.isPresent()){
+							AtomCoordinates coords = atomToUseCoordsOf.get().getAtomCoordinates();
+							RenderLayout.SuperatomLabelLayout label = new RenderLayout.SuperatomLabelLayout();
+							label.text = formatSuperAtomLabel(text);
+							//the atom coord is the END coordinate not the start
+							label.alignEnd = text.charAt(0) =='^';
+							label.x = coords.getX();
+							label.y = coords.getY();
+							layout.superatomLabels.add(label);
 						}
+
+					});
+				}
+			}
+		}
+
+		List<SGroup> cgs = c.getSGroups();
+		if (cgs != null && !cgs.isEmpty()) {
+			//compute bounding boxes for brackets
+			List<SGroup> trustedSgroupBrackets = new ArrayList<>();
+			List<SGroup> untrustedSgroupBrackets = new ArrayList<>();
+			for (SGroup cg : cgs) {
+				if(cg.getType() == SGroupType.SUPERATOM_OR_ABBREVIATION){
+					//don't use bracket for SuperAtoms
+					continue;
+				}
+
+					if (cg.bracketsTrusted()) {
+						trustedSgroupBrackets.add(cg);
+					}else{
+						untrustedSgroupBrackets.add(cg);
 					}
+
+			}
+			for(SGroup sgroup: trustedSgroupBrackets){
+				RenderLayout.BracketLayout bracket = computeBracketLayoutFor(sgroup, false);
+				if(bracket != null){
+					layout.brackets.add(bracket);
 				}
-				if (drawThisAtom) {
-					DisplayLabel dl = new DisplayLabel(sm, g2.getFont(), p[0] - w, p[1] + h, drawColor);
-					toAddLabelsD.add(dl);
-					dl.atomGroup = ca;
-					// toAddLabels.add(sm);
-					// toAddLabelsPos.add(new float[] { p[0] - w, p[1] + h });
-					if (highlighted && drawRadius) {
-						dl.c = drawColor;
+			}
+			for(SGroup sgroup: untrustedSgroupBrackets){
+				RenderLayout.BracketLayout bracket = computeBracketLayoutFor(sgroup, true);
+				if(bracket != null){
+					layout.brackets.add(bracket);
+				}
+			}
+		}
+		return layout;
+	}
+
+	@Override
+	void renderLayout(Graphics2D g9, RenderLayout layout, int x, int y, int width, int height, RenderSettings settings) {
+		//exit early if no atoms with "no structure" message
+		if(layout.isEmpty()){
+
+			double textWidth = g9.getFontMetrics().stringWidth("NO STRUCTURE");
+			//some simple font resizing based on render size
+			int multiple = (int) Math.floor(width/textWidth);
+
+			if(multiple > 2) {
+				g9.setFont(g9.getFont().deriveFont(Font.BOLD, g9.getFont().getSize() * (multiple / 2)));
+			}
+			g9.setBackground(Color.white);
+			g9.setColor(Color.white);
+			g9.fillRect(x,y,width, height);
+			g9.setColor(Color.BLACK);
+			textWidth = g9.getFontMetrics().stringWidth("NO STRUCTURE");
+			g9.drawString("NO STRUCTURE", (width-x)/2 -(int)(textWidth/2),(height-y)/2);
+			return;
+		}
+		try (Graphics2DTemp g2 = Graphics2DTemp.acquire(g9)) {
+			if (layout.sequence != null) {
+				renderProt(g2, layout.sequence, x, y, width, height);
+			} else {
+				paintLayout(g2, layout, x, y, width, height, settings);
+			}
+		}
+	}
+
+	private void paintLayout(Graphics2DTemp g2, RenderLayout layout, int x, int y, int width, int height, RenderSettings settings) {
+		CompiledRendererOptions opts = settings.options;
+		RenderQuality quality = opts.quality;
+		quality.applyHints(g2);
+
+		boolean skeleton = false;
+
+		boolean drawBonds = opts.drawBonds;
+				
+		boolean drawSymbols = opts.drawSymbols;
+				
+		boolean centerAllDoubleBonds = opts.drawCenterAllDoubleBonds;
+		
+		boolean halfColoredBonds = opts.drawAtomColorOnBonds;
+		
+		boolean wedgeAsPoint = opts.drawWedgeAsPoint;
+		
+		boolean wedgeJoin = opts.drawStereoWedgeJoin;
+		
+		boolean PROP_DASH_SPACING = opts.drawConstantDashWidth;
+				
+		boolean DrawDashWedge = opts.drawStereoDashAsWedge;
+		
+		boolean drawLastDashLineOnNonSymbols = opts.drawStereoLastDashOnNonSymbols;
+		
+		boolean highlightHalo = opts.drawHighlightWithHalo && quality.drawsHalos();
+				
+		boolean drawSuperatomLabels = opts.drawSuperatomsAsLabels;
+
+		boolean drawRadius = false;
+		if (!drawSymbols) {
+			drawRadius = true;
+		}
+
+		final float DEF_STROKE_PERCENT = opts.bondStrokeWidthFraction;
+		final float DEF_FONT_PERCENT = opts.atomLabelFontFraction;
+		final float DEF_DBL_BOND_GAP = opts.bondDoubleGapFraction;
+		final float DEF_DBL_BOND_DISTANCE = opts.bondDoubleLengthFraction;
+		final float DEF_FONT_GAP_PERCENT = opts.atomLabelBondGapFraction;
+		final float DEF_SPLIT_RATIO = opts.bondOverlapSpacingFraction;
+		final int DEF_NUM_DASH =  quality.dashCount(opts.bondStereoDashNumber);
+		final float Y_DISP_FRAC = opts.subscriptYDisplacementFraction;
+
+		ARGBColor drawColor = layout.drawColor;
+
+		final float HALO_RADIUS_MULTIPLY = RenderResources.HALO_RADIUS_MULTIPLY;
+		final float HALO_RADIUS_FUDGE = .5f;
+
+		double maxX = layout.maxX;
+		double maxY = layout.maxY;
+		double minX = layout.minX;
+		double minY = layout.minY;
+		float hMarge = Math.max(3, width * 0.25f);
+		float wMarge = Math.max(3, height * 0.25f);
+		if (settings.borderVisible) {
+			hMarge += 3;
+			wMarge += 3;
+		}
+
+		g2.setColor(drawColor);
+
+		float BONDAVG = layout.bondAverage;
+
+		float defWidth = 3;
+		float defHeight = 3;
+		double centerX = (maxX + minX) / 2f;
+		double centerY = (maxY + minY) / 2f;
+		float ncenterX = width / 2f+x;
+		float ncenterY = height / 2f+y;
+		double cwidth = (maxX - minX);
+		double cheight = (maxY - minY);
+
+		if (cwidth <= 0.1) {
+			cwidth = defWidth;
+		}
+		if (cheight <= 0.1) {
+			cheight = defHeight;
+		}
+
+		double adjW = Math.max((width - wMarge) / cwidth, 1);
+		double adjH = Math.max((height - hMarge) / cheight, 1);
+		double resize = Math.min(adjW, adjH);
+		int newMarge = Math.max(
+				g2.getFontMetrics(RenderResources.get(defaultFont, resize * BONDAVG, DEF_STROKE_PERCENT, DEF_FONT_PERCENT).font).getHeight(),
+				0);
+
+		adjW = (width - wMarge - newMarge) / cwidth;
+		adjH = (height - hMarge - newMarge) / cheight;
+		resize = Math.abs(Math.min(adjW, adjH));
+
+		AffineTransformParent centerTransform = ggen.makeAffineTransform();
+
+		centerTransform.translate(ncenterX, ncenterY);
+		// centerTransform.rotate(Math.PI/9);
+		centerTransform.scale(resize, -resize);
+		centerTransform.translate(-centerX, -centerY);
+
+		//fonts and strokes are shared by all renders at (nearly) the same scale
+		RenderResources resources = RenderResources.get(defaultFont, resize * BONDAVG, DEF_STROKE_PERCENT, DEF_FONT_PERCENT);
+		float bondWidth = resources.bondWidth;
+		BasicStroke solid = resources.solid;
+		BasicStroke solidHalo = resources.solidHalo;
+		BasicStroke solidThin = resources.solidThin;
+		BasicStroke dashed = resources.dashed;
+		BasicStroke solidREC = resources.solidREC;
+		Font setfont = resources.font;
+		Font brafont = resources.bracketFont;
+		Font stereoAtomFont = resources.smallFont;
+		Font stereoLabelFont = resources.boldFont;
+		g2.setFont(setfont);
+		g2.setStroke(solid);
+
+		/*
+		 * 
+		 * if(fsize<8){ drawSymbols=false; }else{ }
+		 */
+
+		ArrayList<DisplayLabel> toAddLabelsD = new ArrayList<DisplayLabel>();
+
+		AtomDrawProps[] atompDProps = new AtomDrawProps[layout.atoms.size()];
+		ScreenGeometry geom = ScreenGeometry.of(layout, centerTransform);
+		float[] p = new float[2];
+		g2.setBackground(transparent);
+
+		for (int i = 0; i < atompDProps.length; i++) {
+			RenderLayout.AtomLayout atomLayout = layout.atoms.get(i);
+			switch (atomLayout.font) {
+				case RenderLayout.FONT_SMALL:
+					g2.setFont(stereoAtomFont);
+					break;
+				case RenderLayout.FONT_BOLD:
+					g2.setFont(stereoLabelFont);
+					break;
+				default:
+					g2.setFont(setfont);
+			}
+			String sm = atomLayout.symbol;
+
+			p[0] = geom.atoms[2 * i];
+			p[1] = geom.atoms[2 * i + 1];
+
+			float w ;//= fm.stringWidth(sm) / 2;
+			Rectangle2D rect = stringBounds(g2, g2.getFont(), sm);
+			w = (float) rect.getWidth() / 2;
+			float h = (float) rect.getHeight() / 3;
+			float radius = Math.max(w, h * 6 / 5) + 2 * w / 10;
+
+			if (atomLayout.haloColor != null) {
+				g2.setColor(atomLayout.haloColor);
+				float prad = radius;
+				radius *= HALO_RADIUS_FUDGE;
+				radius += HALO_RADIUS_MULTIPLY * resize * BONDAVG;
+				g2.fillP(ggen.makeEllipse(p[0] - radius, p[1] - radius, radius * 2, radius * 2));
+				radius = prad;
+			}
+
+			if (drawRadius) {
+				if (!drawSymbols) {
+					if (atomLayout.drawThisAtom) {
+						g2.setColor(atomLayout.color);
+						g2.fillP(ggen.makeEllipse(p[0] - radius, p[1] - radius, radius * 2, radius * 2));
 					} else {
-						dl.c = col;
+						radius = 0;
 					}
-
+				}
+			}
+			if (drawSymbols) {
+				if (!atomLayout.drawThisAtom) {
+					radius = 0;
+				}
+				for (RenderLayout.AttachmentLayout attachment : atomLayout.attachments) {
+					Font fnt2 = resources.attachmentFont(g2.getFont().getStyle(), attachment.size);
+
+					Collection<Entry<String, float[]>> smap = getAttachPos(attachment.text, w, h, p, fnt2, g2,
+							attachment.cardPos, attachment.nv, Y_DISP_FRAC);
+					if (smap != null) {
+						for (Entry<String, float[]> ent : smap) {
+							DisplayLabel dl = new DisplayLabel(ent.getKey(), fnt2, ent.getValue()[0],
+									ent.getValue()[1], attachment.color);
+							toAddLabelsD.add(dl);
+						}
+					}
+				}
+				if (atomLayout.drawThisAtom) {
+					DisplayLabel dl = new DisplayLabel(sm, g2.getFont(), p[0] - w, p[1] + h, atomLayout.labelColor);
+					toAddLabelsD.add(dl);
 				}
 			}
 
 			radius = radius * DEF_FONT_GAP_PERCENT;
 
 			AtomDrawProps drawProps = new AtomDrawProps();
-			atompDProps.put(ca, drawProps);
-			drawProps.highlight = highlighted;
-			drawProps.dcolor = col;
-			drawProps.hcolor = hcol;
-			drawProps.radius = radius;
-			g2.setFont(defaultFont.deriveFont(fsize));
-			fm = g2.getFontMetrics();
+			atompDProps[i] = drawProps;
+			drawProps.highlight = atomLayout.highlighted;
+			drawProps.dcolor = atomLayout.color;
+			drawProps.hcolor = atomLayout.hcolor;
+			geom.radius[i] = radius;
 		}
+		g2.setFont(setfont);
 
 
 		g2.setColor(drawColor);
@@ -1036,14 +1165,20 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			bp.wedgeAsPoint = wedgeAsPoint;
 			bp.wedgeJoin = wedgeJoin;
 			bp.solidREC = solidREC;
-			bp.maxWedgeWidth = maxW;
+			bp.maxWedgeWidth = layout.maxWedgeWidth;
 
+			//drawing may change the bond types so work on a copy
+			//to keep the layout reusable
+			int[] bondTypes = new int[layout.bonds.size()];
+			for (int i = 0; i < bondTypes.length; i++) {
+				bondTypes[i] = layout.bonds.get(i).bondType;
+			}
 			if (highlightHalo) {
 				bp.highlightHalo = true;
-				bp.drawBonds(g2, c, toAdd, solidHalo, dashed, centerTransform, atompDProps);
+				bp.drawBonds(g2, layout, bondTypes, solidHalo, dashed, geom, atompDProps);
 			}
 			bp.highlightHalo = false;
-			bp.drawBonds(g2, c, toAdd, solid, dashed, centerTransform, atompDProps);
+			bp.drawBonds(g2, layout, bondTypes, solid, dashed, geom, atompDProps);
 
 		}
 
@@ -1064,89 +1199,35 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			g2.setColor(drawColor);
 
 			if(drawSuperatomLabels){
-				for(SGroup sgroup : c.getSGroups()){
-					if(sgroup.getType() == SGroupType.SUPERATOM_OR_ABBREVIATION){
-						sgroup.getSubscript().ifPresent( text->{
-
-							Optional<Atom> atomToUseCoordsOf = sgroup.getBonds().map(b->{
-								Atom a = b.getAtom1();
-								if(drawAtom.test(a)){
-									return b.getAtom2();
-								}else{
-									return a;
-								}
-							}).findFirst();
-							if(atomToUseCoordsOf.isPresent()){
-								double[] p = new double[2];
-								centerTransform.transform(atomToUseCoordsOf.get().getAtomCoordinates().xy(), 0, p, 0, 1);
-								String formattedText = formatSuperAtomLabel(text);
-
-								FontMetrics metrics = g2.getFontMetrics();
-								int labelWidth = metrics.stringWidth(formattedText);
-								float labelX, labelY;
-								if(text.charAt(0) =='^'){
-									//the atom coord is the END coordinate not the start
-									labelX = (float)(p[0]- labelWidth);
-								}else{
-									labelX = (float)(p[0]);
-								}
-								labelY = (float) (p[1] + metrics.getHeight()/2 );
-								drawString(g2, formattedText, labelX, labelY);
-							}
-
-						});
+				for(RenderLayout.SuperatomLabelLayout label : layout.superatomLabels){
+					double[] labelPos = new double[2];
+					centerTransform.transform(new double[] { label.x, label.y }, 0, labelPos, 0, 1);
+
+					FontMetrics metrics = g2.getFontMetrics();
+					int labelWidth = metrics.stringWidth(label.text);
+					float labelX, labelY;
+					if(label.alignEnd){
+						//the atom coord is the END coordinate not the start
+						labelX = (float)(labelPos[0]- labelWidth);
+					}else{
+						labelX = (float)(labelPos[0]);
 					}
+					labelY = (float) (labelPos[1] + metrics.getHeight()/2 );
+					drawString(g2, label.text, labelX, labelY);
 				}
 			}
 		}
 
-//		System.out.println("Before sgroup call BoundingBox = " + BoundingBox.computeBoundingBoxFor(c));
-		List<SGroup> cgs = c.getSGroups();
-//		System.out.println("sgroups = " + cgs);
-//		System.out.println("after sgroup call BoundingBox = " + BoundingBox.computeBoundingBoxFor(c));
-//
-		if (cgs != null && !cgs.isEmpty()) {
+		if (!layout.brackets.isEmpty()) {
 			g2.setFont(brafont);
-			//compute bounding boxes for brackets
-			Set<SGroup> trustedSgroupBrackets = new HashSet<>();
-			Set<SGroup> untrustedSgroupBrackets = new HashSet<>();
-			for (SGroup cg : cgs) {
-				if(cg.getType() == SGroupType.SUPERATOM_OR_ABBREVIATION){
-					//don't use bracket for SuperAtoms
-					continue;
-				}
-
-					if (cg.bracketsTrusted()) {
-						trustedSgroupBrackets.add(cg);
-					}else{
-						untrustedSgroupBrackets.add(cg);
-					}
-
+			for(RenderLayout.BracketLayout bracket : layout.brackets){
+				drawBracketedSgroup(g2, centerTransform, solidThin, resources.smallFont, bracket, bracket.computeRect(bondWidth));
 			}
-			for(SGroup sgroup: trustedSgroupBrackets){
-				Rectangle2D.Float rect = computeBracketCoordsFor(sgroup, 0);
-				if(rect == null){
-					continue;
-				}
-				drawBracketedSgroup(g2, (float) maxX, (float) maxY, (float) minX, (float) minY, centerTransform, solidThin, fsize, sgroup, rect);
-
-			}
-
-			for(SGroup sgroup: untrustedSgroupBrackets){
-				Rectangle2D.Float rect = computeBracketCoordsFor(sgroup, bondWidth);
-				if(rect == null){
-					continue;
-				}
-				drawBracketedSgroup(g2, (float) maxX, (float) maxY, (float) minX, (float) minY, centerTransform, solidThin, fsize, sgroup, rect);
-
-			}
-
 		}
 		 
 	}
 
-	private void drawBracketedSgroup(Graphics2DTemp g2, float maxX, float maxY, float minX, float minY, AffineTransformParent centerTransform, BasicStroke solidThin, float fsize, SGroup cg, Rectangle2D.Float rect) {
-		FontMetrics fm;
+	private void drawBracketedSgroup(Graphics2DTemp g2, AffineTransformParent centerTransform, BasicStroke solidThin, Font scriptFont, RenderLayout.BracketLayout bracket, Rectangle2D.Float rect) {
 		float[] coord = new float[] { 	rect.x, rect.y, rect.x,
 				rect.y + rect.height, rect.x + rect.width,
 				rect.y, rect.x + rect.width,
@@ -1155,19 +1236,9 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 
 
 		centerTransform.transform(coord, 0, ncoord, 0, 4);
-//				System.out.println("atom coords = " + Arrays.toString(coord));
-//				System.out.println("transformed coords = " + Arrays.toString(ncoord));
-//				System.out.println(cg.getType());
-
-		Rectangle2D.Float nrect = new Rectangle2D.Float(ncoord[0], ncoord[1],
-				Math.abs(ncoord[4]-ncoord[0]), Math.abs(ncoord[3]-ncoord[1]));
 
 		g2.setStroke(solidThin);
 
-		float bracketWidth= nrect.width/10;
-
-//
-
 		float len1 = (ncoord[0] - ncoord[6]) * (ncoord[0] - ncoord[6]); // +
 		// (ncoord[1]
 		// -
@@ -1178,9 +1249,6 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 		// ncoord[7]);
 
 		len1 = (float) Math.sqrt(len1) / 2;
-		float len2 = (ncoord[6] - ncoord[4]) * (ncoord[6] - ncoord[4])
-				+ (ncoord[5] - ncoord[7]) * (ncoord[5] - ncoord[7]);
-		len2 = (float) Math.sqrt(len2);
 		float bsize = .2f;
 
 
@@ -1191,42 +1259,26 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 		g2.drawP(ggen.makeLine(ncoord[4], ncoord[5], ncoord[4] - len1 * bsize, ncoord[5]));
 		g2.drawP(ggen.makeLine(ncoord[6], ncoord[7], ncoord[6] - len1 * bsize, ncoord[7]));
 
+		String subs = bracket.subscript;
+		String sups = bracket.superscript;
 
-//				System.out.println("minX " + minX + " minY = " + minY + "maxX = " + maxX + " maxY" + maxY);
-		float[] transformed = new float[4];
-
-		centerTransform.transform(new float[] {minX, minY, maxX, maxY}, 0, transformed,0, 2);
-//				System.out.println("transformed mins = " + Arrays.toString(transformed));
+		if(sups !=null || subs !=null){
+			g2.setFont(scriptFont);
 
-		Optional<String> subs = cg.getSubscript();
-		Optional<String> supsOpt = cg.getSuperscript();
-
-//				System.out.println("subs = " + subs);
-//				System.out.println("sups = " + supsOpt);
-		if(supsOpt.isPresent() && (cg.getType() == SGroupType.MULTIPLE || supsOpt.get().equals("eu")) ){
-			supsOpt = Optional.empty();
+			if(subs !=null){
+				float h2 = (float) (stringBounds(g2, g2.getFont(), subs).getHeight());
 
-		}
-
-		if(supsOpt.isPresent() || subs.isPresent()){
-			g2.setFont(defaultFont.deriveFont(fsize * 0.7f));
-			fm = g2.getFontMetrics();
-
-			if(subs.isPresent()){
-				float h2 = (float) (fm.getStringBounds(subs.get(), g2._delagate).getHeight());
-
-				drawString(g2, " " + subs.get(), ncoord[4], ncoord[5] + h2 * .33f);
+				drawString(g2, " " + subs, ncoord[4], ncoord[5] + h2 * .33f);
 			}
-			if(supsOpt.isPresent()){
-				String sups = supsOpt.get();
-				float h1 = (float) (fm.getStringBounds(sups, g2._delagate).getHeight());
+			if(sups !=null){
+				float h1 = (float) (stringBounds(g2, g2.getFont(), sups).getHeight());
 				drawString(g2, " " + sups, ncoord[6], ncoord[7] + h1 * .33f);
 			}
 		}
 	}
 
-	private static Rectangle2D.Float computeBracketCoordsFor(SGroup cg, double bondWidth){
-		Rectangle2D rt;
+	private static RenderLayout.BracketLayout computeBracketLayoutFor(SGroup cg, boolean padWithBondWidth){
+		RenderLayout.BracketLayout bracket = new RenderLayout.BracketLayout();
 		if(cg.bracketsSupported()){
 			
 			//framework implementation supports brackets so use those
@@ -1241,33 +1293,41 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 					coords.add(b.getPoint2());
 					
 				}
-	//			System.out.println("bracket cords = " + coords);
-				rt =  BoundingBox.computePaddedBoundingBoxForCoordinates(coords, 0);
-//				System.out.println("bounding box = " + rt);
-				Rectangle2D.Float r = new Rectangle2D.Float((float) rt.getX(),
+				Rectangle2D rt =  BoundingBox.computePaddedBoundingBoxForCoordinates(coords, 0);
+				bracket.fixedRect = new Rectangle2D.Float((float) rt.getX(),
 						(float) rt.getY(), (float) rt.getWidth(),
 						(float) rt.getHeight());
-				return r;
 			}
 		}
-		//fall through
-		
-		//brackets not supported or trusted
-		//compute using bounding box
-        //GSRS-1635 single atom sgroups have terminal atoms that go beyond
-        //computed bracket area so bump up the padding in those cases
-		long numCrossingBonds = cg.getBonds().collect(Collectors.counting());
-		if(numCrossingBonds >0) {
-			rt = BoundingBox.computePaddedBoundingBoxFor(cg.getAtoms()::iterator, .5F);
-		}else{
-			rt = BoundingBox.computePaddedBoundingBoxFor(cg.getAtoms()::iterator, Math.max(.5F, bondWidth/3));
+		if(bracket.fixedRect == null) {
+			//fall through
+
+			//brackets not supported or trusted
+			//compute using bounding box, the padding depends on the bond width
+			//so the final rectangle is computed when drawing
+			//GSRS-1635 single atom sgroups have terminal atoms that go beyond
+			//computed bracket area so bump up the padding in those cases
+			long numCrossingBonds = cg.getBonds().collect(Collectors.counting());
+			bracket.hasCrossingBonds = numCrossingBonds > 0;
+			bracket.padWithBondWidth = padWithBondWidth;
+
+			Rectangle2D rt = BoundingBox.computeBoundingBoxFor(cg.getAtoms()::iterator);
+			bracket.x = rt.getX();
+			bracket.y = rt.getY();
+			bracket.width = rt.getWidth();
+			bracket.height = rt.getHeight();
 		}
 
-		
-		Rectangle2D.Float r = new Rectangle2D.Float((float) rt.getX(),
-				(float) rt.getY(), (float) rt.getWidth(),
-				(float) rt.getHeight());
-		return r;
+		Optional<String> subs = cg.getSubscript();
+		Optional<String> supsOpt = cg.getSuperscript();
+
+		if(supsOpt.isPresent() && (cg.getType() == SGroupType.MULTIPLE || supsOpt.get().equals("eu")) ){
+			supsOpt = Optional.empty();
+
+		}
+		bracket.subscript = subs.orElse(null);
+		bracket.superscript = supsOpt.orElse(null);
+		return bracket;
 	}
 
 
@@ -1278,7 +1338,6 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 		float x;
 		float y;
 		ARGBColor c;
-		Atom atomGroup = null;
 
 		public DisplayLabel(String lab, Font f, float x, float y, ARGBColor c) {
 			this.dfont = f;
@@ -1293,7 +1352,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 	private static Rectangle2D drawString(Graphics2DTemp g2, String s, float x, float y) {
 		boolean glyph = true;
 		if (glyph) {
-			GlyphVector gv = g2.getFont().createGlyphVector(g2.getFontRenderContext(), s.toCharArray());
+			GlyphVector gv = GlyphCache.glyphVector(g2.getFont(), g2.getFontRenderContext(), s);
 			Rectangle2D r2 = gv.getLogicalBounds();
 			g2.drawGlyphVector(gv, x, y);
 			return new Rectangle2D.Double(r2.getMinX() + x, r2.getMinY() + y, r2.getWidth(), r2.getHeight());
@@ -1307,6 +1366,10 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 		}
 	}
 
+	private static Rectangle2D stringBounds(Graphics2DTemp g2, Font font, String s) {
+		return GlyphCache.stringBounds(font, g2.getFontRenderContext(), s);
+	}
+
 	private static String formatSuperAtomLabel(String label){
 		StringBuilder builder = new StringBuilder(label);
 		if(builder.charAt(0)=='^'){
@@ -1417,7 +1480,6 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 	}
 
 	private static class AtomDrawProps {
-		float radius;
 		ARGBColor hcolor;
 		ARGBColor dcolor;
 		boolean highlight;
@@ -1444,80 +1506,92 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 
 		Stroke solidREC;
 
-		private void drawBonds(Graphics2DTemp g2, Chemical c, List<double[]> toAdd, Stroke solid, Stroke dashed,
-				AffineTransformParent centerTransform, Map<Atom, AtomDrawProps> cprops) {
-			ARGBColor drawColor = g2.getARGBColor();
-			float resize = (float) Math.abs(centerTransform.getScaleX());
+		private final BondGeometry.Shapes shapes = new BondGeometry.Shapes();
 
-			List<LineParent> paintedLines = new ArrayList<>();
-			
-			Map<Bond,Point2DParent[]> traps = new HashMap<>();
-			Map<Bond,List<Bond>> toFix = new HashMap<>();
-			Map<Bond, ARGBColor[]> toFixCol = new HashMap<>();
+		private void drawBonds(Graphics2DTemp g2, RenderLayout layout, int[] bondTypes, Stroke solid, Stroke dashed,
+				ScreenGeometry geom, AtomDrawProps[] cprops) {
+			ARGBColor drawColor = g2.getARGBColor();
+			float resize = geom.scale;
+
+			SegmentIndex paintedLines = new SegmentIndex(resize * BONDAVG);
+			//scratch segments reused for every bond
+			double[] seg = new double[4];
+			double[] splitA = new double[4];
+			double[] splitB = new double[4];
+			//atom circles as x, y, radius
+			float[] avpt1 = new float[3];
+			float[] avpt2 = new float[3];
+			float dbcx[] = new float[2]; // double bond center x
+			float dbcy[] = new float[2]; // double bond center y
+
+			Map<Integer,double[]> traps = new HashMap<>();
+			Map<Integer,int[]> toFix = new LinkedHashMap<>();
+			Map<Integer, ARGBColor[]> toFixCol = new HashMap<>();
 			
 			
 
-			for (int k = toAdd.size()-1; k >= 0; k--) {
-				double[] xy = toAdd.get(k);// toAdd.size()-k-1)
+			for (int k = layout.bonds.size()-1; k >= 0; k--) {
+				RenderLayout.BondLayout cb = layout.bonds.get(k);
 
-				Bond cb = c.getBond((int) xy[7]);
-				float wid = (float) Math.atan2(maxWedgeWidth, cb.getBondLength());
+				float wid = (float) Math.atan2(maxWedgeWidth, cb.bondLength);
 
-				float[] rads = new float[2];
-				AtomDrawProps caprop1 = cprops.get(cb.getAtom1());
-				AtomDrawProps caprop2 = cprops.get(cb.getAtom2());
+				int atom1 = cb.atom1;
+				int atom2 = cb.atom2;
 
 				//if we are filtering out atoms such as when we replace with superatoms in Sgroups
 				//not all atoms will be in this property map but we will still draw
 				//the bond so just re-use the radius of the other side
-				if(caprop1 ==null && caprop2 ==null){
+				if(atom1 < 0 && atom2 < 0){
 					continue;
 				}
-				if(caprop1 ==null){
-					caprop1 = caprop2;
+				if(atom1 < 0){
+					atom1 = atom2;
 
-				}else if(caprop2 == null){
-					caprop2 = caprop1;
+				}else if(atom2 < 0){
+					atom2 = atom1;
 				}
-
-				rads[0] = caprop1.radius;
-				rads[1] = caprop2.radius;
-
-				float[] p1 = new float[2];
-				float[] p2 = new float[2];
-				centerTransform.transform(xy, 0, p1, 0, 1);
-				centerTransform.transform(xy, 2, p2, 0, 1);
-				float dx = (p1[0] - p2[0]);
-				float dy = (p1[1] - p2[1]);
-				float[] avpt1 = new float[] { p1[0], p1[1], rads[0] };
-				float[] avpt2 = new float[] { p2[0], p2[1], rads[1] };
+				AtomDrawProps caprop1 = cprops[atom1];
+				AtomDrawProps caprop2 = cprops[atom2];
+				float radius1 = geom.radius[atom1];
+				float radius2 = geom.radius[atom2];
+
+				int offset = k * ScreenGeometry.BOND_STRIDE;
+				float x1 = geom.bonds[offset];
+				float y1 = geom.bonds[offset + 1];
+				float x2 = geom.bonds[offset + 2];
+				float y2 = geom.bonds[offset + 3];
+				float dx = (x1 - x2);
+				float dy = (y1 - y2);
+				avpt1[0] = x1;
+				avpt1[1] = y1;
+				avpt1[2] = radius1;
+				avpt2[0] = x2;
+				avpt2[1] = y2;
+				avpt2[2] = radius2;
 
 				float dxdbl = dx / 4.f;
 				float dydbl = dy / 4.f;
 
-				float[] doubleBPos = new float[2];
-				centerTransform.transform(xy, 5, doubleBPos, 0, 1);
+				float doubleBPosX = geom.bonds[offset + 4];
+				float doubleBPosY = geom.bonds[offset + 5];
 				// is this the same as double either?
-				if (cb.getBondType() == BondType.DOUBLE && cb.getDoubleBondStereo()== Bond.DoubleBondStereo.E_OR_Z) {
-					xy[4] = -1;
+				if (cb.doubleEither) {
+					bondTypes[k] = -1;
 				}
 
 				// norm: magnitude of vector from center of single bond to
 				// center of double bond
 				float norm = DEF_DBL_BOND_GAP * resize * BONDAVG / (float) Math.sqrt((dxdbl * dxdbl + dydbl * dydbl));
-				if ((int) xy[4] == -1 || (centerAllDoubleBonds && (int) xy[4] == 2)) {
+				if (bondTypes[k] == -1 || (centerAllDoubleBonds && bondTypes[k] == 2)) {
 					norm *= .5;
-					xy[4] = -1;
+					bondTypes[k] = -1;
 				}
-				float dbcx[] = new float[2]; // double bond center x
-				float dbcy[] = new float[2]; // double bond center y
-
-				dbcx[0] = ((p1[0] - dydbl * norm) + (p2[0] - dydbl * norm)) / 2;
-				dbcy[0] = ((p1[1] + dxdbl * norm) + (p2[1] + dxdbl * norm)) / 2;
-				dbcx[1] = ((p1[0] + dydbl * norm) + (p2[0] + dydbl * norm)) / 2;
-				dbcy[1] = ((p1[1] - dxdbl * norm) + (p2[1] - dxdbl * norm)) / 2;
-				if (sqrDistance(dbcx[0], dbcy[0], doubleBPos[0], doubleBPos[1]) > sqrDistance(dbcx[1], dbcy[1],
-						doubleBPos[0], doubleBPos[1])) {
+				dbcx[0] = ((x1 - dydbl * norm) + (x2 - dydbl * norm)) / 2;
+				dbcy[0] = ((y1 + dxdbl * norm) + (y2 + dxdbl * norm)) / 2;
+				dbcx[1] = ((x1 + dydbl * norm) + (x2 + dydbl * norm)) / 2;
+				dbcy[1] = ((y1 - dxdbl * norm) + (y2 - dxdbl * norm)) / 2;
+				if (BondGeometry.sqrDistance(dbcx[0], dbcy[0], doubleBPosX, doubleBPosY) > BondGeometry.sqrDistance(dbcx[1], dbcy[1],
+						doubleBPosX, doubleBPosY)) {
 					float tx;
 					tx = dbcx[0];
 					dbcx[0] = dbcx[1];
@@ -1532,16 +1606,16 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 				 * if (caprop2.highlight) { highlightbond = true; } } }
 				 */
 
-				if ((int) xy[4] != Bond.BondType.AROMATIC.ordinal()) {
+				if (bondTypes[k] != Bond.BondType.AROMATIC.ordinal()) {
 					g2.setStroke(solid);
 				} else {
 					g2.setStroke(dashed);
-					xy[4] = Bond.BondType.DOUBLE.getOrder();
+					bondTypes[k] = Bond.BondType.DOUBLE.getOrder();
 				}
 
 				ARGBColor fromCol = drawColor;
 				ARGBColor toCol = drawColor;
-				int typ = (int) xy[4];
+				int typ = bondTypes[k];
 				if (halfColoredBonds) {
 					if (highlightHalo) {
 						fromCol = caprop2.hcolor;
@@ -1559,15 +1633,15 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 					}
 				}
 				if(wedgeJoin){
-					if(cb.getBondType().equals(BondType.SINGLE) && cb.getStereo().equals(Bond.Stereo.NONE)){
-						Point2DParent[] pp = new Point2DParent[4];
+					if(cb.singleNoStereo){
 						double dnorm = 0.5/Math.sqrt(dx*dx+dy*dy);
-						
-						pp[0]= ggen.makePoint(p1[0]+dy*dnorm*bondWidth, p1[1]-dx*dnorm*bondWidth);
-						pp[1]= ggen.makePoint(p1[0]-dy*dnorm*bondWidth, p1[1]+dx*dnorm*bondWidth);
-						pp[2]= ggen.makePoint(p2[0]-dy*dnorm*bondWidth, p2[1]+dx*dnorm*bondWidth);
-						pp[3]= ggen.makePoint(p2[0]+dy*dnorm*bondWidth, p2[1]-dx*dnorm*bondWidth);
-						traps.put(cb, pp);
+						double[] pp = new double[] {
+								x1+dy*dnorm*bondWidth, y1-dx*dnorm*bondWidth,
+								x1-dy*dnorm*bondWidth, y1+dx*dnorm*bondWidth,
+								x2-dy*dnorm*bondWidth, y2+dx*dnorm*bondWidth,
+								x2+dy*dnorm*bondWidth, y2-dx*dnorm*bondWidth
+						};
+						traps.put(cb.bondIndex, pp);
 					}
 				}
 
@@ -1575,14 +1649,14 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 				case 5:
 					if (DrawDashWedge) {
 						boolean drawLast=true;
-						if(!drawLastDashLineOnNonSymbols && caprop2.radius<0.0001f){
+						if(!drawLastDashLineOnNonSymbols && radius2<0.0001f){
 							drawLast=false;
 						}
-						drawDash(g2, ggen.makeLine(p1[0], p1[1], p2[0], p2[1]), avpt1, avpt2, wid, (int) (DEF_NUM_DASH),
+						drawDash(g2, shapes, BondGeometry.set(seg, x1, y1, x2, y2), avpt1, avpt2, wid, (int) (DEF_NUM_DASH),
 								PROP_DASH_SPACING, fromCol, toCol,drawLast);
 						
 					} else {
-						drawDashLine(g2, ggen.makeLine(p1[0], p1[1], p2[0], p2[1]), avpt1, avpt2, (int) (DEF_NUM_DASH),
+						drawDashLine(g2, shapes, BondGeometry.set(seg, x1, y1, x2, y2), avpt1, avpt2, (int) (DEF_NUM_DASH),
 								PROP_DASH_SPACING, fromCol, toCol);
 					}
 					break;
@@ -1594,32 +1668,27 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 						trapWid=bondWidth/2;						
 					}
 
-					Point2DParent[] trap= getWedgeTrapazoid(g2, ggen.makeLine(p1[0], p1[1], p2[0], p2[1]), avpt1, avpt2, wid, trapWid);
+					double[] trap= BondGeometry.wedgeTrapezoid(BondGeometry.set(seg, x1, y1, x2, y2), avpt1, avpt2, wid, trapWid);
 					
-					traps.put(cb, trap);
+					traps.put(cb.bondIndex, trap);
 					
 					boolean drawWed=true;
 					
 				
 					if(wedgeJoin){
-						if(caprop2.radius<0.0001f && 
-						   cb.getAtom2().getBondCount()>1){
-								List<Bond> obonds = cb.getAtom2().getBonds()
-							             .stream()
-							             .filter(b->!b.equals(cb))
-							             .filter(b->b.getBondType().equals(BondType.SINGLE))
-							             .filter(b->b.getStereo().equals(Bond.Stereo.UP) || b.getStereo().equals(Bond.Stereo.NONE))
-							             .collect(Collectors.toList());
-								if(obonds.size()!=0){
-									toFix.put(cb, obonds);
-									toFixCol.put(cb, new ARGBColor[]{fromCol, toCol});
+						if(radius2<0.0001f && 
+						   cb.atom2BondCount>1){
+								int[] obonds = cb.joinCandidates;
+								if(obonds.length!=0){
+									toFix.put(cb.bondIndex, obonds);
+									toFixCol.put(cb.bondIndex, new ARGBColor[]{fromCol, toCol});
 									drawWed=false;
 								}
 						}
 					}
 					
 					if(drawWed){
-						drawWedge(g2, trap, fromCol, toCol);
+						drawWedge(g2, shapes, trap, fromCol, toCol);
 					}
 					
 					
@@ -1629,57 +1698,50 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 					rat = 2f;
 
 				case 3:
-					LineParent line;
 					// is this the same as double either?
-					if (cb.getBondType() == BondType.DOUBLE && cb.getDoubleBondStereo()== Bond.DoubleBondStereo.E_OR_Z) {
+					if (cb.doubleEither) {
 
-						line = ggen.makeLine((dbcx[1] - rat * dxdbl), // x3
+						BondGeometry.set(seg, (dbcx[1] - rat * dxdbl), // x3
 								(dbcy[1] - rat * dydbl), // y3
 								(dbcx[0] + rat * dxdbl), // x2
 								(dbcy[0] + rat * dydbl)); // y2
 					} else {
-						line = ggen.makeLine((dbcx[1] - rat * dxdbl), // x3
+						BondGeometry.set(seg, (dbcx[1] - rat * dxdbl), // x3
 								(dbcy[1] - rat * dydbl), // y3
 								(dbcx[1] + rat * dxdbl), // x4
 								(dbcy[1] + rat * dydbl)); // y4
 					}
 
-					drawLine(g2, line, avpt1, avpt2, fromCol, toCol);
+					drawLine(g2, shapes, seg, avpt1, avpt2, fromCol, toCol);
 				case 2:
-					LineParent lineb;
 					// is this the same as double either?
-					if (cb.getBondType() == BondType.DOUBLE && cb.getDoubleBondStereo()== Bond.DoubleBondStereo.E_OR_Z) {
+					if (cb.doubleEither) {
 
-						lineb = ggen.makeLine((dbcx[0] - rat * dxdbl), // x1
+						BondGeometry.set(seg, (dbcx[0] - rat * dxdbl), // x1
 								(dbcy[0] - rat * dydbl), // y1
 								(dbcx[1] + rat * dxdbl), // x4
 								(dbcy[1] + rat * dydbl)); // y4
 					} else {
-						lineb = ggen.makeLine((dbcx[0] - rat * dxdbl), // x1
+						BondGeometry.set(seg, (dbcx[0] - rat * dxdbl), // x1
 								(dbcy[0] - rat * dydbl), // y1
 								(dbcx[0] + rat * dxdbl), // x2
 								(dbcy[0] + rat * dydbl)); // y2
 					}
 
-					drawLine(g2, lineb, avpt1, avpt2, fromCol, toCol);
+					drawLine(g2, shapes, seg, avpt1, avpt2, fromCol, toCol);
 
 				case 1:
 					g2.setStroke(solid);
-					if ((int) xy[4] != -1 || highlightHalo) {
-						LineParent linec = ggen.makeLine(p1[0], p1[1], p2[0], p2[1]);
-						LineParent[] newLines = getSplitLines(linec, paintedLines, bondWidth * DEF_SPLIT_RATIO);
-						if (newLines.length > 1) {
+					if (bondTypes[k] != -1 || highlightHalo) {
+						BondGeometry.set(seg, x1, y1, x2, y2);
+						if (BondGeometry.splitAtCrossing(seg, paintedLines, bondWidth * DEF_SPLIT_RATIO, splitA, splitB)) {
 							BasicStroke pstr = (BasicStroke) g2.getStroke();
 							g2.setStroke(solidREC);
-							for (LineParent lined : newLines) {
-								drawLine(g2, lined, avpt1, avpt2, toCol, fromCol);
-								// paintedLines.add(drawLine(g2,lined,avpt1,avpt2,toCol,fromCol));
-							}
+							drawLine(g2, shapes, splitA, avpt1, avpt2, toCol, fromCol);
+							drawLine(g2, shapes, splitB, avpt1, avpt2, toCol, fromCol);
 							g2.setStroke(pstr);
-						} else {
-							LineParent dLine = drawLine(g2, linec, avpt1, avpt2, toCol, fromCol);
-							if (dLine != null)
-								paintedLines.add(dLine);
+						} else if (drawLine(g2, shapes, seg, avpt1, avpt2, toCol, fromCol)) {
+							paintedLines.add(seg[0], seg[1], seg[2], seg[3]);
 						}
 					}
 
@@ -1690,74 +1752,95 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			}
 			
 			
-			for(Bond wFix:toFix.keySet()){
-				List<Bond> blist=toFix.get(wFix);
-				
-				Point2DParent[] trap=traps.get(wFix);
+			double[] possA1 = new double[2];
+			double[] possA2 = new double[2];
+			double[] possB1 = new double[2];
+			double[] possB2 = new double[2];
+			for(Integer wFix:toFix.keySet()){
+				int[] blist=toFix.get(wFix);
 				
-				LineParent l1 = ggen.makeLine(trap[1].getX(), trap[1].getY(), trap[2].getX(), trap[2].getY());
-				LineParent l2 = ggen.makeLine(trap[0].getX(), trap[0].getY(), trap[3].getX(), trap[3].getY());
+				//the sides of the wedge are 1->2 (A) and 0->3 (B)
+				double[] trap=traps.get(wFix);
+				if(trap==null){
+					continue;
+				}
 				
-				Point2DParent bestA=null;
+				boolean hasBestA=false;
+				double bestAx=0, bestAy=0;
 				double dA=Double.POSITIVE_INFINITY;
-				Point2DParent bestB=null;
+				boolean hasBestB=false;
+				double bestBx=0, bestBy=0;
 				double dB=Double.POSITIVE_INFINITY;
 				
-				double dxA = trap[2].getX() - trap[1].getX();
-				double dyA = trap[2].getY() - trap[1].getY();
-				double dxB = trap[3].getX() - trap[0].getX();
-				double dyB = trap[3].getY() - trap[0].getY();
+				double dxA = trap[4] - trap[2];
+				double dyA = trap[5] - trap[3];
+				double dxB = trap[6] - trap[0];
+				double dyB = trap[7] - trap[1];
 				
-				for(Bond obond:blist){
-					Point2DParent[] trap2=traps.get(obond);
+				for(int obond:blist){
+					double[] trap2=traps.get(obond);
 					if(trap2!=null){
-						LineParent ol1 = ggen.makeLine(trap2[1].getX(), trap2[1].getY(), trap2[2].getX(), trap2[2].getY());
-						LineParent ol2 = ggen.makeLine(trap2[0].getX(), trap2[0].getY(), trap2[3].getX(), trap2[3].getY());
-						
-						
-						Point2DParent possA1 = intersection(l1,ol1);
-						Point2DParent possA2 = intersection(l1,ol2);
-						double dA1=(possA1!=null)?sqrDistance(trap[1],possA1):0;
-						double dA2=(possA2!=null)?sqrDistance(trap[1],possA2):0;
+						boolean hasA1 = BondGeometry.intersection(trap[2], trap[3], trap[4], trap[5],
+								trap2[2], trap2[3], trap2[4], trap2[5], possA1);
+						boolean hasA2 = BondGeometry.intersection(trap[2], trap[3], trap[4], trap[5],
+								trap2[0], trap2[1], trap2[6], trap2[7], possA2);
+						double dA1=hasA1?BondGeometry.sqrDistance(trap[2], trap[3], possA1[0], possA1[1]):0;
+						double dA2=hasA2?BondGeometry.sqrDistance(trap[2], trap[3], possA2[0], possA2[1]):0;
 						
 						if(dA2>dA1){
-							possA1=possA2;
+							hasA1=true;
+							possA1[0]=possA2[0];
+							possA1[1]=possA2[1];
 							dA1=dA2;
 						}
 						
-						if(dA1<dA){
-							double tdxA = possA1.getX() - trap[1].getX();
-							double tdyA = possA1.getY() - trap[1].getY();
+						if(hasA1 && dA1<dA){
+							double tdxA = possA1[0] - trap[2];
+							double tdyA = possA1[1] - trap[3];
 							if(Math.signum(tdxA) == Math.signum(dxA) && Math.signum(tdyA) == Math.signum(dyA) ){
-							bestA=possA1;
+							hasBestA=true;
+							bestAx=possA1[0];
+							bestAy=possA1[1];
 							dA=dA1;
 							}
 						}
 						
 						
-						Point2DParent possB1 = intersection(l2,ol1);
-						Point2DParent possB2 = intersection(l2,ol2);
-						double dB1=(possB1!=null)?sqrDistance(trap[0],possB1):0;
-						double dB2=(possB2!=null)?sqrDistance(trap[0],possB2):0;
+						boolean hasB1 = BondGeometry.intersection(trap[0], trap[1], trap[6], trap[7],
+								trap2[2], trap2[3], trap2[4], trap2[5], possB1);
+						boolean hasB2 = BondGeometry.intersection(trap[0], trap[1], trap[6], trap[7],
+								trap2[0], trap2[1], trap2[6], trap2[7], possB2);
+						double dB1=hasB1?BondGeometry.sqrDistance(trap[0], trap[1], possB1[0], possB1[1]):0;
+						double dB2=hasB2?BondGeometry.sqrDistance(trap[0], trap[1], possB2[0], possB2[1]):0;
 						
 						if(dB2>dB1){
-							possB1=possB2;
+							hasB1=true;
+							possB1[0]=possB2[0];
+							possB1[1]=possB2[1];
 							dB1=dB2;
 						}
-						if(dB1<dB){
-							double tdxB = possB1.getX() - trap[0].getX();
-							double tdyB = possB1.getY() - trap[0].getY();
+						if(hasB1 && dB1<dB){
+							double tdxB = possB1[0] - trap[0];
+							double tdyB = possB1[1] - trap[1];
 							if(Math.signum(tdxB) == Math.signum(dxB) && Math.signum(tdyB) == Math.signum(dyB) ){
-							bestB=possB1;
+							hasBestB=true;
+							bestBx=possB1[0];
+							bestBy=possB1[1];
 							dB=dB1;
 							}
 						}
 					}
 				}
 				
-				if(bestA!=null)trap[2]=bestA;
-				if(bestB!=null)trap[3]=bestB;
-				drawWedge(g2, trap,toFixCol.get(wFix)[0], toFixCol.get(wFix)[1]);
+				if(hasBestA){
+					trap[4]=bestAx;
+					trap[5]=bestAy;
+				}
+				if(hasBestB){
+					trap[6]=bestBx;
+					trap[7]=bestBy;
+				}
+				drawWedge(g2, shapes, trap,toFixCol.get(wFix)[0], toFixCol.get(wFix)[1]);
 			}
 			
 		}
@@ -1772,27 +1855,28 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 		return ret;
 	}
 
-	private static int getAttachCardPos(Atom ca, String attatch, int DMASK) {
+	private static int getAttachCardPos(RenderMolecule mol, int ca, String attatch, int DMASK) {
 		int CARD = 0; // ENWS
-		AtomCoordinates coords = ca.getAtomCoordinates();
+		double x = mol.getX(ca);
+		double y = mol.getY(ca);
 		if (!attatch.equals("")) {
 			double ax = 0;
 			double ay = 0;
-			int abcount = ca.getBondCount();
+			int abcount = mol.getBondCount(ca);
 			if (abcount > 0) {
-				for (Atom cnei : ca.getNeighbors()) {
-					AtomCoordinates coords2 = cnei.getAtomCoordinates();
-					ax += coords2.getX();
-					ay += coords2.getY();
+				for (int n = mol.neighborStart(ca); n < mol.neighborEnd(ca); n++) {
+					int cnei = mol.getNeighborAtom(n);
+					ax += mol.getX(cnei);
+					ay += mol.getY(cnei);
 				}
 				ax /= (abcount);
 				ay /= (abcount);
 			} else {
 				
-				ax = coords.getX();
-				ay = coords.getY();
+				ax = x;
+				ay = y;
 			}
-			double[] dv = normVec(new double[] { ax - coords.getX(), ay - coords.getY() }, 1);
+			double[] dv = normVec(new double[] { ax - x, ay - y }, 1);
 
 			dv[0] = dv[0] - 1f / 24f;
 			List<float[]> cardDir = new ArrayList<float[]>();
@@ -1819,19 +1903,18 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 		return CARD;
 	}
 
-	private static float[] getNormVecAway(Atom ca) {
+	private static float[] getNormVecAway(RenderMolecule mol, int ca) {
 
-		int abcount = ca.getBondCount();
+		int abcount = mol.getBondCount(ca);
 
 		List<double[]> angs = new ArrayList<double[]>();
 
-		AtomCoordinates coords = ca.getAtomCoordinates();
 		if (abcount > 0) {
 
 			int i = 0;
-			for (Atom cnei : ca.getNeighbors()) {
-				AtomCoordinates cneiCoords = cnei.getAtomCoordinates();
-				angs.add(new double[] { i, coords.angleTo(cneiCoords) });
+			for (int n = mol.neighborStart(ca); n < mol.neighborEnd(ca); n++) {
+				int cnei = mol.getNeighborAtom(n);
+				angs.add(new double[] { i, Math.atan2(mol.getY(cnei) - mol.getY(ca), mol.getX(cnei) - mol.getX(ca)) });
 				i++;
 			}
 			if (abcount == 1) {
@@ -1869,7 +1952,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 	}
 
 	private static Collection<Entry<String, float[]>> getAttachPos(String attatch, float w, float h, float[] p,
-			FontMetrics fm, Graphics2DTemp g2, int CARD, float[] nv, float yDISP_FRAC) {
+			Font font, Graphics2DTemp g2, int CARD, float[] nv, float yDISP_FRAC) {
 		if (!attatch.equals("")) {
 			List<Entry<String, float[]>> entryList = new ArrayList<Entry<String, float[]>>();
 
@@ -1887,7 +1970,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 				break;
 			// LEFT
 			case 2:
-				dv[0] = (float) fm.getStringBounds(attatch, g2._delagate).getWidth();
+				dv[0] = (float) stringBounds(g2, font, attatch).getWidth();
 				dv[1] = 0;
 				break;
 			// BOTTOM
@@ -1898,7 +1981,7 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			default:
 			// non-cardinal
 			{
-				double maxx = fm.getStringBounds(attatch, g2._delagate).getWidth();
+				double maxx = stringBounds(g2, font, attatch).getWidth();
 				double minx = -2 * w;
 				double miny = -2 * h - w / 10;
 				double maxy = 2 * h + w / 10;
@@ -1919,12 +2002,14 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 			for (int i = 0; i < res.length; i++) {
 				float ydisp = 0;
 
-				if (subScriptSet.contains(res[i] + "")) {
-					ydisp = (float) fm.getStringBounds(res[i] + "", g2._delagate).getHeight() * yDISP_FRAC;
+				String ch = String.valueOf(res[i]);
+				Rectangle2D chBounds = stringBounds(g2, font, ch);
+				if (subScriptSet.contains(ch)) {
+					ydisp = (float) chBounds.getHeight() * yDISP_FRAC;
 				}
 				float[] aP1 = new float[] { (p[0] - dv[0]) - w + disp, (p[1] + dv[1]) + h + ydisp };
-				disp += (float) fm.getStringBounds(res[i] + "", g2._delagate).getWidth();
-				Entry<String, float[]> ent = new MyEntry<String, float[]>(res[i] + "", aP1);
+				disp += (float) chBounds.getWidth();
+				Entry<String, float[]> ent = new MyEntry<String, float[]>(ch, aP1);
 				entryList.add(ent);
 				// smap.
 				// smap.put(res[i]+"", aP1);
@@ -1964,202 +2049,58 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 		}
 	}
 
-	private static LineParent[] getSplitLines(LineParent startLine, Collection<LineParent> olines, double width) {
-		double s2dx = startLine.getX2() - startLine.getX1();
-		double s2dy = startLine.getY2() - startLine.getY1();
-		double s2x = startLine.getX1();
-		double s2y = startLine.getY1();
-		double pcwidth = width / Math.sqrt(s2dx * s2dx + s2dy * s2dy);
-
-		// (sx + sdx*t,sy+sdy*t) 0<t<1
-		// (s2x + s2dx*t,s2y+s2dy*t) 0<t<1
-		// s1x+s1dx*t1=s2x+s2dx*t2
-		// s1y+s1dy*t1=s2y+s2dy*t2
-		// s1x+s1dx*t1-s2x-s2dx*t2 = 0
-		// s1y+s1dy*t1-s2y-s2dy*t2 = 0
-		// s1dx*t1-s2dx*t2 = s2x - s1x
-		// s1dy*t1-s2dy*t2 = s2y - s1y
-		// [A B C D][t1 t2]'
-		// t1 = (s2dy*t2 + s2y - s1y)/s1dy;
-		// t2 = (s1dx*t1 + s2x - s1x)/s2dx;
-		// t1 = (s2dx*t2 + s2x - s1x)/s1dx;
-		// (s2dy*t2 + s2y - s1y)/s1dy = (s2dx*t2 + s2x - s1x)/s1dx;
-		// s1dy*(s2dx*t2 + s2x - s1x) = s1dx*(s2dy*t2 + s2y - s1y)
-		// s1dy*s2dx*t2 + s1dy*s2x - s1dy*s1x = s1dx*s2dy*t2 + s1dx*s2y -
-		// s1dx*s1y
-		// s1dy*s2dx*t2 - s1dx*s2dy*t2 = s1dx*s2y - s1dx*s1y - s1dy*s2x +
-		// s1dy*s1x
-		// t2 = (s1dx*s2y - s1dx*s1y - s1dy*s2x + s1dy*s1x)/(s1dy*s2dx -
-		// s1dx*s2dy)
-
-		for (LineParent oline : olines) {
-			if (oline.intersectsLine(startLine)) {
-				if (!((startLine.getX1() == oline.getX1() && startLine.getY1() == oline.getY1())
-						|| (startLine.getX2() == oline.getX1() && startLine.getY2() == oline.getY1())
-						|| (startLine.getX2() == oline.getX2() && startLine.getY2() == oline.getY2())
-						|| (startLine.getX1() == oline.getX2() && startLine.getY1() == oline.getY2()))) {
-					double s1dx = oline.getX2() - oline.getX1();
-					double s1dy = oline.getY2() - oline.getY1();
-					double s1x = oline.getX1();
-					double s1y = oline.getY1();
-					double t2 = (s1dx * s2y - s1dx * s1y - s1dy * s2x + s1dy * s1x) / (s1dy * s2dx - s1dx * s2dy);
-
-					t2 = t2 - pcwidth;
-					double px = s2x + s2dx * t2;
-					double py = s2y + s2dy * t2;
-					LineParent newline1 = ggen.makeLine(s2x, s2y, px, py);
-					t2 = t2 + 2 * pcwidth;
-					px = s2x + s2dx * t2;
-					py = s2y + s2dy * t2;
-					LineParent newline2 = ggen.makeLine(px, py, s2x + s2dx, s2y + s2dy);
-					return new LineParent[] { newline1, newline2 };
-				}
-			}
-		}
-		return new LineParent[] { startLine };
-	}
-	
-	
-	private static float ZERO_DISTANCE_TOLERANCE = 0.0001f;
-	
-	 /**
-     * return the intersection point (if any) between two lines
-     */
-    private static Point2DParent intersection (LineParent l1, LineParent l2) {
-        Point2DParent p1 = l1.getP1 (), p2 = l1.getP2 ();
-        Point2DParent p3 = l2.getP1 (), p4 = l2.getP2 ();
-
-        double c = (p1.getX () - p2.getX ()) * (p3.getY () - p4.getY ())
-            - (p1.getY () - p2.getY ()) * (p3.getX () - p4.getX ());
-
-        if (Math.abs (c) < ZERO_DISTANCE_TOLERANCE)
-            return null;
-
-
-        double x = (p1.getX () * p2.getY () - p1.getY () * p2.getX ())
-            * (p3.getX () - p4.getX ()) - (p1.getX () - p2.getX ())
-            * (p3.getX () * p4.getY () - p3.getY () * p4.getX ());
-        double y = (p1.getX () * p2.getY () - p1.getY () * p2.getX ())
-            * (p3.getY () - p4.getY ()) - (p1.getY () - p2.getY ())
-            * (p3.getX () * p4.getY () - p3.getY () * p4.getX ());
-
-        return ggen.makePoint(x / c, y / c);
-    }
-
-	private static boolean pointInCircle(double px, double py, float cir1[]) {
-		double dx = cir1[0] - px;
-		double dy = cir1[1] - py;
-		if (dx * dx + dy * dy < cir1[2]) {
-			return true;
-		}
-		return false;
-	}
-
-	private static LineParent getBoundedLine(LineParent line, float pt1[], float pt2[]) {
-		LineParent nline1 = lineCircleIntersections(line, pt1[0], pt1[1], pt1[2]);
-		nline1 = lineCircleIntersections(nline1, pt2[0], pt2[1], pt2[2]);
-		if (pointInCircle(nline1.getX1(), nline1.getY1(), pt1)) {
-			return null;
-		}
-		if (pointInCircle(nline1.getX2(), nline1.getY2(), pt2)) {
-			return null;
-		}
-		return nline1;
-	}
-
-	private static LineParent drawLine(Graphics2DTemp g, LineParent line, float pt1[], float pt2[], ARGBColor c1,
+	/**
+	 * Clip the line to the atoms and draw it, half in each color if
+	 * the colors are different.
+	 * @return {@code false} if the line was hidden by the atoms and not drawn;
+	 * otherwise line is left clipped to what was drawn.
+	 */
+	private static boolean drawLine(Graphics2DTemp g, BondGeometry.Shapes shapes, double[] line, float pt1[], float pt2[], ARGBColor c1,
 			ARGBColor c2) {
 
-		line = getBoundedLine(line, pt1, pt2);
+		boolean visible = BondGeometry.clipToAtoms(line, pt1, pt2);
 		ARGBColor c = g.getARGBColor();
-		if (line != null) {
+		if (visible) {
 			if (c1.equals(c2)) {
 				g.setColor(c1);
-				g.drawP(line);
+				g.drawd(shapes.line(line));
 			} else {
 				BasicStroke s = (BasicStroke) g.getStroke();
-				BasicStroke solidREC = new BasicStroke(s.getLineWidth(), BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER);
-				LineParent[] splits = splitLine(line);
+				BasicStroke solidREC = shapes.butt(s);
+				// split at the middle; both halves end at the midpoint
+				double dx = line[2] - line[0];
+				double dy = line[3] - line[1];
+				double mx = line[0] + dx / 2;
+				double my = line[1] + dy / 2;
+				double x1 = line[0], y1 = line[1];
+				double x2 = line[2], y2 = line[3];
 				if (c1.hashCode() < c2.hashCode()) {
-					LineParent tmp = splits[0];
-					splits[0] = splits[1];
-					splits[1] = tmp;
+					double t = x1;
+					x1 = x2;
+					x2 = t;
+					t = y1;
+					y1 = y2;
+					y2 = t;
 					ARGBColor tcol = c2;
 					c2 = c1;
 					c1 = tcol;
 				}
 				g.setColor(c1);
-				g.drawP(splits[0]);
+				g.drawd(shapes.line(x1, y1, mx, my));
 				g.setColor(c2);
-				g.drawP(splits[1]);
+				g.drawd(shapes.line(x2, y2, mx, my));
 				g.setStroke(solidREC);
-				// line1 = new
-				// LineParent.Double(line.getX1(),line.getY1(),line.getX1()+dx/2f,line.getY1()+dy/2f);
 				g.setColor(c1);
-				g.drawP(splits[0]);
+				g.drawd(shapes.line(x1, y1, mx, my));
 				g.setStroke(s);
 
 			}
 		}
 		g.setColor(c);
-		return line;
-	}
-
-	private static LineParent[] splitLine(LineParent line) {
-		double dx = line.getX2() - line.getX1();
-		double dy = line.getY2() - line.getY1();
-		LineParent line1 = ggen.makeLine(line.getX1(), line.getY1(), line.getX1() + dx / 2, line.getY1() + dy / 2);
-		LineParent line2 = ggen.makeLine(line.getX2(), line.getY2(), line.getX1() + dx / 2, line.getY1() + dy / 2);
-		return new LineParent[] { line1, line2 };
-	}
-
-	private static LineParent drawLine(Graphics2DTemp g, LineParent line, float pt1[], float pt2[]) {
-		line = getBoundedLine(line, pt1, pt2);
-		if (line != null)
-			g.drawP(line);
-		return line;
-	}
-
-	private static Point2DParent[] wedgeAngle(LineParent line, float ang) {
-		double dx = line.getX2() - line.getX1();
-		double dy = line.getY2() - line.getY1();
-		double newmag = Math.sqrt(dx * dx + dy * dy);
-		double mag = newmag / Math.cos(ang);
-		double theta = Math.atan2(dy, dx);
-		return new Point2DParent[] {
-				ggen.makePoint(line.getX1() + mag * Math.cos(theta + ang), line.getY1() + mag * Math.sin(theta + ang)),
-				ggen.makePoint(line.getX1() + mag * Math.cos(theta - ang), line.getY1() + mag * Math.sin(theta - ang)) 
-				};
+		return visible;
 	}
 
-//	private static void drawWedge(Graphics2DTemp g, LineParent line, float pt1[], float pt2[], float ang) {
-//		drawWedge(g, line, pt1, pt2, ang);
-//
-//	}
-	
-	private static Point2DParent[] getWedgeTrapazoid(Graphics2DTemp g, LineParent line, float pt1[], float pt2[], float ang, float startWidth) {
-		line = getBoundedLine(line, pt1, pt2);
-		if (line == null)
-			return null;
-		Point2DParent[] ptd = wedgeAngle(line, ang);
-		
-		double dx = line.getX2() -line.getX1();
-		double dy = line.getY2() -line.getY1();
-		double n = 1 / Math.sqrt(dx*dx+dy*dy);
-		
-		double sdx=startWidth*(dy*n);
-		double sdy=-startWidth*(dx*n);
-		
-		Point2DParent[] pp = new Point2DParent[4];
-		pp[0]= ggen.makePoint(line.getX1()+sdx, line.getY1()+sdy);
-		pp[1]= ggen.makePoint(line.getX1()-sdx, line.getY1()-sdy);
-		pp[2]= ggen.makePoint(ptd[0].getX(), ptd[0].getY());
-		pp[3]= ggen.makePoint(ptd[1].getX(), ptd[1].getY());
-		
-		return pp;
-	}
-
-	private static void drawWedge(Graphics2DTemp g, Point2DParent[] trap,
+	private static void drawWedge(Graphics2DTemp g, BondGeometry.Shapes shapes, double[] trap,
 			ARGBColor c1, ARGBColor c2) {
 		if(trap==null){
 			return;
@@ -2172,55 +2113,44 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 				split = true;
 			}
 		}
-		GeneralPathParent gp = ggen.makeGeneralPath();
-		
-		
-		gp.moveTo(trap[0].getX(), trap[0].getY());
-		gp.lineTo(trap[1].getX(), trap[1].getY());
-		gp.lineTo(trap[2].getX(), trap[2].getY());
-		gp.lineTo(trap[3].getX(), trap[3].getY());
+		GeneralPath gp = shapes.path();
+		gp.moveTo(trap[0], trap[1]);
+		gp.lineTo(trap[2], trap[3]);
+		gp.lineTo(trap[4], trap[5]);
+		gp.lineTo(trap[6], trap[7]);
 		gp.closePath();
-		g.fillP(gp);
+		g.filld(gp);
 		if (split) {
 			g.setColor(c2);
-			gp = ggen.makeGeneralPath();
-			gp.moveTo(trap[0].getX(), trap[0].getY());
-			gp.lineTo(trap[1].getX(), trap[1].getY());
-			gp.lineTo((trap[2].getX()+trap[1].getX())/2, (trap[2].getY()+trap[1].getY())/2);
-			gp.lineTo((trap[3].getX()+trap[0].getX())/2, (trap[3].getY()+trap[0].getY())/2);
+			gp = shapes.path();
+			gp.moveTo(trap[0], trap[1]);
+			gp.lineTo(trap[2], trap[3]);
+			gp.lineTo((trap[4]+trap[2])/2, (trap[5]+trap[3])/2);
+			gp.lineTo((trap[6]+trap[0])/2, (trap[7]+trap[1])/2);
 			gp.closePath();
-			g.fillP(gp);
+			g.filld(gp);
 		}
 		g.setColor(c);
 
 	}
 
-	private static void drawDash(Graphics2DTemp g, LineParent line, float pt1[], float pt2[], float ang, int NUMLINE,
+	private static void drawDash(Graphics2DTemp g, BondGeometry.Shapes shapes, double[] line, float pt1[], float pt2[], float ang, int NUMLINE,
 			boolean prop, ARGBColor c1, ARGBColor c2, boolean drawLast) {
-		line = getBoundedLine(line, pt1, pt2);
+		boolean visible = BondGeometry.clipToAtoms(line, pt1, pt2);
 		ARGBColor c = g.getARGBColor();
 		boolean split = false;
-		// if(c1!=null && c2!=null){
-		// System.out.println(c1 + " ?=" + c2);
-		// System.out.println(c1);
 		g.setColor(c2);
 		if (!c1.equals(c2)) {
 			split = true;
 		}
-		// }
-		if (line == null)
+		if (!visible)
 			return;
 		if (prop) {
-			double dx = pt2[0] - pt1[0];
-			double dy = pt2[1] - pt1[1];
-			double dx2 = line.getX2() - line.getX1();
-			double dy2 = line.getY2() - line.getY1();
-			double l1 = Math.sqrt(dx * dx + dy * dy);
-			double l2 = Math.sqrt(dx2 * dx2 + dy2 * dy2);
-			NUMLINE = (int) ((NUMLINE * l2) / l1);
+			NUMLINE = proportionalCount(line, pt1, pt2, NUMLINE);
 		}
 
-		Point2DParent[] ptd = wedgeAngle(line, ang);
+		double[] tips = shapes.tips;
+		BondGeometry.wedgeTips(line, ang, tips, 0);
 
 		for (int i = 0; i <= NUMLINE; i++) {
 			if(!drawLast){
@@ -2231,29 +2161,21 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 					g.setColor(c1);
 				}
 			}
-			LineParent lineb = ggen.makeLine(((line.getX1() * (NUMLINE - i) + ptd[0].getX() * i) / NUMLINE),
-					((line.getY1() * (NUMLINE - i) + ptd[0].getY() * i) / NUMLINE),
-					((line.getX1() * (NUMLINE - i) + ptd[1].getX() * i) / NUMLINE),
-					((line.getY1() * (NUMLINE - i) + ptd[1].getY() * i) / NUMLINE));
-			g.drawP(lineb);
-			// awLine(g, lineb, pt1, pt2);
+			g.drawd(shapes.line(((line[0] * (NUMLINE - i) + tips[0] * i) / NUMLINE),
+					((line[1] * (NUMLINE - i) + tips[1] * i) / NUMLINE),
+					((line[0] * (NUMLINE - i) + tips[2] * i) / NUMLINE),
+					((line[1] * (NUMLINE - i) + tips[3] * i) / NUMLINE)));
 		}
 		g.setColor(c);
 	}
-//
-//	private static void drawDash(Graphics2DTemp g, LineParent line, float pt1[], float pt2[], float ang, int NUMLINE,
-//			boolean prop) {
-//		drawDash(g, line, pt1, pt2, ang, NUMLINE, prop, null, null);
-//	}
 
-	private static void drawDashLine(Graphics2DTemp g, LineParent line, float pt1[], float pt2[], int NUMLINE,
+	private static void drawDashLine(Graphics2DTemp g, BondGeometry.Shapes shapes, double[] line, float pt1[], float pt2[], int NUMLINE,
 			boolean prop, ARGBColor c1, ARGBColor c2) {
-		line = getBoundedLine(line, pt1, pt2);
-		// System.out.println("LINE DASH");
+		boolean visible = BondGeometry.clipToAtoms(line, pt1, pt2);
 		ARGBColor c = g.getARGBColor();
 		g.setColor(c2);
 
-		if (line == null)
+		if (!visible)
 			return;
 		boolean split = false;
 
@@ -2263,15 +2185,8 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 		}
 
 		if (prop) {
-			double dx = pt2[0] - pt1[0];
-			double dy = pt2[1] - pt1[1];
-			double dx2 = line.getX2() - line.getX1();
-			double dy2 = line.getY2() - line.getY1();
-			double l1 = Math.sqrt(dx * dx + dy * dy);
-			double l2 = Math.sqrt(dx2 * dx2 + dy2 * dy2);
-			NUMLINE = (int) ((NUMLINE * l2) / l1);
+			NUMLINE = proportionalCount(line, pt1, pt2, NUMLINE);
 		}
-		// NUMLINE=2;
 
 		for (int i = 0; i < NUMLINE * 2; i += 2) {
 			if (split) {
@@ -2280,136 +2195,26 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 						g.setColor(c1);
 				}
 			}
-			LineParent lineb = ggen.makeLine(
-					(line.getX1() * (NUMLINE * 2 - (i + .75)) + line.getX2() * (i + .75)) / (NUMLINE * 2),
-					(line.getY1() * (NUMLINE * 2 - (i + .75)) + line.getY2() * (i + .75)) / (NUMLINE * 2),
-					(line.getX1() * (NUMLINE * 2 - (i + 1.25)) + line.getX2() * (i + 1.25)) / (NUMLINE * 2),
-					(line.getY1() * (NUMLINE * 2 - (i + 1.25)) + line.getY2() * (i + 1.25)) / (NUMLINE * 2));
-			g.drawP(lineb);
-			// drawLine(g, lineb, pt1, pt2);
+			g.drawd(shapes.line(
+					(line[0] * (NUMLINE * 2 - (i + .75)) + line[2] * (i + .75)) / (NUMLINE * 2),
+					(line[1] * (NUMLINE * 2 - (i + .75)) + line[3] * (i + .75)) / (NUMLINE * 2),
+					(line[0] * (NUMLINE * 2 - (i + 1.25)) + line[2] * (i + 1.25)) / (NUMLINE * 2),
+					(line[1] * (NUMLINE * 2 - (i + 1.25)) + line[3] * (i + 1.25)) / (NUMLINE * 2)));
 		}
 		g.setColor(c);
 	}
 
-
-
-	private static LineParent lineCircleIntersections(LineParent line, float Cx, float Cy, float R) {
-		// if(true)return line;
-		if (line == null)
-			return null;
-		double[] line2 = lineCircleIntersections(line.getX1(), line.getY1(), line.getX2(), line.getY2(), Cx, Cy, R);
-		if (line2 == null)
-			return null;
-		return ggen.makeLine(line2[0], line2[1], line2[2], line2[3]);
-	}
-
-	private static double[] lineCircleIntersections(double Ax, double Ay, double Bx, double By, double Cx, double Cy,
-			double R) {
-		double[] is1 = new double[2];
-		double[] is2 = new double[2];
-		boolean achange = false;
-		boolean bchange = false;
-		double nax = Ax;
-		double nay = Ay;
-		double nbx = Bx;
-		double nby = By;
-
-		double LAB = (double) Math.sqrt((Bx - Ax) * (Bx - Ax) + (By - Ay) * (By - Ay));
-
-		// compute the direction vector D from A to B
-		double Dx = (Bx - Ax) / LAB;
-		double Dy = (By - Ay) / LAB;
-
-		// Now the line equation is x = Dx*t + Ax, y = Dy*t + Ay with 0 <= t <=
-		// 1.
-
-		// compute the value t of the closest point to the circle center (Cx,
-		// Cy)
-		double t = Dx * (Cx - Ax) + Dy * (Cy - Ay);
-
-		// This is the projection of C on the line from A to B.
-
-		// compute the coordinates of the point E on line and closest to C
-		double Ex = t * Dx + Ax;
-		double Ey = t * Dy + Ay;
-
-		// compute the euclidean distance from E to C
-		double LEC = (double) Math.sqrt((Ex - Cx) * (Ex - Cx) + (Ey - Cy) * (Ey - Cy));
-
-		// test if the line intersects the circle
-		if (LEC < R) {
-			// compute distance from t to circle intersection point
-			double dt = (double) Math.sqrt(R * R - LEC * LEC);
-			is1[0] = Ex + dt * Dx;
-			is1[1] = Ey + dt * Dy;
-
-			if (between(is1[0], Ax, Bx) && between(is1[1], Ay, By)) {
-				double dax = Cx - Ax;
-				double day = Cy - Ay;
-				double dbx = Cx - Bx;
-				double dby = Cy - By;
-				double da = dax * dax + day * day;
-				double db = dbx * dbx + dby * dby;
-				if (da < db) {
-					achange = true;
-					nax = is1[0];
-					nay = is1[1];
-				} else {
-					bchange = true;
-					nbx = is1[0];
-					nby = is1[1];
-				}
-			}
-			is2[0] = Ex - dt * Dx;
-			is2[1] = Ey - dt * Dy;
-			if (between(is2[0], Ax, Bx) && between(is2[1], Ay, By)) {
-				if (achange) {
-					bchange = true;
-					nbx = is2[0];
-					nby = is2[1];
-				} else if (bchange) {
-					achange = true;
-					nax = is2[0];
-					nay = is2[1];
-				} else {
-					double dax = Cx - Ax;
-					double day = Cy - Ay;
-					double dbx = Cx - Bx;
-					double dby = Cy - By;
-					double da = dax * dax + day * day;
-					double db = dbx * dbx + dby * dby;
-
-					if (da < db) {
-						achange = true;
-						nax = is2[0];
-						nay = is2[1];
-					} else {
-						bchange = true;
-						nbx = is2[0];
-						nby = is2[1];
-					}
-				}
-			}
-			// if(!achange && !bchange)
-			// return null;
-		}
-
-		// else test if the line is tangent to circle
-		else if (LEC == R) {
-			// tangent point to circle is E
-
-		} else {
-			// line doesn't touch circle
-		}
-		// if(achange && bchange)
-		// return null;
-
-		return new double[] { nax, nay, nbx, nby };
-
-	}
-
-	private static boolean between(double x, double a, double b) {
-		return (x >= a && x <= b) || (x <= a && x >= b);
+	/**
+	 * Scale the number of dashes by how much of the bond is left after clipping.
+	 */
+	private static int proportionalCount(double[] line, float pt1[], float pt2[], int NUMLINE) {
+		double dx = pt2[0] - pt1[0];
+		double dy = pt2[1] - pt1[1];
+		double dx2 = line[2] - line[0];
+		double dy2 = line[3] - line[1];
+		double l1 = Math.sqrt(dx * dx + dy * dy);
+		double l2 = Math.sqrt(dx2 * dx2 + dy2 * dy2);
+		return (int) ((NUMLINE * l2) / l1);
 	}
 
 	private static double[] normVec(double[] v, double L) {
@@ -2421,14 +2226,6 @@ class NchemicalRenderer extends AbstractChemicalRenderer {
 		return new double[] { v[0] * mul, v[1] * mul };
 	}
 
-	private static double sqrDistance(double c1, double c12, double c2, double c22) {
-		return (c1 - c2) * (c1 - c2) + (c12 - c22) * (c12 - c22);
-	}
-	
-	private static double sqrDistance(Point2DParent p1, Point2DParent p2) {
-		return sqrDistance(p1.getX(),p1.getY(),p2.getX(),p2.getY());
-	}
-
 	private String getRGroupText(int i) {
 		switch (i) {
 		case 90:
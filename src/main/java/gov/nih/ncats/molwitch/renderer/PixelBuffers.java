@@ -0,0 +1,173 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+
+/**
+ * Wraps pixel memory owned by the caller in a {@link BufferedImage}
+ * so it can be drawn into directly without making a new image and copying it.
+ * Arrays are wrapped as they are so only the small image and raster objects are made.
+ * Buffers that aren't backed by an array, like direct {@link ByteBuffer}s, can't be wrapped:
+ * {@link #copyRgba(ByteBuffer, int, int, int, int)} copies the area out into a new array of
+ * {@code width * height * 4} bytes and {@link #putRgba(byte[], ByteBuffer, int, int, int, int)}
+ * copies it back.
+ */
+final class PixelBuffers {
+
+	private static final int[] ARGB_MASKS = { 0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000 };
+
+	private static final ColorModel RGBA = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+			true, false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+
+	private PixelBuffers() {
+		//can not instantiate
+	}
+
+	/**
+	 * Wrap an area of an array of non-premultiplied ARGB pixels,
+	 * the same layout as {@link BufferedImage#TYPE_INT_ARGB}.
+	 * @param pixels the pixels.
+	 * @param offset the index of the top left pixel of the area.
+	 * @param scanlineStride the number of array elements from one row to the next.
+	 * @param width the width of the area.
+	 * @param height the height of the area.
+	 * @return a new image drawing into the given array.
+	 * @throws IllegalArgumentException if the area does not fit in the array.
+	 */
+	static BufferedImage wrapArgb(int[] pixels, int offset, int scanlineStride, int width, int height) {
+		checkArea(pixels.length, offset, scanlineStride, 1, width, height);
+		DataBufferInt buffer = new DataBufferInt(pixels, pixels.length - offset, offset);
+		SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT,
+				width, height, scanlineStride, ARGB_MASKS);
+		WritableRaster raster = Raster.createWritableRaster(sampleModel, buffer, new Point(0, 0));
+		return new BufferedImage(ColorModel.getRGBdefault(), raster, false, null);
+	}
+
+	/**
+	 * Wrap an area of an array of non-premultiplied pixels
+	 * stored as 4 bytes in R, G, B, A order.
+	 * @param bytes the pixels.
+	 * @param offset the index of the first byte of the top left pixel of the area.
+	 * @param scanlineStride the number of bytes from one row to the next.
+	 * @param width the width of the area.
+	 * @param height the height of the area.
+	 * @return a new image drawing into the given array.
+	 * @throws IllegalArgumentException if the area does not fit in the array.
+	 */
+	static BufferedImage wrapRgba(byte[] bytes, int offset, int scanlineStride, int width, int height) {
+		checkArea(bytes.length, offset, scanlineStride, 4, width, height);
+		//Java2D ignores the offset of a DataBufferByte in some loops
+		//so the offset goes into the band offsets instead
+		DataBufferByte buffer = new DataBufferByte(bytes, bytes.length);
+		PixelInterleavedSampleModel sampleModel = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE,
+				width, height, 4, scanlineStride, new int[] { offset, offset + 1, offset + 2, offset + 3 });
+		WritableRaster raster = Raster.createWritableRaster(sampleModel, buffer, new Point(0, 0));
+		return new BufferedImage(RGBA, raster, false, null);
+	}
+
+	/**
+	 * Wrap an area of a raster.
+	 * @param raster the raster.
+	 * @param colorModel the color model of the raster's pixels.
+	 * @param x the left of the area in the raster's coordinates.
+	 * @param y the top of the area in the raster's coordinates.
+	 * @param width the width of the area.
+	 * @param height the height of the area.
+	 * @return a new image drawing into the given raster.
+	 * @throws IllegalArgumentException if the area is not inside the raster
+	 * or the raster does not match the color model.
+	 */
+	static BufferedImage wrap(WritableRaster raster, ColorModel colorModel, int x, int y, int width, int height) {
+		if (!colorModel.isCompatibleRaster(raster)) {
+			throw new IllegalArgumentException("raster is not compatible with " + colorModel);
+		}
+		if (width < 1 || height < 1 || x < raster.getMinX() || y < raster.getMinY()
+				|| x + width > raster.getMinX() + raster.getWidth()
+				|| y + height > raster.getMinY() + raster.getHeight()) {
+			throw new IllegalArgumentException("area " + width + "x" + height + " at (" + x + "," + y
+					+ ") is not inside the raster");
+		}
+		WritableRaster child = raster.createWritableChild(x, y, width, height, 0, 0, null);
+		return new BufferedImage(colorModel, child, colorModel.isAlphaPremultiplied(), null);
+	}
+
+	/**
+	 * Check an area of RGBA pixels fits in the capacity of the given buffer.
+	 * @throws IllegalArgumentException if it does not.
+	 */
+	static void checkRgba(ByteBuffer buffer, int offset, int scanlineStride, int width, int height) {
+		checkArea(buffer.capacity(), offset, scanlineStride, 4, width, height);
+	}
+
+	/**
+	 * Copy an area of RGBA pixels out of a buffer into a tightly packed array.
+	 * The position and limit of the buffer are not changed.
+	 * @return a new array of {@code width * height * 4} bytes.
+	 */
+	static byte[] copyRgba(ByteBuffer buffer, int offset, int scanlineStride, int width, int height) {
+		int rowLength = width * 4;
+		byte[] bytes = new byte[rowLength * height];
+		ByteBuffer src = buffer.duplicate();
+		for (int row = 0; row < height; row++) {
+			src.clear().position(offset + row * scanlineStride);
+			src.get(bytes, row * rowLength, rowLength);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Copy tightly packed RGBA pixels back into an area of a buffer, the reverse of
+	 * {@link #copyRgba(ByteBuffer, int, int, int, int)}.
+	 */
+	static void putRgba(byte[] bytes, ByteBuffer buffer, int offset, int scanlineStride, int width, int height) {
+		int rowLength = width * 4;
+		ByteBuffer dest = buffer.duplicate();
+		for (int row = 0; row < height; row++) {
+			dest.clear().position(offset + row * scanlineStride);
+			dest.put(bytes, row * rowLength, rowLength);
+		}
+	}
+
+	private static void checkArea(int length, int offset, int scanlineStride, int pixelSize, int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("width and height must be > 0");
+		}
+		if (offset < 0 || scanlineStride < width * pixelSize) {
+			throw new IllegalArgumentException("offset must be >= 0 and scanline stride must be at least the width");
+		}
+		if (offset + (long) (height - 1) * scanlineStride + (long) width * pixelSize > length) {
+			throw new IllegalArgumentException("area " + width + "x" + height + " at offset " + offset
+					+ " with stride " + scanlineStride + " does not fit in " + length + " elements");
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import gov.nih.ncats.molwitch.Chemical;
+
+/**
+ * The size independent result of laying out a {@link Chemical} for rendering.
+ * All the chemistry perception (stereo centers, ring and double bond placement,
+ * which atoms get labels and where their attachments go, superatom labels and
+ * SGroup brackets) is done once when the layout is computed and everything
+ * is stored in the Chemical's own coordinate space.  The same layout
+ * can then be painted any number of times onto any {@link java.awt.Graphics2D}
+ * at any size using {@link ChemicalRenderer#render(java.awt.Graphics2D, RenderLayout, int, int, int, int, boolean)}
+ * or {@link ChemicalRenderer#createImage(RenderLayout, int, int, boolean)}.
+ *
+ * <p>
+ * A layout reflects the {@link RendererOptions} of the renderer at the time
+ * it was computed; if the options change, the layout should be recomputed.
+ * </p>
+ *
+ * @see ChemicalRenderer#computeLayout(Chemical)
+ */
+public final class RenderLayout {
+
+	static final int FONT_PLAIN = 0;
+	static final int FONT_SMALL = 1;
+	static final int FONT_BOLD = 2;
+
+	private final Chemical chemical;
+
+	boolean empty;
+	String sequence;
+
+	float bondAverage;
+	double maxWedgeWidth;
+
+	double minX, minY, maxX, maxY;
+
+	ARGBColor drawColor;
+
+	final List<BondLayout> bonds;
+	final List<AtomLayout> atoms;
+	final List<SuperatomLabelLayout> superatomLabels;
+	final List<BracketLayout> brackets;
+
+	RenderLayout(Chemical chemical) {
+		this.chemical = Objects.requireNonNull(chemical);
+		bonds = new ArrayList<>();
+		atoms = new ArrayList<>();
+		superatomLabels = new ArrayList<>();
+		brackets = new ArrayList<>();
+	}
+
+	private RenderLayout(RenderLayout copy, Chemical chemical) {
+		this.chemical = Objects.requireNonNull(chemical);
+		empty = copy.empty;
+		sequence = copy.sequence;
+		bondAverage = copy.bondAverage;
+		maxWedgeWidth = copy.maxWedgeWidth;
+		minX = copy.minX;
+		minY = copy.minY;
+		maxX = copy.maxX;
+		maxY = copy.maxY;
+		drawColor = copy.drawColor;
+		bonds = copy.bonds;
+		atoms = copy.atoms;
+		superatomLabels = copy.superatomLabels;
+		brackets = copy.brackets;
+	}
+
+	/**
+	 * Get a layout that shares all the geometry of this layout
+	 * but reports the given Chemical (which is used for captions).
+	 * Layouts are never modified once computed so the geometry
+	 * can be safely shared.
+	 */
+	RenderLayout withChemical(Chemical chemical) {
+		if (chemical == this.chemical) {
+			return this;
+		}
+		return new RenderLayout(this, chemical);
+	}
+
+	/**
+	 * The Chemical this layout was computed for.  This is used
+	 * to get the name, properties and captions when painting.
+	 * @return the Chemical; will never be null.
+	 */
+	public Chemical getChemical() {
+		return chemical;
+	}
+
+	/**
+	 * Does this layout have anything to draw.
+	 * @return {@code true} if the Chemical had no atoms.
+	 */
+	public boolean isEmpty() {
+		return empty;
+	}
+
+	/**
+	 * The number of atoms that will be drawn.  Atoms hidden
+	 * inside superatom labels are not counted.
+	 * @return the number of atoms in the layout.
+	 */
+	public int getAtomCount() {
+		return atoms.size();
+	}
+
+	/**
+	 * The number of bonds that will be drawn.
+	 * @return the number of bonds in the layout.
+	 */
+	public int getBondCount() {
+		return bonds.size();
+	}
+
+	static final class AtomLayout {
+		double x, y;
+		String symbol;
+		int font = FONT_PLAIN;
+		boolean drawThisAtom;
+		boolean highlighted;
+		/**
+		 * the halo color or null if no halo is drawn.
+		 */
+		ARGBColor haloColor;
+		ARGBColor color;
+		ARGBColor hcolor;
+		ARGBColor labelColor;
+		final List<AttachmentLayout> attachments = new ArrayList<>();
+	}
+
+	static final class AttachmentLayout {
+		String text;
+		float size;
+		ARGBColor color;
+		/**
+		 * the cardinal position ENWS or -1 if non-cardinal in which case
+		 * {@link #nv} is the direction away from the neighbors.
+		 */
+		int cardPos;
+		float[] nv;
+	}
+
+	static final class BondLayout {
+		double x1, y1, x2, y2;
+		int bondType;
+		double nx, ny;
+		int bondIndex;
+
+		int atom1 = -1;
+		int atom2 = -1;
+		double bondLength;
+		boolean doubleEither;
+		boolean singleNoStereo;
+		int atom2BondCount;
+		int[] joinCandidates;
+	}
+
+	static final class SuperatomLabelLayout {
+		String text;
+		boolean alignEnd;
+		double x, y;
+	}
+
+	static final class BracketLayout {
+		Rectangle2D.Float fixedRect;
+		double x, y, width, height;
+		boolean padWithBondWidth;
+		boolean hasCrossingBonds;
+
+		String subscript;
+		String superscript;
+
+		Rectangle2D.Float computeRect(float bondWidth) {
+			if (fixedRect != null) {
+				return fixedRect;
+			}
+			double padding;
+			if (hasCrossingBonds) {
+				padding = .5F;
+			} else {
+				padding = Math.max(.5F, (padWithBondWidth ? (double) bondWidth : 0) / 3);
+			}
+			double doublePadding = padding * 2;
+			return new Rectangle2D.Float((float) (x - padding), (float) (y - padding),
+					(float) (width + doublePadding), (float) (height + doublePadding));
+		}
+	}
+}
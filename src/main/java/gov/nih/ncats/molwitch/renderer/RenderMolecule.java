@@ -0,0 +1,318 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+
+import gov.nih.ncats.molwitch.Atom;
+import gov.nih.ncats.molwitch.AtomCoordinates;
+import gov.nih.ncats.molwitch.Bond;
+import gov.nih.ncats.molwitch.Chemical;
+
+/**
+ * An immutable snapshot of the parts of a {@link Chemical}
+ * that {@link NchemicalRenderer#computeLayout(Chemical)} reads,
+ * copied out of the molwitch objects once into plain arrays
+ * indexed by atom and bond index.
+ *
+ * <p>
+ * The neighbors of each atom are kept in compressed rows:
+ * the neighbors of atom {@code i} are at positions
+ * {@link #neighborStart(int)} to {@link #neighborEnd(int)} (exclusive)
+ * in the same order the atom's {@link Atom#getBonds()} returned them.
+ * </p>
+ * <p>
+ * Nothing here refers back to the Chemical or its backend objects
+ * so a snapshot can be kept around and read by several threads at once.
+ * </p>
+ */
+final class RenderMolecule {
+	/**
+	 * Value of {@link #getAtomToAtomMap(int, int)} and {@link #getRGroupIndex(int)}
+	 * lookups that are not set.
+	 */
+	private static final int NONE = Integer.MIN_VALUE;
+
+	private final int atomCount;
+	private final int bondCount;
+
+	private final double[] x;
+	private final double[] y;
+	private final int[] atomicNumber;
+	private final String[] symbol;
+	private final String[] alias;
+	private final int[] charge;
+	private final int[] radical;
+	private final int[] implicitHCount;
+	private final int[] massNumber;
+	private final boolean[] isotope;
+	private final boolean[] query;
+	private final int[] atomToAtomMap;
+	private final int[] rGroupIndex;
+
+	private final int[] bondAtom1;
+	private final int[] bondAtom2;
+	private final Bond.BondType[] bondType;
+	private final Bond.Stereo[] bondStereo;
+	private final Bond.DoubleBondStereo[] doubleBondStereo;
+	private final boolean[] bondInRing;
+
+	private final int[] neighborStart;
+	private final int[] neighborAtom;
+	private final int[] neighborBond;
+
+	private RenderMolecule(int atomCount, int bondCount, int neighborCount) {
+		this.atomCount = atomCount;
+		this.bondCount = bondCount;
+
+		x = new double[atomCount];
+		y = new double[atomCount];
+		atomicNumber = new int[atomCount];
+		symbol = new String[atomCount];
+		alias = new String[atomCount];
+		charge = new int[atomCount];
+		radical = new int[atomCount];
+		implicitHCount = new int[atomCount];
+		massNumber = new int[atomCount];
+		isotope = new boolean[atomCount];
+		query = new boolean[atomCount];
+		atomToAtomMap = new int[atomCount];
+		rGroupIndex = new int[atomCount];
+
+		bondAtom1 = new int[bondCount];
+		bondAtom2 = new int[bondCount];
+		bondType = new Bond.BondType[bondCount];
+		bondStereo = new Bond.Stereo[bondCount];
+		doubleBondStereo = new Bond.DoubleBondStereo[bondCount];
+		bondInRing = new boolean[bondCount];
+
+		neighborStart = new int[atomCount + 1];
+		neighborAtom = new int[neighborCount];
+		neighborBond = new int[neighborCount];
+	}
+
+	/**
+	 * Take a snapshot of the given Chemical.  This walks every atom and bond
+	 * once and should be done after coordinates have been generated.
+	 * @param c the Chemical to copy; can not be null.
+	 * @return a new RenderMolecule.
+	 */
+	static RenderMolecule of(Chemical c) {
+		int atomCount = c.getAtomCount();
+		int bondCount = c.getBondCount();
+
+		//backend objects are only used as keys while building the snapshot
+		Map<Atom, Integer> atomIndex = new HashMap<>(atomCount * 2);
+		Atom[] atoms = new Atom[atomCount];
+		int i = 0;
+		for (Atom a : c.getAtoms()) {
+			atoms[i] = a;
+			atomIndex.put(a, i++);
+		}
+		Map<Bond, Integer> bondIndex = new HashMap<>(bondCount * 2);
+		Bond[] bonds = new Bond[bondCount];
+		i = 0;
+		for (Bond b : c.getBonds()) {
+			bonds[i] = b;
+			bondIndex.put(b, i++);
+		}
+		List<List<? extends Bond>> atomBonds = new ArrayList<>(atomCount);
+		int neighborCount = 0;
+		for (i = 0; i < atomCount; i++) {
+			List<? extends Bond> bondsOfAtom = atoms[i].getBonds();
+			atomBonds.add(bondsOfAtom);
+			neighborCount += bondsOfAtom.size();
+		}
+
+		RenderMolecule mol = new RenderMolecule(atomCount, bondCount, neighborCount);
+		int n = 0;
+		for (i = 0; i < atomCount; i++) {
+			Atom a = atoms[i];
+			AtomCoordinates coords = a.getAtomCoordinates();
+			mol.x[i] = coords.getX();
+			mol.y[i] = coords.getY();
+			mol.atomicNumber[i] = a.getAtomicNumber();
+			mol.symbol[i] = a.getSymbol();
+			mol.alias[i] = a.getAlias().orElse(null);
+			mol.charge[i] = a.getCharge();
+			mol.radical[i] = a.getRadical();
+			mol.implicitHCount[i] = a.getImplicitHCount();
+			mol.isotope[i] = a.isIsotope();
+			mol.massNumber[i] = mol.isotope[i] ? a.getMassNumber() : 0;
+			mol.query[i] = a.isQueryAtom();
+			mol.atomToAtomMap[i] = a.getAtomToAtomMap().orElse(NONE);
+			OptionalInt rGroup = a.getRGroupIndex();
+			mol.rGroupIndex[i] = rGroup.isPresent() ? rGroup.getAsInt() : NONE;
+
+			mol.neighborStart[i] = n;
+			for (Bond b : atomBonds.get(i)) {
+				mol.neighborAtom[n] = indexOf(atomIndex, b.getOtherAtom(a));
+				mol.neighborBond[n] = indexOf(bondIndex, b);
+				n++;
+			}
+		}
+		mol.neighborStart[atomCount] = n;
+
+		for (i = 0; i < bondCount; i++) {
+			Bond b = bonds[i];
+			mol.bondAtom1[i] = indexOf(atomIndex, b.getAtom1());
+			mol.bondAtom2[i] = indexOf(atomIndex, b.getAtom2());
+			mol.bondType[i] = b.getBondType();
+			mol.bondStereo[i] = b.getStereo();
+			mol.doubleBondStereo[i] = b.getDoubleBondStereo();
+			mol.bondInRing[i] = b.isInRing();
+		}
+		return mol;
+	}
+
+	private static <T> int indexOf(Map<T, Integer> map, T key) {
+		Integer index = map.get(key);
+		return index == null ? -1 : index;
+	}
+
+	int getAtomCount() {
+		return atomCount;
+	}
+
+	int getBondCount() {
+		return bondCount;
+	}
+
+	double getX(int atom) {
+		return x[atom];
+	}
+
+	double getY(int atom) {
+		return y[atom];
+	}
+
+	int getAtomicNumber(int atom) {
+		return atomicNumber[atom];
+	}
+
+	String getSymbol(int atom) {
+		return symbol[atom];
+	}
+
+	/**
+	 * @return the alias of the atom or {@code null} if it doesn't have one.
+	 */
+	String getAlias(int atom) {
+		return alias[atom];
+	}
+
+	int getCharge(int atom) {
+		return charge[atom];
+	}
+
+	int getRadical(int atom) {
+		return radical[atom];
+	}
+
+	int getImplicitHCount(int atom) {
+		return implicitHCount[atom];
+	}
+
+	boolean isIsotope(int atom) {
+		return isotope[atom];
+	}
+
+	/**
+	 * @return the mass number of an isotope or 0 if the atom is not an isotope.
+	 */
+	int getMassNumber(int atom) {
+		return massNumber[atom];
+	}
+
+	boolean isQueryAtom(int atom) {
+		return query[atom];
+	}
+
+	int getAtomToAtomMap(int atom, int defaultValue) {
+		int map = atomToAtomMap[atom];
+		return map == NONE ? defaultValue : map;
+	}
+
+	OptionalInt getRGroupIndex(int atom) {
+		int index = rGroupIndex[atom];
+		return index == NONE ? OptionalInt.empty() : OptionalInt.of(index);
+	}
+
+	int getBondCount(int atom) {
+		return neighborStart[atom + 1] - neighborStart[atom];
+	}
+
+	int neighborStart(int atom) {
+		return neighborStart[atom];
+	}
+
+	int neighborEnd(int atom) {
+		return neighborStart[atom + 1];
+	}
+
+	/**
+	 * @param n a position between {@link #neighborStart(int)} and {@link #neighborEnd(int)}.
+	 * @return the index of the neighboring atom or -1 if the bond goes to an atom not in the Chemical.
+	 */
+	int getNeighborAtom(int n) {
+		return neighborAtom[n];
+	}
+
+	/**
+	 * @param n a position between {@link #neighborStart(int)} and {@link #neighborEnd(int)}.
+	 * @return the index of the bond to the neighboring atom.
+	 */
+	int getNeighborBond(int n) {
+		return neighborBond[n];
+	}
+
+	int getAtom1(int bond) {
+		return bondAtom1[bond];
+	}
+
+	int getAtom2(int bond) {
+		return bondAtom2[bond];
+	}
+
+	Bond.BondType getBondType(int bond) {
+		return bondType[bond];
+	}
+
+	Bond.Stereo getStereo(int bond) {
+		return bondStereo[bond];
+	}
+
+	Bond.DoubleBondStereo getDoubleBondStereo(int bond) {
+		return doubleBondStereo[bond];
+	}
+
+	boolean isInRing(int bond) {
+		return bondInRing[bond];
+	}
+
+	double getBondLength(int bond) {
+		double dx = x[bondAtom1[bond]] - x[bondAtom2[bond]];
+		double dy = y[bondAtom1[bond]] - y[bondAtom2[bond]];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+}
@@ -0,0 +1,387 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+import gov.nih.ncats.molwitch.Chemical;
+
+/**
+ * Renders every record of a multi-record SD file or SMILES list
+ * and sends the encoded images to a {@link RenderSink}.
+ * The input is read incrementally by the calling thread
+ * into a bounded queue which is drained by a fixed number
+ * of worker threads that parse, render and encode each record,
+ * so memory use depends on the queue capacity and number of threads,
+ * not on the size of the input.
+ *
+ * <pre>
+ * RenderPipeline pipeline = new RenderPipeline(renderer)
+ *                                  .setSize(300, 300)
+ *                                  .setFormat("png");
+ * try(RenderSink sink = RenderSink.toZip(new FileOutputStream("thumbs.zip"), "png")){
+ *     RenderPipeline.Summary summary = pipeline.renderSdf(new File("export.sdf"), sink);
+ * }
+ * </pre>
+ *
+ * Records that can not be parsed or rendered, including ones that throw an {@link Error}
+ * like a {@link StackOverflowError}, are passed to
+ * {@link RenderSink#failed(int, String, Throwable)} and do not stop the pipeline.
+ * Only exceptions thrown by the sink and {@link VirtualMachineError}s like
+ * running out of memory stop it.
+ */
+public final class RenderPipeline {
+
+	private static final Record END = new Record(-1, null);
+
+	private final ChemicalRenderer renderer;
+
+	private int width = 300;
+	private int height = 300;
+	private boolean round = true;
+	private String formatName = "png";
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int queueCapacity = 256;
+
+	public RenderPipeline(ChemicalRenderer renderer) {
+		this.renderer = Objects.requireNonNull(renderer);
+	}
+
+	public RenderPipeline setSize(int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("width and height must be > 0");
+		}
+		this.width = width;
+		this.height = height;
+		return this;
+	}
+
+	public RenderPipeline setRounded(boolean round) {
+		this.round = round;
+		return this;
+	}
+
+	/**
+	 * Set the image format to encode to.
+	 * @param formatName the informal {@link ImageIO} name of the format like "png" or "jpeg",
+	 * or {@link ChemicalRenderer#SVG_FORMAT "svg"}.
+	 * @return this
+	 * @throws IllegalArgumentException if there is no ImageIO writer for this format.
+	 */
+	public RenderPipeline setFormat(String formatName) {
+		if (!ChemicalRenderer.SVG_FORMAT.equalsIgnoreCase(formatName)
+				&& !ImageIO.getImageWritersByFormatName(formatName).hasNext()) {
+			throw new IllegalArgumentException("no image writer for format " + formatName);
+		}
+		this.formatName = formatName;
+		return this;
+	}
+
+	/**
+	 * Set the number of worker threads; defaults to the number of available processors.
+	 */
+	public RenderPipeline setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be > 0");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Set the maximum number of records read ahead of the workers; defaults to 256.
+	 */
+	public RenderPipeline setQueueCapacity(int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("queue capacity must be > 0");
+		}
+		this.queueCapacity = queueCapacity;
+		return this;
+	}
+
+	public Summary renderSdf(File sdf, RenderSink sink) throws IOException {
+		try (InputStream in = new FileInputStream(sdf)) {
+			return renderSdf(in, sink);
+		}
+	}
+
+	/**
+	 * Render every record in the given SD file stream.  Records are separated by "$$$$" lines.
+	 * The stream is not closed and neither is the sink.
+	 * @return a Summary of what was rendered.
+	 * @throws IOException if there is a problem reading the input or if the sink throws an IOException.
+	 */
+	public Summary renderSdf(InputStream in, RenderSink sink) throws IOException {
+		return run(in, RecordType.SDF, sink);
+	}
+
+	public Summary renderSmiles(File smilesList, RenderSink sink) throws IOException {
+		try (InputStream in = new FileInputStream(smilesList)) {
+			return renderSmiles(in, sink);
+		}
+	}
+
+	/**
+	 * Render every line in the given SMILES list stream.  Each line
+	 * is a SMILES optionally followed by whitespace and a name;
+	 * blank lines and lines starting with '#' are skipped.
+	 * The stream is not closed and neither is the sink.
+	 * @return a Summary of what was rendered.
+	 * @throws IOException if there is a problem reading the input or if the sink throws an IOException.
+	 */
+	public Summary renderSmiles(InputStream in, RenderSink sink) throws IOException {
+		return run(in, RecordType.SMILES, sink);
+	}
+
+	private Summary run(InputStream in, RecordType type, RenderSink sink) throws IOException {
+		Objects.requireNonNull(sink);
+		BlockingQueue<Record> queue = new ArrayBlockingQueue<>(queueCapacity);
+		AtomicReference<Throwable> runError = new AtomicReference<>();
+		AtomicInteger rendered = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+
+		ExecutorService workers = Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+		for (int i = 0; i < threads; i++) {
+			workers.execute(() -> work(queue, type, sink, runError, rendered, failed));
+		}
+		int records = 0;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+			String record;
+			while (runError.get() == null && (record = type.next(reader)) != null) {
+				queue.put(new Record(records++, record));
+			}
+			for (int i = 0; i < threads; i++) {
+				queue.put(END);
+			}
+			workers.shutdown();
+			//wait for the workers to drain the queue
+			workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while rendering");
+		} finally {
+			if (!workers.isShutdown()) {
+				//reader threw an exception, stop the workers
+				workers.shutdownNow();
+			}
+		}
+		Throwable error = runError.get();
+		if (error instanceof IOException) {
+			throw (IOException) error;
+		}
+		if (isFatal(error)) {
+			throw (Error) error;
+		}
+		if (error != null) {
+			throw new IOException("error writing to sink", error);
+		}
+		return new Summary(records, rendered.get(), failed.get());
+	}
+
+	private void work(BlockingQueue<Record> queue, RecordType type, RenderSink sink,
+					  AtomicReference<Throwable> runError, AtomicInteger rendered, AtomicInteger failed) {
+		try {
+			Record r;
+			while ((r = queue.take()) != END) {
+				if (runError.get() != null) {
+					//keep draining so the reader never blocks
+					continue;
+				}
+				Chemical c;
+				byte[] image;
+				Throwable renderError;
+				try {
+					c = type.parse(r.text);
+					image = renderer.encodeImage(c, width, height, round, formatName);
+					renderError = null;
+				} catch (Throwable t) {
+					if (isFatal(t)) {
+						//the JVM can't be trusted to render the rest, stop the run
+						runError.compareAndSet(null, t);
+						continue;
+					}
+					//includes errors like a StackOverflowError from one pathological record
+					c = null;
+					image = null;
+					renderError = t;
+				}
+				//only what the sink itself throws stops the pipeline
+				try {
+					if (renderError != null) {
+						failed.incrementAndGet();
+						sink.failed(r.index, r.text, renderError);
+					} else {
+						sink.accept(r.index, c, image);
+						rendered.incrementAndGet();
+					}
+				} catch (Throwable t) {
+					runError.compareAndSet(null, t);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Is the given error thrown while rendering a record so bad that the
+	 * whole run should stop instead of just reporting the record as failed.
+	 * A StackOverflowError only unwinds the rendering of one record so it isn't.
+	 */
+	private static boolean isFatal(Throwable t) {
+		return t instanceof VirtualMachineError && !(t instanceof StackOverflowError);
+	}
+
+	static String fileNameFor(int index, String extension) {
+		return String.format("%08d.%s", index, extension);
+	}
+
+	private enum RecordType {
+		SDF {
+			@Override
+			String next(BufferedReader reader) throws IOException {
+				StringBuilder builder = new StringBuilder();
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith("$$$$")) {
+						return builder.toString();
+					}
+					builder.append(line).append('\n');
+				}
+				//last record may not end with $$$$
+				return builder.toString().trim().isEmpty() ? null : builder.toString();
+			}
+
+			@Override
+			Chemical parse(String record) throws IOException {
+				return Chemical.parseMol(record);
+			}
+		},
+		SMILES {
+			@Override
+			String next(BufferedReader reader) throws IOException {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String trimmed = line.trim();
+					if (!trimmed.isEmpty() && trimmed.charAt(0) != '#') {
+						return trimmed;
+					}
+				}
+				return null;
+			}
+
+			@Override
+			Chemical parse(String record) throws IOException {
+				String[] parts = record.split("\\s+", 2);
+				Chemical c = Chemical.createFromSmiles(parts[0]);
+				if (parts.length > 1) {
+					c.setName(parts[1]);
+				}
+				return c;
+			}
+		};
+
+		/**
+		 * Read the next record.
+		 * @return the text of the record or null if there are no more.
+		 */
+		abstract String next(BufferedReader reader) throws IOException;
+
+		abstract Chemical parse(String record) throws IOException;
+	}
+
+	private static final class Record {
+		final int index;
+		final String text;
+
+		Record(int index, String text) {
+			this.index = index;
+			this.text = text;
+		}
+	}
+
+	private static final class WorkerThreadFactory implements ThreadFactory {
+		private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+		private final int pool = POOL_COUNT.incrementAndGet();
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "render-pipeline-" + pool + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	/**
+	 * Counts of what happened to the records in one run of the pipeline.
+	 */
+	public static final class Summary {
+		private final int recordCount;
+		private final int renderedCount;
+		private final int failedCount;
+
+		Summary(int recordCount, int renderedCount, int failedCount) {
+			this.recordCount = recordCount;
+			this.renderedCount = renderedCount;
+			this.failedCount = failedCount;
+		}
+
+		public int getRecordCount() {
+			return recordCount;
+		}
+
+		public int getRenderedCount() {
+			return renderedCount;
+		}
+
+		public int getFailedCount() {
+			return failedCount;
+		}
+
+		@Override
+		public String toString() {
+			return "Summary{" +
+					"records=" + recordCount +
+					", rendered=" + renderedCount +
+					", failed=" + failedCount +
+					'}';
+		}
+	}
+}
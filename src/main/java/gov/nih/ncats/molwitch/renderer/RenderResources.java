@@ -0,0 +1,204 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.BasicStroke;
+import java.awt.Font;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The fonts and strokes used to paint a structure at a given scale.
+ * Everything here only depends on the number of pixels per average
+ * bond length (the "unit"), the bond stroke and label font fractions
+ * and the base font, so rendering many structures at the same
+ * thumbnail size can reuse the same objects instead of deriving new fonts
+ * and strokes for every render.
+ *
+ * <p>
+ * The unit is quantized to 6 significant bits (a relative error
+ * of at most 1/128) so structures with slightly different bond lengths
+ * share the same resources.  Fonts and strokes are immutable so
+ * instances are shared by all threads.
+ * </p>
+ */
+final class RenderResources {
+
+	/**
+	 * Maximum number of scales to keep.
+	 */
+	static final int MAX_ENTRIES = 256;
+
+	private static final int MANTISSA_BITS = 23;
+	private static final int KEPT_BITS = 6;
+	private static final int DROPPED_BITS = MANTISSA_BITS - KEPT_BITS;
+
+	static final float BRACKET_FRACTION = 0.7f;
+	static final float SMALL_FONT_FRACTION = 0.7f;
+	static final float HALO_RADIUS_MULTIPLY = .20f;
+
+	private static final Map<Key, RenderResources> CACHE = new LinkedHashMap<Key, RenderResources>(64, .75F, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, RenderResources> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * The quantized number of pixels per average bond length.
+	 */
+	final float unit;
+	final float bondWidth;
+	final float bracketWidth;
+	final float fontSize;
+
+	final BasicStroke solid;
+	final BasicStroke solidHalo;
+	final BasicStroke solidThin;
+	final BasicStroke dashed;
+	final BasicStroke solidREC;
+
+	final Font font;
+	final Font bracketFont;
+	/**
+	 * Used for stereo atom labels and bracket sub and superscripts.
+	 */
+	final Font smallFont;
+	final Font boldFont;
+
+	private final Map<Long, Font> attachmentFonts = new ConcurrentHashMap<>();
+
+	private RenderResources(Font baseFont, float unit, float strokeFraction, float fontFraction) {
+		this.unit = unit;
+		bondWidth = strokeFraction * unit;
+		bracketWidth = strokeFraction * unit * BRACKET_FRACTION;
+		fontSize = fontFraction * unit;
+
+		solid = new BasicStroke(bondWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+		solidHalo = new BasicStroke(bondWidth + HALO_RADIUS_MULTIPLY * unit,
+				BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+		solidThin = new BasicStroke(bracketWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+		float dash[] = { 2 * bondWidth };
+		dashed = new BasicStroke(bondWidth / 2, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, bondWidth,
+				dash, 0.0f);
+		solidREC = new BasicStroke(bondWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER);
+
+		font = baseFont.deriveFont(fontSize);
+		bracketFont = baseFont.deriveFont(fontSize * BRACKET_FRACTION);
+		smallFont = baseFont.deriveFont(fontSize * SMALL_FONT_FRACTION);
+		boldFont = baseFont.deriveFont(Font.BOLD, fontSize);
+	}
+
+	/**
+	 * Get the resources for the given scale.
+	 * @param baseFont the font all the label fonts are derived from.
+	 * @param unit the number of pixels per average bond length; this will be quantized.
+	 * @param strokeFraction the bond stroke width as a fraction of the average bond length.
+	 * @param fontFraction the label font size as a fraction of the average bond length.
+	 * @return the resources, which may be shared with other renders.
+	 */
+	static RenderResources get(Font baseFont, double unit, float strokeFraction, float fontFraction) {
+		Key key = new Key(baseFont, quantize((float) unit), strokeFraction, fontFraction);
+		synchronized (CACHE) {
+			RenderResources resources = CACHE.get(key);
+			if (resources == null) {
+				resources = new RenderResources(baseFont, key.unit, strokeFraction, fontFraction);
+				CACHE.put(key, resources);
+			}
+			return resources;
+		}
+	}
+
+	/**
+	 * Round the given positive value to the nearest float with only
+	 * {@value #KEPT_BITS} bits of mantissa.
+	 */
+	static float quantize(float value) {
+		if (!(value > 0) || Float.isInfinite(value)) {
+			return value;
+		}
+		int bits = Float.floatToIntBits(value);
+		bits += 1 << (DROPPED_BITS - 1);
+		bits &= ~((1 << DROPPED_BITS) - 1);
+		return Float.intBitsToFloat(bits);
+	}
+
+	/**
+	 * Get the font for an attachment (H count, charge, isotope etc) drawn next to
+	 * an atom label.
+	 * @param style the style of the atom label font.
+	 * @param fraction the size of the attachment as a fraction of the label font size.
+	 */
+	Font attachmentFont(int style, float fraction) {
+		long key = ((long) style << 32) | (Float.floatToIntBits(fraction) & 0xFFFFFFFFL);
+		return attachmentFonts.computeIfAbsent(key, k -> font.deriveFont(style, fontSize * fraction));
+	}
+
+	static void clear() {
+		synchronized (CACHE) {
+			CACHE.clear();
+		}
+	}
+
+	static int size() {
+		synchronized (CACHE) {
+			return CACHE.size();
+		}
+	}
+
+	private static final class Key {
+		private final Font baseFont;
+		private final float unit;
+		private final float strokeFraction;
+		private final float fontFraction;
+		private final int hash;
+
+		Key(Font baseFont, float unit, float strokeFraction, float fontFraction) {
+			this.baseFont = baseFont;
+			this.unit = unit;
+			this.strokeFraction = strokeFraction;
+			this.fontFraction = fontFraction;
+			int h = baseFont.hashCode();
+			h = 31 * h + Float.floatToIntBits(unit);
+			h = 31 * h + Float.floatToIntBits(strokeFraction);
+			hash = 31 * h + Float.floatToIntBits(fontFraction);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return Float.floatToIntBits(unit) == Float.floatToIntBits(other.unit)
+					&& Float.floatToIntBits(strokeFraction) == Float.floatToIntBits(other.strokeFraction)
+					&& Float.floatToIntBits(fontFraction) == Float.floatToIntBits(other.fontFraction)
+					&& baseFont.equals(other.baseFont);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import gov.nih.ncats.molwitch.Chemical;
+
+/**
+ * The result of rendering one Chemical as part of a batch.
+ * A failure to render one Chemical does not stop the rest
+ * of the batch; instead the error is stored in that Chemical's result.
+ *
+ * @param <T> the type of the rendered output, for example
+ *           a {@link java.awt.image.BufferedImage} or the encoded bytes.
+ *
+ * @see ChemicalRenderer#renderAll(java.util.Collection, int, int, boolean)
+ */
+public final class RenderResult<T> {
+
+	private final int index;
+	private final Chemical chemical;
+	private final T value;
+	private final Throwable error;
+
+	private RenderResult(int index, Chemical chemical, T value, Throwable error) {
+		this.index = index;
+		this.chemical = chemical;
+		this.value = value;
+		this.error = error;
+	}
+
+	static <T> RenderResult<T> success(int index, Chemical chemical, T value) {
+		return new RenderResult<>(index, chemical, Objects.requireNonNull(value), null);
+	}
+
+	static <T> RenderResult<T> failure(int index, Chemical chemical, Throwable error) {
+		return new RenderResult<>(index, chemical, null, Objects.requireNonNull(error));
+	}
+
+	/**
+	 * The position of the Chemical in the input.
+	 * @return the 0-based index.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * The Chemical that was rendered.
+	 * @return the Chemical; may be null only if the input contained a null.
+	 */
+	public Chemical getChemical() {
+		return chemical;
+	}
+
+	public boolean isSuccessful() {
+		return error == null;
+	}
+
+	/**
+	 * Get the rendered output.
+	 * @return the rendered output; will never be null.
+	 * @throws IllegalStateException if the Chemical failed to render;
+	 * the cause will be the original error.
+	 */
+	public T get() {
+		if (error != null) {
+			throw new IllegalStateException("error rendering chemical at index " + index, error);
+		}
+		return value;
+	}
+
+	/**
+	 * The error thrown while rendering this Chemical.
+	 * @return the error wrapped in an Optional, or an empty Optional
+	 * if it was rendered successfully.
+	 */
+	public Optional<Throwable> getError() {
+		return Optional.ofNullable(error);
+	}
+
+	@Override
+	public String toString() {
+		return "RenderResult{" +
+				"index=" + index +
+				(error == null ? ", value=" + value : ", error=" + error) +
+				'}';
+	}
+}
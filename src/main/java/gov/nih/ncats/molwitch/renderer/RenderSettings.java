@@ -0,0 +1,67 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything a render reads from a renderer and its {@link RendererOptions},
+ * copied once when the render starts.
+ * The shadow, border, background, display properties and sequence property
+ * are set on the renderer and the drawing options, quality and captions
+ * come from a {@link CompiledRendererOptions}, so every step of one render
+ * sees the same values even if other threads change the settings meanwhile.
+ */
+final class RenderSettings {
+
+	final CompiledRendererOptions options;
+	final RenderQuality quality;
+
+	final boolean shadowVisible;
+	final float shadowRadius;
+	final float shadowTranslucency;
+	final int shadowOffset;
+
+	final boolean borderVisible;
+	final ARGBColor backgroundColor;
+	final ARGBColor borderColor;
+
+	final List<String> displayProperties;
+	final String sequenceProperty;
+
+	RenderSettings(AbstractChemicalRenderer renderer, CompiledRendererOptions options, String sequenceProperty) {
+		this.options = options;
+		this.quality = options.quality;
+		this.sequenceProperty = sequenceProperty;
+
+		shadowVisible = renderer.getShadowVisible();
+		shadowRadius = renderer.getShadowRadius();
+		shadowTranslucency = renderer.getShadowTranslucency();
+		shadowOffset = renderer.getShadowOffset();
+
+		borderVisible = renderer.getBorderVisible();
+		backgroundColor = renderer.getBackgroundColor();
+		borderColor = renderer.getBorderColor();
+
+		//the set is copy on write so this is a consistent copy
+		displayProperties = Collections.unmodifiableList(new ArrayList<>(renderer._displayProperties));
+	}
+}
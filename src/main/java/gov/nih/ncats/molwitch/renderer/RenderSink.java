@@ -0,0 +1,107 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Objects;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import gov.nih.ncats.molwitch.Chemical;
+
+/**
+ * Where a {@link RenderPipeline} sends each encoded image.
+ * Sinks are called from the pipeline's worker threads,
+ * possibly several at once and not in input order,
+ * so implementations must be thread safe.
+ */
+@FunctionalInterface
+public interface RenderSink extends Closeable {
+	/**
+	 * Accept the encoded image for one record.
+	 * @param index the 0-based position of the record in the input.
+	 * @param chemical the Chemical that was rendered.
+	 * @param image the encoded image bytes.
+	 * @throws IOException if there is a problem writing the image; this will stop the pipeline.
+	 */
+	void accept(int index, Chemical chemical, byte[] image) throws IOException;
+
+	/**
+	 * Called when a record could not be parsed or rendered.
+	 * The pipeline keeps going with the next record.  By default this does nothing.
+	 * @param index the 0-based position of the record in the input.
+	 * @param record the text of the record.
+	 * @param error the error.
+	 * @throws IOException if there is a problem recording the error; this will stop the pipeline.
+	 */
+	default void failed(int index, String record, Throwable error) throws IOException {
+	}
+
+	@Override
+	default void close() throws IOException {
+	}
+
+	/**
+	 * A sink that writes each image to its own file named by the record index
+	 * (for example "00000042.png") in the given directory.
+	 * @param dir the directory to write to; will be created if it does not exist.
+	 * @param extension the file extension to use without the dot, like "png".
+	 * @return a new RenderSink.
+	 * @throws IOException if the directory could not be created.
+	 */
+	static RenderSink toDirectory(File dir, String extension) throws IOException {
+		Objects.requireNonNull(extension);
+		Files.createDirectories(dir.toPath());
+		return (index, chemical, image) -> Files.write(new File(dir, RenderPipeline.fileNameFor(index, extension)).toPath(), image);
+	}
+
+	/**
+	 * A sink that writes each image as an entry named by the record index
+	 * (for example "00000042.png") in a zip file written to the given stream.
+	 * Closing the sink finishes the zip and closes the stream.
+	 * @param out the stream to write the zip to.
+	 * @param extension the file extension to use without the dot, like "png".
+	 * @return a new RenderSink.
+	 */
+	static RenderSink toZip(OutputStream out, String extension) {
+		Objects.requireNonNull(extension);
+		ZipOutputStream zip = new ZipOutputStream(out);
+		return new RenderSink() {
+			@Override
+			public void accept(int index, Chemical chemical, byte[] image) throws IOException {
+				synchronized (zip) {
+					zip.putNextEntry(new ZipEntry(RenderPipeline.fileNameFor(index, extension)));
+					zip.write(image);
+					zip.closeEntry();
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				synchronized (zip) {
+					zip.close();
+				}
+			}
+		};
+	}
+}
@@ -18,7 +18,6 @@
 
 package gov.nih.ncats.molwitch.renderer;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
@@ -28,6 +27,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
@@ -197,12 +197,20 @@ public class RendererOptions {
 	
 	private  final EnumMap<DrawProperties, Double> drawProps = new EnumMap<>(DrawProperties.class);
 	
-	private ColorPalette colorPalette = new ColorPalette();
+	private volatile ColorPalette colorPalette = new ColorPalette();
+
+	private volatile RenderQuality quality = RenderQuality.STANDARD;
 	
 	private Function<Chemical, String> bottomCaptionFunction=null;
 	private Function<Chemical, String> topCaptionFunction=null;
 
-	private List<RendererOptionChangeListener> changeListeners = new ArrayList<>();
+	private final List<RendererOptionChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+	/**
+	 * Incremented every time these options are modified.
+	 */
+	private volatile int version;
+
+	private volatile CompiledRendererOptions compiled;
 
 	public RendererOptions() {
 		_useDefauls();
@@ -220,7 +228,7 @@ public class RendererOptions {
 		return opts;
 	}
 	@JsonValue
-	public Map<String, Object> asNonDefaultMap(){
+	public synchronized Map<String, Object> asNonDefaultMap(){
 		Map<String, Object> map = new HashMap<>();
 		for(Entry<DrawProperties,Double> entry: drawProps.entrySet()){
 			if(!Objects.equals(entry.getValue(), entry.getKey().defaultValue)) {
@@ -236,11 +244,14 @@ public class RendererOptions {
 		if(!paletteMap.isEmpty()){
 			map.put("colorPalette", paletteMap);
 		}
+		if(quality != RenderQuality.STANDARD){
+			map.put("quality", quality.name());
+		}
 		return map;
 	}
 
 
-	public Map<String, Object> asMap(){
+	public synchronized Map<String, Object> asMap(){
 		Map<String, Object> map = new HashMap<>();
 		for(Entry<DrawProperties,Double> entry: drawProps.entrySet()){
 			map.put(entry.getKey().legacyName, entry.getValue());
@@ -248,6 +259,7 @@ public class RendererOptions {
 		for(Entry<DrawOptions,Boolean> entry: drawOptions.entrySet()){
 			map.put(entry.getKey().legacyName, entry.getValue());
 		}
+		map.put("quality", quality.name());
 		return map;
 	}
 	public void addChangeListener(RendererOptionChangeListener listener){
@@ -259,6 +271,11 @@ public class RendererOptions {
 		return colorPalette;
 	}
 
+	/**
+	 * Tell the listeners these options changed.  Mutators bump the version
+	 * while holding the lock and call this after releasing it, so a listener
+	 * that touches other options can't deadlock with a thread doing the reverse.
+	 */
 	private void fireChangeListeners(){
 		changeListeners.forEach(l->l.optionChanged(null));
 	}
@@ -267,55 +284,136 @@ public class RendererOptions {
 	
 	
 	
-	public boolean getDrawOption(DrawOptions o) {
+	public RenderQuality getQuality(){
+		return quality;
+	}
+
+	/**
+	 * Set the quality tier, which trades how good images look for
+	 * how fast they are drawn; see {@link RenderQuality}.
+	 * The default is {@link RenderQuality#STANDARD}.
+	 * @param quality the tier; can not be null.
+	 * @return this
+	 */
+	public RendererOptions setQuality(RenderQuality quality) {
+		Objects.requireNonNull(quality);
+		synchronized (this) {
+			this.quality = quality;
+			version++;
+		}
+		fireChangeListeners();
+		return this;
+	}
+
+	public synchronized boolean getDrawOption(DrawOptions o) {
 		return drawOptions.get(o);
 	}
 	
 	public RendererOptions setDrawOption(DrawOptions option, boolean value) {
-		drawOptions.put(option, value);
+		synchronized (this) {
+			drawOptions.put(option, value);
+			version++;
+		}
 		fireChangeListeners();
 		return this;
 	}
 	
-	public double getDrawPropertyValue(DrawProperties p) {
+	public synchronized double getDrawPropertyValue(DrawProperties p) {
 		return drawProps.get(p);
 	}
 	public RendererOptions captionBottom(Function<Chemical, String> captionFunction) {
-		this.bottomCaptionFunction = captionFunction;
+		synchronized (this) {
+			this.bottomCaptionFunction = captionFunction;
+			version++;
+		}
 		fireChangeListeners();
 		return this;
 	}
 	public RendererOptions captionTop(Function<Chemical, String> captionFunction) {
-		this.topCaptionFunction = captionFunction;
+		synchronized (this) {
+			this.topCaptionFunction = captionFunction;
+			version++;
+		}
 		fireChangeListeners();
 		return this;
 	}
 	public RendererOptions setDrawPropertyValue(DrawProperties p, double value) {
-		drawProps.put(p, value);
+		synchronized (this) {
+			drawProps.put(p, value);
+			version++;
+		}
 		fireChangeListeners();
 		return this;
 	}
 	public RendererOptions withSubstructureHighlight() {
-		
-		drawOptions.put(DrawOptions.DRAW_HIGHLIGHT_MAPPED, true);
-		drawOptions.put(DrawOptions.DRAW_HIGHLIGHT_WITH_HALO, true);
-		drawOptions.put(DrawOptions.DRAW_HIGHLIGHT_MONOCHROMATIC, true);
+		synchronized (this) {
+			drawOptions.put(DrawOptions.DRAW_HIGHLIGHT_MAPPED, true);
+			drawOptions.put(DrawOptions.DRAW_HIGHLIGHT_WITH_HALO, true);
+			drawOptions.put(DrawOptions.DRAW_HIGHLIGHT_MONOCHROMATIC, true);
+			version++;
+		}
 		fireChangeListeners();
 		return this;
 	}
 	
-	Optional<String> captionBottom(Chemical c){
-		if(bottomCaptionFunction!=null) {
-			return Optional.ofNullable(bottomCaptionFunction.apply(c));
+	/**
+	 * A snapshot of everything in these options that changes
+	 * the result of computing a {@link RenderLayout}.  Captions
+	 * are not included since they are drawn on top of the layout.
+	 * The snapshot does not change if these options are later modified
+	 * so it can be used as part of a cache key.
+	 *
+	 * @return a new Object with value based equals and hashCode.
+	 */
+	Object layoutKey(){
+		return compiled().layoutKey();
+	}
+
+	int getVersion(){
+		return version;
+	}
+
+	/**
+	 * Get an immutable snapshot of the current values of these options
+	 * for rendering.  The same snapshot is returned until these options
+	 * or their {@link ColorPalette} are modified.
+	 * Getting an up to date snapshot doesn't lock so many threads
+	 * can render with the same options at once.
+	 *
+	 * @return a {@link CompiledRendererOptions}; will never be null.
+	 */
+	CompiledRendererOptions compiled(){
+		CompiledRendererOptions current = compiled;
+		if(current == null || !current.isCompiledFrom(this)){
+			current = recompile();
 		}
-		return Optional.empty();
+		return current;
+	}
+
+	private synchronized CompiledRendererOptions recompile(){
+		CompiledRendererOptions current = compiled;
+		if(current == null || !current.isCompiledFrom(this)){
+			current = new CompiledRendererOptions(this, version,
+					Arrays.asList(new EnumMap<>(drawOptions), new EnumMap<>(drawProps), colorPalette.copy()));
+			compiled = current;
+		}
+		return current;
+	}
+
+	Optional<String> captionBottom(Chemical c){
+		return compiled().captionBottom(c);
 	}
 	
 	Optional<String> captionTop(Chemical c){
-		if(topCaptionFunction!=null) {
-			return Optional.ofNullable(topCaptionFunction.apply(c));
-		}
-		return Optional.empty();
+		return compiled().captionTop(c);
+	}
+
+	synchronized Function<Chemical, String> getCaptionBottomFunction(){
+		return bottomCaptionFunction;
+	}
+
+	synchronized Function<Chemical, String> getCaptionTopFunction(){
+		return topCaptionFunction;
 	}
 	public static RendererOptions createDefault() {
 		return new RendererOptions();
@@ -370,6 +468,7 @@ public class RendererOptions {
 		int result = 1;
 		result = prime * result + ((drawOptions == null) ? 0 : drawOptions.hashCode());
 		result = prime * result + ((drawProps == null) ? 0 : drawProps.hashCode());
+		result = prime * result + quality.hashCode();
 		return result;
 	}
 
@@ -399,7 +498,7 @@ public class RendererOptions {
 		} else if (!drawProps.equals(other.drawProps)) {
 			return false;
 		}
-		return true;
+		return quality == other.quality;
 	}
 
 	private void _useDefauls() {
@@ -412,33 +511,59 @@ public class RendererOptions {
 		}
 		
 		colorPalette = new ColorPalette();
+		quality = RenderQuality.STANDARD;
 	}
 	
 	public RendererOptions resetToDefaults() {
-		_useDefauls();
+		synchronized (this) {
+			_useDefauls();
+			version++;
+		}
 		fireChangeListeners();
 		return this;
 	}
 	
 	public RendererOptions turnOffStereo() {
-		setDrawOption(DrawOptions.DRAW_STEREO_LABELS, false);
-		setDrawOption(DrawOptions.DRAW_STEREO_LABELS_PARENTHESES, false);
+		synchronized (this) {
+			drawOptions.put(DrawOptions.DRAW_STEREO_LABELS, false);
+			drawOptions.put(DrawOptions.DRAW_STEREO_LABELS_PARENTHESES, false);
+			version++;
+		}
 		fireChangeListeners();
 		return this;
 	}
 	
 	public RendererOptions turnOnStereo() {
-		
-		setDrawOption(DrawOptions.DRAW_STEREO_LABELS, true);
-		setDrawOption(DrawOptions.DRAW_STEREO_LABELS_PARENTHESES, true);
+		synchronized (this) {
+			drawOptions.put(DrawOptions.DRAW_STEREO_LABELS, true);
+			drawOptions.put(DrawOptions.DRAW_STEREO_LABELS_PARENTHESES, true);
+			version++;
+		}
 		fireChangeListeners();
 		return this;
 	}
 
 	public RendererOptions changeSettings(Map<String, ?> map) {
+		if(changeSettingsLocked(map)){
+			fireChangeListeners();
+		}
+		return this;
+	}
+
+	/**
+	 * @return were any settings changed.
+	 */
+	private synchronized boolean changeSettingsLocked(Map<String, ?> map) {
+		boolean changed = false;
 		for(Entry<String, ?> entry: map.entrySet()) {
 			if("colorPalette".equals(entry.getKey())){
 				this.colorPalette = ColorPalette.createFromMap((Map<String,Object>)entry.getValue());
+				changed = true;
+				continue;
+			}
+			if("quality".equals(entry.getKey())){
+				quality = RenderQuality.parse(entry.getValue().toString());
+				changed = true;
 				continue;
 			}
 			DrawOptions opts = DrawOptions.safeValueOf(entry.getKey());
@@ -446,22 +571,29 @@ public class RendererOptions {
 				DrawProperties props = DrawProperties.safeValueOf(entry.getKey());
 				if(props !=null) {
 					if(Number.class.isAssignableFrom(entry.getValue().getClass())){
-						setDrawPropertyValue(props,((Number)entry.getValue()).doubleValue());
+						drawProps.put(props,((Number)entry.getValue()).doubleValue());
+						changed = true;
 					}else if(String.class.isAssignableFrom(entry.getValue().getClass())){
-						setDrawPropertyValue(props,Double.parseDouble((String)entry.getValue()));
+						drawProps.put(props,Double.parseDouble((String)entry.getValue()));
+						changed = true;
 					}
 				}
 			}else {
 
 				if(Boolean.class.isAssignableFrom(entry.getValue().getClass())){
-					setDrawOption(opts, ((Boolean) entry.getValue()).booleanValue());
+					drawOptions.put(opts, ((Boolean) entry.getValue()).booleanValue());
+					changed = true;
 				}else if(String.class.isAssignableFrom(entry.getValue().getClass())){
-					setDrawOption(opts,Boolean.parseBoolean((String)entry.getValue()));
+					drawOptions.put(opts,Boolean.parseBoolean((String)entry.getValue()));
+					changed = true;
 				}
 
 				
 			}
 		}
-		return this;
+		if(changed){
+			version++;
+		}
+		return changed;
 	}
 }
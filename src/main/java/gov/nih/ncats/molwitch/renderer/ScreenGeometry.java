@@ -0,0 +1,88 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.renderer.Graphics2DParent.AffineTransformParent;
+
+/**
+ * The screen positions of everything in a {@link RenderLayout} for one render,
+ * transformed from molecule coordinates all at once into flat float buffers
+ * instead of one small array per atom and bond.
+ *
+ * <p>
+ * Atom {@code i} is at {@code atoms[2i], atoms[2i+1]} and its label radius,
+ * which is filled in when the atom labels are measured, is {@code radius[i]}.
+ * Bond {@code k} has {@link #BOND_STRIDE} floats starting at {@code bonds[k * BOND_STRIDE]}:
+ * the 2 end points followed by the point the double bond leans towards.
+ * </p>
+ */
+final class ScreenGeometry {
+	/**
+	 * Number of floats per bond: {@code x1, y1, x2, y2, nx, ny}.
+	 */
+	static final int BOND_STRIDE = 6;
+
+	final float[] atoms;
+	final float[] radius;
+	final float[] bonds;
+	/**
+	 * The absolute scale from molecule to screen units.
+	 */
+	final float scale;
+
+	private ScreenGeometry(int atomCount, int bondCount, float scale) {
+		atoms = new float[atomCount * 2];
+		radius = new float[atomCount];
+		bonds = new float[bondCount * BOND_STRIDE];
+		this.scale = scale;
+	}
+
+	/**
+	 * Transform the atoms and bonds of the given layout.
+	 * @param layout the layout to transform.
+	 * @param transform the transform from molecule to screen coordinates.
+	 * @return a new ScreenGeometry with all the radii set to 0.
+	 */
+	static ScreenGeometry of(RenderLayout layout, AffineTransformParent transform) {
+		int atomCount = layout.atoms.size();
+		int bondCount = layout.bonds.size();
+		ScreenGeometry geom = new ScreenGeometry(atomCount, bondCount, (float) Math.abs(transform.getScaleX()));
+
+		//one source buffer big enough for either pass
+		double[] src = new double[Math.max(geom.atoms.length, geom.bonds.length)];
+		for (int i = 0, j = 0; i < atomCount; i++) {
+			RenderLayout.AtomLayout atom = layout.atoms.get(i);
+			src[j++] = atom.x;
+			src[j++] = atom.y;
+		}
+		transform.transform(src, 0, geom.atoms, 0, atomCount);
+
+		for (int k = 0, j = 0; k < bondCount; k++) {
+			RenderLayout.BondLayout bond = layout.bonds.get(k);
+			src[j++] = bond.x1;
+			src[j++] = bond.y1;
+			src[j++] = bond.x2;
+			src[j++] = bond.y2;
+			src[j++] = bond.nx;
+			src[j++] = bond.ny;
+		}
+		transform.transform(src, 0, geom.bonds, 0, bondCount * BOND_STRIDE / 2);
+		return geom;
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.geom.Line2D;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A uniform grid of the line segments painted so far so
+ * finding which earlier bond a new bond crosses only has to look at
+ * the segments near it instead of every segment painted.
+ * Segments are kept as plain doubles in insertion order.
+ *
+ * <p>
+ * Each segment is put in every grid cell its bounding box touches.
+ * Two segments can only intersect if they share a point and that point
+ * is in a cell touched by both bounding boxes, so looking at the cells of
+ * a query segment finds every segment it could cross.
+ * Segments that would cover too many cells, have non-finite coordinates
+ * or have zero length are kept in a separate list that is always checked.
+ * </p>
+ */
+final class SegmentIndex {
+
+	/**
+	 * Segments spanning more cells than this in either direction
+	 * are not put in the grid.
+	 */
+	private static final int MAX_CELL_SPAN = 64;
+
+	private final double cellSize;
+
+	private double[] coords = new double[64];
+	private int size;
+
+	private final Map<Long, IntList> cells = new HashMap<>();
+	private final IntList unindexed = new IntList();
+
+	/**
+	 * Create a new empty index.
+	 * @param cellSize the width and height of a grid cell; about the average bond length
+	 * works well. Values that are not positive and finite use 1.
+	 */
+	SegmentIndex(double cellSize) {
+		this.cellSize = cellSize > 0 && !Double.isInfinite(cellSize) ? cellSize : 1;
+	}
+
+	int size() {
+		return size;
+	}
+
+	double getX1(int i) {
+		return coords[i * 4];
+	}
+
+	double getY1(int i) {
+		return coords[i * 4 + 1];
+	}
+
+	double getX2(int i) {
+		return coords[i * 4 + 2];
+	}
+
+	double getY2(int i) {
+		return coords[i * 4 + 3];
+	}
+
+	/**
+	 * Add a segment to the index.
+	 * @return the index of the segment which is the number of segments added before it.
+	 */
+	int add(double x1, double y1, double x2, double y2) {
+		int id = size++;
+		if (coords.length < size * 4) {
+			coords = Arrays.copyOf(coords, coords.length * 2);
+		}
+		int offset = id * 4;
+		coords[offset] = x1;
+		coords[offset + 1] = y1;
+		coords[offset + 2] = x2;
+		coords[offset + 3] = y2;
+
+		long minX = cell(Math.min(x1, x2));
+		long maxX = cell(Math.max(x1, x2));
+		long minY = cell(Math.min(y1, y2));
+		long maxY = cell(Math.max(y1, y2));
+		//Line2D.linesIntersect says any two zero length segments intersect
+		//no matter where they are so those have to always be checked too
+		boolean isPoint = x1 == x2 && y1 == y2;
+		if (isPoint || !isGridSpan(minX, maxX, minY, maxY)) {
+			unindexed.add(id);
+			return id;
+		}
+		for (long cx = minX; cx <= maxX; cx++) {
+			for (long cy = minY; cy <= maxY; cy++) {
+				cells.computeIfAbsent(key(cx, cy), k -> new IntList()).add(id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Find the first added segment that intersects the given segment
+	 * without sharing one of its end points.
+	 * @return the index of the segment or -1 if there isn't one.
+	 */
+	int firstCrossing(double x1, double y1, double x2, double y2) {
+		long minX = cell(Math.min(x1, x2));
+		long maxX = cell(Math.max(x1, x2));
+		long minY = cell(Math.min(y1, y2));
+		long maxY = cell(Math.max(y1, y2));
+
+		if (!isGridSpan(minX, maxX, minY, maxY)) {
+			for (int i = 0; i < size; i++) {
+				if (crosses(i, x1, y1, x2, y2)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		int best = firstCrossing(unindexed, Integer.MAX_VALUE, x1, y1, x2, y2);
+		for (long cx = minX; cx <= maxX; cx++) {
+			for (long cy = minY; cy <= maxY; cy++) {
+				IntList list = cells.get(key(cx, cy));
+				if (list != null) {
+					best = firstCrossing(list, best, x1, y1, x2, y2);
+				}
+			}
+		}
+		return best == Integer.MAX_VALUE ? -1 : best;
+	}
+
+	private int firstCrossing(IntList list, int best, double x1, double y1, double x2, double y2) {
+		//ids are added in increasing order so stop at the first
+		//match or once we are past the best so far
+		for (int j = 0; j < list.size; j++) {
+			int id = list.values[j];
+			if (id >= best) {
+				break;
+			}
+			if (crosses(id, x1, y1, x2, y2)) {
+				return id;
+			}
+		}
+		return best;
+	}
+
+	private boolean crosses(int id, double x1, double y1, double x2, double y2) {
+		int offset = id * 4;
+		double ox1 = coords[offset];
+		double oy1 = coords[offset + 1];
+		double ox2 = coords[offset + 2];
+		double oy2 = coords[offset + 3];
+		if (!Line2D.linesIntersect(x1, y1, x2, y2, ox1, oy1, ox2, oy2)) {
+			return false;
+		}
+		//segments that meet at an atom don't count
+		return !((x1 == ox1 && y1 == oy1)
+				|| (x2 == ox1 && y2 == oy1)
+				|| (x2 == ox2 && y2 == oy2)
+				|| (x1 == ox2 && y1 == oy2));
+	}
+
+	private long cell(double v) {
+		double c = Math.floor(v / cellSize);
+		//NaN and huge values end up out of any reasonable span
+		if (Double.isNaN(c)) {
+			return Long.MAX_VALUE;
+		}
+		return (long) c;
+	}
+
+	private static boolean isGridSpan(long minX, long maxX, long minY, long maxY) {
+		return maxX != Long.MAX_VALUE && maxY != Long.MAX_VALUE
+				&& minX > Integer.MIN_VALUE && maxX < Integer.MAX_VALUE
+				&& minY > Integer.MIN_VALUE && maxY < Integer.MAX_VALUE
+				&& maxX - minX < MAX_CELL_SPAN && maxY - minY < MAX_CELL_SPAN;
+	}
+
+	private static Long key(long cx, long cy) {
+		return (cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+
+	private static final class IntList {
+		private int[] values = new int[4];
+		private int size;
+
+		void add(int v) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = v;
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Makes the blurred grey drop shadow of an image.
+ * Three box blurs approximate a gaussian; each box blur is done
+ * as a horizontal then a vertical running sum so the cost is O(width*height)
+ * no matter how big the radius is.  The grey conversion and
+ * the alpha are done in the same pass directly on the int[] raster.
+ *
+ * <p>
+ * The shadow is drawn into an image from {@link ImagePool} and each thread
+ * keeps the scratch arrays of the blur for the next shadow, so a batch of
+ * shadowed renders doesn't allocate new buffers the size of the image every time.
+ * Scratch arrays are only kept for images of at most {@link #MAX_SCRATCH_PIXELS} pixels
+ * and {@link #clearAll()} drops those of every thread.
+ * </p>
+ */
+final class ShadowBlur {
+
+	private static final int PASSES = 3;
+
+	/**
+	 * Fixed point scale of the intermediate channel values
+	 * so rounding after each pass doesn't darken or lighten the shadow.
+	 */
+	private static final int SHIFT = 8;
+
+	/**
+	 * Images with more pixels than this, 1024 x 1024, get new scratch arrays
+	 * instead of the thread's; 8 MB of scratch per thread.
+	 */
+	static final int MAX_SCRATCH_PIXELS = 1 << 20;
+
+	/**
+	 * The scratch of all the threads so they can be cleared;
+	 * one is dropped from this once its thread is gone.
+	 */
+	private static final Set<Scratch> ALL_SCRATCH = Collections.synchronizedSet(
+			Collections.newSetFromMap(new WeakHashMap<Scratch, Boolean>()));
+
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(() -> {
+		Scratch scratch = new Scratch();
+		ALL_SCRATCH.add(scratch);
+		return scratch;
+	});
+
+	/**
+	 * sRGB component to linear light, scaled 0-255.
+	 * The shadow grey is the linear luminance which is what the
+	 * old ColorConvertOp to {@link java.awt.color.ColorSpace#CS_GRAY} produced
+	 * so shadows keep the same darkness.
+	 */
+	private static final float[] SRGB_TO_LINEAR = new float[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			double c = i / 255D;
+			double linear = c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+			SRGB_TO_LINEAR[i] = (float) (linear * 255);
+		}
+	}
+
+	private ShadowBlur() {
+		//can not instantiate
+	}
+
+	/**
+	 * Create the shadow of the given image.
+	 * @param src the image to make the shadow of.
+	 * @param radius the box blur radius in pixels.
+	 * @param opacity the opacity of the shadow from 0 to 1.
+	 * @return a premultiplied ARGB image the same size as src
+	 * with the blurred, grey, translucent shadow; it comes from {@link ImagePool#acquire(int, int, int)}
+	 * and should be {@link ImagePool#release(BufferedImage) released} when done with.
+	 */
+	static BufferedImage createShadow(BufferedImage src, int radius, float opacity) {
+		int width = src.getWidth();
+		int height = src.getHeight();
+		int[] pixels = argbPixels(src);
+
+		int n = width * height;
+		int lineLength = Math.max(width, height);
+		Scratch scratch = n <= MAX_SCRATCH_PIXELS ? SCRATCH.get() : new Scratch();
+		int[][] arrays = scratch.arrays(n, lineLength);
+		int[] alpha = arrays[0];
+		int[] grey = arrays[1];
+
+		for (int i = 0; i < n; i++) {
+			int p = pixels[i];
+			int a = p >>> 24;
+			if (a == 0) {
+				//the scratch arrays still have the last shadow in them
+				alpha[i] = 0;
+				grey[i] = 0;
+				continue;
+			}
+			int r = (p >> 16) & 0xFF;
+			int g = (p >> 8) & 0xFF;
+			int b = p & 0xFF;
+			int luma = Math.round(0.2126F * SRGB_TO_LINEAR[r] + 0.7152F * SRGB_TO_LINEAR[g] + 0.0722F * SRGB_TO_LINEAR[b]);
+			alpha[i] = a << SHIFT;
+			//premultiplied so transparent pixels don't bleed their color into the blur
+			grey[i] = (luma * a << SHIFT) / 255;
+		}
+
+		int r = Math.max(0, radius);
+		if (r > 0) {
+			int[] tmp = arrays[2];
+			int[] tmp2 = arrays[3];
+			for (int pass = 0; pass < PASSES; pass++) {
+				blurRows(alpha, width, height, r, tmp, tmp2);
+				blurRows(grey, width, height, r, tmp, tmp2);
+			}
+			for (int pass = 0; pass < PASSES; pass++) {
+				blurColumns(alpha, width, height, r, tmp, tmp2);
+				blurColumns(grey, width, height, r, tmp, tmp2);
+			}
+		}
+
+		BufferedImage dst = ImagePool.acquire(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		int[] out = ((DataBufferInt) dst.getRaster().getDataBuffer()).getData();
+		float scale = Math.max(0, Math.min(1, opacity)) / (1 << SHIFT);
+		for (int i = 0; i < n; i++) {
+			int a = Math.round(alpha[i] * scale);
+			if (a == 0) {
+				continue;
+			}
+			//premultiplied grey can never be more than alpha
+			int g = Math.min(a, Math.round(grey[i] * scale));
+			out[i] = (a << 24) | (g << 16) | (g << 8) | g;
+		}
+		return dst;
+	}
+
+	/**
+	 * Drop the scratch arrays kept by every thread.
+	 */
+	static void clearAll() {
+		synchronized (ALL_SCRATCH) {
+			for (Scratch scratch : ALL_SCRATCH) {
+				scratch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Size of the alpha scratch array of the current thread, for testing.
+	 */
+	static int scratchCapacity() {
+		return SCRATCH.get().capacity();
+	}
+
+	private static int[] argbPixels(BufferedImage src) {
+		if (src.getType() != BufferedImage.TYPE_INT_ARGB) {
+			BufferedImage copy = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = copy.createGraphics();
+			g.drawImage(src, 0, 0, null);
+			g.dispose();
+			src = copy;
+		}
+		return ((DataBufferInt) src.getRaster().getDataBuffer()).getData();
+	}
+
+	private static void blurRows(int[] data, int width, int height, int radius, int[] line, int[] out) {
+		for (int y = 0, offset = 0; y < height; y++, offset += width) {
+			System.arraycopy(data, offset, line, 0, width);
+			boxBlur(line, out, width, radius);
+			System.arraycopy(out, 0, data, offset, width);
+		}
+	}
+
+	private static void blurColumns(int[] data, int width, int height, int radius, int[] line, int[] out) {
+		for (int x = 0; x < width; x++) {
+			for (int y = 0, i = x; y < height; y++, i += width) {
+				line[y] = data[i];
+			}
+			boxBlur(line, out, height, radius);
+			for (int y = 0, i = x; y < height; y++, i += width) {
+				data[i] = out[y];
+			}
+		}
+	}
+
+	/**
+	 * One dimensional box blur using a running sum.  Values outside
+	 * the line are treated as 0 (transparent).
+	 */
+	private static void boxBlur(int[] in, int[] out, int length, int radius) {
+		int window = radius * 2 + 1;
+		int half = window / 2;
+		long sum = 0;
+		for (int i = 0; i < radius && i < length; i++) {
+			sum += in[i];
+		}
+		for (int i = 0; i < length; i++) {
+			int add = i + radius;
+			if (add < length) {
+				sum += in[add];
+			}
+			int remove = i - radius - 1;
+			if (remove >= 0) {
+				sum -= in[remove];
+			}
+			out[i] = (int) ((sum + half) / window);
+		}
+	}
+
+	/**
+	 * One thread's blur arrays; they only grow.  Only its own thread uses them
+	 * but {@link #clearAll()} may clear them from another thread.
+	 */
+	private static final class Scratch {
+		private static final int[] EMPTY = new int[0];
+
+		private int[] alpha = EMPTY;
+		private int[] grey = EMPTY;
+		private int[] line = EMPTY;
+		private int[] out = EMPTY;
+
+		/**
+		 * Get the alpha, grey, line and line output arrays, growing them if needed.
+		 * @return the arrays in that order; the contents are left over from the last use.
+		 */
+		synchronized int[][] arrays(int pixels, int lineLength) {
+			if (alpha.length < pixels) {
+				alpha = new int[pixels];
+				grey = new int[pixels];
+			}
+			if (line.length < lineLength) {
+				line = new int[lineLength];
+				out = new int[lineLength];
+			}
+			return new int[][] { alpha, grey, line, out };
+		}
+
+		synchronized void clear() {
+			alpha = EMPTY;
+			grey = EMPTY;
+			line = EMPTY;
+			out = EMPTY;
+		}
+
+		synchronized int capacity() {
+			return alpha.length;
+		}
+	}
+}
@@ -0,0 +1,317 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import javax.imageio.ImageIO;
+
+import gov.nih.ncats.molwitch.Chemical;
+
+/**
+ * Renders many Chemicals into the cells of one image, a sprite sheet,
+ * so a page of structures can be sent as a single image.  The cells are
+ * either a fixed size grid or, if {@link #setPacked(int) packed}, rows of
+ * cells whose widths follow the shape of each structure.  Every cell is drawn
+ * with the same Graphics and the returned {@link Sheet} has the rectangle of
+ * each Chemical's cell in the same order as the input.
+ *
+ * <pre>
+ * SpriteSheetRenderer sprites = new SpriteSheetRenderer(renderer)
+ *                                  .setCellSize(150, 150)
+ *                                  .setColumns(10);
+ * List&lt;Rectangle&gt; cells = sprites.writeImage(chemicals, "png", out);
+ * </pre>
+ *
+ * Each cell looks the same as rendering its Chemical into an image the size of the cell.
+ */
+public final class SpriteSheetRenderer {
+
+	/**
+	 * Cells are never narrower than this fraction of their height when packed.
+	 */
+	private static final double MIN_ASPECT = 0.5;
+	/**
+	 * Cells are never wider than this many times their height when packed;
+	 * the renderer's margins grow with the width so wider cells don't draw bigger.
+	 */
+	private static final double MAX_ASPECT = 2;
+
+	private final ChemicalRenderer renderer;
+
+	private int cellWidth = 200;
+	private int cellHeight = 200;
+	private int columns = 10;
+	private int packedWidth;
+	private boolean round = true;
+
+	public SpriteSheetRenderer(ChemicalRenderer renderer) {
+		this.renderer = Objects.requireNonNull(renderer);
+	}
+
+	/**
+	 * Set the size of each cell; defaults to 200 x 200.
+	 * Only the height is used when packed.
+	 */
+	public SpriteSheetRenderer setCellSize(int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("width and height must be > 0");
+		}
+		this.cellWidth = width;
+		this.cellHeight = height;
+		return this;
+	}
+
+	/**
+	 * Lay the cells out in a grid with the given number of columns; defaults to 10.
+	 * This turns off packing.
+	 */
+	public SpriteSheetRenderer setColumns(int columns) {
+		if (columns < 1) {
+			throw new IllegalArgumentException("columns must be > 0");
+		}
+		this.columns = columns;
+		this.packedWidth = 0;
+		return this;
+	}
+
+	/**
+	 * Pack the cells into rows the height of a cell, with the width of each cell
+	 * picked from the bounding box of its structure so long chains get wide cells
+	 * and compact structures narrow ones.  A new row is started when a cell doesn't
+	 * fit in the given width.
+	 *
+	 * @param maxWidth the maximum width of the sheet.
+	 * @return this
+	 */
+	public SpriteSheetRenderer setPacked(int maxWidth) {
+		if (maxWidth < 1) {
+			throw new IllegalArgumentException("max width must be > 0");
+		}
+		this.packedWidth = maxWidth;
+		return this;
+	}
+
+	public SpriteSheetRenderer setRounded(boolean round) {
+		this.round = round;
+		return this;
+	}
+
+	/**
+	 * Render the given Chemicals into a new image of the renderer's image type.
+	 *
+	 * @param chemicals the Chemicals to render, can not be null or empty.
+	 * @return the image and its cells.
+	 */
+	public Sheet<BufferedImage> createImage(List<? extends Chemical> chemicals) {
+		RenderSettings settings = renderer.settings();
+		List<RenderLayout> layouts = computeLayouts(chemicals, settings);
+		List<Rectangle> cells = cells(layouts);
+		Rectangle bounds = bounds(cells);
+		BufferedImage img = ImagePool.newImage(bounds.width, bounds.height,
+				renderer.resolveImageType(round || !fillsSheet(cells, bounds), settings));
+		Graphics2D g2 = img.createGraphics();
+		try {
+			renderCells(g2, layouts, cells, settings);
+		} finally {
+			g2.dispose();
+		}
+		return new Sheet<>(img, bounds.width, bounds.height, cells);
+	}
+
+	/**
+	 * Render the given Chemicals into an SVG document.
+	 * Glyphs used by more than one cell are only written once.
+	 *
+	 * @param chemicals the Chemicals to render, can not be null or empty.
+	 * @return the SVG and its cells.
+	 */
+	public Sheet<String> createSvg(List<? extends Chemical> chemicals) {
+		RenderSettings settings = renderer.settings();
+		List<RenderLayout> layouts = computeLayouts(chemicals, settings);
+		List<Rectangle> cells = cells(layouts);
+		Rectangle bounds = bounds(cells);
+		SvgGraphics2D g2 = new SvgGraphics2D(bounds.width, bounds.height);
+		try {
+			renderCells(g2, layouts, cells, settings);
+		} finally {
+			g2.dispose();
+		}
+		return new Sheet<>(g2.getSvg(), bounds.width, bounds.height, cells);
+	}
+
+	/**
+	 * Render the given Chemicals and encode the sheet to the given stream,
+	 * which is not closed.
+	 *
+	 * @param formatName the informal name of the format to encode to like "png"
+	 * or {@link ChemicalRenderer#SVG_FORMAT "svg"}; can not be null.
+	 * @return the cell of each Chemical in the same order as the input.
+	 * @throws IOException if there is no writer for the format or there is a problem writing to the stream.
+	 */
+	public List<Rectangle> writeImage(List<? extends Chemical> chemicals, String formatName, OutputStream out) throws IOException {
+		Objects.requireNonNull(formatName);
+		Objects.requireNonNull(out);
+		if (ChemicalRenderer.SVG_FORMAT.equalsIgnoreCase(formatName)) {
+			Sheet<String> sheet = createSvg(chemicals);
+			out.write(sheet.getImage().getBytes(StandardCharsets.UTF_8));
+			return sheet.getCells();
+		}
+		Sheet<BufferedImage> sheet = createImage(chemicals);
+		if (!ImageIO.write(sheet.getImage(), formatName, out)) {
+			throw new IOException("no image writer for format " + formatName);
+		}
+		return sheet.getCells();
+	}
+
+	private List<RenderLayout> computeLayouts(List<? extends Chemical> chemicals, RenderSettings settings) {
+		if (chemicals.isEmpty()) {
+			throw new IllegalArgumentException("there must be at least one chemical");
+		}
+		List<RenderLayout> layouts = new ArrayList<>(chemicals.size());
+		for (Chemical c : chemicals) {
+			layouts.add(renderer.computeLayout(c, settings));
+		}
+		return layouts;
+	}
+
+	private void renderCells(Graphics2D g2, List<RenderLayout> layouts, List<Rectangle> cells, RenderSettings settings) {
+		Shape clip = g2.getClip();
+		for (int i = 0; i < cells.size(); i++) {
+			Rectangle cell = cells.get(i);
+			//keep labels and shadows out of the neighboring cells
+			g2.setClip(clip);
+			g2.clipRect(cell.x, cell.y, cell.width, cell.height);
+			renderer.render(g2, layouts.get(i), cell.x, cell.y, cell.width, cell.height, round, settings);
+		}
+		g2.setClip(clip);
+	}
+
+	private List<Rectangle> cells(List<RenderLayout> layouts) {
+		return packedWidth > 0 ? packedCells(layouts, cellHeight, packedWidth) : gridCells(layouts.size(), cellWidth, cellHeight, columns);
+	}
+
+	static List<Rectangle> gridCells(int count, int cellWidth, int cellHeight, int columns) {
+		List<Rectangle> cells = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			cells.add(new Rectangle((i % columns) * cellWidth, (i / columns) * cellHeight, cellWidth, cellHeight));
+		}
+		return cells;
+	}
+
+	static List<Rectangle> packedCells(List<RenderLayout> layouts, int rowHeight, int maxWidth) {
+		List<Rectangle> cells = new ArrayList<>(layouts.size());
+		int x = 0;
+		int y = 0;
+		for (RenderLayout layout : layouts) {
+			int width = Math.min(maxWidth, packedWidth(layout, rowHeight));
+			if (x > 0 && x + width > maxWidth) {
+				x = 0;
+				y += rowHeight;
+			}
+			cells.add(new Rectangle(x, y, width, rowHeight));
+			x += width;
+		}
+		return cells;
+	}
+
+	/**
+	 * The width of a packed cell is the square root of the aspect ratio of the structure
+	 * times the height, which gives wide structures room without the margins
+	 * of a much wider cell shrinking them again.
+	 */
+	private static int packedWidth(RenderLayout layout, int rowHeight) {
+		double width = layout.maxX - layout.minX;
+		double height = layout.maxY - layout.minY;
+		if (layout.isEmpty() || width <= 0.1 || height <= 0.1) {
+			return rowHeight;
+		}
+		double aspect = Math.max(MIN_ASPECT, Math.min(MAX_ASPECT, Math.sqrt(width / height)));
+		return Math.max(1, (int) Math.round(rowHeight * aspect));
+	}
+
+	/**
+	 * Do the cells cover the whole sheet; they never overlap so
+	 * that is when their areas add up to the area of the sheet.
+	 */
+	private static boolean fillsSheet(List<Rectangle> cells, Rectangle bounds) {
+		long area = 0;
+		for (Rectangle cell : cells) {
+			area += (long) cell.width * cell.height;
+		}
+		return area == (long) bounds.width * bounds.height;
+	}
+
+	private static Rectangle bounds(List<Rectangle> cells) {
+		Rectangle bounds = new Rectangle(cells.get(0));
+		for (Rectangle cell : cells) {
+			bounds.add(cell);
+		}
+		return bounds;
+	}
+
+	/**
+	 * A rendered sprite sheet and where each Chemical is on it.
+	 *
+	 * @param <T> the type of the image, a {@link BufferedImage} or the SVG String.
+	 */
+	public static final class Sheet<T> {
+		private final T image;
+		private final int width;
+		private final int height;
+		private final List<Rectangle> cells;
+
+		Sheet(T image, int width, int height, List<Rectangle> cells) {
+			this.image = image;
+			this.width = width;
+			this.height = height;
+			this.cells = Collections.unmodifiableList(cells);
+		}
+
+		public T getImage() {
+			return image;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		/**
+		 * The cell of each Chemical on the sheet in the same order as the input.
+		 * @return an unmodifiable list; the Rectangles should not be changed.
+		 */
+		public List<Rectangle> getCells() {
+			return cells;
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.util.Optional;
+import java.util.OptionalInt;
+
+import gov.nih.ncats.molwitch.Atom;
+import gov.nih.ncats.molwitch.AtomCoordinates;
+import gov.nih.ncats.molwitch.Bond;
+import gov.nih.ncats.molwitch.Chemical;
+import gov.nih.ncats.molwitch.SGroup;
+
+/**
+ * A 128 bit hash of everything in a {@link Chemical} that
+ * {@link NchemicalRenderer#computeLayout(Chemical)} looks at:
+ * atoms, their coordinates, charges, isotopes, aliases and maps,
+ * bonds and their stereo, and SGroups and their brackets.
+ * Two Chemicals with the same fingerprint produce the same layout.
+ *
+ * This is intentionally a single linear walk over the atoms and bonds
+ * so it stays much cheaper than the layout it is used to look up.
+ */
+final class StructureFingerprint {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+	private final long h1;
+	private final long h2;
+
+	private StructureFingerprint(long h1, long h2) {
+		this.h1 = h1;
+		this.h2 = h2;
+	}
+
+	/**
+	 * Compute the fingerprint of the given Chemical.
+	 * @param c the Chemical to fingerprint.
+	 * @param sequenceProperty the name of the property that, if present,
+	 *                         makes the renderer draw a sequence instead of a structure;
+	 *                         may be null.
+	 * @return a new StructureFingerprint.
+	 */
+	static StructureFingerprint of(Chemical c, String sequenceProperty) {
+		Hasher h = new Hasher();
+		int atomCount = c.getAtomCount();
+		int bondCount = c.getBondCount();
+		h.add(atomCount).add(bondCount);
+		if (sequenceProperty != null) {
+			h.add(c.getProperty(sequenceProperty));
+		}
+		for (int i = 0; i < atomCount; i++) {
+			Atom a = c.getAtom(i);
+			AtomCoordinates coords = a.getAtomCoordinates();
+			h.add(a.getSymbol())
+			 .add(a.getAlias())
+			 .add(a.getCharge())
+			 .add(a.getRadical())
+			 .add(a.isIsotope() ? a.getMassNumber() : 0)
+			 .add(a.getImplicitHCount())
+			 .add(a.isQueryAtom() ? 1 : 0)
+			 .add(a.getRGroupIndex())
+			 .add(a.getAtomToAtomMap());
+			if (coords == null) {
+				h.add(Double.NaN).add(Double.NaN);
+			} else {
+				h.add(coords.getX()).add(coords.getY());
+			}
+		}
+		for (int i = 0; i < bondCount; i++) {
+			Bond b = c.getBond(i);
+			h.add(b.getAtom1().getAtomIndexInParent())
+			 .add(b.getAtom2().getAtomIndexInParent())
+			 .add(b.getBondType() == null ? -1 : b.getBondType().getOrder())
+			 .add(b.getStereo() == null ? -1 : b.getStereo().ordinal())
+			 .add(b.getDoubleBondStereo() == null ? -1 : b.getDoubleBondStereo().ordinal());
+		}
+		for (SGroup g : c.getSGroups()) {
+			h.add(g.getType() == null ? -1 : g.getType().ordinal());
+			g.getAtoms().forEach(a -> h.add(a.getAtomIndexInParent()));
+			h.add(-1);
+			g.getBonds().forEach(b -> h.add(b.getAtom1().getAtomIndexInParent())
+										.add(b.getAtom2().getAtomIndexInParent()));
+			h.add(-1);
+			h.add(g.getSuperatomLabel())
+			 .add(g.getSubscript())
+			 .add(g.getSuperscript())
+			 .add(g.bracketsTrusted() ? 1 : 0);
+			if (g.hasBrackets()) {
+				for (SGroup.SGroupBracket bracket : g.getBrackets()) {
+					h.add(bracket.getPoint1().getX()).add(bracket.getPoint1().getY())
+					 .add(bracket.getPoint2().getX()).add(bracket.getPoint2().getY());
+				}
+			}
+		}
+		return new StructureFingerprint(h.h1, h.h2);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof StructureFingerprint)) {
+			return false;
+		}
+		StructureFingerprint other = (StructureFingerprint) o;
+		return h1 == other.h1 && h2 == other.h2;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (h1 ^ (h1 >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%016x%016x", h1, h2);
+	}
+
+	/**
+	 * Two independent 64 bit hashes fed the same values:
+	 * FNV-1a for one and a multiply-rotate for the other.
+	 */
+	private static final class Hasher {
+		long h1 = FNV_OFFSET;
+		long h2 = GOLDEN;
+
+		Hasher add(long v) {
+			h1 = (h1 ^ v) * FNV_PRIME;
+			h2 = Long.rotateLeft(h2 ^ (v * GOLDEN), 31) * 5 + 0x52dce729;
+			return this;
+		}
+
+		Hasher add(int v) {
+			return add((long) v);
+		}
+
+		Hasher add(double v) {
+			return add(Double.doubleToLongBits(v));
+		}
+
+		Hasher add(String s) {
+			if (s == null) {
+				return add(0x7fffffffL);
+			}
+			add(s.length());
+			for (int i = 0; i < s.length(); i++) {
+				add(s.charAt(i));
+			}
+			return this;
+		}
+
+		Hasher add(Optional<String> s) {
+			return add(s.orElse(null));
+		}
+
+		Hasher add(OptionalInt v) {
+			return v.isPresent() ? add(v.getAsInt()) : add(Long.MIN_VALUE);
+		}
+	}
+}
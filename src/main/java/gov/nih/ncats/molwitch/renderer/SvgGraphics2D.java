@@ -0,0 +1,442 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A Graphics2D that writes what is drawn on it as SVG elements
+ * instead of pixels.  Shapes become paths in device coordinates and
+ * text becomes references to glyph outlines that are written once
+ * per font and glyph in the {@code <defs>} so the SVG looks the same
+ * without the fonts installed and repeated labels stay small.
+ *
+ * <p>
+ * Only solid colors are supported as paints; other paints draw in the current color.
+ * Drop shadows are written as an SVG filter and images drawn on this are embedded as PNGs.
+ * </p>
+ */
+final class SvgGraphics2D extends VectorGraphics2D {
+
+	private static final long[] POW10 = { 1, 10, 100, 1000, 10000 };
+
+	/**
+	 * Decimals written for coordinates.
+	 */
+	private static final int COORD_DECIMALS = 2;
+	/**
+	 * Decimals written for transform matrices.
+	 */
+	private static final int MATRIX_DECIMALS = 4;
+
+	/**
+	 * Everything drawn by this and every Graphics created from it.
+	 */
+	private static final class Document {
+		final int width;
+		final int height;
+		final StringBuilder defs = new StringBuilder();
+		final StringBuilder body = new StringBuilder();
+		final Map<GlyphKey, String> glyphIds = new HashMap<>();
+		final Map<String, String> filterIds = new HashMap<>();
+		int nextId;
+
+		Document(int width, int height) {
+			this.width = width;
+			this.height = height;
+		}
+
+		String nextId(String prefix) {
+			return prefix + nextId++;
+		}
+	}
+
+	private static final class GlyphKey {
+		private final Font font;
+		private final int code;
+
+		GlyphKey(Font font, int code) {
+			this.font = font;
+			this.code = code;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof GlyphKey)) {
+				return false;
+			}
+			GlyphKey other = (GlyphKey) o;
+			return code == other.code && font.equals(other.font);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * font.hashCode() + code;
+		}
+	}
+
+	private final Document doc;
+
+	/**
+	 * The id of the clipPath of the current clip once it has been written.
+	 */
+	private String clipId;
+
+	/**
+	 * Create a new empty SVG drawing.
+	 * @param width the width of the drawing in pixels.
+	 * @param height the height of the drawing in pixels.
+	 */
+	SvgGraphics2D(int width, int height) {
+		this.doc = new Document(width, height);
+	}
+
+	private SvgGraphics2D(SvgGraphics2D parent) {
+		super(parent);
+		this.doc = parent.doc;
+		this.clipId = parent.clipId;
+	}
+
+	/**
+	 * Get the SVG document of everything drawn so far.
+	 * @return the SVG as a String.
+	 */
+	String getSvg() {
+		StringBuilder sb = new StringBuilder(doc.defs.length() + doc.body.length() + 256);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"")
+				.append(" width=\"").append(doc.width).append("\" height=\"").append(doc.height)
+				.append("\" viewBox=\"0 0 ").append(doc.width).append(' ').append(doc.height).append("\">\n");
+		if (doc.defs.length() > 0) {
+			sb.append("<defs>\n").append(doc.defs).append("</defs>\n");
+		}
+		return sb.append(doc.body).append("</svg>\n").toString();
+	}
+
+	@Override
+	int beginGroup() {
+		return doc.body.length();
+	}
+
+	/**
+	 * Put everything drawn since {@link #beginGroup()} into a group
+	 * and use it again underneath with a filter that makes the shadow.
+	 */
+	@Override
+	void endGroupWithShadow(int start, Rectangle area, int offset, float radius, float opacity) {
+		if (start == doc.body.length()) {
+			return;
+		}
+		int pixels = (int) (radius * area.width + .5f);
+		//the image shadow is 3 box blurs which has the same variance as a gaussian of this deviation
+		double deviation = Math.sqrt(pixels * (pixels + 1.0));
+		StringBuilder filter = new StringBuilder();
+		num(filter.append("<feColorMatrix type=\"matrix\" values=\""
+				+ "0.2126 0.7152 0.0722 0 0 0.2126 0.7152 0.0722 0 0 0.2126 0.7152 0.0722 0 0 0 0 0 "),
+				opacity, MATRIX_DECIMALS).append(" 0\"/>");
+		if (deviation > 0) {
+			num(filter.append("<feGaussianBlur stdDeviation=\""), deviation, MATRIX_DECIMALS).append("\"/>");
+		}
+		String key = filter.toString();
+		String filterId = doc.filterIds.get(key);
+		if (filterId == null) {
+			filterId = doc.nextId("s");
+			doc.filterIds.put(key, filterId);
+			doc.defs.append("<filter id=\"").append(filterId)
+					.append("\" x=\"-20%\" y=\"-20%\" width=\"140%\" height=\"140%\">").append(key).append("</filter>\n");
+		}
+		String groupId = doc.nextId("m");
+		StringBuilder head = new StringBuilder();
+		head.append("<use xlink:href=\"#").append(groupId).append("\" transform=\"translate(")
+				.append(offset).append(' ').append(offset)
+				.append(")\" filter=\"url(#").append(filterId).append(")\"/>\n");
+		head.append("<g id=\"").append(groupId).append("\">\n");
+		doc.body.insert(start, head);
+		doc.body.append("</g>\n");
+	}
+
+	@Override
+	void clipChanged() {
+		clipId = null;
+	}
+
+	private static StringBuilder num(StringBuilder sb, double v, int decimals) {
+		long pow = POW10[decimals];
+		long r = Math.round(Math.abs(v) * pow);
+		if (r != 0 && v < 0) {
+			sb.append('-');
+		}
+		sb.append(r / pow);
+		long f = r % pow;
+		if (f != 0) {
+			int digits = decimals;
+			while (f % 10 == 0) {
+				f /= 10;
+				digits--;
+			}
+			sb.append('.');
+			String s = Long.toString(f);
+			for (int i = s.length(); i < digits; i++) {
+				sb.append('0');
+			}
+			sb.append(s);
+		}
+		return sb;
+	}
+
+	private static StringBuilder pathData(StringBuilder sb, PathIterator it) {
+		double[] c = new double[6];
+		while (!it.isDone()) {
+			switch (it.currentSegment(c)) {
+				case PathIterator.SEG_MOVETO:
+					point(sb.append('M'), c, 0);
+					break;
+				case PathIterator.SEG_LINETO:
+					point(sb.append('L'), c, 0);
+					break;
+				case PathIterator.SEG_QUADTO:
+					point(point(sb.append('Q'), c, 0).append(' '), c, 2);
+					break;
+				case PathIterator.SEG_CUBICTO:
+					point(point(point(sb.append('C'), c, 0).append(' '), c, 2).append(' '), c, 4);
+					break;
+				default:
+					sb.append('Z');
+					break;
+			}
+			it.next();
+		}
+		return sb;
+	}
+
+	private static StringBuilder point(StringBuilder sb, double[] c, int offset) {
+		return num(num(sb, c[offset], COORD_DECIMALS).append(' '), c[offset + 1], COORD_DECIMALS);
+	}
+
+	private static StringBuilder matrix(StringBuilder sb, AffineTransform at) {
+		sb.append("matrix(");
+		num(sb, at.getScaleX(), MATRIX_DECIMALS).append(' ');
+		num(sb, at.getShearY(), MATRIX_DECIMALS).append(' ');
+		num(sb, at.getShearX(), MATRIX_DECIMALS).append(' ');
+		num(sb, at.getScaleY(), MATRIX_DECIMALS).append(' ');
+		num(sb, at.getTranslateX(), COORD_DECIMALS).append(' ');
+		return num(sb, at.getTranslateY(), COORD_DECIMALS).append(')');
+	}
+
+	/**
+	 * Write the color and opacity of the current paint.
+	 * @param attribute "fill" or "stroke".
+	 * @return false if the paint is fully transparent so there is nothing to draw.
+	 */
+	private boolean paintAttributes(StringBuilder sb, String attribute) {
+		Color c = paint instanceof Color ? (Color) paint : color;
+		float opacity = c.getAlpha() / 255F;
+		if (composite instanceof AlphaComposite) {
+			opacity *= ((AlphaComposite) composite).getAlpha();
+		}
+		if (opacity <= 0) {
+			return false;
+		}
+		sb.append(' ').append(attribute).append("=\"#");
+		int rgb = c.getRGB() & 0xFFFFFF;
+		for (int shift = 20; shift >= 0; shift -= 4) {
+			sb.append(Character.forDigit((rgb >> shift) & 0xF, 16));
+		}
+		sb.append('"');
+		if (opacity < 1) {
+			num(sb.append(' ').append(attribute).append("-opacity=\""), opacity, 3).append('"');
+		}
+		return true;
+	}
+
+	private void clipAttribute(StringBuilder sb) {
+		if (clip == null) {
+			return;
+		}
+		if (clipId == null) {
+			clipId = doc.nextId("c");
+			pathData(doc.defs.append("<clipPath id=\"").append(clipId).append("\"><path d=\""),
+					clip.getPathIterator(null)).append("\"/></clipPath>\n");
+		}
+		sb.append(" clip-path=\"url(#").append(clipId).append(")\"");
+	}
+
+	@Override
+	public void draw(Shape s) {
+		if (!(stroke instanceof BasicStroke) || !isConformal(transform)) {
+			fill(stroke.createStrokedShape(s));
+			return;
+		}
+		BasicStroke bs = (BasicStroke) stroke;
+		StringBuilder sb = doc.body;
+		int start = sb.length();
+		sb.append("<path");
+		if (!paintAttributes(sb, "stroke")) {
+			sb.setLength(start);
+			return;
+		}
+		double scale = Math.sqrt(Math.abs(transform.getDeterminant()));
+		//a 0 width BasicStroke is the thinnest line the device can draw
+		double width = bs.getLineWidth() == 0 ? 1 : bs.getLineWidth() * scale;
+		num(sb.append(" fill=\"none\" stroke-width=\""), width, COORD_DECIMALS).append('"');
+		if (bs.getEndCap() == BasicStroke.CAP_ROUND) {
+			sb.append(" stroke-linecap=\"round\"");
+		} else if (bs.getEndCap() == BasicStroke.CAP_SQUARE) {
+			sb.append(" stroke-linecap=\"square\"");
+		}
+		if (bs.getLineJoin() == BasicStroke.JOIN_ROUND) {
+			sb.append(" stroke-linejoin=\"round\"");
+		} else if (bs.getLineJoin() == BasicStroke.JOIN_BEVEL) {
+			sb.append(" stroke-linejoin=\"bevel\"");
+		} else if (bs.getMiterLimit() != 4) {
+			num(sb.append(" stroke-miterlimit=\""), bs.getMiterLimit(), COORD_DECIMALS).append('"');
+		}
+		float[] dash = bs.getDashArray();
+		if (dash != null) {
+			sb.append(" stroke-dasharray=\"");
+			for (int i = 0; i < dash.length; i++) {
+				if (i > 0) {
+					sb.append(' ');
+				}
+				num(sb, dash[i] * scale, COORD_DECIMALS);
+			}
+			sb.append('"');
+			if (bs.getDashPhase() != 0) {
+				num(sb.append(" stroke-dashoffset=\""), bs.getDashPhase() * scale, COORD_DECIMALS).append('"');
+			}
+		}
+		clipAttribute(sb);
+		pathData(sb.append(" d=\""), s.getPathIterator(transform)).append("\"/>\n");
+	}
+
+	@Override
+	public void fill(Shape s) {
+		StringBuilder sb = doc.body;
+		int start = sb.length();
+		sb.append("<path");
+		if (!paintAttributes(sb, "fill")) {
+			sb.setLength(start);
+			return;
+		}
+		PathIterator it = s.getPathIterator(transform);
+		if (it.getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+			sb.append(" fill-rule=\"evenodd\"");
+		}
+		clipAttribute(sb);
+		pathData(sb.append(" d=\""), it).append("\"/>\n");
+	}
+
+	private String glyphId(Font f, FontRenderContext frc, int code) {
+		GlyphKey key = new GlyphKey(f, code);
+		String id = doc.glyphIds.get(key);
+		if (id == null) {
+			id = doc.nextId("g");
+			doc.glyphIds.put(key, id);
+			Shape outline = f.createGlyphVector(frc, new int[] { code }).getGlyphOutline(0);
+			pathData(doc.defs.append("<path id=\"").append(id).append("\" d=\""),
+					outline.getPathIterator(null)).append("\"/>\n");
+		}
+		return id;
+	}
+
+	@Override
+	public void drawGlyphVector(GlyphVector g, float x, float y) {
+		int n = g.getNumGlyphs();
+		for (int i = 0; i < n; i++) {
+			if (g.getGlyphTransform(i) != null) {
+				fill(g.getOutline(x, y));
+				return;
+			}
+		}
+		StringBuilder sb = doc.body;
+		int start = sb.length();
+		sb.append("<g");
+		if (!paintAttributes(sb, "fill")) {
+			sb.setLength(start);
+			return;
+		}
+		boolean translateOnly = (transform.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0;
+		double dx = translateOnly ? transform.getTranslateX() : 0;
+		double dy = translateOnly ? transform.getTranslateY() : 0;
+		if (!translateOnly) {
+			matrix(sb.append(" transform=\""), transform).append('"');
+		}
+		clipAttribute(sb);
+		sb.append(">");
+		Font f = g.getFont();
+		FontRenderContext frc = g.getFontRenderContext();
+		for (int i = 0; i < n; i++) {
+			Point2D pos = g.getGlyphPosition(i);
+			sb.append("<use xlink:href=\"#").append(glyphId(f, frc, g.getGlyphCode(i))).append("\" x=\"");
+			num(sb, x + pos.getX() + dx, COORD_DECIMALS).append("\" y=\"");
+			num(sb, y + pos.getY() + dy, COORD_DECIMALS).append("\"/>");
+		}
+		sb.append("</g>\n");
+	}
+
+	@Override
+	public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		try {
+			ImageIO.write(img, "png", png);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		AffineTransform at = new AffineTransform(transform);
+		if (xform != null) {
+			at.concatenate(xform);
+		}
+		at.translate(img.getMinX(), img.getMinY());
+		StringBuilder sb = doc.body;
+		matrix(sb.append("<image transform=\""), at).append('"');
+		clipAttribute(sb);
+		sb.append(" width=\"").append(img.getWidth()).append("\" height=\"").append(img.getHeight())
+				.append("\" xlink:href=\"data:image/png;base64,")
+				.append(Base64.getEncoder().encodeToString(png.toByteArray())).append("\"/>\n");
+	}
+
+	@Override
+	public Graphics create() {
+		return new SvgGraphics2D(this);
+	}
+
+}
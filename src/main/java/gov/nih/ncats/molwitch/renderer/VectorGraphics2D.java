@@ -0,0 +1,635 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.LineMetrics;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Base class of the Graphics2Ds that keep what is drawn on them as
+ * shapes instead of pixels.  This keeps track of the graphics state and turns
+ * all the primitive, text and image methods into calls to {@link #draw(Shape)},
+ * {@link #fill(Shape)}, {@link #drawGlyphVector(GlyphVector, float, float)} and
+ * {@link #drawRenderedImage(RenderedImage, AffineTransform)}.
+ *
+ * <p>
+ * Since these do not draw into an image {@link #getDeviceConfiguration()}
+ * is null, so the renderer never paints anything off screen to copy on here;
+ * drop shadows are put around a group of drawing instead by
+ * {@link #endGroupWithShadow(int, Rectangle, int, float, float)}.
+ * </p>
+ */
+abstract class VectorGraphics2D extends Graphics2D {
+
+	AffineTransform transform = new AffineTransform();
+	Paint paint = Color.BLACK;
+	Color color = Color.BLACK;
+	Color background = Color.WHITE;
+	Stroke stroke = new BasicStroke();
+	Composite composite = AlphaComposite.SrcOver;
+	Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+	RenderingHints hints = new RenderingHints(null);
+	/**
+	 * The clip in device coordinates, or null for no clip.
+	 */
+	Shape clip;
+
+	VectorGraphics2D() {
+	}
+
+	/**
+	 * Copy the graphics state of the given Graphics for {@link #create()}.
+	 */
+	VectorGraphics2D(VectorGraphics2D parent) {
+		this.transform = new AffineTransform(parent.transform);
+		this.paint = parent.paint;
+		this.color = parent.color;
+		this.background = parent.background;
+		this.stroke = parent.stroke;
+		this.composite = parent.composite;
+		this.font = parent.font;
+		this.hints = (RenderingHints) parent.hints.clone();
+		this.clip = parent.clip;
+	}
+
+	/**
+	 * Start a group of drawing that can later be given a shadow.
+	 * @return the value to pass to {@link #endGroupWithShadow(int, Rectangle, int, float, float)}.
+	 */
+	abstract int beginGroup();
+
+	/**
+	 * Draw a blurred, grey, translucent copy of everything drawn since
+	 * {@link #beginGroup()} underneath it, the same as the drop shadow drawn on images.
+	 * @param group the value returned by {@link #beginGroup()}.
+	 * @param area the area the structure was rendered in.
+	 * @param offset how far down and right the shadow is in pixels.
+	 * @param radius the blur radius of the shadow as a fraction of the width of the area.
+	 * @param opacity the opacity of the shadow from 0 to 1.
+	 */
+	abstract void endGroupWithShadow(int group, Rectangle area, int offset, float radius, float opacity);
+
+	/**
+	 * Called when the clip changes.
+	 */
+	void clipChanged() {
+	}
+
+	static boolean isConformal(AffineTransform at) {
+		double tolerance = 1E-9 * (Math.abs(at.getScaleX()) + Math.abs(at.getShearX()) + 1);
+		return (Math.abs(at.getScaleX() - at.getScaleY()) <= tolerance && Math.abs(at.getShearX() + at.getShearY()) <= tolerance)
+				|| (Math.abs(at.getScaleX() + at.getScaleY()) <= tolerance && Math.abs(at.getShearX() - at.getShearY()) <= tolerance);
+	}
+
+	@Override
+	public void drawString(String str, float x, float y) {
+		if (!str.isEmpty()) {
+			drawGlyphVector(font.createGlyphVector(getFontRenderContext(), str), x, y);
+		}
+	}
+
+	@Override
+	public void drawString(String str, int x, int y) {
+		drawString(str, (float) x, (float) y);
+	}
+
+	@Override
+	public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+		new TextLayout(iterator, getFontRenderContext()).draw(this, x, y);
+	}
+
+	@Override
+	public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+		drawString(iterator, (float) x, (float) y);
+	}
+
+	@Override
+	public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+		drawRenderedImage(img.createDefaultRendering(), xform);
+	}
+
+	private static RenderedImage rendered(Image img) {
+		if (img instanceof RenderedImage) {
+			return (RenderedImage) img;
+		}
+		throw new UnsupportedOperationException("only RenderedImages can be drawn on a vector Graphics");
+	}
+
+	@Override
+	public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+		drawRenderedImage(rendered(img), xform);
+		return true;
+	}
+
+	@Override
+	public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+		drawRenderedImage(op == null ? img : op.filter(img, null), AffineTransform.getTranslateInstance(x, y));
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+		return drawImage(img, AffineTransform.getTranslateInstance(x, y), observer);
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+		RenderedImage r = rendered(img);
+		AffineTransform at = AffineTransform.getTranslateInstance(x, y);
+		at.scale(width / (double) r.getWidth(), height / (double) r.getHeight());
+		drawRenderedImage(r, at);
+		return true;
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+		RenderedImage r = rendered(img);
+		fillWith(bgcolor, new Rectangle(x, y, r.getWidth(), r.getHeight()));
+		return drawImage(img, x, y, observer);
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+		fillWith(bgcolor, new Rectangle(x, y, width, height));
+		return drawImage(img, x, y, width, height, observer);
+	}
+
+	@Override
+	public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+			ImageObserver observer) {
+		RenderedImage r = rendered(img);
+		if (!(r instanceof BufferedImage)) {
+			throw new UnsupportedOperationException("only BufferedImages can be cropped");
+		}
+		BufferedImage sub = ((BufferedImage) r).getSubimage(Math.min(sx1, sx2), Math.min(sy1, sy2),
+				Math.abs(sx2 - sx1), Math.abs(sy2 - sy1));
+		AffineTransform at = AffineTransform.getTranslateInstance(dx1, dy1);
+		at.scale((dx2 - dx1) / (double) (sx2 - sx1), (dy2 - dy1) / (double) (sy2 - sy1));
+		if (sx2 < sx1) {
+			at.translate(-sub.getWidth(), 0);
+		}
+		if (sy2 < sy1) {
+			at.translate(0, -sub.getHeight());
+		}
+		drawRenderedImage(sub, at);
+		return true;
+	}
+
+	@Override
+	public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+			Color bgcolor, ImageObserver observer) {
+		fillWith(bgcolor, new Rectangle(Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1), Math.abs(dy2 - dy1)));
+		return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+	}
+
+	private void fillWith(Color c, Shape s) {
+		if (c == null) {
+			return;
+		}
+		Paint old = paint;
+		paint = c;
+		fill(s);
+		paint = old;
+	}
+
+	@Override
+	public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+		if (onStroke) {
+			s = stroke.createStrokedShape(s);
+		}
+		s = transform.createTransformedShape(s);
+		if (clip != null && !clip.intersects(rect)) {
+			return false;
+		}
+		return s.intersects(rect);
+	}
+
+	/**
+	 * @return null since this doesn't draw to a device.
+	 */
+	@Override
+	public GraphicsConfiguration getDeviceConfiguration() {
+		return null;
+	}
+
+	@Override
+	public void setComposite(Composite comp) {
+		this.composite = Objects.requireNonNull(comp);
+	}
+
+	@Override
+	public Composite getComposite() {
+		return composite;
+	}
+
+	@Override
+	public void setPaint(Paint paint) {
+		if (paint == null) {
+			return;
+		}
+		this.paint = paint;
+		if (paint instanceof Color) {
+			this.color = (Color) paint;
+		}
+	}
+
+	@Override
+	public Paint getPaint() {
+		return paint;
+	}
+
+	@Override
+	public void setStroke(Stroke s) {
+		this.stroke = Objects.requireNonNull(s);
+	}
+
+	@Override
+	public Stroke getStroke() {
+		return stroke;
+	}
+
+	@Override
+	public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+		hints.put(hintKey, hintValue);
+	}
+
+	@Override
+	public Object getRenderingHint(RenderingHints.Key hintKey) {
+		return hints.get(hintKey);
+	}
+
+	@Override
+	public void setRenderingHints(Map<?, ?> hints) {
+		this.hints = new RenderingHints(null);
+		this.hints.putAll(hints);
+	}
+
+	@Override
+	public void addRenderingHints(Map<?, ?> hints) {
+		this.hints.putAll(hints);
+	}
+
+	@Override
+	public RenderingHints getRenderingHints() {
+		return (RenderingHints) hints.clone();
+	}
+
+	@Override
+	public void translate(int x, int y) {
+		translate((double) x, (double) y);
+	}
+
+	@Override
+	public void translate(double tx, double ty) {
+		transform.translate(tx, ty);
+	}
+
+	@Override
+	public void rotate(double theta) {
+		transform.rotate(theta);
+	}
+
+	@Override
+	public void rotate(double theta, double x, double y) {
+		transform.rotate(theta, x, y);
+	}
+
+	@Override
+	public void scale(double sx, double sy) {
+		transform.scale(sx, sy);
+	}
+
+	@Override
+	public void shear(double shx, double shy) {
+		transform.shear(shx, shy);
+	}
+
+	@Override
+	public void transform(AffineTransform tx) {
+		transform.concatenate(tx);
+	}
+
+	@Override
+	public void setTransform(AffineTransform tx) {
+		transform = new AffineTransform(tx);
+	}
+
+	@Override
+	public AffineTransform getTransform() {
+		return new AffineTransform(transform);
+	}
+
+	@Override
+	public void setBackground(Color color) {
+		this.background = color;
+	}
+
+	@Override
+	public Color getBackground() {
+		return background;
+	}
+
+	/**
+	 * The same font render context an image Graphics with these hints would have,
+	 * so text is measured the same as when rendering to an image.
+	 */
+	@Override
+	public FontRenderContext getFontRenderContext() {
+		Object aa = hints.get(RenderingHints.KEY_TEXT_ANTIALIASING);
+		if (aa == null || aa == RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT) {
+			//text follows the shape antialiasing unless it is set separately
+			aa = RenderingHints.VALUE_ANTIALIAS_ON.equals(hints.get(RenderingHints.KEY_ANTIALIASING))
+					? RenderingHints.VALUE_TEXT_ANTIALIAS_ON : RenderingHints.VALUE_TEXT_ANTIALIAS_OFF;
+		}
+		Object fm = hints.get(RenderingHints.KEY_FRACTIONALMETRICS);
+		return new FontRenderContext(null, aa,
+				fm == null ? RenderingHints.VALUE_FRACTIONALMETRICS_DEFAULT : fm);
+	}
+
+	@Override
+	public Color getColor() {
+		return color;
+	}
+
+	@Override
+	public void setColor(Color c) {
+		if (c == null) {
+			return;
+		}
+		this.color = c;
+		this.paint = c;
+	}
+
+	@Override
+	public void setPaintMode() {
+		composite = AlphaComposite.SrcOver;
+	}
+
+	/**
+	 * XOR mode can't be drawn as shapes so this does nothing.
+	 */
+	@Override
+	public void setXORMode(Color c1) {
+		//not supported
+	}
+
+	@Override
+	public Font getFont() {
+		return font;
+	}
+
+	@Override
+	public void setFont(Font font) {
+		if (font != null) {
+			this.font = font;
+		}
+	}
+
+	@Override
+	public FontMetrics getFontMetrics(Font f) {
+		return new VectorFontMetrics(f, getFontRenderContext());
+	}
+
+	/**
+	 * Font metrics measured with the font render context of
+	 * this Graphics instead of a screen or image.
+	 */
+	private static final class VectorFontMetrics extends FontMetrics {
+		private static final long serialVersionUID = 1L;
+
+		private final transient FontRenderContext frc;
+		private final transient LineMetrics lineMetrics;
+
+		VectorFontMetrics(Font font, FontRenderContext frc) {
+			super(font);
+			this.frc = frc;
+			this.lineMetrics = font.getLineMetrics("", frc);
+		}
+
+		@Override
+		public FontRenderContext getFontRenderContext() {
+			return frc;
+		}
+
+		/**
+		 * Metrics are rounded up the same way as the metrics of an image Graphics.
+		 */
+		private static int roundUp(float value) {
+			return (int) (.95F + value);
+		}
+
+		@Override
+		public int getAscent() {
+			return roundUp(lineMetrics.getAscent());
+		}
+
+		@Override
+		public int getDescent() {
+			return roundUp(lineMetrics.getDescent());
+		}
+
+		@Override
+		public int getLeading() {
+			return roundUp(lineMetrics.getDescent() + lineMetrics.getLeading()) - getDescent();
+		}
+
+		@Override
+		public int charWidth(char ch) {
+			return stringWidth(String.valueOf(ch));
+		}
+
+		@Override
+		public int charWidth(int codePoint) {
+			return stringWidth(new String(Character.toChars(codePoint)));
+		}
+
+		@Override
+		public int stringWidth(String str) {
+			return (int) (0.5 + font.getStringBounds(str, frc).getWidth());
+		}
+
+		@Override
+		public int charsWidth(char[] data, int off, int len) {
+			return stringWidth(new String(data, off, len));
+		}
+	}
+
+	@Override
+	public Rectangle getClipBounds() {
+		Shape c = getClip();
+		return c == null ? null : c.getBounds();
+	}
+
+	@Override
+	public void clipRect(int x, int y, int width, int height) {
+		clip(new Rectangle(x, y, width, height));
+	}
+
+	@Override
+	public void setClip(int x, int y, int width, int height) {
+		setClip(new Rectangle(x, y, width, height));
+	}
+
+	@Override
+	public Shape getClip() {
+		if (clip == null) {
+			return null;
+		}
+		try {
+			return transform.createInverse().createTransformedShape(clip);
+		} catch (NoninvertibleTransformException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public void setClip(Shape clip) {
+		this.clip = clip == null ? null : transform.createTransformedShape(clip);
+		clipChanged();
+	}
+
+	@Override
+	public void clip(Shape s) {
+		Shape device = transform.createTransformedShape(s);
+		if (clip != null) {
+			Area area = new Area(clip);
+			area.intersect(new Area(device));
+			device = area;
+		}
+		this.clip = device;
+		clipChanged();
+	}
+
+	/**
+	 * There are no pixels to copy.
+	 * @throws UnsupportedOperationException always.
+	 */
+	@Override
+	public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+		throw new UnsupportedOperationException("copyArea is not supported on a vector Graphics");
+	}
+
+	@Override
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		draw(new Line2D.Float(x1, y1, x2, y2));
+	}
+
+	@Override
+	public void fillRect(int x, int y, int width, int height) {
+		fill(new Rectangle(x, y, width, height));
+	}
+
+	@Override
+	public void clearRect(int x, int y, int width, int height) {
+		Composite old = composite;
+		composite = AlphaComposite.SrcOver;
+		fillWith(background, new Rectangle(x, y, width, height));
+		composite = old;
+	}
+
+	@Override
+	public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+		draw(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+	}
+
+	@Override
+	public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+		fill(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+	}
+
+	@Override
+	public void drawOval(int x, int y, int width, int height) {
+		draw(new Ellipse2D.Float(x, y, width, height));
+	}
+
+	@Override
+	public void fillOval(int x, int y, int width, int height) {
+		fill(new Ellipse2D.Float(x, y, width, height));
+	}
+
+	@Override
+	public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+		draw(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+	}
+
+	@Override
+	public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+		fill(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+	}
+
+	@Override
+	public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+		if (nPoints < 1) {
+			return;
+		}
+		Path2D.Float path = new Path2D.Float();
+		path.moveTo(xPoints[0], yPoints[0]);
+		for (int i = 1; i < nPoints; i++) {
+			path.lineTo(xPoints[i], yPoints[i]);
+		}
+		draw(path);
+	}
+
+	@Override
+	public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		draw(new Polygon(xPoints, yPoints, nPoints));
+	}
+
+	@Override
+	public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		fill(new Polygon(xPoints, yPoints, nPoints));
+	}
+
+	@Override
+	public void dispose() {
+		//nothing to release, what was drawn stays readable
+	}
+}
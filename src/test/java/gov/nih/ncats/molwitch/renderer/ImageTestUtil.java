@@ -16,7 +16,9 @@
  *    limitations under the License.
  */
 
-package gov.nih.ncats.molwitch.renderer;import javax.imageio.ImageIO;
+package gov.nih.ncats.molwitch.renderer;import gov.nih.ncats.molwitch.Chemical;
+
+import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 import java.io.File;
@@ -28,6 +30,13 @@ public final class ImageTestUtil {
     private ImageTestUtil(){
         //can not instantiate
     }
+    /**
+     * Parse a mol file from the test resources.
+     * @param resource the path of the resource like "/dash.mol".
+     */
+    public static Chemical parseMol(String resource) throws IOException {
+        return Chemical.parseMol(new File(ImageTestUtil.class.getResource(resource).getFile()));
+    }
     public static void assertImageDataMatches(File expected, File actual) throws IOException {
         assertImageDataMatches(ImageIO.read(expected), ImageIO.read(actual));
     }
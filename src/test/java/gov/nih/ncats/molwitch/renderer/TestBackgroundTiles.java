@@ -0,0 +1,108 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+public class TestBackgroundTiles {
+
+    @Before
+    public void clear(){
+        BackgroundTiles.clear();
+    }
+
+    private static BufferedImage paintDirectly(int width, int height, Color background, Color border, RenderQuality quality){
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        quality.applyHints(g);
+        AbstractChemicalRenderer.paintBackground(g, 0, 0, width, height, true, background, border);
+        g.dispose();
+        return img;
+    }
+
+    @Test
+    public void sameTileForSameSizeAndColors(){
+        BufferedImage tile = BackgroundTiles.get(200, 150, Color.WHITE, Color.BLACK, RenderQuality.STANDARD);
+
+        assertSame(tile, BackgroundTiles.get(200, 150, new Color(255, 255, 255), new Color(0, 0, 0), RenderQuality.STANDARD));
+        assertNotSame(tile, BackgroundTiles.get(200, 150, Color.WHITE, null, RenderQuality.STANDARD));
+        assertNotSame(tile, BackgroundTiles.get(150, 200, Color.WHITE, Color.BLACK, RenderQuality.STANDARD));
+        assertNotSame(tile, BackgroundTiles.get(200, 150, Color.WHITE, Color.BLACK, RenderQuality.PRINT));
+        assertEquals(4, BackgroundTiles.size());
+    }
+
+    @Test
+    public void tileSameAsPaintingDirectly(){
+        for(RenderQuality quality : new RenderQuality[]{RenderQuality.STANDARD, RenderQuality.PRINT}){
+            ImageTestUtil.assertImageDataMatches(paintDirectly(300, 200, Color.WHITE, Color.BLUE, quality),
+                    BackgroundTiles.get(300, 200, Color.WHITE, Color.BLUE, quality));
+        }
+    }
+
+    @Test
+    public void renderedBackgroundSameAsPaintingDirectly(){
+        NchemicalRenderer renderer = new NchemicalRenderer();
+        renderer.setBackgroundColor(new ARGBColor(Color.YELLOW));
+        renderer.setBorderVisible(true);
+
+        BufferedImage actual = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = actual.createGraphics();
+        renderer.renderBackground(g, 0, 0, 200, 200, true);
+        g.dispose();
+
+        ImageTestUtil.assertImageDataMatches(
+                paintDirectly(200, 200, Color.YELLOW, renderer.getBorderColor().asColor(), RenderQuality.STANDARD), actual);
+        assertEquals(1, BackgroundTiles.size());
+    }
+
+    @Test
+    public void transparentBackgroundIsNotDrawn(){
+        NchemicalRenderer renderer = new NchemicalRenderer();
+        renderer.setBackgroundColor(new ARGBColor(0, 0, 0, 0));
+        renderer.setBorderVisible(false);
+        BufferedImage img = new BufferedImage(50, 50, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, 50, 50);
+
+        renderer.renderBackground(g, 0, 0, 50, 50, true);
+        assertEquals(Color.RED.getRGB(), img.getRGB(25, 25));
+        assertEquals(0, BackgroundTiles.size());
+
+        //unless the composite replaces what is there
+        g.setComposite(AlphaComposite.Src);
+        renderer.renderBackground(g, 0, 0, 50, 50, false);
+        g.dispose();
+        assertEquals(0, img.getRGB(25, 25));
+    }
+
+    @Test
+    public void bigTilesAreNotCached(){
+        assertNull(BackgroundTiles.get(2000, 1000, Color.WHITE, null, RenderQuality.STANDARD));
+        assertEquals(0, BackgroundTiles.size());
+    }
+}
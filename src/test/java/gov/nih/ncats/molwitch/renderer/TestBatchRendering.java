@@ -0,0 +1,109 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TestBatchRendering {
+
+    private static final List<String> RESOURCES = Arrays.asList("/usp_steroid.mol", "/wedgeCollide.mol",
+            "/dash.mol", "/double_either.mol", "/overlap.mol", "/hasSUPs.mol");
+
+    private List<Chemical> parseAll() throws Exception{
+        List<Chemical> list = new ArrayList<>();
+        //repeat the inputs so every worker has something to do
+        for(int i=0; i< 4; i++) {
+            for (String r : RESOURCES) {
+                list.add(ImageTestUtil.parseMol(r));
+            }
+        }
+        return list;
+    }
+
+    @Test
+    public void resultsInInputOrderAndSameAsOneAtATime() throws Exception{
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        List<Chemical> chemicals = parseAll();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<RenderResult<BufferedImage>> results = renderer.renderAll(chemicals, 200, 200, true, pool);
+            assertEquals(chemicals.size(), results.size());
+            for (int i = 0; i < chemicals.size(); i++) {
+                RenderResult<BufferedImage> result = results.get(i);
+                assertEquals(i, result.getIndex());
+                assertSame(chemicals.get(i), result.getChemical());
+                assertTrue(result.isSuccessful());
+                ImageTestUtil.assertImageDataMatches(renderer.createImage(chemicals.get(i), 200, 200, true), result.get());
+            }
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void oneFailureDoesNotStopTheBatch() throws Exception{
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        List<Chemical> chemicals = Arrays.asList(ImageTestUtil.parseMol("/dash.mol"), null, ImageTestUtil.parseMol("/overlap.mol"));
+
+        List<RenderResult<BufferedImage>> results = renderer.renderAll(chemicals, 100, 100, true);
+
+        assertTrue(results.get(0).isSuccessful());
+        assertFalse(results.get(1).isSuccessful());
+        assertTrue(results.get(1).getError().get() instanceof NullPointerException);
+        assertTrue(results.get(2).isSuccessful());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getOnFailureThrows() throws Exception{
+        new ChemicalRenderer().renderAll(Arrays.asList((Chemical) null), 100, 100, true).get(0).get();
+    }
+
+    @Test
+    public void encodedAsPng() throws Exception{
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        List<Chemical> chemicals = parseAll();
+
+        List<RenderResult<byte[]>> results = renderer.renderAllEncoded(chemicals, 150, 120, true, "png");
+        for(RenderResult<byte[]> result : results){
+            BufferedImage img = ImageIO.read(new ByteArrayInputStream(result.get()));
+            assertEquals(150, img.getWidth());
+            assertEquals(120, img.getHeight());
+        }
+    }
+
+    @Test
+    public void unknownFormatIsPerItemFailure() throws Exception{
+        List<RenderResult<byte[]>> results = new ChemicalRenderer()
+                .renderAllEncoded(Arrays.asList(ImageTestUtil.parseMol("/dash.mol")), 100, 100, true, "not-a-format");
+
+        assertFalse(results.get(0).isSuccessful());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import org.junit.Test;
+
+import java.awt.BasicStroke;
+
+import static org.junit.Assert.*;
+
+public class TestBondGeometry {
+
+    private static final double EPS = 1E-9;
+
+    @Test
+    public void clipToAtomsShortensBothEnds(){
+        double[] seg = {0, 0, 10, 0};
+        //circles are x, y, radius
+        assertTrue(BondGeometry.clipToAtoms(seg, new float[]{0, 0, 2}, new float[]{10, 0, 3}));
+        assertArrayEquals(new double[]{2, 0, 7, 0}, seg, EPS);
+    }
+
+    @Test
+    public void clipToAtomsWithoutLabelsLeavesSegmentAlone(){
+        double[] seg = {0, 0, 10, 0};
+        assertTrue(BondGeometry.clipToAtoms(seg, new float[]{0, 0, 0}, new float[]{10, 0, 0}));
+        assertArrayEquals(new double[]{0, 0, 10, 0}, seg, EPS);
+    }
+
+    @Test
+    public void hiddenSegmentIsNotDrawn(){
+        double[] seg = {0, 0, 1, 0};
+        assertFalse(BondGeometry.clipToAtoms(seg, new float[]{0, 0, 5}, new float[]{1, 0, 5}));
+    }
+
+    @Test
+    public void intersectionOfLines(){
+        double[] out = new double[2];
+        assertTrue(BondGeometry.intersection(0, 0, 10, 10, 0, 10, 10, 0, out));
+        assertArrayEquals(new double[]{5, 5}, out, EPS);
+
+        out[0] = out[1] = -1;
+        assertFalse(BondGeometry.intersection(0, 0, 10, 0, 0, 1, 10, 1, out));
+        assertArrayEquals(new double[]{-1, -1}, out, EPS);
+    }
+
+    @Test
+    public void wedgeTrapezoidCorners(){
+        double[] seg = {0, 0, 10, 0};
+        double[] trap = BondGeometry.wedgeTrapezoid(seg, new float[]{0, 0, 0}, new float[]{10, 0, 0},
+                (float) Math.atan2(1, 10), .5F);
+        assertEquals(8, trap.length);
+        //narrow end
+        assertArrayEquals(new double[]{0, -.5, 0, .5}, new double[]{trap[0], trap[1], trap[2], trap[3]}, 1E-6);
+        //wide end is at the far atom spread out by the angle
+        assertEquals(10, trap[4], 1E-5);
+        assertEquals(1, trap[5], 1E-5);
+        assertEquals(10, trap[6], 1E-5);
+        assertEquals(-1, trap[7], 1E-5);
+    }
+
+    @Test
+    public void splitAtFirstCrossing(){
+        SegmentIndex painted = new SegmentIndex(10);
+        painted.add(5, -5, 5, 5);
+        double[] a = new double[4];
+        double[] b = new double[4];
+
+        assertTrue(BondGeometry.splitAtCrossing(new double[]{0, 0, 10, 0}, painted, 1, a, b));
+        assertArrayEquals(new double[]{0, 0, 4, 0}, a, EPS);
+        assertArrayEquals(new double[]{6, 0, 10, 0}, b, EPS);
+
+        assertFalse(BondGeometry.splitAtCrossing(new double[]{0, 20, 10, 20}, painted, 1, a, b));
+    }
+
+    @Test
+    public void buttStrokeReusedForSameStroke(){
+        BondGeometry.Shapes shapes = new BondGeometry.Shapes();
+        BasicStroke round = new BasicStroke(3, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        BasicStroke butt = shapes.butt(round);
+
+        assertSame(butt, shapes.butt(round));
+        assertEquals(3, butt.getLineWidth(), 0);
+        assertEquals(BasicStroke.CAP_BUTT, butt.getEndCap());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TestCompiledRendererOptions {
+
+    @Test
+    public void sameSnapshotUntilModified(){
+        RendererOptions options = new RendererOptions();
+        CompiledRendererOptions compiled = options.compiled();
+
+        assertSame(compiled, options.compiled());
+        assertSame(compiled.layoutKey(), options.layoutKey());
+
+        options.setDrawOption(RendererOptions.DrawOptions.DRAW_CARBON, true);
+        CompiledRendererOptions recompiled = options.compiled();
+
+        assertNotSame(compiled, recompiled);
+        assertFalse(compiled.drawCarbon);
+        assertTrue(recompiled.drawCarbon);
+        assertNotEquals(compiled.layoutKey(), recompiled.layoutKey());
+    }
+
+    @Test
+    public void paletteChangesRecompile(){
+        RendererOptions options = new RendererOptions();
+        CompiledRendererOptions compiled = options.compiled();
+        ARGBColor red = new ARGBColor(255, 0, 0);
+
+        options.getColorPalette().setAtomColor("N", red);
+        CompiledRendererOptions recompiled = options.compiled();
+
+        assertNotSame(compiled, recompiled);
+        assertEquals(red, recompiled.getAtomColor(7, "N"));
+        assertNotEquals(red, compiled.getAtomColor(7, "N"));
+
+        options.getColorPalette().setHighlightColors(Collections.singletonList(red));
+        assertEquals(Collections.singletonList(red), options.compiled().highlightColors);
+    }
+
+    @Test
+    public void propertiesCopied(){
+        RendererOptions options = RendererOptions.createUSPLike();
+        CompiledRendererOptions compiled = options.compiled();
+
+        assertEquals(8, compiled.bondStereoDashNumber);
+        assertEquals((float) (0.04D * 0.8), compiled.bondStrokeWidthFraction, 0);
+        assertTrue(compiled.drawStereoWedgeJoin);
+        assertTrue(compiled.drawGreyscale);
+    }
+
+    @Test
+    public void atomColorsSameAsPalette(){
+        ColorPalette palette = new ColorPalette();
+        CompiledRendererOptions compiled = new RendererOptions().compiled();
+
+        assertEquals(palette.getAtomColor("Cl"), compiled.getAtomColor(17, "Cl"));
+        assertEquals(palette.getAtomColor("O"), compiled.getAtomColor(8, "O"));
+        //labels that aren't the element symbol use the label
+        assertEquals(palette.getAtomColor("Br"), compiled.getAtomColor(0, "Br"));
+        assertEquals(palette.getAtomColor("C"), compiled.getAtomColor(6, "CH3"));
+        assertEquals(palette.getAtomColor("Xx"), compiled.getAtomColor(200, "Xx"));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestConcurrentRendering {
+
+    private static final List<String> RESOURCES = Arrays.asList("/usp_steroid.mol", "/wedgeCollide.mol");
+    private static final int THREADS = 8;
+    private static final int RENDERS = 64;
+
+    @Test
+    public void sharedRendererSameAsSingleThreaded() throws Exception{
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        List<BufferedImage> expected = new ArrayList<>();
+        for(String r : RESOURCES){
+            expected.add(renderer.createImage(ImageTestUtil.parseMol(r), 300, 300, true));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<BufferedImage>> futures = new ArrayList<>();
+            for (int i = 0; i < RENDERS; i++) {
+                String resource = RESOURCES.get(i % RESOURCES.size());
+                futures.add(executor.submit(() -> renderer.createImage(ImageTestUtil.parseMol(resource), 300, 300, true)));
+            }
+            for (int i = 0; i < RENDERS; i++) {
+                ImageTestUtil.assertImageDataMatches(expected.get(i % RESOURCES.size()), futures.get(i).get());
+            }
+        }finally{
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void settingsChangedDuringRenderOnlyAffectLaterRenders() throws Exception{
+        Chemical c = ImageTestUtil.parseMol(RESOURCES.get(0));
+        ChemicalRenderer bottomOnly = new ChemicalRenderer();
+        bottomOnly.getOptions().captionBottom(chem -> "bottom");
+        ChemicalRenderer both = new ChemicalRenderer();
+        both.getOptions().captionBottom(chem -> "bottom").captionTop(chem -> "top");
+        both.setBorderVisible(true);
+
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        //the bottom caption is drawn before the top one
+        renderer.getOptions().captionBottom(chem -> {
+            renderer.getOptions().captionTop(x -> "top");
+            renderer.setBorderVisible(true);
+            return "bottom";
+        });
+
+        ImageTestUtil.assertImageDataMatches(bottomOnly.createImage(c, 300, 300, true), renderer.createImage(c, 300, 300, true));
+        ImageTestUtil.assertImageDataMatches(both.createImage(c, 300, 300, true), renderer.createImage(c, 300, 300, true));
+    }
+
+    @Test
+    public void listenersChangingOtherOptionsDoNotDeadlock() throws Exception{
+        RendererOptions a = new RendererOptions();
+        RendererOptions b = new RendererOptions();
+        a.addChangeListener(e -> b.getDrawOption(RendererOptions.DrawOptions.DRAW_CARBON));
+        b.addChangeListener(e -> a.getDrawOption(RendererOptions.DrawOptions.DRAW_CARBON));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r);
+            //a deadlocked thread must not keep the JVM running
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            Future<?> setA = executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    a.setDrawOption(RendererOptions.DrawOptions.DRAW_CARBON, i % 2 == 0);
+                }
+            });
+            Future<?> setB = executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    b.setDrawOption(RendererOptions.DrawOptions.DRAW_CARBON, i % 2 == 0);
+                }
+            });
+            setA.get(30, TimeUnit.SECONDS);
+            setB.get(30, TimeUnit.SECONDS);
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void changingSettingsWhileRenderingDoesNotThrow() throws Exception{
+        ChemicalRenderer renderer = new ChemicalRenderer();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < RENDERS; i++) {
+                String resource = RESOURCES.get(i % RESOURCES.size());
+                futures.add(executor.submit((Callable<BufferedImage>) () -> renderer.createImage(ImageTestUtil.parseMol(resource), 200, 200, true)));
+            }
+            for (int i = 0; i < RENDERS; i++) {
+                boolean on = i % 2 == 0;
+                renderer.setShadowVisible(on);
+                renderer.setBorderVisible(on);
+                renderer.getOptions().setDrawOption(RendererOptions.DrawOptions.DRAW_CARBON, on);
+                renderer.getOptions().getColorPalette().setAtomColor("N", new ARGBColor(i, 0, 0));
+            }
+            for (Future<?> f : futures) {
+                assertNotNull(f.get());
+            }
+        }finally{
+            executor.shutdown();
+        }
+    }
+}
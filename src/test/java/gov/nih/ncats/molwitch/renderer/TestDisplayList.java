@@ -0,0 +1,149 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+public class TestDisplayList {
+
+    /**
+     * Mean difference of all the channels of all the pixels, from 0 to 255.
+     */
+    private static double meanDifference(BufferedImage a, BufferedImage b){
+        assertEquals(a.getWidth(), b.getWidth());
+        assertEquals(a.getHeight(), b.getHeight());
+        long sum = 0;
+        for(int y=0; y< a.getHeight(); y++){
+            for(int x=0; x< a.getWidth(); x++){
+                int p = a.getRGB(x, y);
+                int q = b.getRGB(x, y);
+                for(int shift=0; shift < 32; shift+=8){
+                    sum += Math.abs(((p >> shift) & 0xFF) - ((q >> shift) & 0xFF));
+                }
+            }
+        }
+        return sum / (4.0 * a.getWidth() * a.getHeight());
+    }
+
+    @Test
+    public void replayAtRecordedSizeSameAsRenderingDirectly() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        ChemicalRenderer renderer = new ChemicalRenderer();
+
+        DisplayList drawing = renderer.createDisplayList(c, 300, 250, true);
+
+        assertEquals(300, drawing.getWidth());
+        assertEquals(250, drawing.getHeight());
+        ImageTestUtil.assertImageDataMatches(renderer.createImage(c, 300, 250, true), drawing.createImage(300, 250));
+    }
+
+    @Test
+    public void shadowIsBlurredAgainWhenReplayed() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/wedgeCollide.mol");
+        ChemicalRenderer renderer = new ChemicalRenderer().setShadowVisible(true);
+
+        DisplayList drawing = renderer.createDisplayList(c, 200, 200, true);
+
+        ImageTestUtil.assertImageDataMatches(renderer.createImage(c, 200, 200, true), drawing.createImage(200, 200));
+    }
+
+    @Test
+    public void otherSizesLookLikeRenderingDirectly() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/dash.mol");
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        DisplayList drawing = renderer.createDisplayList(c, 512, 512, true);
+
+        for(int size : new int[]{64, 256, 1024}){
+            BufferedImage replayed = drawing.createImage(size, size);
+            assertEquals(size, replayed.getWidth());
+            assertTrue(size + "px", meanDifference(renderer.createImage(c, size, size, true), replayed) < 4);
+        }
+    }
+
+    @Test
+    public void replayOntoPartOfAGraphics() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/dash.mol");
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        DisplayList drawing = renderer.createDisplayList(c, 100, 100, false);
+
+        BufferedImage expected = new BufferedImage(300, 200, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = expected.createGraphics();
+        renderer.render(g2, c, 150, 50, 100, 100, false);
+        g2.dispose();
+
+        BufferedImage actual = new BufferedImage(300, 200, BufferedImage.TYPE_INT_ARGB);
+        g2 = actual.createGraphics();
+        g2.setColor(Color.RED);
+        AffineTransform before = g2.getTransform();
+        drawing.replay(g2, 150, 50, 100, 100);
+        assertEquals(Color.RED, g2.getColor());
+        assertEquals(before, g2.getTransform());
+        g2.dispose();
+
+        ImageTestUtil.assertImageDataMatches(expected, actual);
+    }
+
+    @Test
+    public void imageTypeOfRenderer() throws Exception{
+        DisplayList drawing = new ChemicalRenderer()
+                .setBackgroundColor(Color.WHITE)
+                .setImageType(ImageType.AUTO)
+                .createDisplayList(ImageTestUtil.parseMol("/dash.mol"), 100, 100, false);
+
+        assertEquals(BufferedImage.TYPE_INT_RGB, drawing.createImage(50, 50).getType());
+    }
+
+    @Test
+    public void shapesAreCopiedWhenRecorded() {
+        DisplayListGraphics2D recorder = new DisplayListGraphics2D();
+        recorder.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        recorder.setStroke(new BasicStroke(2));
+        recorder.scale(2, 2);
+        Path2D.Double path = new Path2D.Double();
+        path.moveTo(5, 5);
+        path.lineTo(40, 5);
+        recorder.draw(path);
+        //changing the path afterwards doesn't change what was recorded
+        path.reset();
+        path.moveTo(5, 40);
+        path.lineTo(40, 40);
+        DisplayList drawing = recorder.toDisplayList(100, 100, ImageType.ARGB);
+
+        BufferedImage img = drawing.createImage(100, 100);
+
+        assertEquals(255, img.getRGB(50, 10) >>> 24);
+        assertEquals(0, img.getRGB(50, 80) >>> 24);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeMustBePositive() throws Exception{
+        new ChemicalRenderer().createDisplayList(ImageTestUtil.parseMol("/dash.mol"), 100, 100, true).createImage(0, 10);
+    }
+}
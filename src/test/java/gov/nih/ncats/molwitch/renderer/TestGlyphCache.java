@@ -0,0 +1,89 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Font;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TestGlyphCache {
+
+    private final Font font = new Font("SansSerif", Font.PLAIN, 12);
+    private final FontRenderContext frc = new FontRenderContext(new AffineTransform(),
+            RenderingHints.VALUE_TEXT_ANTIALIAS_ON, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+
+    @Before
+    public void clear(){
+        GlyphCache.clear();
+    }
+
+    @Test
+    public void sameTextReusesGlyphVector(){
+        GlyphVector gv = GlyphCache.glyphVector(font, frc, "OH");
+        assertSame(gv, GlyphCache.glyphVector(new Font("SansSerif", Font.PLAIN, 12), frc, "OH"));
+        assertEquals(1, GlyphCache.size());
+    }
+
+    @Test
+    public void differentSizeTextOrHintsAreCachedSeparately(){
+        GlyphVector gv = GlyphCache.glyphVector(font, frc, "OH");
+
+        assertNotSame(gv, GlyphCache.glyphVector(font.deriveFont(13F), frc, "OH"));
+        assertNotSame(gv, GlyphCache.glyphVector(font, frc, "NH"));
+        FontRenderContext noAA = new FontRenderContext(new AffineTransform(),
+                RenderingHints.VALUE_TEXT_ANTIALIAS_OFF, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+        assertNotSame(gv, GlyphCache.glyphVector(font, noAA, "OH"));
+        assertEquals(4, GlyphCache.size());
+    }
+
+    @Test
+    public void stringBoundsSameAsFont(){
+        for(String s : new String[]{"C", "OH", "H\u2082", "\u207A", "(R)"}){
+            assertEquals(s, font.getStringBounds(s, frc), GlyphCache.stringBounds(font, frc, s));
+        }
+    }
+
+    @Test
+    public void cacheIsBounded(){
+        for(int i=0; i< GlyphCache.MAX_ENTRIES * 2; i++){
+            GlyphCache.stringBounds(font, frc, Integer.toString(i));
+        }
+        assertEquals(GlyphCache.MAX_ENTRIES, GlyphCache.size());
+    }
+
+    @Test
+    public void eachThreadHasItsOwnGlyphVectors() throws Exception{
+        GlyphVector gv = GlyphCache.glyphVector(font, frc, "OH");
+        AtomicReference<GlyphVector> other = new AtomicReference<>();
+        Thread t = new Thread(() -> other.set(GlyphCache.glyphVector(font, frc, "OH")));
+        t.start();
+        t.join();
+
+        assertNotNull(other.get());
+        assertNotSame(gv, other.get());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+public class TestGraphics2DTemp {
+
+    @Test
+    public void noFinalizer() {
+        try {
+            Graphics2DTemp.class.getDeclaredMethod("finalize");
+            fail("Graphics2DTemp should not declare finalize()");
+        } catch (NoSuchMethodException expected) {
+            //good
+        }
+    }
+
+    @Test
+    public void closedInstanceIsReusedOnSameThread(){
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        Graphics2D g2 = img.createGraphics();
+        try {
+            Graphics2DTemp first = Graphics2DTemp.acquire(g);
+            assertSame(g, first._delagate);
+            first.close();
+            assertNull(first._delagate);
+
+            Graphics2DTemp second = Graphics2DTemp.acquire(g2);
+            assertSame(first, second);
+            assertSame(g2, second._delagate);
+            second.close();
+        }finally{
+            g.dispose();
+            g2.dispose();
+        }
+    }
+
+    @Test
+    public void nestedAcquireGetsDifferentInstance(){
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        try (Graphics2DTemp outer = Graphics2DTemp.acquire(g);
+             Graphics2DTemp inner = Graphics2DTemp.acquire(g)) {
+            assertNotSame(outer, inner);
+        }finally{
+            g.dispose();
+        }
+    }
+
+    @Test
+    public void closeDoesNotDisposeCallersGraphics(){
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        try {
+            Graphics2DTemp.acquire(g).close();
+            g.setColor(Color.RED);
+            g.fillRect(0, 0, 10, 10);
+            assertEquals(Color.RED.getRGB(), img.getRGB(5, 5));
+        }finally{
+            g.dispose();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class TestImagePool {
+
+    @Before
+    public void clear(){
+        ImagePool.clear();
+    }
+
+    @Test
+    public void releasedImageReusedAndCleared(){
+        BufferedImage img = ImagePool.acquire(20, 10);
+        img.setRGB(3, 4, 0xFF00FF00);
+        ImagePool.release(img);
+
+        BufferedImage again = ImagePool.acquire(20, 10);
+        assertSame(img, again);
+        assertEquals(0, again.getRGB(3, 4));
+    }
+
+    @Test
+    public void imageInUseNotHandedOutTwice(){
+        BufferedImage img = ImagePool.acquire(20, 10);
+        assertNotSame(img, ImagePool.acquire(20, 10));
+        assertNotSame(img, ImagePool.acquire(10, 20));
+    }
+
+    @Test
+    public void bounded(){
+        for(int i=1; i<= ImagePool.MAX_ENTRIES * 2; i++){
+            ImagePool.release(ImagePool.acquire(i, i));
+        }
+        assertEquals(ImagePool.MAX_ENTRIES, ImagePool.size());
+    }
+
+    @Test
+    public void bigImagesNotPooled(){
+        ImagePool.release(ImagePool.acquire(2049, 2048));
+        assertEquals(0, ImagePool.size());
+    }
+
+    @Test
+    public void boundedByBytes(){
+        //each is about 13 MB
+        for(int i=0; i< 3; i++){
+            ImagePool.release(ImagePool.newImage(1800 + i, 1800, ImageType.ARGB));
+        }
+        //the oldest is dropped
+        assertEquals(2, ImagePool.size());
+        assertEquals(4L * (1801 + 1802) * 1800, ImagePool.bytes());
+    }
+
+    @Test
+    public void clearAllClearsOtherThreads() throws Exception{
+        CountDownLatch released = new CountDownLatch(1);
+        CountDownLatch cleared = new CountDownLatch(1);
+        int[] sizes = new int[2];
+        Thread worker = new Thread(() -> {
+            ImagePool.release(ImagePool.acquire(20, 10));
+            sizes[0] = ImagePool.size();
+            released.countDown();
+            try {
+                cleared.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sizes[1] = ImagePool.size();
+        });
+        worker.start();
+        released.await();
+        ChemicalRenderer.clearImagePool();
+        cleared.countDown();
+        worker.join();
+
+        assertEquals(1, sizes[0]);
+        assertEquals(0, sizes[1]);
+    }
+
+    @Test
+    public void writtenImageSameAsCreateImage() throws Exception{
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        BufferedImage expected = renderer.createImage(c, 300, 250, true);
+
+        //the 2nd time reuses the pooled image
+        for(int i=0; i< 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            renderer.writeImage(c, 300, 250, true, "png", out);
+            ImageTestUtil.assertImageDataMatches(expected, ImageIO.read(new ByteArrayInputStream(out.toByteArray())));
+        }
+        //the image written to, the canvas of the structure and its shadow
+        assertEquals(3, ImagePool.size());
+    }
+
+    @Test
+    public void shadowedWriteImageReusesCanvasShadowAndScratch() throws Exception{
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        assertTrue(renderer.isShadowVisible());
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+
+        renderer.writeImage(c, 300, 250, true, "png", new ByteArrayOutputStream());
+        Set<BufferedImage> pooled = takePooledImages(300, 250);
+        int scratch = ShadowBlur.scratchCapacity();
+        assertTrue(scratch >= 300 * 250);
+
+        renderer.writeImage(c, 300, 250, true, "png", new ByteArrayOutputStream());
+        assertEquals(pooled, takePooledImages(300, 250));
+        assertEquals(scratch, ShadowBlur.scratchCapacity());
+    }
+
+    @Test
+    public void sameSizeAndTypePooledMoreThanOnce(){
+        BufferedImage first = ImagePool.acquire(20, 10);
+        BufferedImage second = ImagePool.acquire(20, 10);
+        ImagePool.release(first);
+        ImagePool.release(second);
+        assertEquals(2, ImagePool.size());
+    }
+
+    /**
+     * Take the 2 ARGB images and the premultiplied shadow a shadowed render leaves
+     * in the pool and put them back.
+     */
+    private static Set<BufferedImage> takePooledImages(int width, int height){
+        assertEquals(3, ImagePool.size());
+        Set<BufferedImage> images = Collections.newSetFromMap(new IdentityHashMap<>());
+        images.add(ImagePool.acquire(width, height));
+        images.add(ImagePool.acquire(width, height));
+        images.add(ImagePool.acquire(width, height, BufferedImage.TYPE_INT_ARGB_PRE));
+        //none of them were made new
+        assertEquals(0, ImagePool.size());
+        for(BufferedImage img : images){
+            ImagePool.release(img);
+        }
+        return images;
+    }
+
+    @Test
+    public void unknownFormatStillReleasesImage() throws Exception{
+        try {
+            new ChemicalRenderer().writeImage(ImageTestUtil.parseMol("/dash.mol"), 100, 100, true, "not-a-format", new ByteArrayOutputStream());
+            fail("should throw");
+        }catch(IOException expected){
+        }
+        //with the canvas and shadow
+        assertEquals(3, ImagePool.size());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class TestImageType {
+
+    @Test
+    public void defaultIsArgb() throws Exception{
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        assertEquals(ImageType.ARGB, renderer.getImageType());
+        assertEquals(BufferedImage.TYPE_INT_ARGB, renderer.createImage(ImageTestUtil.parseMol("/usp_steroid.mol"), 100, 100, true).getType());
+    }
+
+    @Test
+    public void rgbSameAsArgbOnOpaqueBackground() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        ChemicalRenderer renderer = new ChemicalRenderer().setBackgroundColor(Color.WHITE);
+        BufferedImage expected = renderer.createImage(c, 200, 150, false);
+
+        BufferedImage actual = renderer.setImageType(ImageType.RGB).createImage(c, 200, 150, false);
+
+        assertEquals(BufferedImage.TYPE_INT_RGB, actual.getType());
+        ImageTestUtil.assertImageDataMatches(expected, actual);
+    }
+
+    @Test
+    public void roundCornersOfOpaqueImageAreWhite() throws Exception{
+        BufferedImage img = new ChemicalRenderer()
+                .setBackgroundColor(Color.YELLOW)
+                .setImageType(ImageType.RGB)
+                .createImage(ImageTestUtil.parseMol("/usp_steroid.mol"), 200, 150, true);
+
+        assertEquals(Color.WHITE.getRGB(), img.getRGB(0, 0));
+        assertEquals(Color.YELLOW.getRGB(), img.getRGB(100, 2));
+    }
+
+    @Test
+    public void binaryIsOnlyBlackAndWhite() throws Exception{
+        BufferedImage img = new ChemicalRenderer()
+                .setImageType(ImageType.BINARY)
+                .createImage(ImageTestUtil.parseMol("/usp_steroid.mol"), 200, 150, true);
+
+        assertEquals(BufferedImage.TYPE_BYTE_BINARY, img.getType());
+        boolean anyBlack = false;
+        for(int y=0; y< img.getHeight(); y++){
+            for(int x=0; x< img.getWidth(); x++){
+                int rgb = img.getRGB(x, y);
+                assertTrue(rgb == Color.WHITE.getRGB() || rgb == Color.BLACK.getRGB());
+                anyBlack |= rgb == Color.BLACK.getRGB();
+            }
+        }
+        assertTrue(anyBlack);
+    }
+
+    @Test
+    public void autoPicksSmallestLosslessType() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        ChemicalRenderer renderer = new ChemicalRenderer().setImageType(ImageType.AUTO);
+        assertEquals(BufferedImage.TYPE_INT_ARGB, renderer.createImage(c, 100, 100, false).getType());
+
+        renderer.setBackgroundColor(Color.WHITE);
+        assertEquals(BufferedImage.TYPE_INT_RGB, renderer.createImage(c, 100, 100, false).getType());
+
+        renderer.getOptions().setDrawOption(RendererOptions.DrawOptions.DRAW_GREYSCALE, true);
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, renderer.createImage(c, 100, 100, false).getType());
+    }
+
+    @Test
+    public void autoKeepsTransparentRoundCorners() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        ChemicalRenderer renderer = new ChemicalRenderer()
+                .setBackgroundColor(Color.WHITE)
+                .setImageType(ImageType.AUTO);
+
+        BufferedImage img = renderer.createImage(c, 100, 100, true);
+
+        assertEquals(BufferedImage.TYPE_INT_ARGB, img.getType());
+        assertEquals(0, img.getRGB(0, 0) >>> 24);
+    }
+
+    @Test
+    public void autoIsNotGreyWhenColorsCanBeDrawn() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        RendererOptions options = RendererOptions.createDefault()
+                .setDrawOption(RendererOptions.DrawOptions.DRAW_GREYSCALE, true);
+        ChemicalRenderer renderer = new ChemicalRenderer(options)
+                .setBackgroundColor(Color.YELLOW)
+                .setImageType(ImageType.AUTO);
+        assertEquals(BufferedImage.TYPE_INT_RGB, renderer.createImage(c, 100, 100, false).getType());
+
+        renderer.setBackgroundColor(Color.WHITE);
+        options.turnOnStereo();
+        assertEquals(BufferedImage.TYPE_INT_RGB, renderer.createImage(c, 100, 100, false).getType());
+
+        options.turnOffStereo().withSubstructureHighlight();
+        assertEquals(BufferedImage.TYPE_INT_RGB, renderer.createImage(c, 100, 100, false).getType());
+    }
+
+    @Test
+    public void opaqueTypeCanBeWrittenAsJpeg() throws Exception{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ChemicalRenderer().setImageType(ImageType.RGB)
+                .writeImage(ImageTestUtil.parseMol("/usp_steroid.mol"), 120, 100, true, "jpg", out);
+
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(120, img.getWidth());
+        assertEquals(100, img.getHeight());
+    }
+
+    @Test
+    public void json() throws Exception{
+        ObjectMapper mapper = new ObjectMapper();
+        ChemicalRenderer renderer = new ChemicalRenderer().setImageType(ImageType.GRAY);
+
+        ChemicalRenderer sut = mapper.readValue(mapper.writeValueAsString(renderer), ChemicalRenderer.class);
+
+        assertEquals(ImageType.GRAY, sut.getImageType());
+        assertEquals(ImageType.GRAY, renderer.copy().getImageType());
+    }
+}
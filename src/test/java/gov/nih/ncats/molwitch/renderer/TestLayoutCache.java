@@ -0,0 +1,111 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+
+
+import static org.junit.Assert.*;
+
+public class TestLayoutCache {
+
+    @Test
+    public void sameStructureParsedTwiceIsAHit() throws Exception{
+        LayoutCache cache = new LayoutCache(10);
+        ChemicalRenderer renderer = new ChemicalRenderer().setLayoutCache(cache);
+
+        Chemical first = ImageTestUtil.parseMol("/usp_steroid.mol");
+        Chemical second = ImageTestUtil.parseMol("/usp_steroid.mol");
+
+        renderer.computeLayout(first);
+        RenderLayout layout = renderer.computeLayout(second);
+
+        assertSame(second, layout.getChemical());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void cachedRenderSameAsUncached() throws Exception{
+        ChemicalRenderer uncached = new ChemicalRenderer();
+        ChemicalRenderer cached = new ChemicalRenderer().setLayoutCache(new LayoutCache(10));
+
+        cached.createImage(ImageTestUtil.parseMol("/wedgeCollide.mol"), 300, 300, true);
+
+        ImageTestUtil.assertImageDataMatches(uncached.createImage(ImageTestUtil.parseMol("/wedgeCollide.mol"), 300, 300, true),
+                cached.createImage(ImageTestUtil.parseMol("/wedgeCollide.mol"), 300, 300, true));
+        assertEquals(1, cached.getLayoutCache().getHitCount());
+    }
+
+    @Test
+    public void changingOptionsIsAMiss() throws Exception{
+        LayoutCache cache = new LayoutCache(10);
+        ChemicalRenderer renderer = new ChemicalRenderer().setLayoutCache(cache);
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+
+        renderer.computeLayout(c);
+        renderer.getOptions().setDrawOption(RendererOptions.DrawOptions.DRAW_CARBON, true);
+        renderer.computeLayout(c);
+        renderer.getOptions().getColorPalette().setAtomColor("O", new ARGBColor(1, 2, 3));
+        renderer.computeLayout(c);
+
+        assertEquals(0, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvictedFirst() throws Exception{
+        LayoutCache cache = new LayoutCache(2);
+        ChemicalRenderer renderer = new ChemicalRenderer().setLayoutCache(cache);
+
+        renderer.computeLayout(ImageTestUtil.parseMol("/usp_steroid.mol"));
+        renderer.computeLayout(ImageTestUtil.parseMol("/wedgeCollide.mol"));
+        //touch the steroid so the wedge one is the eldest
+        renderer.computeLayout(ImageTestUtil.parseMol("/usp_steroid.mol"));
+        renderer.computeLayout(ImageTestUtil.parseMol("/dash.mol"));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        renderer.computeLayout(ImageTestUtil.parseMol("/usp_steroid.mol"));
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void weightBounded() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        long weight = 1 + c.getAtomCount() + c.getBondCount();
+        LayoutCache cache = new LayoutCache(100, weight);
+        ChemicalRenderer renderer = new ChemicalRenderer().setLayoutCache(cache);
+
+        renderer.computeLayout(c);
+        assertEquals(weight, cache.getWeight());
+        renderer.computeLayout(ImageTestUtil.parseMol("/wedgeCollide.mol"));
+
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroEntriesNotAllowed(){
+        new LayoutCache(0);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class TestRenderIntoPixels {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    //put the area at an offset inside a larger page
+    private static final int PAGE_WIDTH = 260;
+    private static final int X = 40;
+    private static final int Y = 7;
+
+    private final ChemicalRenderer renderer = new ChemicalRenderer();
+
+    private void assertPageMatches(BufferedImage expected, int[] argbPage){
+        for(int y=0; y< Y + HEIGHT + 1; y++){
+            for(int x=0; x< PAGE_WIDTH; x++){
+                boolean inside = x >= X && x < X + WIDTH && y >= Y && y < Y + HEIGHT;
+                int actual = argbPage[y * PAGE_WIDTH + x];
+                if(inside){
+                    assertEquals("(" + x + "," + y + ")", expected.getRGB(x - X, y - Y), actual);
+                }else{
+                    assertEquals("(" + x + "," + y + ")", 0, actual);
+                }
+            }
+        }
+    }
+
+    private static int[] rgbaToArgb(ByteBuffer buffer){
+        int[] argb = new int[buffer.capacity() / 4];
+        for(int i=0; i< argb.length; i++){
+            int r = buffer.get(4 * i) & 0xFF;
+            int g = buffer.get(4 * i + 1) & 0xFF;
+            int b = buffer.get(4 * i + 2) & 0xFF;
+            int a = buffer.get(4 * i + 3) & 0xFF;
+            argb[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+        return argb;
+    }
+
+    @Test
+    public void intArraySameAsCreateImage() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        BufferedImage expected = renderer.createImage(c, WIDTH, HEIGHT, true);
+        int[] page = new int[PAGE_WIDTH * (Y + HEIGHT + 1)];
+
+        renderer.render(c, page, Y * PAGE_WIDTH + X, PAGE_WIDTH, WIDTH, HEIGHT, true);
+
+        assertPageMatches(expected, page);
+    }
+
+    @Test
+    public void rasterSameAsCreateImage() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        BufferedImage expected = renderer.createImage(c, WIDTH, HEIGHT, true);
+        BufferedImage page = new BufferedImage(PAGE_WIDTH, Y + HEIGHT + 1, BufferedImage.TYPE_INT_ARGB);
+
+        renderer.render(c, page.getRaster(), X, Y, WIDTH, HEIGHT, true);
+
+        assertPageMatches(expected, page.getRGB(0, 0, page.getWidth(), page.getHeight(), null, 0, PAGE_WIDTH));
+    }
+
+    @Test
+    public void heapAndDirectByteBuffersSameAsCreateImage() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        BufferedImage expected = renderer.createImage(c, WIDTH, HEIGHT, true);
+        int size = PAGE_WIDTH * (Y + HEIGHT + 1) * 4;
+
+        for(ByteBuffer page : new ByteBuffer[]{ByteBuffer.allocate(size), ByteBuffer.allocateDirect(size)}) {
+            renderer.render(c, page, (Y * PAGE_WIDTH + X) * 4, PAGE_WIDTH * 4, WIDTH, HEIGHT, true);
+            assertEquals(0, page.position());
+            assertPageMatches(expected, rgbaToArgb(page));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void areaOutsideArrayThrows() throws Exception{
+        renderer.render(ImageTestUtil.parseMol("/usp_steroid.mol"), new int[WIDTH * HEIGHT], 1, WIDTH, WIDTH, HEIGHT, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void areaOutsideRasterThrows() throws Exception{
+        BufferedImage page = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        renderer.render(ImageTestUtil.parseMol("/usp_steroid.mol"), page.getRaster(), 1, 0, WIDTH, HEIGHT, true);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestRenderLayout {
+
+    @Test
+    public void layoutRenderedAtManySizesSameAsRenderingChemical() throws Exception{
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+
+        RenderLayout layout = renderer.computeLayout(c);
+        assertSame(c, layout.getChemical());
+        assertFalse(layout.isEmpty());
+
+        for(int size : new int[]{64, 256, 500}){
+            ImageTestUtil.assertImageDataMatches(renderer.createImage(c, size, size, true),
+                    renderer.createImage(layout, size, size, true));
+        }
+    }
+
+    @Test
+    public void createImagesSameAsEachSize() throws Exception{
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        int[] sizes = {64, 128, 256, 512};
+
+        List<BufferedImage> images = renderer.createImages(c, sizes);
+
+        assertEquals(sizes.length, images.size());
+        for(int i=0; i< sizes.length; i++){
+            ImageTestUtil.assertImageDataMatches(renderer.createImage(c, sizes[i]), images.get(i));
+        }
+    }
+
+    @Test
+    public void createImagesComputesLayoutOnce() throws Exception{
+        LayoutCache cache = new LayoutCache(10);
+        ChemicalRenderer renderer = new ChemicalRenderer().setLayoutCache(cache);
+
+        renderer.createImages(ImageTestUtil.parseMol("/wedgeCollide.mol"), 64, 128, 256, 512);
+
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void encodeImagesSameAsWriteImage() throws Exception{
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        Chemical c = ImageTestUtil.parseMol("/dash.mol");
+
+        List<byte[]> pngs = renderer.encodeImages(c, "png", 100, 50);
+
+        assertEquals(2, pngs.size());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        renderer.writeImage(c, 50, 50, true, "png", out);
+        assertArrayEquals(out.toByteArray(), pngs.get(1));
+        assertEquals(100, ImageIO.read(new ByteArrayInputStream(pngs.get(0))).getWidth());
+    }
+
+    @Test
+    public void renderingDoesNotChangeLayout() throws Exception{
+        RendererOptions options = RendererOptions.createDefault()
+                .setDrawOption(RendererOptions.DrawOptions.DRAW_HIGHLIGHT_WITH_HALO, true)
+                .setDrawOption(RendererOptions.DrawOptions.DRAW_STEREO_LABELS, true);
+        ChemicalRenderer renderer = new ChemicalRenderer(options);
+
+        RenderLayout layout = renderer.computeLayout(ImageTestUtil.parseMol("/wedgeCollide.mol"));
+
+        ImageTestUtil.assertImageDataMatches(renderer.createImage(layout, 300, 300, true),
+                renderer.createImage(layout, 300, 300, true));
+    }
+
+    @Test
+    public void emptyChemical() throws Exception{
+        String mol= "empty\n" +
+                "   \n" +
+                "\n" +
+                "  0  0  0  0  0  0            999 V2000\n" +
+                "M  END";
+        ChemicalRenderer renderer = new ChemicalRenderer();
+
+        RenderLayout layout = renderer.computeLayout(Chemical.parseMol(mol));
+        assertTrue(layout.isEmpty());
+        assertEquals(0, layout.getAtomCount());
+        assertNotNull(renderer.createImage(layout, 200, 200, true));
+    }
+}
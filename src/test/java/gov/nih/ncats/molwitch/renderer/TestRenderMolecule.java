@@ -0,0 +1,95 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.Atom;
+import gov.nih.ncats.molwitch.AtomCoordinates;
+import gov.nih.ncats.molwitch.Bond;
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+
+
+import static org.junit.Assert.*;
+
+public class TestRenderMolecule {
+
+    @Test
+    public void atomsSameAsChemical() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        RenderMolecule mol = RenderMolecule.of(c);
+
+        assertEquals(c.getAtomCount(), mol.getAtomCount());
+        for(int i=0; i< c.getAtomCount(); i++){
+            Atom a = c.getAtom(i);
+            AtomCoordinates coords = a.getAtomCoordinates();
+            assertEquals(coords.getX(), mol.getX(i), 0);
+            assertEquals(coords.getY(), mol.getY(i), 0);
+            assertEquals(a.getSymbol(), mol.getSymbol(i));
+            assertEquals(a.getCharge(), mol.getCharge(i));
+            assertEquals(a.getImplicitHCount(), mol.getImplicitHCount(i));
+            assertEquals(a.getBondCount(), mol.getBondCount(i));
+        }
+    }
+
+    @Test
+    public void bondsSameAsChemical() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/wedgeCollide.mol");
+        RenderMolecule mol = RenderMolecule.of(c);
+
+        assertEquals(c.getBondCount(), mol.getBondCount());
+        for(int i=0; i< c.getBondCount(); i++){
+            Bond b = c.getBond(i);
+            assertEquals(c.indexOf(b.getAtom1()), mol.getAtom1(i));
+            assertEquals(c.indexOf(b.getAtom2()), mol.getAtom2(i));
+            assertEquals(b.getBondType(), mol.getBondType(i));
+            assertEquals(b.getStereo(), mol.getStereo(i));
+            assertEquals(b.isInRing(), mol.isInRing(i));
+            assertEquals(b.getBondLength(), mol.getBondLength(i), 1E-9);
+        }
+    }
+
+    @Test
+    public void neighborsInSameOrderAsAtomBonds() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        RenderMolecule mol = RenderMolecule.of(c);
+
+        for(int i=0; i< c.getAtomCount(); i++){
+            Atom a = c.getAtom(i);
+            int n = mol.neighborStart(i);
+            for(Bond b : a.getBonds()){
+                assertEquals(c.indexOf(b), mol.getNeighborBond(n));
+                assertEquals(c.indexOf(b.getOtherAtom(a)), mol.getNeighborAtom(n));
+                n++;
+            }
+            assertEquals(mol.neighborEnd(i), n);
+        }
+    }
+
+    @Test
+    public void snapshotDoesNotChangeWithChemical() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        RenderMolecule mol = RenderMolecule.of(c);
+        int charge = c.getAtom(0).getCharge();
+
+        c.getAtom(0).setCharge(charge + 1);
+
+        assertEquals(charge, mol.getCharge(0));
+        assertEquals(charge + 1, RenderMolecule.of(c).getCharge(0));
+    }
+}
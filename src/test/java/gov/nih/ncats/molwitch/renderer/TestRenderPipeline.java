@@ -0,0 +1,216 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+public class TestRenderPipeline {
+
+    private static final List<String> RESOURCES = Arrays.asList("/usp_steroid.mol", "/wedgeCollide.mol",
+            "/dash.mol", "/double_either.mol", "/overlap.mol");
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private String readResource(String resource) throws IOException{
+        return new String(Files.readAllBytes(new File(getClass().getResource(resource).getFile()).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private byte[] sdf(String... records){
+        StringBuilder builder = new StringBuilder();
+        for(String r : records){
+            builder.append(r);
+            if(!r.endsWith("\n")){
+                builder.append('\n');
+            }
+            builder.append("$$$$\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String[] allResources() throws IOException{
+        String[] records = new String[RESOURCES.size()];
+        for(int i=0; i< records.length; i++){
+            records[i] = readResource(RESOURCES.get(i));
+        }
+        return records;
+    }
+
+    @Test
+    public void everyRecordGoesToCallbackWithItsIndex() throws Exception{
+        Map<Integer, byte[]> images = new ConcurrentHashMap<>();
+
+        RenderPipeline.Summary summary = new RenderPipeline(new ChemicalRenderer())
+                .setSize(120, 100)
+                .setThreads(3)
+                .setQueueCapacity(1)
+                .renderSdf(new ByteArrayInputStream(sdf(allResources())), (index, c, image)-> images.put(index, image));
+
+        assertEquals(RESOURCES.size(), summary.getRecordCount());
+        assertEquals(RESOURCES.size(), summary.getRenderedCount());
+        assertEquals(0, summary.getFailedCount());
+        assertEquals(RESOURCES.size(), images.size());
+
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        for(int i=0; i< RESOURCES.size(); i++){
+            BufferedImage expected = renderer.createImage(Chemical.parseMol(readResource(RESOURCES.get(i))), 120, 100, true);
+            ImageTestUtil.assertImageDataMatches(expected, ImageIO.read(new ByteArrayInputStream(images.get(i))));
+        }
+    }
+
+    @Test
+    public void badRecordReportedAndSkipped() throws Exception{
+        List<Integer> failedIndexes = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> renderedIndexes = Collections.synchronizedList(new ArrayList<>());
+
+        RenderSink sink = new RenderSink() {
+            @Override
+            public void accept(int index, Chemical chemical, byte[] image) {
+                renderedIndexes.add(index);
+            }
+
+            @Override
+            public void failed(int index, String record, Throwable error) {
+                failedIndexes.add(index);
+            }
+        };
+        RenderPipeline.Summary summary = new RenderPipeline(new ChemicalRenderer())
+                .renderSdf(new ByteArrayInputStream(sdf(readResource("/dash.mol"), "not a mol file", readResource("/overlap.mol"))), sink);
+
+        assertEquals(3, summary.getRecordCount());
+        assertEquals(2, summary.getRenderedCount());
+        assertEquals(1, summary.getFailedCount());
+        assertEquals(Arrays.asList(1), failedIndexes);
+        Collections.sort(renderedIndexes);
+        assertEquals(Arrays.asList(0, 2), renderedIndexes);
+    }
+
+    @Test
+    public void errorRenderingOneRecordReportedAndSkipped() throws Exception{
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean first = new AtomicBoolean(true);
+        ChemicalRenderer renderer = new ChemicalRenderer(){
+            @Override
+            byte[] encodeImage(Chemical c, int width, int height, boolean round, String formatName) throws IOException {
+                if(first.getAndSet(false)){
+                    throw new StackOverflowError();
+                }
+                return super.encodeImage(c, width, height, round, formatName);
+            }
+        };
+        RenderSink sink = new RenderSink() {
+            @Override
+            public void accept(int index, Chemical chemical, byte[] image) {
+            }
+
+            @Override
+            public void failed(int index, String record, Throwable error) {
+                errors.add(error);
+            }
+        };
+        RenderPipeline.Summary summary = new RenderPipeline(renderer)
+                .setThreads(1)
+                .renderSdf(new ByteArrayInputStream(sdf(readResource("/dash.mol"), readResource("/overlap.mol"))), sink);
+
+        assertEquals(1, summary.getRenderedCount());
+        assertEquals(1, summary.getFailedCount());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof StackOverflowError);
+    }
+
+    @Test
+    public void writeToDirectory() throws Exception{
+        File dir = new File(tmpDir.getRoot(), "out");
+        try(RenderSink sink = RenderSink.toDirectory(dir, "png")) {
+            new RenderPipeline(new ChemicalRenderer())
+                    .renderSdf(new ByteArrayInputStream(sdf(allResources())), sink);
+        }
+        for(int i=0; i< RESOURCES.size(); i++){
+            assertNotNull(ImageIO.read(new File(dir, RenderPipeline.fileNameFor(i, "png"))));
+        }
+    }
+
+    @Test
+    public void writeToZip() throws Exception{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(RenderSink sink = RenderSink.toZip(out, "png")) {
+            new RenderPipeline(new ChemicalRenderer())
+                    .renderSdf(new ByteArrayInputStream(sdf(allResources())), sink);
+        }
+        Set<String> names = new HashSet<>();
+        try(ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))){
+            ZipEntry entry;
+            while((entry = zip.getNextEntry()) !=null){
+                names.add(entry.getName());
+            }
+        }
+        assertEquals(RESOURCES.size(), names.size());
+        assertTrue(names.contains("00000000.png"));
+    }
+
+    @Test
+    public void sinkErrorStopsPipeline() throws Exception{
+        try {
+            new RenderPipeline(new ChemicalRenderer())
+                    .setQueueCapacity(1)
+                    .renderSdf(new ByteArrayInputStream(sdf(allResources())), (index, c, image) -> {
+                        throw new IOException("disk full");
+                    });
+            fail("should throw");
+        }catch(IOException e){
+            assertEquals("disk full", e.getMessage());
+        }
+    }
+
+    @Test
+    public void smilesListWithNames() throws Exception{
+        Map<Integer, String> names = new ConcurrentHashMap<>();
+        String smiles = "# comment\nC1CCCCC1 cyclohexane\n\nc1ccccc1O phenol\n";
+        RenderPipeline.Summary summary = new RenderPipeline(new ChemicalRenderer())
+                .renderSmiles(new ByteArrayInputStream(smiles.getBytes(StandardCharsets.UTF_8)), (index, c, image)-> names.put(index, c.getName()));
+
+        assertEquals(2, summary.getRenderedCount());
+        assertEquals("cyclohexane", names.get(0));
+        assertEquals("phenol", names.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownFormat(){
+        new RenderPipeline(new ChemicalRenderer()).setFormat("not-a-format");
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TestRenderQuality {
+
+    private static ChemicalRenderer renderer(RenderQuality quality){
+        return new ChemicalRenderer(RendererOptions.createDefault().setQuality(quality))
+                .setBackgroundColor(new Color(0, 0, 0, 0));
+    }
+
+    private static boolean hasPartlyTransparentPixels(BufferedImage img){
+        for(int y=0; y< img.getHeight(); y++){
+            for(int x=0; x< img.getWidth(); x++){
+                int alpha = img.getRGB(x, y) >>> 24;
+                if(alpha !=0 && alpha != 255){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void standardIsTheDefault(){
+        RendererOptions opts = new RendererOptions();
+        assertEquals(RenderQuality.STANDARD, opts.getQuality());
+        assertFalse(opts.asNonDefaultMap().containsKey("quality"));
+        assertEquals(opts, new RendererOptions().setQuality(RenderQuality.STANDARD));
+        assertNotEquals(opts, new RendererOptions().setQuality(RenderQuality.DRAFT));
+    }
+
+    @Test
+    public void qualityFromJson() throws Exception{
+        ObjectMapper mapper = new ObjectMapper();
+        RendererOptions opts = mapper.readValue("{\"quality\":\"draft\"}", RendererOptions.class);
+
+        assertEquals(RenderQuality.DRAFT, opts.getQuality());
+        RendererOptions roundTrip = mapper.readValue(mapper.writeValueAsString(opts), RendererOptions.class);
+        assertEquals(RenderQuality.DRAFT, roundTrip.getQuality());
+        assertEquals(RenderQuality.DRAFT, opts.copy().getQuality());
+        assertEquals(RenderQuality.STANDARD, opts.resetToDefaults().getQuality());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownQuality(){
+        RendererOptions.createFromMap(Collections.singletonMap("quality", "best"));
+    }
+
+    @Test
+    public void sameLayoutInEveryTier(){
+        RendererOptions draft = RendererOptions.createDefault().setQuality(RenderQuality.DRAFT);
+        RendererOptions print = RendererOptions.createDefault().setQuality(RenderQuality.PRINT);
+
+        assertEquals(RendererOptions.createDefault().layoutKey(), draft.layoutKey());
+        assertEquals(draft.layoutKey(), print.layoutKey());
+    }
+
+    @Test
+    public void draftIsNotAntialiased() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+
+        assertTrue(hasPartlyTransparentPixels(renderer(RenderQuality.STANDARD).createImage(c, 200, 200, false)));
+        assertFalse(hasPartlyTransparentPixels(renderer(RenderQuality.DRAFT).createImage(c, 200, 200, false)));
+    }
+
+    @Test
+    public void draftHasNoShadow() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/wedgeCollide.mol");
+
+        ImageTestUtil.assertImageDataMatches(renderer(RenderQuality.DRAFT).createImage(c, 200, 200, true),
+                renderer(RenderQuality.DRAFT).setShadowVisible(true).createImage(c, 200, 200, true));
+    }
+
+    @Test
+    public void draftHasFewerDashes(){
+        assertEquals(RenderQuality.DRAFT_MAX_DASHES, RenderQuality.DRAFT.dashCount(6));
+        assertEquals(3, RenderQuality.DRAFT.dashCount(3));
+        assertEquals(6, RenderQuality.STANDARD.dashCount(6));
+        assertEquals(6, RenderQuality.PRINT.dashCount(6));
+    }
+
+    @Test
+    public void changingQualityChangesRender() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/dash.mol");
+        RendererOptions opts = RendererOptions.createDefault();
+        ChemicalRenderer renderer = new ChemicalRenderer(opts);
+        BufferedImage standard = renderer.createImage(c, 150, 150, true);
+
+        opts.setQuality(RenderQuality.DRAFT);
+        BufferedImage draft = renderer.createImage(c, 150, 150, true);
+        opts.setQuality(RenderQuality.STANDARD);
+
+        assertFalse(Arrays.equals(pixels(standard), pixels(draft)));
+        ImageTestUtil.assertImageDataMatches(standard, renderer.createImage(c, 150, 150, true));
+    }
+
+    private static int[] pixels(BufferedImage img){
+        return img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Font;
+
+import static org.junit.Assert.*;
+
+public class TestRenderResources {
+
+    private final Font base = new Font("SansSerif", Font.PLAIN, 25);
+
+    @Before
+    public void clear(){
+        RenderResources.clear();
+    }
+
+    @Test
+    public void quantizeIsCloseAndMonotonic(){
+        float previous = 0;
+        for(float v = .5F; v < 500; v *= 1.003F){
+            float q = RenderResources.quantize(v);
+            assertEquals(v, q, v / 128);
+            assertTrue(q >= previous);
+            previous = q;
+        }
+    }
+
+    @Test
+    public void nearlySameScaleSharesResources(){
+        RenderResources r = RenderResources.get(base, 30.01, .1F, .5F);
+        assertSame(r, RenderResources.get(base, 30.02, .1F, .5F));
+        assertSame(r.solid, RenderResources.get(base, 30.02, .1F, .5F).solid);
+        assertEquals(1, RenderResources.size());
+
+        assertNotSame(r, RenderResources.get(base, 40, .1F, .5F));
+        assertNotSame(r, RenderResources.get(base, 30.01, .2F, .5F));
+        assertNotSame(r, RenderResources.get(base, 30.01, .1F, .6F));
+        assertEquals(4, RenderResources.size());
+    }
+
+    @Test
+    public void sizesDerivedFromQuantizedUnit(){
+        RenderResources r = RenderResources.get(base, 33.3, .1F, .5F);
+
+        assertEquals(r.unit * .1F, r.bondWidth, 0.00001);
+        assertEquals(r.bondWidth, r.solid.getLineWidth(), 0.00001);
+        assertEquals(r.bondWidth / 2, r.dashed.getLineWidth(), 0.00001);
+        assertEquals(r.unit * .5F, r.font.getSize2D(), 0.00001);
+        assertEquals(r.font.getSize2D() * RenderResources.SMALL_FONT_FRACTION, r.smallFont.getSize2D(), 0.00001);
+        assertTrue(r.boldFont.isBold());
+    }
+
+    @Test
+    public void attachmentFontsAreReused(){
+        RenderResources r = RenderResources.get(base, 30, .1F, .5F);
+        Font f = r.attachmentFont(Font.PLAIN, .6F);
+
+        assertSame(f, r.attachmentFont(Font.PLAIN, .6F));
+        assertEquals(r.font.getSize2D() * .6F, f.getSize2D(), 0.00001);
+        assertTrue(r.attachmentFont(Font.BOLD, .6F).isBold());
+    }
+}
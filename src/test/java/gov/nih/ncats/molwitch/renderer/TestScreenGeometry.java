@@ -0,0 +1,81 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+
+import java.awt.geom.AffineTransform;
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class TestScreenGeometry {
+
+    private final AffineTransform at = new AffineTransform();
+    {
+        at.translate(150, 120);
+        at.scale(23.5, -23.5);
+        at.translate(-1.25, 3.5);
+    }
+
+    private RenderLayout layout() throws Exception{
+        Chemical c = Chemical.parseMol(new File(getClass().getResource("/wedgeCollide.mol").getFile()));
+        return new ChemicalRenderer().computeLayout(c);
+    }
+
+    private float[] transform(double x, double y){
+        float[] p = new float[2];
+        at.transform(new double[]{x, y}, 0, p, 0, 1);
+        return p;
+    }
+
+    @Test
+    public void atomsSameAsTransformingOneAtATime() throws Exception{
+        RenderLayout layout = layout();
+        ScreenGeometry geom = ScreenGeometry.of(layout, new Graphics2DTemp.AffineTransformWrapper(at));
+
+        assertEquals(23.5, geom.scale, 0);
+        assertEquals(layout.atoms.size(), geom.radius.length);
+        for(int i=0; i< layout.atoms.size(); i++){
+            RenderLayout.AtomLayout atom = layout.atoms.get(i);
+            float[] p = transform(atom.x, atom.y);
+            assertEquals(p[0], geom.atoms[2 * i], 0);
+            assertEquals(p[1], geom.atoms[2 * i + 1], 0);
+            assertEquals(0, geom.radius[i], 0);
+        }
+    }
+
+    @Test
+    public void bondsSameAsTransformingOneAtATime() throws Exception{
+        RenderLayout layout = layout();
+        ScreenGeometry geom = ScreenGeometry.of(layout, new Graphics2DTemp.AffineTransformWrapper(at));
+
+        for(int k=0; k< layout.bonds.size(); k++){
+            RenderLayout.BondLayout bond = layout.bonds.get(k);
+            int offset = k * ScreenGeometry.BOND_STRIDE;
+            float[] p1 = transform(bond.x1, bond.y1);
+            float[] p2 = transform(bond.x2, bond.y2);
+            float[] n = transform(bond.nx, bond.ny);
+            assertArrayEquals(new float[]{p1[0], p1[1], p2[0], p2[1], n[0], n[1]},
+                    new float[]{geom.bonds[offset], geom.bonds[offset + 1], geom.bonds[offset + 2],
+                            geom.bonds[offset + 3], geom.bonds[offset + 4], geom.bonds[offset + 5]}, 0);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import org.junit.Test;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestSegmentIndex {
+
+    /**
+     * The old linear scan over every painted line.
+     */
+    private static int bruteForce(List<Line2D> lines, Line2D q){
+        for(int i=0; i< lines.size(); i++){
+            Line2D o = lines.get(i);
+            if(o.intersectsLine(q)){
+                if (!((q.getX1() == o.getX1() && q.getY1() == o.getY1())
+                        || (q.getX2() == o.getX1() && q.getY2() == o.getY1())
+                        || (q.getX2() == o.getX2() && q.getY2() == o.getY2())
+                        || (q.getX1() == o.getX2() && q.getY1() == o.getY2()))) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void sameAsLinearScan(){
+        Random random = new Random(42);
+        SegmentIndex index = new SegmentIndex(20);
+        List<Line2D> lines = new ArrayList<>();
+        //lattice points so plenty of segments share end points
+        for(int i=0; i< 2_000; i++){
+            double x1 = random.nextInt(50) * 10, y1 = random.nextInt(50) * 10;
+            double x2 = x1 + (random.nextInt(5) - 2) * 10, y2 = y1 + (random.nextInt(5) - 2) * 10;
+            if(i %100 ==0){
+                //the odd long one spanning lots of cells
+                x2 = random.nextInt(2000) - 500;
+            }
+            Line2D q = new Line2D.Double(x1, y1, x2, y2);
+            assertEquals("query " + i, bruteForce(lines, q), index.firstCrossing(x1, y1, x2, y2));
+            if(random.nextBoolean()){
+                lines.add(q);
+                assertEquals(lines.size() -1, index.add(x1, y1, x2, y2));
+            }
+        }
+    }
+
+    @Test
+    public void returnsFirstAddedCrossing(){
+        SegmentIndex index = new SegmentIndex(1);
+        index.add(5, 0, 5, 10);
+        index.add(2, 0, 2, 10);
+        index.add(8, 0, 8, 10);
+
+        assertEquals(0, index.firstCrossing(0, 5, 10, 5));
+        assertEquals(1, index.firstCrossing(0, 5, 4, 5));
+        assertEquals(-1, index.firstCrossing(0, 12, 10, 12));
+    }
+
+    @Test
+    public void sharedEndPointIsNotACrossing(){
+        SegmentIndex index = new SegmentIndex(10);
+        index.add(0, 0, 10, 0);
+
+        assertEquals(-1, index.firstCrossing(10, 0, 10, 10));
+        assertEquals(-1, index.firstCrossing(0, 10, 0, 0));
+        assertEquals(0, index.firstCrossing(5, -5, 5, 5));
+        assertEquals(10, index.getX2(0), 0);
+    }
+
+    @Test
+    public void degenerateAndNonFiniteSegmentsSameAsLinearScan(){
+        SegmentIndex index = new SegmentIndex(Double.NaN);
+        List<Line2D> lines = new ArrayList<>();
+        double[][] segments = {
+                {Double.NaN, 0, 1, 1},
+                {0, 0, 10, 10},
+                {50, 50, 50, 50},
+                {-3, 7, -3, 7},
+                {0, 10, 10, 0},
+                {1e300, 0, -1e300, 5},
+        };
+        for(double[] s : segments){
+            Line2D q = new Line2D.Double(s[0], s[1], s[2], s[3]);
+            assertEquals(bruteForce(lines, q), index.firstCrossing(s[0], s[1], s[2], s[3]));
+            lines.add(q);
+            index.add(s[0], s[1], s[2], s[3]);
+        }
+        for(double[] s : segments){
+            Line2D q = new Line2D.Double(s[2], s[3], s[0], s[1]);
+            assertEquals(bruteForce(lines, q), index.firstCrossing(s[2], s[3], s[0], s[1]));
+        }
+    }
+}
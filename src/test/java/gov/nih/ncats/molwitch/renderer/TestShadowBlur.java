@@ -0,0 +1,143 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestShadowBlur {
+
+    /**
+     * Straightforward 2D box blur applied 3 times with everything
+     * outside the image treated as transparent.
+     */
+    private static double[] referenceBlur(double[] in, int width, int height, int radius){
+        double[] data = in.clone();
+        int window = (radius*2+1)*(radius*2+1);
+        for(int pass=0; pass< 3; pass++){
+            double[] out = new double[data.length];
+            for(int y=0; y< height; y++){
+                for(int x=0; x< width; x++){
+                    double sum=0;
+                    for(int dy=-radius; dy<= radius; dy++){
+                        for(int dx=-radius; dx<= radius; dx++){
+                            int xx = x+dx, yy = y+dy;
+                            if(xx >=0 && xx < width && yy >=0 && yy < height){
+                                sum += data[yy*width + xx];
+                            }
+                        }
+                    }
+                    out[y*width +x] = sum/window;
+                }
+            }
+            data = out;
+        }
+        return data;
+    }
+
+    @Test
+    public void sameAsThreeFullBoxBlurs(){
+        int width = 40, height = 30, radius = 3;
+        BufferedImage src = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(1234);
+        double[] alpha = new double[width*height];
+        //a dense blob in the middle so the blur has something to spread out
+        for(int y=8; y< 22; y++){
+            for(int x=10; x< 30; x++){
+                int a = random.nextInt(256);
+                src.setRGB(x, y, (a << 24) | 0x000000);
+                alpha[y*width +x] = a;
+            }
+        }
+        BufferedImage shadow = ShadowBlur.createShadow(src, radius, 1F);
+        double[] expected = referenceBlur(alpha, width, height, radius);
+        for(int y=0; y< height; y++){
+            for(int x=0; x< width; x++){
+                int actualAlpha = shadow.getRGB(x,y) >>> 24;
+                assertEquals("alpha at " + x + "," + y, expected[y*width +x], actualAlpha, 1.5);
+            }
+        }
+    }
+
+    @Test
+    public void shadowIsGreyAndTranslucent(){
+        BufferedImage src = new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB);
+        for(int y=5; y< 15; y++){
+            for(int x=5; x< 15; x++){
+                src.setRGB(x, y, 0xFFE65D45);
+            }
+        }
+        BufferedImage shadow = ShadowBlur.createShadow(src, 1, .25F);
+        int center = shadow.getRGB(10, 10);
+        assertEquals(64, center >>> 24, 1);
+        int r = (center >> 16) & 0xFF;
+        int g = (center >> 8) & 0xFF;
+        int b = center & 0xFF;
+        assertEquals(r, g);
+        assertEquals(g, b);
+        assertEquals(0, shadow.getRGB(0, 0) >>> 24);
+    }
+
+    @Test
+    public void zeroRadiusOnlyChangesColorAndOpacity(){
+        BufferedImage src = new BufferedImage(5, 5, BufferedImage.TYPE_INT_ARGB);
+        src.setRGB(2, 2, 0xFF000000);
+        BufferedImage shadow = ShadowBlur.createShadow(src, 0, 1F);
+
+        assertEquals(0xFF000000, shadow.getRGB(2, 2));
+        assertEquals(0, shadow.getRGB(2, 1) >>> 24);
+    }
+
+    @Test
+    public void blurIsSymmetric(){
+        BufferedImage src = new BufferedImage(31, 31, BufferedImage.TYPE_INT_ARGB);
+        src.setRGB(15, 15, 0xFF000000);
+        BufferedImage shadow = ShadowBlur.createShadow(src, 4, 1F);
+        for(int d=1; d< 12; d++){
+            int right = shadow.getRGB(15+d, 15) >>> 24;
+            assertEquals(right, shadow.getRGB(15-d, 15) >>> 24);
+            assertEquals(right, shadow.getRGB(15, 15+d) >>> 24);
+            assertEquals(right, shadow.getRGB(15, 15-d) >>> 24);
+        }
+    }
+
+    @Test
+    public void reusedScratchSameAsNew(){
+        BufferedImage full = new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB);
+        for(int y=0; y< 20; y++){
+            for(int x=0; x< 20; x++){
+                full.setRGB(x, y, 0xFF808080);
+            }
+        }
+        BufferedImage dot = new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB);
+        dot.setRGB(10, 10, 0xFF000000);
+
+        ShadowBlur.clearAll();
+        BufferedImage expected = ShadowBlur.createShadow(dot, 2, 1F);
+        //leaves the scratch arrays full of the first shadow
+        ImagePool.release(ShadowBlur.createShadow(full, 2, 1F));
+        BufferedImage actual = ShadowBlur.createShadow(dot, 2, 1F);
+        ImageTestUtil.assertImageDataMatches(expected, actual);
+        assertTrue(ShadowBlur.scratchCapacity() >= 20 * 20);
+    }
+}
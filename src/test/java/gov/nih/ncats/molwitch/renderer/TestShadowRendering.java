@@ -0,0 +1,101 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+public class TestShadowRendering {
+
+    @Test
+    public void imageGraphicsIsPixelAligned(){
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = img.createGraphics();
+        try {
+            assertTrue(AbstractChemicalRenderer.isPixelAligned(g2));
+            g2.translate(3, 4);
+            assertTrue(AbstractChemicalRenderer.isPixelAligned(g2));
+            g2.translate(.5, 0);
+            assertFalse(AbstractChemicalRenderer.isPixelAligned(g2));
+        }finally{
+            g2.dispose();
+        }
+    }
+
+    @Test
+    public void scaledOrTranslucentGraphicsIsNotPixelAligned(){
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = img.createGraphics();
+        try {
+            g2.scale(2, 2);
+            assertFalse(AbstractChemicalRenderer.isPixelAligned(g2));
+        }finally{
+            g2.dispose();
+        }
+        g2 = img.createGraphics();
+        try {
+            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, .5F));
+            assertFalse(AbstractChemicalRenderer.isPixelAligned(g2));
+        }finally{
+            g2.dispose();
+        }
+    }
+
+    @Test
+    public void shadowFollowsRenderOffset() throws Exception{
+        ChemicalRenderer renderer = new ChemicalRenderer().setShadowVisible(true);
+        RenderLayout layout = renderer.computeLayout(ImageTestUtil.parseMol("/usp_steroid.mol"));
+
+        BufferedImage expected = renderer.createImage(layout, 200, 200, true);
+
+        BufferedImage big = new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = big.createGraphics();
+        renderer.render(g2, layout, 100, 100, 200, 200, true);
+        g2.dispose();
+
+        ImageTestUtil.assertImageDataMatches(expected, big.getSubimage(100, 100, 200, 200));
+    }
+
+    @Test
+    public void shadowIsOnlyDrawnWhenVisible() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/usp_steroid.mol");
+        BufferedImage withShadow = new ChemicalRenderer().setShadowVisible(true).createImage(c, 200, 200, true);
+        BufferedImage withoutShadow = new ChemicalRenderer().setShadowVisible(false).createImage(c, 200, 200, true);
+
+        assertTrue(countVisible(withShadow) > countVisible(withoutShadow));
+    }
+
+    private static int countVisible(BufferedImage img){
+        int count =0;
+        for(int y=0; y< img.getHeight(); y++){
+            for(int x=0; x< img.getWidth(); x++){
+                if((img.getRGB(x,y) >>> 24) !=0){
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestSpriteSheet {
+
+    private List<Chemical> parse(String... resources) throws Exception{
+        List<Chemical> list = new ArrayList<>();
+        for(String resource : resources){
+            list.add(ImageTestUtil.parseMol(resource));
+        }
+        return list;
+    }
+
+    private static BufferedImage copyOf(BufferedImage img, Rectangle r){
+        BufferedImage copy = new BufferedImage(r.width, r.height, img.getType());
+        copy.getGraphics().drawImage(img.getSubimage(r.x, r.y, r.width, r.height), 0, 0, null);
+        return copy;
+    }
+
+    @Test
+    public void gridCellsSameAsSeparateImages() throws Exception{
+        List<Chemical> chemicals = parse("/usp_steroid.mol", "/wedgeCollide.mol", "/dash.mol");
+        ChemicalRenderer renderer = new ChemicalRenderer().setShadowVisible(true);
+
+        SpriteSheetRenderer.Sheet<BufferedImage> sheet = new SpriteSheetRenderer(renderer)
+                .setCellSize(150, 120)
+                .setColumns(2)
+                .createImage(chemicals);
+
+        assertEquals(300, sheet.getWidth());
+        assertEquals(240, sheet.getHeight());
+        assertEquals(Arrays.asList(new Rectangle(0, 0, 150, 120), new Rectangle(150, 0, 150, 120), new Rectangle(0, 120, 150, 120)),
+                sheet.getCells());
+        for(int i=0; i< chemicals.size(); i++){
+            ImageTestUtil.assertImageDataMatches(renderer.createImage(chemicals.get(i), 150, 120, true),
+                    copyOf(sheet.getImage(), sheet.getCells().get(i)));
+        }
+        //the last cell of the grid is empty
+        assertEquals(0, sheet.getImage().getRGB(225, 180) >>> 24);
+    }
+
+    @Test
+    public void packedCellsFitInWidth() throws Exception{
+        List<Chemical> chemicals = parse("/usp_steroid.mol", "/wedgeCollide.mol", "/dash.mol", "/polymer.mol", "/hasSUPs.mol");
+        ChemicalRenderer renderer = new ChemicalRenderer();
+
+        SpriteSheetRenderer.Sheet<BufferedImage> sheet = new SpriteSheetRenderer(renderer)
+                .setCellSize(100, 100)
+                .setPacked(320)
+                .createImage(chemicals);
+
+        List<Rectangle> cells = sheet.getCells();
+        assertEquals(chemicals.size(), cells.size());
+        assertTrue(sheet.getWidth() <= 320);
+        for(int i=0; i< cells.size(); i++){
+            Rectangle cell = cells.get(i);
+            assertEquals(100, cell.height);
+            assertTrue(cell.width >= 50 && cell.width <= 200);
+            assertTrue(cell.x + cell.width <= sheet.getWidth());
+            for(int j=0; j< i; j++){
+                assertFalse(cell.intersects(cells.get(j)));
+            }
+            ImageTestUtil.assertImageDataMatches(renderer.createImage(chemicals.get(i), cell.width, cell.height, true),
+                    copyOf(sheet.getImage(), cell));
+        }
+    }
+
+    private RenderLayout layoutWithBounds(double width, double height) throws Exception{
+        RenderLayout layout = new ChemicalRenderer().computeLayout(parse("/dash.mol").get(0));
+        layout.minX = 0;
+        layout.minY = 0;
+        layout.maxX = width;
+        layout.maxY = height;
+        return layout;
+    }
+
+    @Test
+    public void packedCellWidthFollowsBoundingBox() throws Exception{
+        RenderLayout wide = layoutWithBounds(4, 1);
+        RenderLayout tall = layoutWithBounds(1, 4);
+        RenderLayout square = layoutWithBounds(2, 2);
+
+        List<Rectangle> cells = SpriteSheetRenderer.packedCells(Arrays.asList(wide, tall, square, wide), 100, 450);
+
+        assertEquals(Arrays.asList(new Rectangle(0, 0, 200, 100), new Rectangle(200, 0, 50, 100),
+                new Rectangle(250, 0, 100, 100), new Rectangle(0, 100, 200, 100)), cells);
+    }
+
+    @Test
+    public void writeSvgSheet() throws Exception{
+        List<Chemical> chemicals = parse("/dash.mol", "/dash.mol");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        List<Rectangle> cells = new SpriteSheetRenderer(new ChemicalRenderer())
+                .setCellSize(100, 80)
+                .writeImage(chemicals, ChemicalRenderer.SVG_FORMAT, out);
+
+        String svg = new String(out.toByteArray(), "UTF-8");
+        assertEquals(2, cells.size());
+        assertTrue(svg.contains("width=\"200\" height=\"80\""));
+        assertEquals(2, svg.split("<clipPath ", -1).length - 1);
+    }
+
+    @Test
+    public void writePngSheet() throws Exception{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        List<Rectangle> cells = new SpriteSheetRenderer(new ChemicalRenderer())
+                .setCellSize(64, 64)
+                .setColumns(3)
+                .writeImage(parse("/dash.mol", "/wedgeCollide.mol", "/usp_steroid.mol", "/dash.mol"), "png", out);
+
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(192, img.getWidth());
+        assertEquals(128, img.getHeight());
+        assertEquals(new Rectangle(0, 64, 64, 64), cells.get(3));
+    }
+
+    @Test
+    public void autoImageTypeIsOpaqueOnlyWhenCellsFillTheSheet() throws Exception{
+        ChemicalRenderer renderer = new ChemicalRenderer()
+                .setBackgroundColor(Color.WHITE)
+                .setImageType(ImageType.AUTO);
+        SpriteSheetRenderer sprites = new SpriteSheetRenderer(renderer)
+                .setCellSize(50, 50)
+                .setColumns(2)
+                .setRounded(false);
+
+        assertEquals(BufferedImage.TYPE_INT_RGB, sprites.createImage(parse("/dash.mol", "/dash.mol")).getImage().getType());
+        //the empty 4th cell stays transparent
+        assertEquals(BufferedImage.TYPE_INT_ARGB, sprites.createImage(parse("/dash.mol", "/dash.mol", "/dash.mol")).getImage().getType());
+        assertEquals(BufferedImage.TYPE_INT_ARGB, sprites.setRounded(true).createImage(parse("/dash.mol", "/dash.mol")).getImage().getType());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noChemicals() {
+        new SpriteSheetRenderer(new ChemicalRenderer()).createImage(Collections.<Chemical>emptyList());
+    }
+}
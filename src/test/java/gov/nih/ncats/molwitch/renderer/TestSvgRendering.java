@@ -0,0 +1,130 @@
+/*
+ * NCATS-MOLWITCH-RENDERER
+ *
+ * Copyright 2020 NIH/NCATS
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package gov.nih.ncats.molwitch.renderer;
+
+import gov.nih.ncats.molwitch.Chemical;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class TestSvgRendering {
+
+    private static Document parseXml(String svg) throws Exception{
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(svg.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static int count(String s, String part){
+        return s.split(Pattern.quote(part), -1).length - 1;
+    }
+
+    @Test
+    public void validSvgWithGlyphsDefinedOnce() throws Exception{
+        String svg = new ChemicalRenderer().createSvg(ImageTestUtil.parseMol("/usp_steroid.mol"), 300, 250, true);
+
+        Element root = parseXml(svg).getDocumentElement();
+        assertEquals("svg", root.getNodeName());
+        assertEquals("300", root.getAttribute("width"));
+        assertEquals("250", root.getAttribute("height"));
+
+        int glyphs = count(svg, "<path id=\"g");
+        int glyphUses = count(svg, "<use xlink:href=\"#g");
+        assertTrue(glyphs > 0);
+        //usp_steroid has several O labels which all use the same glyph
+        assertTrue(glyphUses > glyphs);
+        assertFalse(svg.contains("data:image"));
+    }
+
+    @Test
+    public void shadowIsAFilter() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/wedgeCollide.mol");
+        ChemicalRenderer renderer = new ChemicalRenderer().setShadowVisible(true);
+
+        String withShadow = renderer.createSvg(c, 200, 200, true);
+        assertTrue(withShadow.contains("<feGaussianBlur"));
+        assertEquals(1, count(withShadow, "filter=\"url(#"));
+
+        String withoutShadow = renderer.setShadowVisible(false).createSvg(c, 200, 200, true);
+        assertFalse(withoutShadow.contains("<filter"));
+        assertTrue(withoutShadow.length() < withShadow.length());
+    }
+
+    @Test
+    public void writeImageAsSvg() throws Exception{
+        Chemical c = ImageTestUtil.parseMol("/dash.mol");
+        ChemicalRenderer renderer = new ChemicalRenderer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        renderer.writeImage(c, 150, 100, true, ChemicalRenderer.SVG_FORMAT, out);
+
+        assertEquals(renderer.createSvg(c, 150, 100, true), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void shapesInDeviceCoordinates() throws Exception{
+        SvgGraphics2D g2 = new SvgGraphics2D(100, 50);
+        g2.translate(10, 5);
+        g2.scale(2, 2);
+        g2.setColor(new Color(255, 0, 0, 128));
+        g2.fillRect(1, 1, 3, 2);
+        g2.setStroke(new BasicStroke(0.5f));
+        g2.setColor(Color.BLUE);
+        g2.drawLine(0, 0, 5, 0);
+        //fully transparent so nothing is written
+        g2.setColor(new Color(0, 0, 0, 0));
+        g2.fillRect(0, 0, 100, 50);
+        g2.dispose();
+
+        NodeList paths = parseXml(g2.getSvg()).getElementsByTagName("path");
+        assertEquals(2, paths.getLength());
+        Element rect = (Element) paths.item(0);
+        assertEquals("#ff0000", rect.getAttribute("fill"));
+        assertEquals("0.502", rect.getAttribute("fill-opacity"));
+        assertEquals("M12 7L18 7L18 11L12 11L12 7Z", rect.getAttribute("d"));
+        Element line = (Element) paths.item(1);
+        assertEquals("#0000ff", line.getAttribute("stroke"));
+        assertEquals("1", line.getAttribute("stroke-width"));
+        assertEquals("M10 5L20 5", line.getAttribute("d"));
+    }
+
+    @Test
+    public void sameTextTwiceDefinesGlyphsOnce() throws Exception{
+        SvgGraphics2D g2 = new SvgGraphics2D(100, 50);
+        g2.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 10));
+        g2.drawString("OH", 5, 20);
+        g2.drawString("HO", 5, 40);
+
+        String svg = g2.getSvg();
+        assertEquals(2, count(svg, "<path id=\"g"));
+        assertEquals(4, count(svg, "<use xlink:href=\"#g"));
+        parseXml(svg);
+    }
+}